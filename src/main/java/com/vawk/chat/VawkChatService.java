@@ -3,9 +3,12 @@ package com.vawk.chat;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.vawk.runtime.DirectoryService;
+import com.vawk.store.RagContextPacker;
 import com.vawk.store.RagRepository;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.messages.Message;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.BufferedWriter;
@@ -30,12 +33,16 @@ import java.util.UUID;
 @Service
 public class VawkChatService {
     private static final int MAX_CONTEXT_TURNS = 20;
+    private static final int DEFAULT_RAG_TOKEN_BUDGET = 800;
+    private static final String RAG_CONTEXT_HEADER = "# Reference context for this question\n\n"
+            + "Below are a few relevant AWK references. Use them if helpful.\n\n";
     private static final String VERSION = "0.2.0-SNAPSHOT";
     private final DirectoryService directoryService;
     private final ObjectMapper objectMapper = new ObjectMapper();
     private final Optional<ChatClient> chatClient;
     private final VawkChatPromptBuilder promptBuilder;
     private final RagRepository ragRepository;
+    private final int ragTokenBudget;
 
     /**
      * Constructs a chat service with directory management, optional ChatClient, prompt builder, and
@@ -45,10 +52,23 @@ public class VawkChatService {
                            Optional<ChatClient> chatClient,
                            VawkChatPromptBuilder promptBuilder,
                            RagRepository ragRepository) {
+        this(directoryService, chatClient, promptBuilder, ragRepository, DEFAULT_RAG_TOKEN_BUDGET);
+    }
+
+    /**
+     * @param ragTokenBudget most tokens the reference context may take in the prompt
+     */
+    @Autowired
+    public VawkChatService(DirectoryService directoryService,
+                           Optional<ChatClient> chatClient,
+                           VawkChatPromptBuilder promptBuilder,
+                           RagRepository ragRepository,
+                           @Value("${vawk.rag.token-budget.chat:800}") int ragTokenBudget) {
         this.directoryService = directoryService;
         this.chatClient = chatClient;
         this.promptBuilder = promptBuilder;
         this.ragRepository = ragRepository;
+        this.ragTokenBudget = ragTokenBudget;
     }
 
     /**
@@ -172,17 +192,17 @@ public class VawkChatService {
             return "";
         }
         try {
-            List<RagRepository.RagDocument> docs = ragRepository.searchForChat(query, 3);
-            if (docs.isEmpty()) {
+            List<RagRepository.RagPassage> passages = RagContextPacker.pack(
+                    ragRepository.findPassages(query, RagContextPacker.CANDIDATES),
+                    passage -> formatRagPassage(0, passage),
+                    ragTokenBudget - RagContextPacker.estimateTokens(RAG_CONTEXT_HEADER));
+            if (passages.isEmpty()) {
                 return "";
             }
-            StringBuilder contextBuilder = new StringBuilder();
-            contextBuilder.append("# Reference context for this question\n\n");
-            contextBuilder.append("Below are a few relevant AWK references. Use them if helpful.\n\n");
+            StringBuilder contextBuilder = new StringBuilder(RAG_CONTEXT_HEADER);
             int docNum = 1;
-            for (RagRepository.RagDocument doc : docs) {
-                contextBuilder.append("## Doc ").append(docNum++).append(": ").append(doc.title).append("\n");
-                contextBuilder.append(truncate(doc.content)).append("\n\n");
+            for (RagRepository.RagPassage passage : passages) {
+                contextBuilder.append(formatRagPassage(docNum++, passage)).append("\n\n");
             }
             return contextBuilder.toString().trim();
         } catch (IOException e) {
@@ -190,6 +210,11 @@ public class VawkChatService {
         }
     }
 
+    private String formatRagPassage(int docNum, RagRepository.RagPassage passage) {
+        return "## Doc " + docNum + ": " + passage.entry.description + " (lines " + passage.firstLine + "-" + passage.lastLine + ")\n"
+                + truncate(passage.text);
+    }
+
     private String truncate(String content) {
         if (content == null) {
             return "";
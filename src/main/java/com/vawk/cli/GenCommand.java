@@ -4,6 +4,7 @@ import com.vawk.domain.GenerationMode;
 import com.vawk.orchestration.GenerateResult;
 import com.vawk.orchestration.VawkGeneratorService;
 import com.vawk.runtime.DirectoryService;
+import com.vawk.store.GenerationCacheRepository;
 import org.springframework.stereotype.Component;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
@@ -11,11 +12,18 @@ import picocli.CommandLine.Parameters;
 import picocli.CommandLine.Spec;
 import picocli.CommandLine.Model.CommandSpec;
 
+import java.io.BufferedReader;
+import java.io.Console;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Locale;
 import java.util.concurrent.Callable;
 
 /**
  * CLI command to generate a VAWK spec, AWK program, and session log from a natural language
- * description. Uses VawkGeneratorService for plan/code generation and optional auto-testing.
+ * description. Uses VawkGeneratorService for plan/code generation and optional auto-testing; a
+ * verified generation cached for the same request is reused unless --fresh is given. One cached for
+ * a merely similar request is shown and reused only when the user confirms it at the console.
  */
 @Component
 @Command(name = "gen", description = "Generate spec.yaml, main.awk, and session log for an AWK task")
@@ -36,11 +44,16 @@ public class GenCommand implements Callable<Integer> {
     @Option(names = {"--tests-dir"}, description = "Tests directory for auto-test (default tests)", defaultValue = "tests")
     String testsDir;
 
+    @Option(names = {"--fresh"}, description = "Call the model even when a verified generation for this request is cached", defaultValue = "false")
+    boolean fresh;
+
     @Spec
     CommandSpec spec;
 
     private final VawkGeneratorService generatorService;
     private final DirectoryService directoryService;
+    /** Where confirmations are read from; null reads the console, and no console declines. */
+    BufferedReader input;
 
     /**
      * Constructs the generator CLI command.
@@ -54,11 +67,40 @@ public class GenCommand implements Callable<Integer> {
     public Integer call() throws Exception {
         directoryService.ensureBaseDirs();
         String description = String.join(" ", descriptionParts).trim();
-        GenerateResult result = generatorService.generate(description, mode, modelOverride, autoTest, testsDir);
+        GenerateResult result = generatorService.generate(description, mode, modelOverride, autoTest, testsDir, fresh, this::confirmReuse);
+        if (result.getCachedFrom() != null) {
+            spec.commandLine().getOut().println("Reused the verified generation for \"" + result.getCachedFrom() + "\" (use --fresh to call the model)");
+        }
         spec.commandLine().getOut().println("Generated spec.yaml and main.awk");
         spec.commandLine().getOut().println("PLAN snippet:");
         spec.commandLine().getOut().println(result.getSessionLog().getPlanText());
         spec.commandLine().getOut().println("Session log written with program hash " + result.getSessionLog().getProgramHash());
         return 0;
     }
+
+    /**
+     * Shows the cached request a similar one matched and asks whether to reuse its program.
+     */
+    private boolean confirmReuse(GenerationCacheRepository.Match match) {
+        PrintWriter out = spec.commandLine().getOut();
+        out.printf(Locale.ROOT, "A verified generation is cached for a similar request (similarity %.2f):%n  %s%n",
+                match.similarity(), match.entry().getDescription());
+        BufferedReader reader = input;
+        if (reader == null) {
+            Console console = System.console();
+            if (console == null) {
+                out.println("No console to confirm reuse; calling the model");
+                return false;
+            }
+            reader = new BufferedReader(console.reader());
+        }
+        out.print("Reuse it? [y/N] ");
+        out.flush();
+        try {
+            String answer = reader.readLine();
+            return answer != null && (answer.strip().equalsIgnoreCase("y") || answer.strip().equalsIgnoreCase("yes"));
+        } catch (IOException e) {
+            return false;
+        }
+    }
 }
@@ -0,0 +1,166 @@
+package com.vawk.cli;
+
+import com.vawk.domain.AwkTestCase;
+import com.vawk.domain.GenerationMode;
+import com.vawk.domain.SessionLog;
+import com.vawk.runtime.DirectoryService;
+import com.vawk.runtime.TestShard;
+import com.vawk.store.SessionLogRepository;
+import com.vawk.store.TestRepository;
+import org.springframework.stereotype.Component;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+
+/**
+ * CLI command to combine the TEST logs of a sharded suite (vawk test --shard i/n) into one TEST
+ * log. It refuses incomplete or inconsistent sets: every shard 1..n exactly once, all run against
+ * the same program, no test reported twice. Merged results follow the declaration order of the
+ * tests directory when it is available.
+ */
+@Component
+@Command(name = "merge-tests", description = "Merge the TEST logs of vawk test --shard runs into one TEST log")
+public class MergeTestsCommand implements Callable<Integer> {
+
+    @Parameters(arity = "1..*", paramLabel = "LOG", description = "Session logs written by vawk test --shard i/n")
+    List<Path> shardLogs;
+
+    @Option(names = {"--tests-dir"}, description = "Directory whose fixtures give the merged order", defaultValue = "tests")
+    Path testsDir;
+
+    private final SessionLogRepository sessionLogRepository;
+    private final TestRepository testRepository;
+    private final DirectoryService directoryService;
+
+    /**
+     * Constructs the merge command with the session log and test repositories.
+     */
+    public MergeTestsCommand(SessionLogRepository sessionLogRepository, TestRepository testRepository, DirectoryService directoryService) {
+        this.sessionLogRepository = sessionLogRepository;
+        this.testRepository = testRepository;
+        this.directoryService = directoryService;
+    }
+
+    /**
+     * Validates and merges the shard logs, prints a summary, and writes the merged TEST log.
+     *
+     * @return 0 when every merged test passed, 1 on failures or an unusable set of logs
+     */
+    @Override
+    // Pattern: Orchestration + Verification
+    // - Shards may run anywhere; the merged receipt is only written for a complete, consistent suite.
+    public Integer call() throws Exception {
+        directoryService.ensureBaseDirs();
+        Map<Integer, SessionLog> shards = new TreeMap<>();
+        int shardCount = 0;
+        for (Path path : shardLogs) {
+            SessionLog log = sessionLogRepository.read(path);
+            if (!"TEST".equals(log.getCommand()) || log.getShard() == null) {
+                System.err.println(path + " is not the log of a sharded vawk test run");
+                return 1;
+            }
+            TestShard shard;
+            try {
+                shard = TestShard.parse(log.getShard());
+            } catch (IllegalArgumentException e) {
+                System.err.println(path + " has an invalid shard tag: " + e.getMessage());
+                return 1;
+            }
+            if (shardCount != 0 && shard.getCount() != shardCount) {
+                System.err.println(path + " is shard " + shard + " but other logs split the suite " + shardCount + " ways");
+                return 1;
+            }
+            shardCount = shard.getCount();
+            if (shards.put(shard.getIndex(), log) != null) {
+                System.err.println("Shard " + shard + " is given more than once");
+                return 1;
+            }
+        }
+        List<String> missing = new ArrayList<>();
+        for (int index = 1; index <= shardCount; index++) {
+            if (!shards.containsKey(index)) {
+                missing.add(index + "/" + shardCount);
+            }
+        }
+        if (!missing.isEmpty()) {
+            System.err.println("Missing shards: " + String.join(", ", missing));
+            return 1;
+        }
+        SessionLog first = shards.values().iterator().next();
+        for (SessionLog log : shards.values()) {
+            if (!Objects.equals(log.getProgramHash(), first.getProgramHash())) {
+                System.err.println("Shards " + first.getShard() + " and " + log.getShard() + " ran different programs");
+                return 1;
+            }
+        }
+
+        Map<String, SessionLog.TestRun> runs = new LinkedHashMap<>();
+        for (SessionLog log : shards.values()) {
+            for (SessionLog.TestRun run : log.getTestsRun()) {
+                if (runs.put(run.getName(), run) != null) {
+                    System.err.println("Test " + run.getName() + " is reported by more than one shard");
+                    return 1;
+                }
+            }
+        }
+        List<SessionLog.TestRun> merged = inDeclarationOrder(runs);
+
+        int failed = 0;
+        for (SessionLog.TestRun run : merged) {
+            if (!run.isPassed()) {
+                failed++;
+                System.out.println("[FAIL] " + run.getName());
+            }
+        }
+        System.out.println("Merged " + shardCount + " shards: " + (merged.size() - failed) + " passed, " + failed + " failed");
+
+        SessionLog log = new SessionLog();
+        log.setCommand("TEST");
+        log.setTimestamp(Instant.now());
+        log.setMode(GenerationMode.SINGLE);
+        log.setTestsRun(merged);
+        log.setProgramHash(first.getProgramHash());
+        log.setSpecHash(first.getSpecHash());
+        log.setNotes("Merged from " + shardCount + " shards");
+        System.out.println("Merged log: " + sessionLogRepository.write(log));
+        return failed == 0 ? 0 : 1;
+    }
+
+    private List<SessionLog.TestRun> inDeclarationOrder(Map<String, SessionLog.TestRun> runs) {
+        List<AwkTestCase> declared = List.of();
+        if (Files.isDirectory(testsDir)) {
+            try {
+                declared = testRepository.load(testsDir);
+            } catch (IOException e) {
+                // Without the fixtures the shards' own order is kept.
+            }
+        }
+        Map<String, SessionLog.TestRun> remaining = new HashMap<>(runs);
+        List<SessionLog.TestRun> ordered = new ArrayList<>();
+        for (AwkTestCase testCase : declared) {
+            SessionLog.TestRun run = remaining.remove(testCase.getName());
+            if (run != null) {
+                ordered.add(run);
+            }
+        }
+        for (SessionLog.TestRun run : runs.values()) {
+            if (remaining.containsKey(run.getName())) {
+                ordered.add(run);
+            }
+        }
+        return ordered;
+    }
+}
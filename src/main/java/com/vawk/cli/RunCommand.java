@@ -1,14 +1,18 @@
 package com.vawk.cli;
 
+import com.vawk.domain.AggregateSpec;
 import com.vawk.domain.AwkProgram;
 import com.vawk.domain.GenerationMode;
 import com.vawk.domain.SessionLog;
+import com.vawk.domain.VawkSpec;
+import com.vawk.runtime.AggregateRunner;
 import com.vawk.runtime.AwkRunRequest;
-import com.vawk.runtime.AwkRunResult;
 import com.vawk.runtime.AwkRunner;
 import com.vawk.runtime.DirectoryService;
+import com.vawk.runtime.ParallelAwkRunner;
 import com.vawk.store.ProgramRepository;
 import com.vawk.store.SessionLogRepository;
+import com.vawk.store.SpecRepository;
 import com.vawk.util.Hashing;
 import org.springframework.stereotype.Component;
 import picocli.CommandLine.Command;
@@ -17,6 +21,7 @@ import picocli.CommandLine.Parameters;
 import picocli.CommandLine.Spec;
 import picocli.CommandLine.Model.CommandSpec;
 
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -25,11 +30,17 @@ import java.time.Instant;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.Callable;
 
 /**
  * CLI command to run an AWK program (default main.awk) against optional input with -v variables,
- * echoing stdout/stderr and recording a RUN session log entry.
+ * streaming stdout/stderr straight to the terminal and recording a RUN session log entry. With
+ * --parallel N a large input file is split into N record-aligned shards that run concurrently,
+ * provided spec.yaml declares the program stateless; with --aggregate the aggregates declared in
+ * spec.yaml are computed instead of running the program, over shards when --parallel is given.
+ * Both read the spec.yaml in the directory of the --awk program, so a promoted job is judged by
+ * its own spec.
  */
 @Component
 @Command(name = "run", description = "Run AWK program against input (default main.awk)")
@@ -41,6 +52,13 @@ public class RunCommand implements Callable<Integer> {
     @Option(names = {"--var"}, description = "AWK -v assignment (name=value)", paramLabel = "name=value")
     List<String> varAssignments;
 
+    @Option(names = {"--parallel"}, defaultValue = "1", paramLabel = "N",
+            description = "Split the input file into N record-aligned shards and run them concurrently (spec must declare stateless: true)")
+    int parallel;
+
+    @Option(names = {"--aggregate"}, description = "Compute the aggregates declared in the program's spec.yaml instead of running the AWK program")
+    boolean aggregate;
+
     @Parameters(index = "0", arity = "0..1", description = "Input file (optional, STDIN if omitted)")
     Path inputFile;
 
@@ -48,6 +66,9 @@ public class RunCommand implements Callable<Integer> {
     private final AwkRunner awkRunner;
     private final SessionLogRepository sessionLogRepository;
     private final DirectoryService directoryService;
+    private final SpecRepository specRepository;
+    private final ParallelAwkRunner parallelAwkRunner;
+    private final AggregateRunner aggregateRunner;
 
     @Spec
     CommandSpec spec;
@@ -58,11 +79,17 @@ public class RunCommand implements Callable<Integer> {
     public RunCommand(ProgramRepository programRepository,
                       AwkRunner awkRunner,
                       SessionLogRepository sessionLogRepository,
-                      DirectoryService directoryService) {
+                      DirectoryService directoryService,
+                      SpecRepository specRepository,
+                      ParallelAwkRunner parallelAwkRunner,
+                      AggregateRunner aggregateRunner) {
         this.programRepository = programRepository;
         this.awkRunner = awkRunner;
         this.sessionLogRepository = sessionLogRepository;
         this.directoryService = directoryService;
+        this.specRepository = specRepository;
+        this.parallelAwkRunner = parallelAwkRunner;
+        this.aggregateRunner = aggregateRunner;
     }
 
     /**
@@ -76,16 +103,37 @@ public class RunCommand implements Callable<Integer> {
             spec.commandLine().getErr().println("Invalid --var assignment, expected name=value");
             return 1;
         }
+        if (parallel < 1) {
+            spec.commandLine().getErr().println("--parallel must be at least 1");
+            return 1;
+        }
 
-        AwkProgram program = programRepository.read(awkPath);
+        // Aggregates run a generated program, so the --awk one is not read.
+        AwkProgram program = aggregate ? null : programRepository.read(awkPath);
         AwkRunRequest request = new AwkRunRequest(program, inputFile, vars);
-        AwkRunResult result = awkRunner.run(request);
-
-        if (!result.getStdout().isEmpty()) {
-            spec.commandLine().getOut().print(result.getStdout());
+        if (inputFile == null) {
+            request.setStandardInput(System.in);
         }
-        if (!result.getStderr().isEmpty()) {
-            spec.commandLine().getErr().print(result.getStderr());
+        int exitCode;
+        if (aggregate) {
+            VawkSpec vawkSpec = readSpec();
+            List<AggregateSpec> aggregates = vawkSpec == null ? null : vawkSpec.getAggregates();
+            Optional<String> rejection = aggregateRunner.rejectionReason(aggregates, parallel);
+            if (rejection.isPresent()) {
+                spec.commandLine().getErr().println("Cannot run with --aggregate: " + rejection.get());
+                return 1;
+            }
+            exitCode = aggregateRunner.stream(request, aggregates, parallel, spec.commandLine().getOut(), spec.commandLine().getErr());
+        } else if (parallel > 1) {
+            VawkSpec vawkSpec = readSpec();
+            Optional<String> rejection = parallelAwkRunner.rejectionReason(vawkSpec, request);
+            if (rejection.isPresent()) {
+                spec.commandLine().getErr().println("Cannot run with --parallel: " + rejection.get());
+                return 1;
+            }
+            exitCode = parallelAwkRunner.stream(request, parallel, spec.commandLine().getOut(), spec.commandLine().getErr());
+        } else {
+            exitCode = awkRunner.stream(request, spec.commandLine().getOut(), spec.commandLine().getErr());
         }
         spec.commandLine().getOut().flush();
         spec.commandLine().getErr().flush();
@@ -94,14 +142,26 @@ public class RunCommand implements Callable<Integer> {
         log.setCommand("RUN");
         log.setMode(GenerationMode.SINGLE);
         log.setTimestamp(Instant.now());
-        log.setProgramHash(program.getHash());
+        if (program != null) {
+            log.setProgramHash(program.getHash());
+        }
         if (Files.exists(Paths.get("spec.yaml"))) {
             byte[] specBytes = Files.readAllBytes(Paths.get("spec.yaml"));
             log.setSpecHash(Hashing.sha256(new String(specBytes, StandardCharsets.UTF_8)));
         }
         sessionLogRepository.write(log);
 
-        return result.getExitCode();
+        return exitCode;
+    }
+
+    /**
+     * Reads the spec.yaml next to the --awk program: ./spec.yaml for the default main.awk, the
+     * job's own spec for vawk/jobs/NAME/script.awk.
+     */
+    private VawkSpec readSpec() throws IOException {
+        Path directory = awkPath.getParent();
+        Path specPath = directory == null ? Paths.get("spec.yaml") : directory.resolve("spec.yaml");
+        return Files.exists(specPath) ? specRepository.read(specPath) : null;
     }
 
     private Map<String, String> parseVarAssignments(List<String> assignments) {
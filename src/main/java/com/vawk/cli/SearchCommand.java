@@ -0,0 +1,62 @@
+package com.vawk.cli;
+
+import com.vawk.store.RagRepository;
+import org.springframework.stereotype.Component;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+import picocli.CommandLine.Spec;
+import picocli.CommandLine.Model.CommandSpec;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * CLI command to search the AWK code of the snippets and promoted jobs. Prints matching lines as
+ * path:line: text, like grep; exits 1 when nothing matched or the pattern is invalid.
+ */
+@Component
+@Command(name = "search", description = "Search snippet and promoted job AWK code")
+public class SearchCommand implements Callable<Integer> {
+
+    @Parameters(index = "0..*", arity = "1..*", description = "Text to find (words are joined with single spaces)")
+    String[] queryParts;
+
+    @Option(names = {"--regex"}, description = "Treat the query as a Java regular expression", defaultValue = "false")
+    boolean regex;
+
+    @Option(names = {"--limit"}, defaultValue = "20", description = "Most matching lines to print")
+    int limit;
+
+    @Spec
+    CommandSpec spec;
+
+    private final RagRepository ragRepository;
+
+    /**
+     * Constructs the search command over the RAG repository's code index.
+     */
+    public SearchCommand(RagRepository ragRepository) {
+        this.ragRepository = ragRepository;
+    }
+
+    /**
+     * Runs the search and prints one line per match.
+     */
+    @Override
+    public Integer call() throws Exception {
+        String query = String.join(" ", queryParts);
+        List<RagRepository.CodeMatch> matches;
+        try {
+            matches = ragRepository.searchCode(query, regex, limit);
+        } catch (PatternSyntaxException e) {
+            spec.commandLine().getErr().println("[vawk] Error: invalid regular expression: " + e.getDescription());
+            return 1;
+        }
+        for (RagRepository.CodeMatch match : matches) {
+            spec.commandLine().getOut().println(match.path + ":" + match.line + ": " + match.text);
+        }
+        return matches.isEmpty() ? 1 : 0;
+    }
+}
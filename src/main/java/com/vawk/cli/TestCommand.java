@@ -4,12 +4,19 @@ import com.vawk.domain.AwkProgram;
 import com.vawk.domain.AwkTestCase;
 import com.vawk.domain.GenerationMode;
 import com.vawk.domain.SessionLog;
+import com.vawk.domain.TestState;
+import com.vawk.domain.VawkSpec;
 import com.vawk.runtime.AwkTestRunner;
 import com.vawk.runtime.DirectoryService;
+import com.vawk.runtime.TestRunOptions;
+import com.vawk.runtime.TestShard;
+import com.vawk.store.JUnitReportWriter;
 import com.vawk.store.ProgramRepository;
 import com.vawk.store.SessionLogRepository;
 import com.vawk.store.SpecRepository;
 import com.vawk.store.TestRepository;
+import com.vawk.store.TestStateRepository;
+import com.vawk.store.TestTimingRepository;
 import com.vawk.util.Hashing;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
@@ -20,13 +27,23 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.Callable;
 import java.nio.file.Files;
 
 /**
  * CLI command to run AWK tests against fixtures in a tests directory. Executes programs, diffs
- * outputs, prints PASS/FAIL, and records results in the session log.
+ * outputs, prints PASS/FAIL, and records results in the session log. With --shard i/n only one
+ * slice of the suite runs, so CI executors can split it; merge-tests combines their logs. With
+ * --slowest N a summary of the slowest fixtures follows the results, and --junit-xml writes a
+ * timed report.
+ * With --multiplex, tiny fixtures of a stateless program share awk processes.
  */
 @Component
 @Command(name = "test", description = "Run AWK tests using fixtures under tests/")
@@ -38,28 +55,64 @@ public class TestCommand implements Callable<Integer> {
     @Option(names = {"--awk"}, description = "Path to AWK program (default main.awk)", defaultValue = "main.awk")
     Path awkPath;
 
+    @Option(names = {"--no-cache"}, description = "Run every fixture even when an identical run is cached under .vawk/cache/runs")
+    boolean noCache;
+
+    @Option(names = {"--all"}, description = "Run every fixture, even those unchanged since they last passed")
+    boolean all;
+
+    @Option(names = {"--jobs"}, description = "Fixtures run concurrently (default: number of cores)")
+    Integer jobs;
+
+    @Option(names = {"--shard"}, paramLabel = "i/n",
+            description = "Run only the i-th of n slices of the suite, split by a stable hash of the test name")
+    String shard;
+
+    @Option(names = {"--multiplex"},
+            description = "Let tiny fixtures share one awk process when spec.yaml declares the program stateless")
+    boolean multiplex;
+
+    @Option(names = {"--slowest"}, paramLabel = "N", defaultValue = "0",
+            description = "Print the N slowest fixtures with their timings after the results")
+    int slowest;
+
+    @Option(names = {"--slowest-by"}, paramLabel = "wall|cpu|rate", defaultValue = "wall",
+            description = "Order of the slowest-fixtures summary: wall time, CPU time, or lowest lines per second")
+    String slowestBy = "wall";
+
+    @Option(names = {"--junit-xml"}, paramLabel = "FILE", description = "Also write the results as a JUnit XML report with timings")
+    Path junitXml;
+
     private final TestRepository testRepository;
     private final ProgramRepository programRepository;
     private final SpecRepository specRepository;
     private final SessionLogRepository sessionLogRepository;
     private final AwkTestRunner testRunner;
     private final DirectoryService directoryService;
+    private final TestStateRepository testStateRepository;
+    private final TestTimingRepository testTimingRepository;
+    private final JUnitReportWriter junitReportWriter = new JUnitReportWriter();
 
     /**
-     * Constructs the test CLI command with repositories and runners.
+     * Constructs the test CLI command with repositories, runners, the test-state manifest and the
+     * timing history.
      */
     public TestCommand(TestRepository testRepository,
                        ProgramRepository programRepository,
                        SpecRepository specRepository,
                        SessionLogRepository sessionLogRepository,
                        AwkTestRunner testRunner,
-                       DirectoryService directoryService) {
+                       DirectoryService directoryService,
+                       TestStateRepository testStateRepository,
+                       TestTimingRepository testTimingRepository) {
         this.testRepository = testRepository;
         this.programRepository = programRepository;
         this.specRepository = specRepository;
         this.sessionLogRepository = sessionLogRepository;
         this.testRunner = testRunner;
         this.directoryService = directoryService;
+        this.testStateRepository = testStateRepository;
+        this.testTimingRepository = testTimingRepository;
     }
 
     /**
@@ -76,27 +129,75 @@ public class TestCommand implements Callable<Integer> {
             return 1;
         }
 
+        TestShard testShard = null;
+        if (shard != null) {
+            try {
+                testShard = TestShard.parse(shard);
+            } catch (IllegalArgumentException e) {
+                System.err.println("--shard: " + e.getMessage());
+                return 1;
+            }
+            TestShard selected = testShard;
+            testCases = testCases.stream().filter(testCase -> selected.includes(testCase.getName())).toList();
+            if (testCases.isEmpty()) {
+                System.out.println("No test cases in shard " + testShard);
+            }
+        }
+
+        Comparator<SessionLog.TestRun> slowestOrder = slowestOrder(slowestBy);
+        if (slowestOrder == null) {
+            System.err.println("--slowest-by must be wall, cpu or rate");
+            return 1;
+        }
+
         AwkProgram program = programRepository.read(awkPath);
-        List<SessionLog.TestRun> results = testRunner.runTests(testCases, program);
+        TestRunOptions options = TestRunOptions.defaults();
+        options.setUseCache(!noCache);
+        if (jobs != null) {
+            if (jobs < 1) {
+                System.err.println("--jobs must be at least 1");
+                return 1;
+            }
+            options.setJobs(jobs);
+        }
+        options.setTimings(testTimingRepository.load());
+        if (multiplex) {
+            VawkSpec vawkSpec = Files.exists(Paths.get("spec.yaml")) ? specRepository.read() : null;
+            if (vawkSpec != null && Boolean.TRUE.equals(vawkSpec.getStateless())) {
+                options.setMultiplex(true);
+            } else {
+                System.err.println("--multiplex ignored: spec.yaml does not declare the program stateless (stateless: true)");
+            }
+        }
+        List<SessionLog.TestRun> results = runChanged(testCases, program, options);
+        testTimingRepository.record(results);
 
         boolean allPass = true;
         for (SessionLog.TestRun run : results) {
             if (run.isPassed()) {
-                System.out.println("[PASS] " + run.getName());
+                System.out.println("[PASS] " + run.getName() + (Boolean.TRUE.equals(run.getCached()) ? " (cached)" : ""));
             } else {
                 allPass = false;
-                System.out.println("[FAIL] " + run.getName());
+                boolean stopped = run.getFailureKind() == SessionLog.FailureKind.LIMIT_EXCEEDED;
+                System.out.println("[FAIL] " + run.getName() + (stopped ? " (stopped at a run limit)" : ""));
                 if (run.getDiff() != null) {
                     System.out.println(run.getDiff());
                 }
             }
         }
+        printSlowest(results, testCases, slowestOrder);
+        if (junitXml != null) {
+            junitReportWriter.write(junitXml, awkPath.getFileName().toString(), results);
+        }
 
         SessionLog log = new SessionLog();
         log.setCommand("TEST");
         log.setTimestamp(Instant.now());
         log.setMode(GenerationMode.SINGLE);
         log.setTestsRun(results);
+        if (testShard != null) {
+            log.setShard(testShard.toString());
+        }
         try {
             if (Files.exists(Paths.get("spec.yaml"))) {
                 byte[] specBytes = java.nio.file.Files.readAllBytes(Paths.get("spec.yaml"));
@@ -109,4 +210,107 @@ public class TestCommand implements Callable<Integer> {
 
         return allPass ? 0 : 1;
     }
+
+    private static Comparator<SessionLog.TestRun> slowestOrder(String slowestBy) {
+        Comparator<Long> descending = Comparator.nullsLast(Comparator.reverseOrder());
+        switch (slowestBy.toLowerCase(Locale.ROOT)) {
+            case "wall":
+                return Comparator.comparing(SessionLog.TestRun::getDurationMillis, descending);
+            case "cpu":
+                return Comparator.comparing(SessionLog.TestRun::getCpuMillis, descending);
+            case "rate":
+                return Comparator.comparing(SessionLog.TestRun::getLinesPerSecond, Comparator.nullsLast(Comparator.naturalOrder()));
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Prints the slowest executed fixtures as a table: wall and CPU time, bytes in and out, and
+     * input lines per second. Cached verdicts did not run and are left out. Lines are counted only
+     * for the fixtures listed, or for every executed one when they are ranked by rate.
+     */
+    // Pattern: Trust UX
+    // - Performance regressions in generated scripts show up next to the PASS/FAIL lines.
+    private void printSlowest(List<SessionLog.TestRun> results, List<AwkTestCase> testCases, Comparator<SessionLog.TestRun> order)
+            throws IOException {
+        if (slowest <= 0) {
+            return;
+        }
+        List<Integer> executed = new ArrayList<>();
+        for (int index = 0; index < results.size(); index++) {
+            if (results.get(index).getDurationMillis() != null) {
+                executed.add(index);
+            }
+        }
+        if (executed.isEmpty()) {
+            return;
+        }
+        if ("rate".equalsIgnoreCase(slowestBy)) {
+            for (int index : executed) {
+                AwkTestRunner.measureThroughput(results.get(index), testCases.get(index));
+            }
+        }
+        List<Integer> shown = executed.stream().sorted(Comparator.comparing(results::get, order)).limit(slowest).toList();
+        System.out.println("Slowest tests (by " + slowestBy.toLowerCase(Locale.ROOT) + "):");
+        System.out.println(String.format(Locale.ROOT, "  %9s %9s %12s %12s %12s  %s", "wall ms", "cpu ms", "bytes in", "bytes out", "lines/s", "test"));
+        for (int index : shown) {
+            SessionLog.TestRun run = results.get(index);
+            AwkTestRunner.measureThroughput(run, testCases.get(index));
+            System.out.println(String.format(Locale.ROOT, "  %9d %9s %12s %12s %12s  %s", run.getDurationMillis(),
+                    orDash(run.getCpuMillis()), orDash(run.getInputBytes()), orDash(run.getOutputBytes()),
+                    run.getLinesPerSecond() == null ? "-" : Long.toString(Math.round(run.getLinesPerSecond())), run.getName()));
+        }
+    }
+
+    private static String orDash(Long value) {
+        return value == null ? "-" : value.toString();
+    }
+
+    /**
+     * Runs the cases whose program, fixtures or variables changed since they last passed (all of
+     * them with --all), reports the others as cached passes, and records the new state.
+     *
+     * @return one receipt per case, in declaration order
+     */
+    // Pattern: Verification
+    // - Only a passing verdict with byte-identical ingredients is reused; anything else re-runs.
+    private List<SessionLog.TestRun> runChanged(List<AwkTestCase> testCases, AwkProgram program, TestRunOptions options)
+            throws IOException, InterruptedException {
+        TestState previous = testStateRepository.load();
+        List<Optional<TestState.CaseState>> fingerprints = new ArrayList<>();
+        List<AwkTestCase> changed = new ArrayList<>();
+        for (AwkTestCase testCase : testCases) {
+            TestState.CaseState last = previous.getCases().get(testCase.getName());
+            Optional<TestState.CaseState> fingerprint = testStateRepository.fingerprint(testCase, program, last);
+            fingerprints.add(fingerprint);
+            boolean unchanged = fingerprint.isPresent() && last != null && last.isPassed() && last.sameIngredients(fingerprint.get());
+            if (all || !unchanged) {
+                changed.add(testCase);
+            }
+        }
+        List<SessionLog.TestRun> ran = changed.isEmpty() ? List.of() : testRunner.runTests(changed, program, options);
+
+        List<SessionLog.TestRun> results = new ArrayList<>();
+        Map<String, TestState.CaseState> updates = new LinkedHashMap<>();
+        int ranIndex = 0;
+        for (int index = 0; index < testCases.size(); index++) {
+            AwkTestCase testCase = testCases.get(index);
+            SessionLog.TestRun run;
+            if (ranIndex < changed.size() && changed.get(ranIndex) == testCase) {
+                run = ran.get(ranIndex++);
+            } else {
+                run = new SessionLog.TestRun(testCase.getName(), true, null);
+                run.setCached(true);
+            }
+            results.add(run);
+            Optional<TestState.CaseState> fingerprint = fingerprints.get(index);
+            if (fingerprint.isPresent()) {
+                fingerprint.get().setPassed(run.isPassed());
+                updates.put(testCase.getName(), fingerprint.get());
+            }
+        }
+        testStateRepository.update(updates);
+        return results;
+    }
 }
@@ -4,19 +4,21 @@ import picocli.CommandLine.Command;
 import org.springframework.stereotype.Component;
 
 /**
- * Root CLI command wiring all VAWK subcommands (gen/test/run/refine/explain/lint/promote/chat).
+ * Root CLI command wiring all VAWK subcommands (gen/test/merge-tests/run/refine/explain/lint/promote/chat/search).
  * Picocli entry point; delegates to subcommands for behavior.
  */
 @Component
 @Command(name = "vawk", mixinStandardHelpOptions = true, description = "VAWK CLI", subcommands = {
         GenCommand.class,
         TestCommand.class,
+        MergeTestsCommand.class,
         RunCommand.class,
         RefineCommand.class,
         ExplainCommand.class,
         LintCommand.class,
         PromoteCommand.class,
-        ChatCommand.class
+        ChatCommand.class,
+        SearchCommand.class
 })
 public class VawkCommand implements Runnable {
 
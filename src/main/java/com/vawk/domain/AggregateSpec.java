@@ -0,0 +1,96 @@
+package com.vawk.domain;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Declares one aggregate output of a program: a sum, count, min or max of a field, optionally
+ * grouped by key fields and restricted to records matching an AWK condition. Aggregates declared
+ * this way can be computed over input shards in parallel and merged, because each function
+ * combines partial results associatively.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class AggregateSpec {
+    private String name;
+    private String function;
+    private List<Integer> keyFields = new ArrayList<>();
+    private Integer valueField;
+    private String where;
+
+    public AggregateSpec() {
+    }
+
+    public AggregateSpec(String name, String function, List<Integer> keyFields, Integer valueField, String where) {
+        this.name = name;
+        this.function = function;
+        if (keyFields != null) {
+            this.keyFields = new ArrayList<>(keyFields);
+        }
+        this.valueField = valueField;
+        this.where = where;
+    }
+
+    /** Label used in the output lines. */
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /** One of sum, count, min, max. */
+    public String getFunction() {
+        return function;
+    }
+
+    public void setFunction(String function) {
+        this.function = function;
+    }
+
+    /** 1-based field numbers forming the group key; empty for a single overall value. */
+    public List<Integer> getKeyFields() {
+        return keyFields;
+    }
+
+    public void setKeyFields(List<Integer> keyFields) {
+        this.keyFields = keyFields != null ? new ArrayList<>(keyFields) : new ArrayList<>();
+    }
+
+    /** 1-based field number aggregated by sum, min and max; unused by count. */
+    public Integer getValueField() {
+        return valueField;
+    }
+
+    public void setValueField(Integer valueField) {
+        this.valueField = valueField;
+    }
+
+    /** Optional AWK condition selecting the records that contribute, e.g. {@code NF > 0}. */
+    public String getWhere() {
+        return where;
+    }
+
+    public void setWhere(String where) {
+        this.where = where;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof AggregateSpec that)) return false;
+        return Objects.equals(name, that.name) &&
+                Objects.equals(function, that.function) &&
+                Objects.equals(keyFields, that.keyFields) &&
+                Objects.equals(valueField, that.valueField) &&
+                Objects.equals(where, that.where);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, function, keyFields, valueField, where);
+    }
+}
@@ -0,0 +1,117 @@
+package com.vawk.domain;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generations whose program passed its tests, kept so a later request for the same task can reuse
+ * the spec and program instead of calling the model again. Entries are in the order they were
+ * recorded, oldest first.
+ */
+public class GenerationCache {
+    private List<Entry> entries = new ArrayList<>();
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    public void setEntries(List<Entry> entries) {
+        this.entries = entries != null ? new ArrayList<>(entries) : new ArrayList<>();
+    }
+
+    /** One verified generation: the request, what was generated for it and the passing test runs. */
+    public static class Entry {
+        private String description;
+        private Instant createdAt;
+        private String model;
+        private VawkSpec spec;
+        private String code;
+        private String planText;
+        private String testsText;
+        private String notes;
+        private List<SessionLog.TestRun> testsRun = new ArrayList<>();
+
+        public String getDescription() {
+            return description;
+        }
+
+        public void setDescription(String description) {
+            this.description = description;
+        }
+
+        public Instant getCreatedAt() {
+            return createdAt;
+        }
+
+        public void setCreatedAt(Instant createdAt) {
+            this.createdAt = createdAt;
+        }
+
+        public String getModel() {
+            return model;
+        }
+
+        public void setModel(String model) {
+            this.model = model;
+        }
+
+        public VawkSpec getSpec() {
+            return spec;
+        }
+
+        public void setSpec(VawkSpec spec) {
+            this.spec = spec;
+        }
+
+        public String getCode() {
+            return code;
+        }
+
+        public void setCode(String code) {
+            this.code = code;
+        }
+
+        public String getPlanText() {
+            return planText;
+        }
+
+        public void setPlanText(String planText) {
+            this.planText = planText;
+        }
+
+        public String getTestsText() {
+            return testsText;
+        }
+
+        public void setTestsText(String testsText) {
+            this.testsText = testsText;
+        }
+
+        public String getNotes() {
+            return notes;
+        }
+
+        public void setNotes(String notes) {
+            this.notes = notes;
+        }
+
+        public List<SessionLog.TestRun> getTestsRun() {
+            return testsRun;
+        }
+
+        public void setTestsRun(List<SessionLog.TestRun> testsRun) {
+            this.testsRun = testsRun != null ? new ArrayList<>(testsRun) : new ArrayList<>();
+        }
+
+        /**
+         * @return whether tests were run and every one passed
+         */
+        @JsonIgnore
+        public boolean isVerified() {
+            return !testsRun.isEmpty() && testsRun.stream().allMatch(SessionLog.TestRun::isPassed);
+        }
+    }
+}
@@ -31,6 +31,7 @@ public class SessionLog {
     private String notes;
     private String specHash;
     private String programHash;
+    private String shard;
 
     public SessionLog() {
     }
@@ -139,6 +140,18 @@ public class SessionLog {
         this.programHash = programHash;
     }
 
+    /**
+     * @return the slice of the suite a TEST log covers, as {@code i/n}; null for unsharded runs
+     * and merged logs
+     */
+    public String getShard() {
+        return shard;
+    }
+
+    public void setShard(String shard) {
+        this.shard = shard;
+    }
+
     /**
      * Logs are equal when all metadata and text fields match.
      */
@@ -146,12 +159,22 @@ public class SessionLog {
     public boolean equals(Object o) {
         if (this == o) return true;
         if (!(o instanceof SessionLog that)) return false;
-        return Objects.equals(id, that.id) && Objects.equals(timestamp, that.timestamp) && Objects.equals(command, that.command) && mode == that.mode && Objects.equals(model, that.model) && Objects.equals(planText, that.planText) && Objects.equals(code, that.code) && Objects.equals(testsText, that.testsText) && Objects.equals(testsRequested, that.testsRequested) && Objects.equals(testsRun, that.testsRun) && Objects.equals(notes, that.notes) && Objects.equals(specHash, that.specHash) && Objects.equals(programHash, that.programHash);
+        return Objects.equals(id, that.id) && Objects.equals(timestamp, that.timestamp) && Objects.equals(command, that.command) && mode == that.mode && Objects.equals(model, that.model) && Objects.equals(planText, that.planText) && Objects.equals(code, that.code) && Objects.equals(testsText, that.testsText) && Objects.equals(testsRequested, that.testsRequested) && Objects.equals(testsRun, that.testsRun) && Objects.equals(notes, that.notes) && Objects.equals(specHash, that.specHash) && Objects.equals(programHash, that.programHash) && Objects.equals(shard, that.shard);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(id, timestamp, command, mode, model, planText, code, testsText, testsRequested, testsRun, notes, specHash, programHash);
+        return Objects.hash(id, timestamp, command, mode, model, planText, code, testsText, testsRequested, testsRun, notes, specHash, programHash, shard);
+    }
+
+    /** Why a test run failed, so receipts tell wrong output apart from broken or runaway programs. */
+    public enum FailureKind {
+        /** The program ran to completion but its output differed from the expected fixture. */
+        MISMATCH,
+        /** The program exited with a non-zero status. */
+        ERROR,
+        /** The program was stopped at a wall-clock, output or CPU limit. */
+        LIMIT_EXCEEDED
     }
 
     @JsonInclude(JsonInclude.Include.NON_NULL)
@@ -159,6 +182,14 @@ public class SessionLog {
         private String name;
         private boolean passed;
         private String diff;
+        private FailureKind failureKind;
+        private Boolean cached;
+        private String diffFile;
+        private Long durationMillis;
+        private Long cpuMillis;
+        private Long inputBytes;
+        private Long outputBytes;
+        private Double linesPerSecond;
 
         public TestRun() {
         }
@@ -194,21 +225,108 @@ public class SessionLog {
         }
 
         /**
-         * Test runs are equal when name, status, and diff match.
+         * @return why the run failed, or null for passing runs and receipts written before kinds were recorded
+         */
+        public FailureKind getFailureKind() {
+            return failureKind;
+        }
+
+        public void setFailureKind(FailureKind failureKind) {
+            this.failureKind = failureKind;
+        }
+
+        /**
+         * @return true when the verdict was carried over from an earlier passing run with identical
+         * program, fixtures and variables instead of being re-run, or was checked against output
+         * restored from the run cache; null otherwise. Cached runs carry no timings.
+         */
+        public Boolean getCached() {
+            return cached;
+        }
+
+        public void setCached(Boolean cached) {
+            this.cached = cached;
+        }
+
+        /**
+         * @return path of the file holding the whole diff when {@link #getDiff()} is only an excerpt; null otherwise
+         */
+        public String getDiffFile() {
+            return diffFile;
+        }
+
+        public void setDiffFile(String diffFile) {
+            this.diffFile = diffFile;
+        }
+
+        /**
+         * @return wall-clock time the case took to run and check, or null when it did not run
+         * (cached verdicts, older receipts); not part of equality, since it varies run to run
+         */
+        public Long getDurationMillis() {
+            return durationMillis;
+        }
+
+        public void setDurationMillis(Long durationMillis) {
+            this.durationMillis = durationMillis;
+        }
+
+        /**
+         * @return CPU time of the AWK program and its children, or null when not measured; like
+         * the other metrics below it is not part of equality
+         */
+        public Long getCpuMillis() {
+            return cpuMillis;
+        }
+
+        public void setCpuMillis(Long cpuMillis) {
+            this.cpuMillis = cpuMillis;
+        }
+
+        /** @return size of the input fixture in bytes, or null when it did not run */
+        public Long getInputBytes() {
+            return inputBytes;
+        }
+
+        public void setInputBytes(Long inputBytes) {
+            this.inputBytes = inputBytes;
+        }
+
+        /** @return size of the program's standard output in UTF-8 bytes, or null when it did not run */
+        public Long getOutputBytes() {
+            return outputBytes;
+        }
+
+        public void setOutputBytes(Long outputBytes) {
+            this.outputBytes = outputBytes;
+        }
+
+        /** @return input lines processed per second of wall time, or null when it did not run */
+        public Double getLinesPerSecond() {
+            return linesPerSecond;
+        }
+
+        public void setLinesPerSecond(Double linesPerSecond) {
+            this.linesPerSecond = linesPerSecond;
+        }
+
+        /**
+         * Test runs are equal when name, status, diff, diff file, and failure kind match.
          */
         @Override
         public boolean equals(Object o) {
             if (this == o) return true;
             if (!(o instanceof TestRun testRun)) return false;
-            return passed == testRun.passed && Objects.equals(name, testRun.name) && Objects.equals(diff, testRun.diff);
+            return passed == testRun.passed && Objects.equals(name, testRun.name) && Objects.equals(diff, testRun.diff)
+                    && Objects.equals(diffFile, testRun.diffFile) && failureKind == testRun.failureKind;
         }
 
         /**
-         * Hashes name, status, and diff for collection usage.
+         * Hashes name, status, diff, diff file, and failure kind for collection usage.
          */
         @Override
         public int hashCode() {
-            return Objects.hash(name, passed, diff);
+            return Objects.hash(name, passed, diff, diffFile, failureKind);
         }
     }
 }
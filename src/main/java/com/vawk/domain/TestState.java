@@ -0,0 +1,153 @@
+package com.vawk.domain;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Remembers, per test case, what its last run was made of: hashes of the program, input file,
+ * expected file and variables, and whether it passed. A case whose ingredients are unchanged since
+ * a passing run cannot produce a different verdict, so the test command may skip it. The size and
+ * modification time each fixture file had when hashed are kept too, so an untouched file is not
+ * read again to prove it is unchanged.
+ */
+public class TestState {
+    private Map<String, CaseState> cases = new LinkedHashMap<>();
+
+    public Map<String, CaseState> getCases() {
+        return cases;
+    }
+
+    public void setCases(Map<String, CaseState> cases) {
+        this.cases = cases != null ? new LinkedHashMap<>(cases) : new LinkedHashMap<>();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof TestState that)) return false;
+        return Objects.equals(cases, that.cases);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(cases);
+    }
+
+    /** Ingredients and verdict of one case's last run. */
+    public static class CaseState {
+        private String programHash;
+        private String inputHash;
+        private String expectedHash;
+        private String variablesHash;
+        private boolean passed;
+        private long inputSize;
+        private long inputModifiedMillis;
+        private long expectedSize;
+        private long expectedModifiedMillis;
+
+        public CaseState() {
+        }
+
+        public CaseState(String programHash, String inputHash, String expectedHash, String variablesHash, boolean passed) {
+            this.programHash = programHash;
+            this.inputHash = inputHash;
+            this.expectedHash = expectedHash;
+            this.variablesHash = variablesHash;
+            this.passed = passed;
+        }
+
+        public String getProgramHash() {
+            return programHash;
+        }
+
+        public void setProgramHash(String programHash) {
+            this.programHash = programHash;
+        }
+
+        public String getInputHash() {
+            return inputHash;
+        }
+
+        public void setInputHash(String inputHash) {
+            this.inputHash = inputHash;
+        }
+
+        public String getExpectedHash() {
+            return expectedHash;
+        }
+
+        public void setExpectedHash(String expectedHash) {
+            this.expectedHash = expectedHash;
+        }
+
+        public String getVariablesHash() {
+            return variablesHash;
+        }
+
+        public void setVariablesHash(String variablesHash) {
+            this.variablesHash = variablesHash;
+        }
+
+        public boolean isPassed() {
+            return passed;
+        }
+
+        public void setPassed(boolean passed) {
+            this.passed = passed;
+        }
+
+        public long getInputSize() {
+            return inputSize;
+        }
+
+        public void setInputSize(long inputSize) {
+            this.inputSize = inputSize;
+        }
+
+        public long getInputModifiedMillis() {
+            return inputModifiedMillis;
+        }
+
+        public void setInputModifiedMillis(long inputModifiedMillis) {
+            this.inputModifiedMillis = inputModifiedMillis;
+        }
+
+        public long getExpectedSize() {
+            return expectedSize;
+        }
+
+        public void setExpectedSize(long expectedSize) {
+            this.expectedSize = expectedSize;
+        }
+
+        public long getExpectedModifiedMillis() {
+            return expectedModifiedMillis;
+        }
+
+        public void setExpectedModifiedMillis(long expectedModifiedMillis) {
+            this.expectedModifiedMillis = expectedModifiedMillis;
+        }
+
+        /** True when both describe runs of identical program, input, expected output and variables. */
+        public boolean sameIngredients(CaseState other) {
+            return other != null && Objects.equals(programHash, other.programHash) && Objects.equals(inputHash, other.inputHash)
+                    && Objects.equals(expectedHash, other.expectedHash) && Objects.equals(variablesHash, other.variablesHash);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof CaseState that)) return false;
+            return passed == that.passed && sameIngredients(that) && inputSize == that.inputSize
+                    && inputModifiedMillis == that.inputModifiedMillis && expectedSize == that.expectedSize
+                    && expectedModifiedMillis == that.expectedModifiedMillis;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(programHash, inputHash, expectedHash, variablesHash, passed, inputSize, inputModifiedMillis,
+                    expectedSize, expectedModifiedMillis);
+        }
+    }
+}
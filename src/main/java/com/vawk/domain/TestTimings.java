@@ -0,0 +1,111 @@
+package com.vawk.domain;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Rolling history of how long each test case took and whether its latest run failed. The median
+ * of the recent durations is the case's expected duration; the test runner starts failing cases
+ * first and then the longest expected ones, so red shows up early and no long case starts last.
+ */
+public class TestTimings {
+    /** Durations remembered per case; older ones roll off. */
+    public static final int HISTORY = 5;
+
+    private Map<String, CaseTiming> cases = new LinkedHashMap<>();
+
+    public Map<String, CaseTiming> getCases() {
+        return cases;
+    }
+
+    public void setCases(Map<String, CaseTiming> cases) {
+        this.cases = cases != null ? new LinkedHashMap<>(cases) : new LinkedHashMap<>();
+    }
+
+    /**
+     * Adds one executed run to the history.
+     *
+     * @param name           test case name
+     * @param durationMillis how long the run took
+     * @param passed         whether it passed
+     */
+    public void record(String name, long durationMillis, boolean passed) {
+        cases.computeIfAbsent(name, key -> new CaseTiming()).record(durationMillis, passed);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof TestTimings that)) return false;
+        return Objects.equals(cases, that.cases);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(cases);
+    }
+
+    /** Recent durations and latest verdict of one case. */
+    public static class CaseTiming {
+        private List<Long> recentMillis = new ArrayList<>();
+        private boolean lastFailed;
+
+        public CaseTiming() {
+        }
+
+        /** Durations of the latest runs, oldest first, at most {@link #HISTORY}. */
+        public List<Long> getRecentMillis() {
+            return recentMillis;
+        }
+
+        public void setRecentMillis(List<Long> recentMillis) {
+            this.recentMillis = recentMillis != null ? new ArrayList<>(recentMillis) : new ArrayList<>();
+        }
+
+        public boolean isLastFailed() {
+            return lastFailed;
+        }
+
+        public void setLastFailed(boolean lastFailed) {
+            this.lastFailed = lastFailed;
+        }
+
+        void record(long durationMillis, boolean passed) {
+            recentMillis.add(durationMillis);
+            while (recentMillis.size() > HISTORY) {
+                recentMillis.remove(0);
+            }
+            lastFailed = !passed;
+        }
+
+        /**
+         * @return median of the recent durations, or -1 when there are none
+         */
+        @JsonIgnore
+        public long getExpectedMillis() {
+            if (recentMillis.isEmpty()) {
+                return -1;
+            }
+            List<Long> sorted = new ArrayList<>(recentMillis);
+            sorted.sort(null);
+            return sorted.get(sorted.size() / 2);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof CaseTiming that)) return false;
+            return lastFailed == that.lastFailed && Objects.equals(recentMillis, that.recentMillis);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(recentMillis, lastFailed);
+        }
+    }
+}
@@ -17,6 +17,8 @@ public class VawkSpec {
     private List<String> outputs = new ArrayList<>();
     private List<String> constraints = new ArrayList<>();
     private List<String> examples = new ArrayList<>();
+    private Boolean stateless;
+    private List<AggregateSpec> aggregates;
 
     public VawkSpec() {
     }
@@ -77,6 +79,30 @@ public class VawkSpec {
         this.examples = examples != null ? new ArrayList<>(examples) : new ArrayList<>();
     }
 
+    /**
+     * True when the program keeps no state across records (no END block, no running totals), which
+     * lets {@code vawk run --parallel} split its input. Null when the spec does not say.
+     */
+    public Boolean getStateless() {
+        return stateless;
+    }
+
+    public void setStateless(Boolean stateless) {
+        this.stateless = stateless;
+    }
+
+    /**
+     * Aggregate outputs the program computes, declared so they can be produced by parallel
+     * partial aggregation ({@code vawk run --aggregate}). Null when none are declared.
+     */
+    public List<AggregateSpec> getAggregates() {
+        return aggregates;
+    }
+
+    public void setAggregates(List<AggregateSpec> aggregates) {
+        this.aggregates = aggregates != null ? new ArrayList<>(aggregates) : null;
+    }
+
     /**
      * Specs are equal when all sections match.
      */
@@ -88,11 +114,13 @@ public class VawkSpec {
                 Objects.equals(inputs, vawkSpec.inputs) &&
                 Objects.equals(outputs, vawkSpec.outputs) &&
                 Objects.equals(constraints, vawkSpec.constraints) &&
-                Objects.equals(examples, vawkSpec.examples);
+                Objects.equals(examples, vawkSpec.examples) &&
+                Objects.equals(stateless, vawkSpec.stateless) &&
+                Objects.equals(aggregates, vawkSpec.aggregates);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(description, inputs, outputs, constraints, examples);
+        return Objects.hash(description, inputs, outputs, constraints, examples, stateless, aggregates);
     }
 }
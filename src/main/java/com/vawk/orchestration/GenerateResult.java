@@ -11,14 +11,23 @@ public class GenerateResult {
     private final VawkSpec spec;
     private final AwkProgram program;
     private final SessionLog sessionLog;
+    private final String cachedFrom;
 
     /**
      * Creates a result wrapper for downstream use (promotion, reporting).
      */
     public GenerateResult(VawkSpec spec, AwkProgram program, SessionLog sessionLog) {
+        this(spec, program, sessionLog, null);
+    }
+
+    /**
+     * @param cachedFrom description of the verified generation that was reused, or null
+     */
+    public GenerateResult(VawkSpec spec, AwkProgram program, SessionLog sessionLog, String cachedFrom) {
         this.spec = spec;
         this.program = program;
         this.sessionLog = sessionLog;
+        this.cachedFrom = cachedFrom;
     }
 
     /**
@@ -41,4 +50,11 @@ public class GenerateResult {
     public SessionLog getSessionLog() {
         return sessionLog;
     }
+
+    /**
+     * @return description of the cached generation that was reused, or null when the model was called
+     */
+    public String getCachedFrom() {
+        return cachedFrom;
+    }
 }
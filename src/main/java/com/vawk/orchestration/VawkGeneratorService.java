@@ -6,13 +6,16 @@ import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 import com.vawk.ai.AiResponse;
 import com.vawk.ai.VawkAgents;
 import com.vawk.domain.AwkProgram;
+import com.vawk.domain.GenerationCache;
 import com.vawk.domain.GenerationMode;
 import com.vawk.domain.SessionLog;
 import com.vawk.domain.VawkSpec;
 import com.vawk.orchestration.VawkSpecBuilder;
 import com.vawk.runtime.AwkTestRunner;
 import com.vawk.store.AgentsFileRepository;
+import com.vawk.store.GenerationCacheRepository;
 import com.vawk.store.ProgramRepository;
+import com.vawk.store.RagContextPacker;
 import com.vawk.store.RagRepository;
 import com.vawk.store.SessionLogRepository;
 import com.vawk.store.SpecRepository;
@@ -20,6 +23,7 @@ import com.vawk.store.TestRepository;
 import com.vawk.util.Hashing;
 import com.vawk.util.SectionParser;
 import com.vawk.util.SectionValidator;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.beans.factory.annotation.Value;
 
@@ -27,16 +31,24 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.function.Predicate;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 
 /**
  * Orchestrates the end-to-end generation flow: build spec (with RAG/context), generate plan and AWK
  * code, validate structured output, write program/spec/session log, and optionally auto-test.
+ * Auto-tested generations whose tests all pass are recorded in the generation cache. A later
+ * request with the same terms reuses that spec and program without calling the model, and one that
+ * is only similar does so when the caller confirms it; either way the cached program must pass this
+ * workspace's tests before it replaces main.awk, and a fresh generation skips the cache.
  */
 @Service
 public class VawkGeneratorService {
+    private static final int DEFAULT_RAG_TOKEN_BUDGET = 1000;
     private final VawkAgents vawkAgents;
     private final SpecRepository specRepository;
     private final ProgramRepository programRepository;
@@ -48,6 +60,8 @@ public class VawkGeneratorService {
     private final RagRepository ragRepository;
     private final AwkTestRunner awkTestRunner;
     private final TestRepository testRepository;
+    private final int ragTokenBudget;
+    private final GenerationCacheRepository generationCache;
 
     /**
      * Constructs the generator service with all required repositories, agents, and runners.
@@ -61,7 +75,45 @@ public class VawkGeneratorService {
                                 RagRepository ragRepository,
                                 AwkTestRunner awkTestRunner,
                                 TestRepository testRepository,
-                                @Value("${vawk.ai.model:local-stub}") String modelName) {
+                                String modelName) {
+        this(vawkAgents, specRepository, programRepository, sessionLogRepository, agentsFileRepository, specBuilder,
+                ragRepository, awkTestRunner, testRepository, modelName, DEFAULT_RAG_TOKEN_BUDGET);
+    }
+
+    /**
+     * @param ragTokenBudget most tokens the RAG passages may take in the prompt
+     */
+    public VawkGeneratorService(VawkAgents vawkAgents,
+                                SpecRepository specRepository,
+                                ProgramRepository programRepository,
+                                SessionLogRepository sessionLogRepository,
+                                AgentsFileRepository agentsFileRepository,
+                                VawkSpecBuilder specBuilder,
+                                RagRepository ragRepository,
+                                AwkTestRunner awkTestRunner,
+                                TestRepository testRepository,
+                                String modelName,
+                                int ragTokenBudget) {
+        this(vawkAgents, specRepository, programRepository, sessionLogRepository, agentsFileRepository, specBuilder,
+                ragRepository, awkTestRunner, testRepository, null, modelName, ragTokenBudget);
+    }
+
+    /**
+     * @param generationCache verified generations to reuse; null disables reuse and recording
+     */
+    @Autowired
+    public VawkGeneratorService(VawkAgents vawkAgents,
+                                SpecRepository specRepository,
+                                ProgramRepository programRepository,
+                                SessionLogRepository sessionLogRepository,
+                                AgentsFileRepository agentsFileRepository,
+                                VawkSpecBuilder specBuilder,
+                                RagRepository ragRepository,
+                                AwkTestRunner awkTestRunner,
+                                TestRepository testRepository,
+                                GenerationCacheRepository generationCache,
+                                @Value("${vawk.ai.model:local-stub}") String modelName,
+                                @Value("${vawk.rag.token-budget.gen:1000}") int ragTokenBudget) {
         this.vawkAgents = vawkAgents;
         this.specRepository = specRepository;
         this.programRepository = programRepository;
@@ -72,6 +124,8 @@ public class VawkGeneratorService {
         this.ragRepository = ragRepository;
         this.awkTestRunner = awkTestRunner;
         this.testRepository = testRepository;
+        this.ragTokenBudget = ragTokenBudget;
+        this.generationCache = generationCache;
     }
 
     /**
@@ -81,6 +135,36 @@ public class VawkGeneratorService {
         return generate(description, mode, null, false, "tests");
     }
 
+    /**
+     * Full generation pipeline with optional model override and auto-test, reusing a cached
+     * verified generation when one matches.
+     *
+     * @param description   natural language task
+     * @param mode          generation mode
+     * @param modelOverride optional model name to record
+     * @param autoTest      whether to run tests after generation
+     * @return result containing spec, program, and session log
+     */
+    public GenerateResult generate(String description, GenerationMode mode, String modelOverride, boolean autoTest, String testsDir) throws IOException {
+        return generate(description, mode, modelOverride, autoTest, testsDir, false);
+    }
+
+    /**
+     * Full generation pipeline with optional model override and auto-test, reusing only a cached
+     * verified generation for the same terms.
+     *
+     * @param description   natural language task
+     * @param mode          generation mode
+     * @param modelOverride optional model name to record
+     * @param autoTest      whether to run tests after generation
+     * @param fresh         whether to call the model even when a cached verified generation matches
+     * @return result containing spec, program, and session log
+     */
+    public GenerateResult generate(String description, GenerationMode mode, String modelOverride, boolean autoTest, String testsDir,
+                                   boolean fresh) throws IOException {
+        return generate(description, mode, modelOverride, autoTest, testsDir, fresh, match -> false);
+    }
+
     /**
      * Full generation pipeline with optional model override and auto-test.
      *
@@ -88,11 +172,23 @@ public class VawkGeneratorService {
      * @param mode          generation mode
      * @param modelOverride optional model name to record
      * @param autoTest      whether to run tests after generation
+     * @param fresh         whether to call the model even when a cached verified generation matches
+     * @param confirmReuse  asked whether a cached generation for a similar, not identical, request may be reused
      * @return result containing spec, program, and session log
      */
     // Pattern: Orchestration + Verification + Learning
     // - Builds spec with RAG, generates PLAN/CODE/TESTS/NOTES, validates structure, and logs receipts.
-    public GenerateResult generate(String description, GenerationMode mode, String modelOverride, boolean autoTest, String testsDir) throws IOException {
+    public GenerateResult generate(String description, GenerationMode mode, String modelOverride, boolean autoTest, String testsDir,
+                                   boolean fresh, Predicate<GenerationCacheRepository.Match> confirmReuse) throws IOException {
+        if (!fresh && generationCache != null) {
+            Optional<GenerationCacheRepository.Match> match = generationCache.findVerified(description);
+            if (match.isPresent() && (match.get().exact() || confirmReuse.test(match.get()))) {
+                Optional<GenerateResult> reused = reuse(match.get(), mode, testsDir);
+                if (reused.isPresent()) {
+                    return reused.get();
+                }
+            }
+        }
         Optional<String> agentsMd = agentsFileRepository.read();
         String ragContext = buildRagContext(description);
         VawkSpec spec = specBuilder.build(description, agentsMd, ragContext);
@@ -129,10 +225,78 @@ public class VawkGeneratorService {
             sessionLog.setTestsRun(testRuns);
         }
         sessionLogRepository.write(sessionLog);
+        remember(description, spec, sessionLog);
 
         return new GenerateResult(spec, program, sessionLog);
     }
 
+    /**
+     * Runs this workspace's tests against a cached generation's program and, when they all pass,
+     * writes its spec and program as if just generated, logging where they came from.
+     *
+     * @return the result, or empty when there are no tests or one fails, so the model is called
+     */
+    // Pattern: Verification + Learning
+    // - Answers a repeated request in milliseconds with a program that passes the tests here and now.
+    private Optional<GenerateResult> reuse(GenerationCacheRepository.Match match, GenerationMode mode, String testsDir) throws IOException {
+        GenerationCache.Entry entry = match.entry();
+        Path candidate = Files.createTempFile("vawk-cached-", ".awk");
+        List<SessionLog.TestRun> testRuns;
+        try {
+            programRepository.write(candidate, entry.getCode());
+            testRuns = runAutoTests(programRepository.read(candidate), testsDir);
+        } finally {
+            Files.deleteIfExists(candidate);
+        }
+        if (testRuns.isEmpty() || !testRuns.stream().allMatch(SessionLog.TestRun::isPassed)) {
+            return Optional.empty();
+        }
+        VawkSpec spec = entry.getSpec() != null ? entry.getSpec() : new VawkSpec();
+        specRepository.write(spec);
+        programRepository.write(entry.getCode());
+        AwkProgram program = programRepository.read();
+
+        SessionLog sessionLog = new SessionLog();
+        sessionLog.setCommand("GEN");
+        sessionLog.setMode(mode);
+        sessionLog.setTimestamp(Instant.now());
+        sessionLog.setModel(entry.getModel());
+        sessionLog.setPlanText(entry.getPlanText());
+        sessionLog.setCode(entry.getCode());
+        sessionLog.setTestsText(entry.getTestsText());
+        sessionLog.setNotes(String.format(Locale.ROOT, "Reused the verified generation for \"%s\" (similarity %.2f); run gen --fresh to call the model.\n%s",
+                entry.getDescription(), match.similarity(), entry.getNotes() == null ? "" : entry.getNotes()));
+        sessionLog.setProgramHash(program.getHash());
+        sessionLog.setSpecHash(hashSpec(spec));
+        sessionLog.setTestsRequested(SectionParser.parseTestsList(entry.getTestsText()));
+        sessionLog.setTestsRun(testRuns);
+        sessionLogRepository.write(sessionLog);
+
+        return Optional.of(new GenerateResult(spec, program, sessionLog, entry.getDescription()));
+    }
+
+    /** Records a generation whose auto-tests all passed in the generation cache. */
+    private void remember(String description, VawkSpec spec, SessionLog sessionLog) {
+        if (generationCache == null) {
+            return;
+        }
+        GenerationCache.Entry entry = new GenerationCache.Entry();
+        entry.setDescription(description);
+        entry.setCreatedAt(sessionLog.getTimestamp());
+        entry.setModel(sessionLog.getModel());
+        entry.setSpec(spec);
+        entry.setCode(sessionLog.getCode());
+        entry.setPlanText(sessionLog.getPlanText());
+        entry.setTestsText(sessionLog.getTestsText());
+        entry.setNotes(sessionLog.getNotes());
+        entry.setTestsRun(sessionLog.getTestsRun());
+        try {
+            generationCache.record(entry);
+        } catch (IOException e) {
+            // The generation itself succeeded; it is just not offered again.
+        }
+    }
+
     private String hashSpec(VawkSpec spec) throws JsonProcessingException {
         byte[] bytes = yamlMapper.writeValueAsBytes(spec);
         String yaml = new String(bytes, StandardCharsets.UTF_8);
@@ -169,30 +333,15 @@ public class VawkGeneratorService {
     }
 
     // Pattern: Grounding
-    // - Selects small, relevant doc snippets to anchor spec generation.
+    // - Selects small, relevant doc passages to anchor spec generation.
     private String buildRagContext(String query) {
         if (ragRepository == null) {
             return "";
         }
         try {
-            List<RagRepository.RagEntry> relevant = ragRepository.findRelevant(query, 3);
-            return relevant.stream()
-                    .map(entry -> formatRagEntry(entry))
-                    .collect(Collectors.joining("\n\n"));
+            return RagContextPacker.render(ragRepository.findPassages(query, RagContextPacker.CANDIDATES), ragTokenBudget);
         } catch (IOException e) {
             return "";
         }
     }
-
-    private String formatRagEntry(RagRepository.RagEntry entry) {
-        try {
-            String content = ragRepository.readContent(entry);
-            if (content.length() > 2000) {
-                content = content.substring(0, 2000);
-            }
-            return "## RAG: %s (%s)\n%s".formatted(entry.id, entry.path, content);
-        } catch (IOException e) {
-            return "## RAG: %s (%s)\n<unavailable>".formatted(entry.id, entry.path);
-        }
-    }
 }
@@ -12,6 +12,7 @@ import com.vawk.domain.VawkSpec;
 import com.vawk.runtime.AwkTestRunner;
 import com.vawk.store.AgentsFileRepository;
 import com.vawk.store.ProgramRepository;
+import com.vawk.store.RagContextPacker;
 import com.vawk.store.RagRepository;
 import com.vawk.store.SessionLogRepository;
 import com.vawk.store.SpecRepository;
@@ -19,6 +20,7 @@ import com.vawk.store.TestRepository;
 import com.vawk.util.Hashing;
 import com.vawk.util.SectionParser;
 import com.vawk.util.SectionValidator;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.beans.factory.annotation.Value;
 
@@ -34,6 +36,7 @@ import java.util.Optional;
  */
 @Service
 public class VawkRefinementService {
+    private static final int DEFAULT_RAG_TOKEN_BUDGET = 1000;
     private final VawkAgents vawkAgents;
     private final SpecRepository specRepository;
     private final ProgramRepository programRepository;
@@ -45,6 +48,7 @@ public class VawkRefinementService {
     private final AwkTestRunner awkTestRunner;
     private final TestRepository testRepository;
     private final String modelName;
+    private final int ragTokenBudget;
 
     /**
      * Constructs the refinement service with repositories, agents, and runners.
@@ -58,7 +62,26 @@ public class VawkRefinementService {
                                  RagRepository ragRepository,
                                  AwkTestRunner awkTestRunner,
                                  TestRepository testRepository,
-                                 @Value("${vawk.ai.model:local-stub}") String modelName) {
+                                 String modelName) {
+        this(vawkAgents, specRepository, programRepository, sessionLogRepository, agentsFileRepository, specBuilder,
+                ragRepository, awkTestRunner, testRepository, modelName, DEFAULT_RAG_TOKEN_BUDGET);
+    }
+
+    /**
+     * @param ragTokenBudget most tokens the RAG passages may take in the prompt
+     */
+    @Autowired
+    public VawkRefinementService(VawkAgents vawkAgents,
+                                 SpecRepository specRepository,
+                                 ProgramRepository programRepository,
+                                 SessionLogRepository sessionLogRepository,
+                                 AgentsFileRepository agentsFileRepository,
+                                 VawkSpecBuilder specBuilder,
+                                 RagRepository ragRepository,
+                                 AwkTestRunner awkTestRunner,
+                                 TestRepository testRepository,
+                                 @Value("${vawk.ai.model:local-stub}") String modelName,
+                                 @Value("${vawk.rag.token-budget.refine:1000}") int ragTokenBudget) {
         this.vawkAgents = vawkAgents;
         this.specRepository = specRepository;
         this.programRepository = programRepository;
@@ -69,6 +92,7 @@ public class VawkRefinementService {
         this.awkTestRunner = awkTestRunner;
         this.testRepository = testRepository;
         this.modelName = modelName;
+        this.ragTokenBudget = ragTokenBudget;
     }
 
     /**
@@ -157,17 +181,7 @@ public class VawkRefinementService {
             return "";
         }
         try {
-            List<RagRepository.RagEntry> relevant = ragRepository.findRelevant(query, 3);
-            StringBuilder contextBuilder = new StringBuilder();
-            for (RagRepository.RagEntry entry : relevant) {
-                try {
-                    String content = ragRepository.readContent(entry);
-                    if (content.length() > 2000) content = content.substring(0, 2000);
-                    contextBuilder.append("## RAG: ").append(entry.id).append(" (").append(entry.path).append(")\n").append(content).append("\n\n");
-                } catch (IOException ignored) {
-                }
-            }
-            return contextBuilder.toString().trim();
+            return RagContextPacker.render(ragRepository.findPassages(query, RagContextPacker.CANDIDATES), ragTokenBudget);
         } catch (IOException e) {
             return "";
         }
@@ -0,0 +1,304 @@
+package com.vawk.runtime;
+
+import com.vawk.domain.AggregateSpec;
+import com.vawk.domain.AwkProgram;
+import com.vawk.runtime.awk.AwkScript;
+import com.vawk.runtime.awk.AwkSyntaxException;
+import com.vawk.util.Hashing;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Computes the aggregates a spec declares (sum, count, min, max per key) as a scale-out job. A
+ * small map-side AWK program is generated from the declarations; it reduces its share of the
+ * input to one partial per aggregate and key, printed as tab-separated lines from END. Partials
+ * from every shard are merged here, in shard order, so keys come out in first-seen order exactly
+ * as a single pass would produce them. Every declared function combines associatively, which is
+ * what makes an END-heavy summary safe to split; a where condition reading NR, FNR, FILENAME or
+ * RS is not, since each shard counts from its own first record, so such declarations run in one
+ * pass. Results print as awk prints numbers: integers as integers, anything else with the
+ * default OFMT, %.6g.
+ */
+@Component
+public class AggregateRunner {
+    private static final Set<String> FUNCTIONS = Set.of("sum", "count", "min", "max");
+    private static final Pattern NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_.-]*");
+    /** Significant digits of awk's default OFMT, %.6g. */
+    private static final int OUTPUT_DIGITS = 6;
+    private static final MathContext OUTPUT_PRECISION = new MathContext(OUTPUT_DIGITS, RoundingMode.HALF_EVEN);
+
+    private final AwkRunner awkRunner;
+    private final ParallelAwkRunner parallelAwkRunner;
+
+    public AggregateRunner(AwkRunner awkRunner, ParallelAwkRunner parallelAwkRunner) {
+        this.awkRunner = awkRunner;
+        this.parallelAwkRunner = parallelAwkRunner;
+    }
+
+    /**
+     * Explains why the declarations cannot be computed.
+     *
+     * @param aggregates declared aggregates, possibly null
+     * @return the first problem found, or empty when they are valid
+     */
+    public Optional<String> rejectionReason(List<AggregateSpec> aggregates) {
+        return rejectionReason(aggregates, 1);
+    }
+
+    /**
+     * Explains why the declarations cannot be computed over the given number of shards.
+     *
+     * @param aggregates declared aggregates, possibly null
+     * @param shardCount shards the input would be split into
+     * @return the first problem found, or empty when they are valid
+     */
+    public Optional<String> rejectionReason(List<AggregateSpec> aggregates, int shardCount) {
+        if (aggregates == null || aggregates.isEmpty()) {
+            return Optional.of("spec.yaml declares no aggregates");
+        }
+        for (AggregateSpec aggregate : aggregates) {
+            String name = aggregate.getName();
+            if (name == null || !NAME.matcher(name).matches()) {
+                return Optional.of("aggregate name '" + name + "' must be a plain identifier");
+            }
+            if (aggregate.getFunction() == null || !FUNCTIONS.contains(aggregate.getFunction())) {
+                return Optional.of("aggregate " + name + " must use one of sum, count, min, max");
+            }
+            if (aggregate.getKeyFields().stream().anyMatch(field -> field == null || field < 1)) {
+                return Optional.of("aggregate " + name + " has a key field below 1");
+            }
+            boolean needsValue = !aggregate.getFunction().equals("count");
+            if (needsValue && (aggregate.getValueField() == null || aggregate.getValueField() < 1)) {
+                return Optional.of("aggregate " + name + " needs a valueField of at least 1");
+            }
+        }
+        if (shardCount > 1) {
+            Optional<String> variable = wholeInputVariable(partialProgram(aggregates));
+            if (variable.isPresent()) {
+                return Optional.of("a where condition reads " + variable.get() + ", which differs per shard");
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * @return the first variable among NR, FNR, FILENAME and RS the program reads; a program that
+     * cannot be analysed counts as reading the first of them
+     */
+    private static Optional<String> wholeInputVariable(String source) {
+        AwkScript script;
+        try {
+            script = AwkScript.parse(source);
+        } catch (AwkSyntaxException e) {
+            return Optional.of(ParallelAwkRunner.WHOLE_INPUT_VARIABLES.get(0));
+        }
+        return ParallelAwkRunner.WHOLE_INPUT_VARIABLES.stream().filter(script::usesVariable).findFirst();
+    }
+
+    /**
+     * Computes the aggregates over the request's input and writes one {@code name=value} or
+     * {@code name[key]=value} line per result. Multi-field keys are joined with commas.
+     *
+     * @param request    input file or standard input plus -v variables (for example FS); the
+     *                   program is replaced by the generated partial aggregation
+     * @param aggregates validated declarations
+     * @param shardCount number of shards to run concurrently; 1, no input file, or a where
+     *                   condition reading whole-input variables runs one pass
+     * @param stdoutSink destination for the merged results
+     * @param stderrSink destination for awk diagnostics
+     * @return exit code of the partial runs; results are only written when it is 0
+     */
+    // Pattern: Orchestration
+    // - Map in AWK, reduce in Java: users declare what to aggregate, never how to merge it.
+    public int stream(AwkRunRequest request, List<AggregateSpec> aggregates, int shardCount, Writer stdoutSink, Writer stderrSink)
+            throws IOException, InterruptedException {
+        String source = partialProgram(aggregates);
+        Path programPath = Files.createTempFile("vawk-aggregate", ".awk");
+        try {
+            Files.writeString(programPath, source, StandardCharsets.UTF_8);
+            AwkRunRequest partialRequest = new AwkRunRequest(new AwkProgram(programPath, source, Hashing.sha256(source)),
+                    request.getInputFile(), request.getVariables());
+            partialRequest.setStandardInput(request.getStandardInput());
+            PartialMerger merger = new PartialMerger(aggregates);
+            boolean sharded = request.getInputFile() != null && shardCount > 1 && wholeInputVariable(source).isEmpty();
+            int exit = sharded
+                    ? parallelAwkRunner.stream(partialRequest, shardCount, merger, stderrSink)
+                    : awkRunner.stream(partialRequest, merger, stderrSink);
+            merger.close();
+            if (exit == 0) {
+                merger.writeResults(stdoutSink);
+                stdoutSink.flush();
+            }
+            return exit;
+        } finally {
+            Files.deleteIfExists(programPath);
+        }
+    }
+
+    /** Generates the map-side program: one rule per aggregate, partials printed in first-seen key order. */
+    static String partialProgram(List<AggregateSpec> aggregates) {
+        StringBuilder program = new StringBuilder("# Partial aggregation generated by vawk from spec.yaml aggregates.\n");
+        StringBuilder end = new StringBuilder("END {\n");
+        for (int index = 0; index < aggregates.size(); index++) {
+            AggregateSpec aggregate = aggregates.get(index);
+            String values = "a" + index;
+            String order = "o" + index;
+            String count = "n" + index;
+            String value = aggregate.getValueField() == null ? "0" : "($" + aggregate.getValueField() + " + 0)";
+            String where = aggregate.getWhere();
+            program.append(where == null || where.isBlank() ? "" : "(" + where + ") ").append("{\n");
+            program.append("    k = ").append(keyExpression(aggregate.getKeyFields())).append("\n");
+            program.append("    if (!(k in ").append(values).append(")) { ").append(order).append("[++").append(count).append("] = k; ")
+                    .append(values).append("[k] = ").append(aggregate.getFunction().equals("min") || aggregate.getFunction().equals("max") ? value : "0")
+                    .append(" }\n");
+            switch (aggregate.getFunction()) {
+                case "sum":
+                    program.append("    ").append(values).append("[k] += ").append(value).append("\n");
+                    break;
+                case "count":
+                    program.append("    ").append(values).append("[k]++\n");
+                    break;
+                default:
+                    String comparison = aggregate.getFunction().equals("min") ? " < " : " > ";
+                    program.append("    if (").append(value).append(comparison).append(values).append("[k]) ")
+                            .append(values).append("[k] = ").append(value).append("\n");
+                    break;
+            }
+            program.append("}\n");
+            end.append("    for (i = 1; i <= ").append(count).append("; i++) printf \"").append(index)
+                    .append("\\t%s\\t%.17g\\n\", ").append(order).append("[i], ").append(values).append("[").append(order).append("[i]]\n");
+        }
+        return program.append(end).append("}\n").toString();
+    }
+
+    private static String keyExpression(List<Integer> keyFields) {
+        if (keyFields.isEmpty()) {
+            return "\"\"";
+        }
+        List<String> parts = new ArrayList<>();
+        for (Integer field : keyFields) {
+            parts.add("$" + field);
+        }
+        return String.join(" \"\\t\" ", parts) + (parts.size() == 1 ? " \"\"" : "");
+    }
+
+    /**
+     * Formats a result as awk's print does: integral values as integers, others as C's %.6g, which
+     * switches to exponent notation below 1e-4 or from 1e6 on and drops trailing zeros.
+     */
+    static String format(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e16) {
+            return Long.toString((long) value);
+        }
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return Double.isNaN(value) ? "nan" : value > 0 ? "inf" : "-inf";
+        }
+        BigDecimal rounded = new BigDecimal(value).round(OUTPUT_PRECISION);
+        int exponent = rounded.precision() - rounded.scale() - 1;
+        if (exponent >= -4 && exponent < OUTPUT_DIGITS) {
+            return rounded.stripTrailingZeros().toPlainString();
+        }
+        String mantissa = rounded.movePointLeft(exponent).stripTrailingZeros().toPlainString();
+        return mantissa + (exponent < 0 ? "e-" : "e+") + (Math.abs(exponent) < 10 ? "0" : "") + Math.abs(exponent);
+    }
+
+    /**
+     * Receives partial lines as the shards' output streams through and folds them into one
+     * result map per aggregate. Only the merged results are held in memory.
+     */
+    private static final class PartialMerger extends Writer {
+        private final List<AggregateSpec> aggregates;
+        private final List<Map<String, Double>> results = new ArrayList<>();
+        private final StringBuilder line = new StringBuilder();
+
+        PartialMerger(List<AggregateSpec> aggregates) {
+            this.aggregates = aggregates;
+            for (int index = 0; index < aggregates.size(); index++) {
+                results.add(new LinkedHashMap<>());
+            }
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int length) throws IOException {
+            for (int index = offset; index < offset + length; index++) {
+                if (buffer[index] == '\n') {
+                    accept();
+                } else {
+                    line.append(buffer[index]);
+                }
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (line.length() > 0) {
+                accept();
+            }
+        }
+
+        private void accept() throws IOException {
+            String text = line.toString();
+            line.setLength(0);
+            int first = text.indexOf('\t');
+            int last = text.lastIndexOf('\t');
+            if (first < 0 || first == last) {
+                throw new IOException("Malformed partial aggregate line: " + text);
+            }
+            // Keys may contain tabs (joined or empty fields); the index and value never do.
+            int index = Integer.parseInt(text.substring(0, first));
+            double value = parse(text.substring(last + 1));
+            String function = aggregates.get(index).getFunction();
+            results.get(index).merge(text.substring(first + 1, last), value, (left, right) -> switch (function) {
+                case "min" -> Math.min(left, right);
+                case "max" -> Math.max(left, right);
+                default -> left + right;
+            });
+        }
+
+        private static double parse(String text) {
+            String number = text.trim().toLowerCase(Locale.ROOT);
+            if (number.endsWith("inf") || number.endsWith("infinity")) {
+                return number.startsWith("-") ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+            }
+            if (number.endsWith("nan")) {
+                return Double.NaN;
+            }
+            return Double.parseDouble(number);
+        }
+
+        void writeResults(Writer out) throws IOException {
+            for (int index = 0; index < aggregates.size(); index++) {
+                AggregateSpec aggregate = aggregates.get(index);
+                String name = aggregate.getName();
+                if (results.get(index).isEmpty() && aggregate.getKeyFields().isEmpty() && !aggregate.getFunction().equals("min")
+                        && !aggregate.getFunction().equals("max")) {
+                    out.write(name + "=0\n");
+                }
+                for (Map.Entry<String, Double> result : results.get(index).entrySet()) {
+                    String key = aggregate.getKeyFields().isEmpty() ? "" : "[" + result.getKey().replace('\t', ',') + "]";
+                    out.write(name + key + "=" + format(result.getValue()) + "\n");
+                }
+            }
+        }
+    }
+}
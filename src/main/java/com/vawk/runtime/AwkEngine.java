@@ -0,0 +1,22 @@
+package com.vawk.runtime;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A way of executing an AWK program. {@link AwkRunner} picks an engine per request: the process
+ * engine shells out to the system awk and is the reference behaviour, the interpreted engine runs
+ * the program inside the JVM and avoids a fork/exec per run.
+ */
+public interface AwkEngine {
+
+    /**
+     * Runs the program in the request and streams its output into the sinks as it is produced.
+     *
+     * @param request    run parameters including program path, variables, and input file
+     * @param stdoutSink destination for the program's standard output
+     * @param stderrSink destination for the program's standard error
+     * @return exit status, as awk would report it
+     */
+    int stream(AwkRunRequest request, Writer stdoutSink, Writer stderrSink) throws IOException, InterruptedException;
+}
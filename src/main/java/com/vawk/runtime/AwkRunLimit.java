@@ -0,0 +1,14 @@
+package com.vawk.runtime;
+
+/**
+ * A resource limit a supervised run can hit. Recorded on {@link AwkRunResult} so callers can tell
+ * a runaway program apart from one that merely failed.
+ */
+public enum AwkRunLimit {
+    /** The run took longer than its wall-clock budget. */
+    WALL_CLOCK,
+    /** The run wrote more bytes to stdout and stderr together than allowed. */
+    OUTPUT_BYTES,
+    /** The run used more CPU time than allowed. */
+    CPU_TIME
+}
@@ -0,0 +1,25 @@
+package com.vawk.runtime;
+
+import java.io.IOException;
+
+/**
+ * Thrown by a supervised run that was stopped because it hit one of its {@link AwkRunLimits}. By
+ * the time it is thrown the awk process tree has been killed, or the in-JVM run cancelled.
+ */
+public class AwkRunLimitExceededException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    /** Exit status reported for a stopped run, as a shell reports a process killed by SIGKILL. */
+    public static final int EXIT_STATUS = 137;
+
+    private final AwkRunLimit limit;
+
+    public AwkRunLimitExceededException(AwkRunLimit limit, AwkRunLimits limits) {
+        super("awk run stopped: " + limits.describe(limit) + " exceeded");
+        this.limit = limit;
+    }
+
+    public AwkRunLimit getLimit() {
+        return limit;
+    }
+}
@@ -0,0 +1,74 @@
+package com.vawk.runtime;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Resource limits for a supervised AWK run: wall-clock time, bytes written to stdout and stderr
+ * together, and CPU time. A zero value disables that limit. The process engine enforces the CPU
+ * limit with an rlimit on the awk process; in-JVM engines measure the CPU time of the thread that
+ * runs the program.
+ */
+public final class AwkRunLimits {
+    /** No limits: the run behaves exactly like plain awk. */
+    public static final AwkRunLimits NONE = new AwkRunLimits(Duration.ZERO, 0, 0);
+
+    private final Duration wallClock;
+    private final long maxOutputBytes;
+    private final long cpuSeconds;
+
+    /**
+     * @param wallClock      longest the run may take, or zero/null for no limit
+     * @param maxOutputBytes most bytes the run may write, or zero for no limit
+     * @param cpuSeconds     most CPU seconds the run may use, or zero for no limit
+     */
+    public AwkRunLimits(Duration wallClock, long maxOutputBytes, long cpuSeconds) {
+        if (maxOutputBytes < 0 || cpuSeconds < 0 || (wallClock != null && wallClock.isNegative())) {
+            throw new IllegalArgumentException("Run limits must not be negative");
+        }
+        this.wallClock = wallClock == null ? Duration.ZERO : wallClock;
+        this.maxOutputBytes = maxOutputBytes;
+        this.cpuSeconds = cpuSeconds;
+    }
+
+    public Duration getWallClock() {
+        return wallClock;
+    }
+
+    public long getMaxOutputBytes() {
+        return maxOutputBytes;
+    }
+
+    public long getCpuSeconds() {
+        return cpuSeconds;
+    }
+
+    public boolean isUnlimited() {
+        return wallClock.isZero() && maxOutputBytes == 0 && cpuSeconds == 0;
+    }
+
+    /** Human-readable statement of the given limit, e.g. "wall-clock limit of 30s". */
+    public String describe(AwkRunLimit limit) {
+        switch (limit) {
+            case WALL_CLOCK:
+                long millis = wallClock.toMillis();
+                return "wall-clock limit of " + (millis % 1000 == 0 ? millis / 1000 + "s" : millis + "ms");
+            case OUTPUT_BYTES:
+                return "output limit of " + maxOutputBytes + " bytes";
+            default:
+                return "CPU limit of " + cpuSeconds + "s";
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof AwkRunLimits that)) return false;
+        return maxOutputBytes == that.maxOutputBytes && cpuSeconds == that.cpuSeconds && wallClock.equals(that.wallClock);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(wallClock, maxOutputBytes, cpuSeconds);
+    }
+}
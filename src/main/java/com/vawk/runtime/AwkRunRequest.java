@@ -2,20 +2,29 @@ package com.vawk.runtime;
 
 import com.vawk.domain.AwkProgram;
 
+import java.io.InputStream;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 
 /**
- * Request parameters for running an AWK program: program path/content, optional input file, and
- * -v variables.
+ * Request parameters for running an AWK program: program path/content, optional input file, -v
+ * variables, an optional standard input source used when no input file is given, and the resource
+ * limits the run is supervised with, and whether a cached result may stand in for the run. Further
+ * input files may follow the first; awk reads them in order in the same process.
  */
 public class AwkRunRequest {
     private AwkProgram program;
     private Path inputFile;
+    private List<Path> additionalInputFiles = new ArrayList<>();
     private Map<String, String> variables = new HashMap<>();
+    private InputStream standardInput;
+    private AwkRunLimits limits = AwkRunLimits.NONE;
+    private boolean cacheable = true;
 
     public AwkRunRequest() {
     }
@@ -44,6 +53,33 @@ public class AwkRunRequest {
         this.inputFile = inputFile;
     }
 
+    /**
+     * @return input files read after the input file, in order; empty for a single-input run
+     */
+    public List<Path> getAdditionalInputFiles() {
+        return Collections.unmodifiableList(additionalInputFiles);
+    }
+
+    public void setAdditionalInputFiles(List<Path> additionalInputFiles) {
+        this.additionalInputFiles.clear();
+        if (additionalInputFiles != null) {
+            this.additionalInputFiles.addAll(additionalInputFiles);
+        }
+    }
+
+    /**
+     * @return the input file followed by the additional input files: the operands awk reads, or an
+     * empty list when it reads standard input
+     */
+    public List<Path> getInputFiles() {
+        List<Path> inputFiles = new ArrayList<>();
+        if (inputFile != null) {
+            inputFiles.add(inputFile);
+        }
+        inputFiles.addAll(additionalInputFiles);
+        return inputFiles;
+    }
+
     public Map<String, String> getVariables() {
         return Collections.unmodifiableMap(variables);
     }
@@ -55,15 +91,54 @@ public class AwkRunRequest {
         }
     }
 
+    /**
+     * @return stream forwarded to awk's standard input when no input file is set, or null to give
+     * awk an empty standard input
+     */
+    public InputStream getStandardInput() {
+        return standardInput;
+    }
+
+    public void setStandardInput(InputStream standardInput) {
+        this.standardInput = standardInput;
+    }
+
+    /**
+     * @return limits the run is stopped at; {@link AwkRunLimits#NONE} runs unsupervised
+     */
+    public AwkRunLimits getLimits() {
+        return limits;
+    }
+
+    public void setLimits(AwkRunLimits limits) {
+        this.limits = limits != null ? limits : AwkRunLimits.NONE;
+    }
+
+    /**
+     * @return false when the run must really execute, even if an identical run is cached
+     */
+    public boolean isCacheable() {
+        return cacheable;
+    }
+
+    public void setCacheable(boolean cacheable) {
+        this.cacheable = cacheable;
+    }
+
+    /**
+     * Requests are equal when program, input files, and variables match; the standard input source,
+     * the limits and cacheability are execution details and do not take part in equality.
+     */
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (!(o instanceof AwkRunRequest that)) return false;
-        return Objects.equals(program, that.program) && Objects.equals(inputFile, that.inputFile) && Objects.equals(variables, that.variables);
+        return Objects.equals(program, that.program) && Objects.equals(inputFile, that.inputFile)
+                && Objects.equals(additionalInputFiles, that.additionalInputFiles) && Objects.equals(variables, that.variables);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(program, inputFile, variables);
+        return Objects.hash(program, inputFile, additionalInputFiles, variables);
     }
 }
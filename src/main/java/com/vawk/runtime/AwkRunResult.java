@@ -1,22 +1,41 @@
 package com.vawk.runtime;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Objects;
+import java.util.stream.Stream;
 
 /**
- * Captures the result of running an AWK script: exit code, stdout, and stderr.
+ * Captures the result of running an AWK script: exit code, stdout, and stderr, plus the limit that
+ * stopped a supervised run (the output is then whatever the run wrote before it was stopped).
+ * Output is held as {@link SpooledOutput}, so large outputs live in a spool file under .vawk/
+ * rather than on the heap; read them through the stream and line accessors, and close the result
+ * to remove the spool files.
  */
-public class AwkRunResult {
+public class AwkRunResult implements AutoCloseable {
     private int exitCode;
-    private String stdout;
-    private String stderr;
+    private SpooledOutput stdout;
+    private SpooledOutput stderr;
+    private AwkRunLimit limitExceeded;
+    private Long cpuMillis;
+    private boolean cached;
 
     public AwkRunResult() {
     }
 
     public AwkRunResult(int exitCode, String stdout, String stderr) {
         this.exitCode = exitCode;
-        this.stdout = stdout;
-        this.stderr = stderr;
+        setStdout(stdout);
+        setStderr(stderr);
+    }
+
+    /** Wraps captured output that may have been spooled to disk; the result takes ownership of it. */
+    public static AwkRunResult spooled(int exitCode, SpooledOutput stdout, SpooledOutput stderr) {
+        AwkRunResult result = new AwkRunResult();
+        result.exitCode = exitCode;
+        result.stdout = stdout;
+        result.stderr = stderr;
+        return result;
     }
 
     public int getExitCode() {
@@ -27,35 +46,116 @@ public class AwkRunResult {
         this.exitCode = exitCode;
     }
 
+    /**
+     * @return the whole standard output; materializes spooled output, so prefer {@link #openStdout()}
+     * or {@link #stdoutLines()} when it may be large
+     */
     public String getStdout() {
-        return stdout;
+        return stdout == null ? null : stdout.toString();
     }
 
     public void setStdout(String stdout) {
-        this.stdout = stdout;
+        this.stdout = stdout == null ? null : SpooledOutput.of(stdout);
     }
 
+    /**
+     * @return the whole standard error; materializes spooled output like {@link #getStdout()}
+     */
     public String getStderr() {
-        return stderr;
+        return stderr == null ? null : stderr.toString();
     }
 
     public void setStderr(String stderr) {
-        this.stderr = stderr;
+        this.stderr = stderr == null ? null : SpooledOutput.of(stderr);
+    }
+
+    /** @return standard output as UTF-8 bytes, read lazily */
+    public InputStream openStdout() throws IOException {
+        return (stdout == null ? SpooledOutput.of("") : stdout).openStream();
+    }
+
+    /** @return standard output line by line, read lazily; close the stream when done */
+    public Stream<String> stdoutLines() throws IOException {
+        return (stdout == null ? SpooledOutput.of("") : stdout).lines();
+    }
+
+    /** @return standard error as UTF-8 bytes, read lazily */
+    public InputStream openStderr() throws IOException {
+        return (stderr == null ? SpooledOutput.of("") : stderr).openStream();
+    }
+
+    /** @return standard error line by line, read lazily; close the stream when done */
+    public Stream<String> stderrLines() throws IOException {
+        return (stderr == null ? SpooledOutput.of("") : stderr).lines();
+    }
+
+    /**
+     * @return the limit that stopped the run, or null when it ran to completion
+     */
+    public AwkRunLimit getLimitExceeded() {
+        return limitExceeded;
+    }
+
+    public void setLimitExceeded(AwkRunLimit limitExceeded) {
+        this.limitExceeded = limitExceeded;
+    }
+
+    /**
+     * @return CPU time the program used, or null when it was not measured (cached results, or a
+     * platform that does not report it); for the process engine this is sampled from the awk
+     * process and its children while they run, so the last few milliseconds may be missing and a
+     * run shorter than one sample reports 0
+     */
+    public Long getCpuMillis() {
+        return cpuMillis;
+    }
+
+    public void setCpuMillis(Long cpuMillis) {
+        this.cpuMillis = cpuMillis;
+    }
+
+    /**
+     * @return true when the result was restored from the run cache rather than produced by running
+     * the program, so how long it took to obtain says nothing about the program
+     */
+    public boolean isCached() {
+        return cached;
+    }
+
+    public void setCached(boolean cached) {
+        this.cached = cached;
+    }
+
+    /** @return size of the standard output in UTF-8 bytes */
+    public long getStdoutBytes() {
+        return stdout == null ? 0 : stdout.byteLength();
     }
 
     public boolean isSuccess() {
-        return exitCode == 0;
+        return exitCode == 0 && limitExceeded == null;
     }
 
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (!(o instanceof AwkRunResult that)) return false;
-        return exitCode == that.exitCode && Objects.equals(stdout, that.stdout) && Objects.equals(stderr, that.stderr);
+        return exitCode == that.exitCode && Objects.equals(getStdout(), that.getStdout()) && Objects.equals(getStderr(), that.getStderr())
+                && limitExceeded == that.limitExceeded;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(exitCode, stdout, stderr);
+        return Objects.hash(exitCode, getStdout(), getStderr(), limitExceeded);
+    }
+
+    /** Removes spool files behind the output; the output cannot be read afterwards. */
+    @Override
+    public void close() throws IOException {
+        if (stdout != null) {
+            stdout.delete();
+        }
+        if (stderr != null) {
+            stderr.delete();
+        }
     }
 }
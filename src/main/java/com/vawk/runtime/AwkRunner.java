@@ -1,54 +1,261 @@
 package com.vawk.runtime;
 
 import com.vawk.domain.AwkProgram;
+import com.vawk.runtime.awk.AwkScript;
+import com.vawk.runtime.awk.AwkSyntaxException;
+import com.vawk.util.Hashing;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.Optional;
 
 /**
- * Executes AWK programs with POSIX awk. Builds the command line with variables and input file,
- * runs the process, and captures stdout/stderr and exit code.
+ * Executes AWK programs and either captures stdout/stderr and exit code or streams both into
+ * caller-supplied sinks. The work is delegated to an {@link AwkEngine}: the process engine runs the
+ * system awk and is the reference, the interpreted engine runs in the JVM, and the compiled engine
+ * turns hot programs into JVM classes cached under .vawk/cache/compiled. The in-JVM engines differ
+ * from the system awk in a few details (for-in order, number output, NR after cmd | getline), so
+ * the process engine is the default and the others are opted into. In auto mode, programs the
+ * interpreter can parse run in-process when their input is a file no larger than the configured
+ * threshold, or when they read no input at all. Programs over larger files, and promoted jobs under
+ * vawk/jobs, run compiled when their script compiles; everything else (piped stdin, non-POSIX
+ * extensions, programs the compiler declines) goes to the system awk. Requests carrying {@link AwkRunLimits} are
+ * supervised: the process engine kills the awk process tree at a limit, in-JVM engines are
+ * cancelled on their worker thread. Captured output is kept in memory up to a threshold and spooled
+ * to .vawk/spool beyond it. Captured runs of repeatable programs are looked up in a content-addressed
+ * {@link RunCache} under .vawk/cache/runs first when the cache is enabled.
  */
 @Component
 public class AwkRunner {
+    private static final long DEFAULT_IN_PROCESS_MAX_INPUT_BYTES = 1L << 20;
+
+    /** Which engine a runner uses. */
+    public enum EngineMode {
+        PROCESS,
+        INTERPRETER,
+        COMPILED,
+        AUTO
+    }
+
+    private static final Path SPOOL_DIRECTORY = Paths.get(".vawk", "spool");
+
+    private final EngineMode mode;
+    private final long inProcessMaxInputBytes;
+    private final long spoolThresholdChars;
+    private final RunCache runCache;
+    private final ProcessAwkEngine processEngine = new ProcessAwkEngine();
+    private final InterpretedAwkEngine interpretedEngine = new InterpretedAwkEngine();
+    private final CompiledAwkEngine compiledEngine = new CompiledAwkEngine(interpretedEngine, Paths.get(".vawk", "cache", "compiled"));
+
+    /** Creates a runner that always uses the system awk. */
+    public AwkRunner() {
+        this(EngineMode.PROCESS, DEFAULT_IN_PROCESS_MAX_INPUT_BYTES, SpooledOutput.DEFAULT_THRESHOLD_CHARS, null);
+    }
+
+    /**
+     * @param mode                   engine to use; process unless configured otherwise
+     * @param inProcessMaxInputBytes largest total file input auto mode runs in the JVM
+     * @param spoolThresholdChars    captured characters kept in memory before spooling to disk
+     * @param runCacheMaxBytes       size budget of the run cache; 0 disables it
+     */
+    @Autowired
+    public AwkRunner(@Value("${vawk.runtime.engine:process}") String mode,
+                     @Value("${vawk.runtime.in-process-max-input-bytes:1048576}") long inProcessMaxInputBytes,
+                     @Value("${vawk.runtime.spool-threshold-chars:1048576}") long spoolThresholdChars,
+                     @Value("${vawk.runtime.run-cache-max-bytes:268435456}") long runCacheMaxBytes) {
+        this(EngineMode.valueOf(mode.trim().toUpperCase(Locale.ROOT)), inProcessMaxInputBytes, spoolThresholdChars,
+                runCacheMaxBytes > 0 ? new RunCache(Paths.get(".vawk", "cache", "runs"), runCacheMaxBytes) : null);
+    }
+
+    /**
+     * @param runCache cache consulted by {@link #run}, or null to always execute
+     */
+    public AwkRunner(EngineMode mode, long inProcessMaxInputBytes, long spoolThresholdChars, RunCache runCache) {
+        this.mode = mode;
+        this.inProcessMaxInputBytes = inProcessMaxInputBytes;
+        this.spoolThresholdChars = spoolThresholdChars;
+        this.runCache = runCache;
+    }
 
     /**
      * Runs an AWK program with optional variables and input file.
      *
-     * @param request run parameters including program path, variables, and input file
-     * @return result containing exit code, stdout, stderr
+     * @param request run parameters including program path, variables, input file and limits
+     * @return result containing exit code, stdout, stderr, and the limit that stopped the run if any;
+     * close it to remove spooled output
      */
+    // Pattern: Orchestration
+    // - Identical (program, input, variables) runs are answered from the run cache instead of re-executed.
     public AwkRunResult run(AwkRunRequest request) throws IOException, InterruptedException {
+        Optional<String> cacheKey = cacheKey(request);
+        if (cacheKey.isPresent()) {
+            Optional<AwkRunResult> cached = runCache.lookup(cacheKey.get(), SPOOL_DIRECTORY, spoolThresholdChars);
+            if (cached.isPresent()) {
+                return cached.get();
+            }
+        }
+        AwkRunResult result = execute(request);
+        if (cacheKey.isPresent()) {
+            runCache.store(cacheKey.get(), result);
+        }
+        return result;
+    }
+
+    /**
+     * @return an empty capture buffer that spools to .vawk/spool past this runner's threshold
+     */
+    SpooledOutput newSpool() {
+        return new SpooledOutput(SPOOL_DIRECTORY, spoolThresholdChars);
+    }
+
+    private AwkRunResult execute(AwkRunRequest request) throws IOException, InterruptedException {
+        SpooledOutput stdout = newSpool();
+        SpooledOutput stderr = newSpool();
+        CpuTime cpuTime = new CpuTime();
+        try {
+            int exit = stream(request, stdout, stderr, cpuTime);
+            stdout.close();
+            stderr.close();
+            AwkRunResult result = AwkRunResult.spooled(exit, stdout, stderr);
+            result.setCpuMillis(cpuTime.millis());
+            return result;
+        } catch (AwkRunLimitExceededException e) {
+            stderr.write(e.getMessage() + System.lineSeparator());
+            stdout.close();
+            stderr.close();
+            AwkRunResult result = AwkRunResult.spooled(AwkRunLimitExceededException.EXIT_STATUS, stdout, stderr);
+            result.setLimitExceeded(e.getLimit());
+            return result;
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            stdout.delete();
+            stderr.delete();
+            throw e;
+        }
+    }
+
+    /**
+     * Runs an AWK program and streams its stdout and stderr into the given sinks as they are
+     * produced.
+     *
+     * @param request    run parameters including program path, variables, and input file
+     * @param stdoutSink destination for the program's standard output
+     * @param stderrSink destination for the program's standard error
+     * @return exit code of the program
+     * @throws AwkRunLimitExceededException when the request's limits stopped the run
+     */
+    // Pattern: Trust UX
+    // - Streams output as it is produced so large runs behave like plain awk in a pipeline.
+    public int stream(AwkRunRequest request, Writer stdoutSink, Writer stderrSink) throws IOException, InterruptedException {
+        return stream(request, stdoutSink, stderrSink, null);
+    }
+
+    /** Streams like {@link #stream(AwkRunRequest, Writer, Writer)}, measuring CPU time into cpuTime when given. */
+    private int stream(AwkRunRequest request, Writer stdoutSink, Writer stderrSink, CpuTime cpuTime) throws IOException, InterruptedException {
         AwkProgram program = request.getProgram();
         if (program == null || program.getPath() == null) {
             throw new IllegalArgumentException("Program path is required");
         }
-        List<String> command = new ArrayList<>();
-        command.add("awk");
-        for (Map.Entry<String, String> entry : request.getVariables().entrySet()) {
-            command.add("-v");
-            command.add(entry.getKey() + "=" + entry.getValue());
+        AwkEngine engine = select(request);
+        if (engine == processEngine) {
+            return processEngine.stream(request, stdoutSink, stderrSink, cpuTime);
+        }
+        if (!request.getLimits().isUnlimited()) {
+            return InProcessRunSupervisor.stream(engine, request, stdoutSink, stderrSink, cpuTime);
+        }
+        long cpuStarted = cpuTime == null ? -1 : CpuTime.currentThreadNanos();
+        try {
+            return engine.stream(request, stdoutSink, stderrSink);
+        } finally {
+            if (cpuStarted >= 0) {
+                cpuTime.offer(CpuTime.currentThreadNanos() - cpuStarted);
+            }
+        }
+    }
+
+    /** Key under which the run may be cached; empty when caching is off or the run is not repeatable. */
+    private Optional<String> cacheKey(AwkRunRequest request) throws IOException {
+        AwkProgram program = request.getProgram();
+        if (runCache == null || !request.isCacheable() || program == null || program.getPath() == null) {
+            return Optional.empty();
+        }
+        AwkScript script;
+        try {
+            script = interpretedEngine.load(program.getPath());
+        } catch (AwkSyntaxException | IOException e) {
+            return Optional.empty();
+        }
+        if (!script.isRepeatable()) {
+            return Optional.empty();
+        }
+        String programHash = program.getHash() != null && script.getSource().equals(program.getContent())
+                ? program.getHash() : Hashing.sha256(script.getSource());
+        return runCache.key(request, programHash, engineName(select(request)));
+    }
+
+    /** @return the name of the engine that would run the request: interpreter, compiled or process */
+    String engineFor(AwkRunRequest request) throws IOException {
+        return engineName(select(request));
+    }
+
+    private String engineName(AwkEngine engine) {
+        if (engine == interpretedEngine) {
+            return "interpreter";
         }
-        command.add("-f");
-        command.add(program.getPath().toString());
-        if (request.getInputFile() != null) {
-            command.add(request.getInputFile().toString());
+        return engine == compiledEngine ? "compiled" : "process";
+    }
+
+    private AwkEngine select(AwkRunRequest request) throws IOException {
+        switch (mode) {
+            case INTERPRETER:
+                return interpretedEngine;
+            case COMPILED:
+                return compiledEngine;
+            case AUTO:
+                return selectAutomatically(request);
+            default:
+                return processEngine;
         }
+    }
 
-        ProcessBuilder pb = new ProcessBuilder(command);
-        Process process = pb.start();
-        String stdout = readAll(process.getInputStream());
-        String stderr = readAll(process.getErrorStream());
-        int exit = process.waitFor();
-        return new AwkRunResult(exit, stdout, stderr);
+    /**
+     * Small inputs are interpreted, since compiling would cost more than it saves; large inputs and
+     * promoted jobs, which are run again and again, are compiled. The system awk takes the rest.
+     */
+    private AwkEngine selectAutomatically(AwkRunRequest request) throws IOException {
+        if (request.getInputFile() == null && request.getStandardInput() != null) {
+            return processEngine;
+        }
+        long inputBytes = 0;
+        for (Path inputFile : request.getInputFiles()) {
+            if (!Files.isRegularFile(inputFile)) {
+                return processEngine;
+            }
+            inputBytes += Files.size(inputFile);
+        }
+        try {
+            interpretedEngine.load(request.getProgram().getPath());
+        } catch (AwkSyntaxException | IOException e) {
+            // Let the reference engine report programs the interpreter cannot read or parse.
+            return processEngine;
+        }
+        if (inputBytes <= inProcessMaxInputBytes && !isPromotedJob(request.getProgram().getPath())) {
+            return interpretedEngine;
+        }
+        return compiledEngine.compile(request).isPresent() ? compiledEngine : processEngine;
     }
 
-    private String readAll(InputStream in) throws IOException {
-        return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    /** Whether the program is a job promoted to vawk/jobs/NAME/. */
+    private static boolean isPromotedJob(Path programPath) {
+        Path jobs = programPath.toAbsolutePath().normalize().getParent();
+        jobs = jobs == null ? null : jobs.getParent();
+        return jobs != null && jobs.getParent() != null && jobs.getFileName().toString().equals("jobs")
+                && jobs.getParent().getFileName() != null && jobs.getParent().getFileName().toString().equals("vawk");
     }
 }
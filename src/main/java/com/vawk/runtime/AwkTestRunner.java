@@ -1,36 +1,91 @@
 package com.vawk.runtime;
 
-import com.github.difflib.DiffUtils;
-import com.github.difflib.UnifiedDiffUtils;
-import com.github.difflib.patch.Patch;
 import com.vawk.domain.AwkProgram;
 import com.vawk.domain.AwkTestCase;
 import com.vawk.domain.SessionLog;
+import com.vawk.domain.TestTimings;
+import com.vawk.runtime.awk.AwkScript;
+import com.vawk.runtime.awk.AwkSyntaxException;
+import com.vawk.util.Hashing;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 
 /**
  * Executes AWK test cases by running scripts against fixtures and comparing outputs. Produces
  * SessionLog.TestRun records to document pass/fail and diffs. Used by CLI commands and generators
- * to enforce deterministic AWK behavior.
+ * to enforce deterministic AWK behavior. Every run is supervised with wall-clock, output and CPU
+ * limits, so a generated program that loops forever or floods its output fails its test instead
+ * of hanging the suite; such failures are recorded with their own failure kind. Diffs of failing
+ * tests are bounded too: the log keeps an excerpt and the whole diff goes to a side file. When
+ * asked to, tiny fixtures of a stateless program share one awk process (see {@link FixtureMultiplexer}).
  */
 @Component
 public class AwkTestRunner {
+    /** Limits used when none are configured: generous for fixtures, fatal for runaway programs. */
+    public static final AwkRunLimits DEFAULT_LIMITS = new AwkRunLimits(Duration.ofSeconds(30), 64L << 20, 30);
+
     private final AwkRunner awkRunner;
+    private final AwkRunLimits limits;
+    private final DiffLimits diffLimits;
+    private final Path diffDirectory;
 
     /**
-     * Builds a test runner using the provided AwkRunner.
+     * Builds a test runner using the provided AwkRunner and the default limits.
      */
     public AwkTestRunner(AwkRunner awkRunner) {
+        this(awkRunner, DEFAULT_LIMITS);
+    }
+
+    public AwkTestRunner(AwkRunner awkRunner, AwkRunLimits limits) {
+        this(awkRunner, limits, DiffLimits.DEFAULT, Paths.get(".vawk", "diffs"));
+    }
+
+    /**
+     * @param diffDirectory where whole diffs are written when the session log only gets an excerpt
+     */
+    public AwkTestRunner(AwkRunner awkRunner, AwkRunLimits limits, DiffLimits diffLimits, Path diffDirectory) {
         this.awkRunner = awkRunner;
+        this.limits = limits;
+        this.diffLimits = diffLimits;
+        this.diffDirectory = diffDirectory;
+    }
+
+    @Autowired
+    public AwkTestRunner(AwkRunner awkRunner,
+                         @Value("${vawk.test.limits.wall-clock-seconds:30}") long wallClockSeconds,
+                         @Value("${vawk.test.limits.max-output-bytes:67108864}") long maxOutputBytes,
+                         @Value("${vawk.test.limits.cpu-seconds:30}") long cpuSeconds,
+                         @Value("${vawk.test.diff.cost-budget:20000000}") long diffCostBudget,
+                         @Value("${vawk.test.diff.window-lines:10000}") int diffWindowLines,
+                         @Value("${vawk.test.diff.max-logged-hunks:10}") int maxLoggedHunks,
+                         @Value("${vawk.test.diff.max-logged-bytes:16384}") int maxLoggedBytes) {
+        this(awkRunner, new AwkRunLimits(Duration.ofSeconds(wallClockSeconds), maxOutputBytes, cpuSeconds),
+                new DiffLimits(diffCostBudget, diffWindowLines, maxLoggedHunks, maxLoggedBytes), Paths.get(".vawk", "diffs"));
     }
 
     /**
@@ -44,38 +99,375 @@ public class AwkTestRunner {
     // Pattern: Verification
     // - Produces PASS/FAIL receipts with diffs to validate deterministic behavior.
     public List<SessionLog.TestRun> runTests(List<AwkTestCase> testCases, AwkProgram defaultProgram) throws IOException, InterruptedException {
-        List<SessionLog.TestRun> results = new ArrayList<>();
-        for (AwkTestCase testCase : testCases) {
-            AwkProgram program = defaultProgram;
-            if (testCase.getProgramOverride() != null) {
-                Path overridePath = testCase.getProgramOverride().toAbsolutePath();
-                String content = Files.readString(overridePath, StandardCharsets.UTF_8);
-                program = new AwkProgram(overridePath, content, null);
+        return runTests(testCases, defaultProgram, TestRunOptions.defaults());
+    }
+
+    /**
+     * Runs the supplied test cases like {@link #runTests(List, AwkProgram)} with explicit options.
+     * With more than one job, cases run concurrently on a bounded pool. When the options carry a
+     * timing history, cases start in {@link #schedule} order; results still come back in
+     * declaration order, each with its duration. With multiplexing on, cases that can share an awk
+     * process run in groups, falling back to one process per case when a group's run fails.
+     *
+     * @param testCases      AWK test cases with inputs/expected outputs
+     * @param defaultProgram program used when no override is provided
+     * @param options        run options: concurrent jobs, whether cached runs may be reused, timings,
+     *                       multiplexing
+     * @return list of test run results suitable for logging, in the order of testCases
+     */
+    // Pattern: Orchestration
+    // - Cases are independent runs, so they fan out across cores; receipts keep declaration order.
+    public List<SessionLog.TestRun> runTests(List<AwkTestCase> testCases, AwkProgram defaultProgram, TestRunOptions options)
+            throws IOException, InterruptedException {
+        int jobs = Math.min(Math.max(options.getJobs(), 1), testCases.size());
+        List<Integer> order = schedule(testCases, options.getTimings());
+        List<List<Integer>> units = options.isMultiplex() ? multiplexUnits(testCases, defaultProgram, order, jobs) : singleUnits(order);
+        SessionLog.TestRun[] results = new SessionLog.TestRun[testCases.size()];
+        if (jobs <= 1) {
+            for (List<Integer> unit : units) {
+                runUnit(unit, testCases, defaultProgram, options, results);
+            }
+            return Arrays.asList(results);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(jobs, task -> {
+            Thread thread = new Thread(task, "vawk-test");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<Void>> pending = new ArrayList<>();
+            for (List<Integer> unit : units) {
+                pending.add(executor.submit(() -> {
+                    runUnit(unit, testCases, defaultProgram, options, results);
+                    return null;
+                }));
+            }
+            for (Future<Void> unit : pending) {
+                await(unit);
+            }
+            return Arrays.asList(results);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Orders cases for execution: cases whose latest run failed first, then cases with no history,
+     * then the rest longest expected duration first (LPT scheduling, which keeps a long case from
+     * starting last and stretching the total). Ties keep declaration order.
+     *
+     * @param testCases cases in declaration order
+     * @param timings   history, or null for declaration order
+     * @return indexes into testCases in the order they should start
+     */
+    // Pattern: Orchestration
+    // - Red first for fast feedback, then longest first for the shortest makespan.
+    static List<Integer> schedule(List<AwkTestCase> testCases, TestTimings timings) {
+        List<Integer> order = new ArrayList<>();
+        for (int index = 0; index < testCases.size(); index++) {
+            order.add(index);
+        }
+        if (timings == null) {
+            return order;
+        }
+        order.sort(Comparator.<Integer>comparingInt(index -> {
+                    TestTimings.CaseTiming timing = timings.getCases().get(testCases.get(index).getName());
+                    return timing == null ? 1 : timing.isLastFailed() ? 0 : 2;
+                })
+                .thenComparing(index -> {
+                    TestTimings.CaseTiming timing = timings.getCases().get(testCases.get(index).getName());
+                    return timing == null ? 0L : -timing.getExpectedMillis();
+                }));
+        return order;
+    }
+
+    private static List<List<Integer>> singleUnits(List<Integer> order) {
+        List<List<Integer>> units = new ArrayList<>();
+        for (int index : order) {
+            units.add(List.of(index));
+        }
+        return units;
+    }
+
+    /**
+     * Groups cases that can share one awk process: the default program, same variables, a tiny
+     * input file, and a program {@link FixtureMultiplexer} accepts. Cases with a program override
+     * always run alone, since the spec's stateless declaration speaks only for the default
+     * program. Groups are cut so that every job still gets work, up to
+     * {@link FixtureMultiplexer#MAX_CASES} cases each; every other case is a unit of its own.
+     * Units keep the schedule order of their first case.
+     *
+     * @param order indexes into testCases in schedule order
+     * @return units of case indexes, each run by one awk process
+     */
+    static List<List<Integer>> multiplexUnits(List<AwkTestCase> testCases, AwkProgram defaultProgram, List<Integer> order, int jobs)
+            throws IOException {
+        Path programPath = defaultProgram == null || defaultProgram.getPath() == null ? null : defaultProgram.getPath().toAbsolutePath();
+        if (programPath == null || !acceptsMultiplexing(programPath)) {
+            return singleUnits(order);
+        }
+        Map<Integer, String> keys = new HashMap<>();
+        Map<String, Integer> groupSizes = new HashMap<>();
+        for (int index : order) {
+            AwkTestCase testCase = testCases.get(index);
+            Path input = testCase.getInputPath();
+            if (testCase.getProgramOverride() != null || input == null || !Files.isRegularFile(input)
+                    || Files.size(input) > FixtureMultiplexer.MAX_INPUT_BYTES || input.toAbsolutePath().toString().indexOf('\n') >= 0) {
+                continue;
+            }
+            String key = new TreeMap<>(testCase.getVariables() == null ? Map.of() : testCase.getVariables()).toString();
+            keys.put(index, key);
+            groupSizes.merge(key, 1, Integer::sum);
+        }
+        List<List<Integer>> units = new ArrayList<>();
+        Map<String, List<Integer>> openGroups = new HashMap<>();
+        for (int index : order) {
+            String key = keys.get(index);
+            int groupLimit = key == null ? 1 : Math.min(FixtureMultiplexer.MAX_CASES, (groupSizes.get(key) + jobs - 1) / jobs);
+            if (groupLimit < 2) {
+                units.add(List.of(index));
+                continue;
+            }
+            List<Integer> group = openGroups.get(key);
+            if (group == null || group.size() == groupLimit) {
+                group = new ArrayList<>();
+                openGroups.put(key, group);
+                units.add(group);
+            }
+            group.add(index);
+        }
+        return units;
+    }
+
+    private static boolean acceptsMultiplexing(Path programPath) {
+        try {
+            return FixtureMultiplexer.rejectionReason(AwkScript.parse(Files.readString(programPath, StandardCharsets.UTF_8))).isEmpty();
+        } catch (IOException | AwkSyntaxException e) {
+            return false;
+        }
+    }
+
+    private void runUnit(List<Integer> unit, List<AwkTestCase> testCases, AwkProgram defaultProgram, TestRunOptions options,
+                         SessionLog.TestRun[] results) throws IOException, InterruptedException {
+        if (unit.size() > 1) {
+            List<AwkTestCase> cases = unit.stream().map(testCases::get).toList();
+            Optional<List<SessionLog.TestRun>> runs = runMultiplexed(cases, defaultProgram.getPath().toAbsolutePath());
+            if (runs.isPresent()) {
+                for (int position = 0; position < unit.size(); position++) {
+                    results[unit.get(position)] = runs.get().get(position);
+                }
+                return;
             }
-            AwkRunRequest request = new AwkRunRequest(program, testCase.getInputPath(), testCase.getVariables());
-            AwkRunResult result = awkRunner.run(request);
-            String expected = Files.readString(testCase.getExpectedPath(), StandardCharsets.UTF_8);
-            String actual = result.getStdout();
-
-            boolean passed = result.isSuccess() && normalize(expected).equals(normalize(actual));
-            String diff = passed ? null : diff(expected, actual);
-            if (!result.isSuccess() && diff == null) {
-                diff = result.getStderr();
+        }
+        for (int index : unit) {
+            results[index] = runCase(testCases.get(index), defaultProgram, options);
+        }
+    }
+
+    /**
+     * Runs cases that share a program and variables in one awk process over all their inputs and
+     * checks each case against its share of the output. Each case is credited an even share of the
+     * run's wall and CPU time. Multiplexed runs bypass the run cache.
+     *
+     * @return one result per case, or empty when the run failed, wrote to standard error, or its
+     * output could not be attributed to the inputs; the caller then runs the cases one by one so
+     * every failure is reported against its own case
+     */
+    // Pattern: Orchestration
+    // - Tiny fixtures cost a process start each; one process reads them all and the output is split back per fixture.
+    private Optional<List<SessionLog.TestRun>> runMultiplexed(List<AwkTestCase> cases, Path programPath)
+            throws IOException, InterruptedException {
+        String marker = "vawk-" + UUID.randomUUID().toString().replace("-", "");
+        String source = FixtureMultiplexer.wrap(Files.readString(programPath, StandardCharsets.UTF_8), marker);
+        List<Path> inputs = cases.stream().map(testCase -> testCase.getInputPath().toAbsolutePath()).toList();
+        Path wrapperPath = Files.createTempFile("vawk-multiplex", ".awk");
+        try {
+            Files.writeString(wrapperPath, source, StandardCharsets.UTF_8);
+            AwkRunRequest request = new AwkRunRequest(new AwkProgram(wrapperPath, source, Hashing.sha256(source)), inputs.get(0),
+                    cases.get(0).getVariables());
+            request.setAdditionalInputFiles(inputs.subList(1, inputs.size()));
+            request.setLimits(limits);
+            request.setCacheable(false);
+            long started = System.nanoTime();
+            try (AwkRunResult result = awkRunner.run(request)) {
+                long elapsedNanos = (System.nanoTime() - started) / cases.size();
+                if (!result.isSuccess() || !result.getStderr().isEmpty()) {
+                    return Optional.empty();
+                }
+                Optional<List<SpooledOutput>> outputs;
+                try (Reader stdout = new InputStreamReader(result.openStdout(), StandardCharsets.UTF_8)) {
+                    outputs = FixtureMultiplexer.split(stdout, marker, inputs, awkRunner::newSpool);
+                }
+                if (outputs.isEmpty()) {
+                    return Optional.empty();
+                }
+                Long cpuMillis = result.getCpuMillis() == null ? null : result.getCpuMillis() / cases.size();
+                List<SessionLog.TestRun> runs = new ArrayList<>();
+                try {
+                    for (int position = 0; position < cases.size(); position++) {
+                        AwkTestCase testCase = cases.get(position);
+                        AwkRunResult caseResult = AwkRunResult.spooled(0, outputs.get().get(position), SpooledOutput.of(""));
+                        SessionLog.TestRun run = check(testCase, caseResult);
+                        recordMetrics(run, testCase, elapsedNanos, cpuMillis, caseResult.getStdoutBytes());
+                        runs.add(run);
+                    }
+                } finally {
+                    for (SpooledOutput output : outputs.get()) {
+                        output.delete();
+                    }
+                }
+                return Optional.of(runs);
             }
-            results.add(new SessionLog.TestRun(testCase.getName(), passed, diff));
+        } finally {
+            Files.deleteIfExists(wrapperPath);
+        }
+    }
+
+    private SessionLog.TestRun runCase(AwkTestCase testCase, AwkProgram defaultProgram, TestRunOptions options)
+            throws IOException, InterruptedException {
+        AwkProgram program = defaultProgram;
+        if (testCase.getProgramOverride() != null) {
+            Path overridePath = testCase.getProgramOverride().toAbsolutePath();
+            String content = Files.readString(overridePath, StandardCharsets.UTF_8);
+            program = new AwkProgram(overridePath, content, null);
+        }
+        AwkRunRequest request = new AwkRunRequest(program, testCase.getInputPath(), testCase.getVariables());
+        request.setLimits(limits);
+        request.setCacheable(options.isUseCache());
+        long started = System.nanoTime();
+        try (AwkRunResult result = awkRunner.run(request)) {
+            long elapsedNanos = System.nanoTime() - started;
+            SessionLog.TestRun run = check(testCase, result);
+            if (result.isCached()) {
+                // Restoring a result takes no time worth recording; timings would skew the history and reports.
+                run.setCached(true);
+            } else {
+                recordMetrics(run, testCase, elapsedNanos, result.getCpuMillis(), result.getStdoutBytes());
+            }
+            return run;
+        }
+    }
+
+    private static void recordMetrics(SessionLog.TestRun run, AwkTestCase testCase, long elapsedNanos, Long cpuMillis, long outputBytes)
+            throws IOException {
+        run.setDurationMillis(Duration.ofNanos(elapsedNanos).toMillis());
+        run.setCpuMillis(cpuMillis);
+        run.setOutputBytes(outputBytes);
+        if (testCase.getInputPath() != null && Files.isRegularFile(testCase.getInputPath())) {
+            run.setInputBytes(Files.size(testCase.getInputPath()));
+        }
+    }
+
+    /**
+     * Sets a timed run's input lines per second. Counting reads the whole input again, so callers
+     * measure only the runs they report rather than every run.
+     *
+     * @param run      receipt of an executed case; cached and already measured runs are left as they are
+     * @param testCase the case it ran
+     */
+    public static void measureThroughput(SessionLog.TestRun run, AwkTestCase testCase) throws IOException {
+        if (run.getDurationMillis() == null || run.getLinesPerSecond() != null || testCase.getInputPath() == null
+                || !Files.isRegularFile(testCase.getInputPath())) {
+            return;
         }
-        return results;
+        run.setLinesPerSecond(countLines(testCase.getInputPath()) * 1000.0 / Math.max(run.getDurationMillis(), 1));
     }
 
-    private String normalize(String content) {
-        return content.trim();
+    /** Counts input lines (a final line without a newline included) one buffer at a time. */
+    static long countLines(Path file) throws IOException {
+        long lines = 0;
+        int last = '\n';
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                for (int index = 0; index < read; index++) {
+                    if (buffer[index] == '\n') {
+                        lines++;
+                    }
+                }
+                if (read > 0) {
+                    last = buffer[read - 1];
+                }
+            }
+        }
+        return last == '\n' ? lines : lines + 1;
+    }
+
+    private static <T> T await(Future<T> run) throws IOException, InterruptedException {
+        try {
+            return run.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            if (cause instanceof InterruptedException interrupted) {
+                throw interrupted;
+            }
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException("Test case run failed", cause);
+        }
+    }
+
+    /**
+     * Compares a run's output with the expected file line by line, stopping at the first
+     * difference; only failing runs are read again, around that difference, to build their diff.
+     */
+    private SessionLog.TestRun check(AwkTestCase testCase, AwkRunResult result) throws IOException {
+        if (result.getLimitExceeded() != null) {
+            SessionLog.TestRun run = new SessionLog.TestRun(testCase.getName(), false, result.getStderr());
+            run.setFailureKind(SessionLog.FailureKind.LIMIT_EXCEEDED);
+            return run;
+        }
+        OutputComparator.Source expected = () -> Files.newBufferedReader(testCase.getExpectedPath(), StandardCharsets.UTF_8);
+        OutputComparator.Source actual = () -> new BufferedReader(new InputStreamReader(result.openStdout(), StandardCharsets.UTF_8));
+        Optional<OutputComparator.Mismatch> mismatch;
+        try (BufferedReader expectedReader = expected.open(); BufferedReader actualReader = actual.open()) {
+            mismatch = OutputComparator.firstMismatch(expectedReader, actualReader);
+        }
+        boolean passed = result.isSuccess() && mismatch.isEmpty();
+        String diff = null;
+        Path diffFile = null;
+        if (mismatch.isPresent()) {
+            diff = OutputComparator.windowedDiff(expected, actual, mismatch.get(), diffLimits);
+            String excerpt = OutputComparator.excerpt(diff, diffLimits);
+            if (!excerpt.equals(diff)) {
+                diffFile = writeDiffFile(testCase.getName(), diff);
+                diff = excerpt + "; full diff in " + diffFile;
+            }
+        } else if (!result.isSuccess()) {
+            diff = result.getStderr();
+        }
+        SessionLog.TestRun run = new SessionLog.TestRun(testCase.getName(), passed, diff);
+        if (diffFile != null) {
+            run.setDiffFile(diffFile.toString());
+        } else {
+            // A diff left by an earlier failure no longer describes this case.
+            Files.deleteIfExists(diffPath(testCase.getName()));
+        }
+        if (!passed) {
+            run.setFailureKind(result.isSuccess() ? SessionLog.FailureKind.MISMATCH : SessionLog.FailureKind.ERROR);
+        }
+        return run;
+    }
+
+    /**
+     * Writes a case's whole diff to its own file, replacing the one from its previous failure, so
+     * repeated runs keep one file per case rather than one per run.
+     */
+    private Path writeDiffFile(String testName, String diff) throws IOException {
+        Files.createDirectories(diffDirectory);
+        Path file = diffPath(testName);
+        Files.writeString(file, diff + "\n", StandardCharsets.UTF_8);
+        return file;
     }
 
-    private String diff(String expected, String actual) {
-        List<String> expectedLines = Arrays.asList(expected.split("\\R", -1));
-        List<String> actualLines = Arrays.asList(actual.split("\\R", -1));
-        Patch<String> patch = DiffUtils.diff(expectedLines, actualLines);
-        List<String> unified = UnifiedDiffUtils.generateUnifiedDiff("expected", "actual", expectedLines, patch, 3);
-        return String.join("\n", unified);
+    /** Stable diff file of a case: its name made safe for a file name, plus a short hash so names that clean up alike stay apart. */
+    private Path diffPath(String testName) {
+        String name = testName == null ? "test" : testName;
+        return diffDirectory.resolve(name.replaceAll("[^A-Za-z0-9._-]", "_") + "-" + Hashing.sha256(name).substring(0, 8) + ".diff");
     }
 }
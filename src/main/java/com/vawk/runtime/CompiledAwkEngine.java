@@ -0,0 +1,75 @@
+package com.vawk.runtime;
+
+import com.vawk.domain.AwkProgram;
+import com.vawk.runtime.awk.AwkCompiler;
+import com.vawk.runtime.awk.AwkScript;
+import com.vawk.runtime.awk.AwkSyntaxException;
+import com.vawk.runtime.awk.CompiledAwkScript;
+import com.vawk.util.Hashing;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Runs AWK programs as generated JVM classes. Long-running jobs spend nearly all their time in the
+ * per-record rules, where the interpreter's tree walk and boxed values dominate; a compiled class
+ * keeps numeric variables in primitive fields and regex literals precompiled, and the JIT treats
+ * it like any other hot Java code. Classes are cached on disk by program hash, so only the first
+ * run of a program pays for javac. Whenever a program cannot be compiled faithfully (no JDK
+ * compiler, unsupported construct, or a -v assignment to a variable compiled as a number) the run
+ * goes to the interpreter, which has the same semantics.
+ */
+public class CompiledAwkEngine implements AwkEngine {
+    private final InterpretedAwkEngine interpretedEngine;
+    private final AwkCompiler compiler;
+
+    /**
+     * @param interpretedEngine fallback engine, also used to parse and cache program sources
+     * @param cacheDirectory    directory for compiled class files; null keeps them in memory only
+     */
+    public CompiledAwkEngine(InterpretedAwkEngine interpretedEngine, Path cacheDirectory) {
+        this.interpretedEngine = interpretedEngine;
+        this.compiler = new AwkCompiler(cacheDirectory);
+    }
+
+    @Override
+    public int stream(AwkRunRequest request, Writer stdoutSink, Writer stderrSink) throws IOException {
+        Optional<CompiledAwkScript> compiled = compile(request);
+        if (compiled.isEmpty()) {
+            return interpretedEngine.stream(request, stdoutSink, stderrSink);
+        }
+        List<String> operands = request.getInputFiles().stream().map(Path::toString).toList();
+        return compiled.get().execute(operands, request.getVariables(), request.getStandardInput(), stdoutSink, stderrSink);
+    }
+
+    /**
+     * Returns the compiled form of the request's program when it can run compiled.
+     *
+     * @param request run parameters; the program path is read and parsed
+     * @return compiled script, or empty when the run should be interpreted
+     */
+    public Optional<CompiledAwkScript> compile(AwkRunRequest request) throws IOException {
+        AwkScript script;
+        try {
+            script = interpretedEngine.load(request.getProgram().getPath());
+        } catch (AwkSyntaxException e) {
+            return Optional.empty();
+        }
+        Optional<CompiledAwkScript> compiled = compiler.compile(script, hashOf(request.getProgram(), script));
+        if (compiled.isPresent() && request.getVariables().keySet().stream().anyMatch(compiled.get().getNumericVariables()::contains)) {
+            return Optional.empty();
+        }
+        return compiled;
+    }
+
+    /** The program's own hash when it describes the source on disk, otherwise a hash of that source. */
+    private static String hashOf(AwkProgram program, AwkScript script) {
+        if (program.getHash() != null && script.getSource().equals(program.getContent())) {
+            return program.getHash();
+        }
+        return Hashing.sha256(script.getSource());
+    }
+}
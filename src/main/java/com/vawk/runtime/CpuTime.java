@@ -0,0 +1,33 @@
+package com.vawk.runtime;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Collects the CPU time of one run from whichever thread or process measures it. Measurements
+ * only ever grow the value, so periodic samples of a child process and a final reading can both
+ * be offered without ordering concerns.
+ */
+final class CpuTime {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private volatile long nanos = -1;
+
+    /** Offers a reading; readings lower than the current one are ignored. */
+    synchronized void offer(long readingNanos) {
+        if (readingNanos > nanos) {
+            nanos = readingNanos;
+        }
+    }
+
+    /** @return the measured CPU time in milliseconds, or null when nothing was measured */
+    Long millis() {
+        long value = nanos;
+        return value < 0 ? null : value / 1_000_000;
+    }
+
+    /** @return CPU time of the calling thread so far, or -1 when the JVM cannot tell */
+    static long currentThreadNanos() {
+        return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : -1;
+    }
+}
@@ -0,0 +1,62 @@
+package com.vawk.runtime;
+
+import com.github.difflib.DiffUtils;
+import com.github.difflib.algorithm.DiffAlgorithmListener;
+import com.github.difflib.algorithm.myers.MeyersDiff;
+import com.github.difflib.patch.Patch;
+
+import java.util.List;
+
+/**
+ * Line diff with a cost budget. Myers gives the minimal diff and is cheap when the sides are
+ * nearly equal, but its work grows with input size times edit distance; once that product passes
+ * the budget it is abandoned in favour of {@link PatienceDiff}, which stays near linear. A zero
+ * budget always uses Myers.
+ */
+public final class DiffEngine {
+    private final long costBudget;
+
+    /**
+     * @param costBudget Myers edit steps times compared lines allowed before falling back, or zero
+     */
+    public DiffEngine(long costBudget) {
+        this.costBudget = costBudget;
+    }
+
+    /** A patch and whether the budget forced the patience fallback. */
+    public record Result(Patch<String> patch, boolean fellBack) {
+    }
+
+    public Result diff(List<String> original, List<String> revised) {
+        long lines = (long) original.size() + revised.size();
+        try {
+            return new Result(DiffUtils.diff(original, revised, new MeyersDiff<>(), new DiffAlgorithmListener() {
+                @Override
+                public void diffStart() {
+                }
+
+                @Override
+                public void diffStep(int value, int max) {
+                    if (costBudget > 0 && value * lines > costBudget) {
+                        throw new BudgetExceeded();
+                    }
+                }
+
+                @Override
+                public void diffEnd() {
+                }
+            }), false);
+        } catch (BudgetExceeded e) {
+            return new Result(DiffUtils.diff(original, revised, new PatienceDiff<>()), true);
+        }
+    }
+
+    /** Unwinds Myers once it has spent its budget; carries no stack trace. */
+    private static final class BudgetExceeded extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        BudgetExceeded() {
+            super(null, null, false, false);
+        }
+    }
+}
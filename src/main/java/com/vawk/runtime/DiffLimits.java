@@ -0,0 +1,64 @@
+package com.vawk.runtime;
+
+import java.util.Objects;
+
+/**
+ * Bounds on the diff built for a failing test: how much Myers work is allowed before falling back
+ * to patience diff, how many lines after the first mismatch are compared, and how many hunks and
+ * bytes of the result go into the session log. The whole diff is kept in a side file whenever the
+ * log only gets an excerpt.
+ */
+public final class DiffLimits {
+    /** Limits used when none are configured. */
+    public static final DiffLimits DEFAULT = new DiffLimits(20_000_000L, 10_000, 10, 16 * 1024);
+
+    private final long costBudget;
+    private final int windowLines;
+    private final int maxLoggedHunks;
+    private final int maxLoggedBytes;
+
+    /**
+     * @param costBudget     Myers work allowed, in edit steps times compared lines; zero for no budget
+     * @param windowLines    lines of each side compared from the first mismatch on
+     * @param maxLoggedHunks hunks kept in the session log
+     * @param maxLoggedBytes bytes of diff text kept in the session log
+     */
+    public DiffLimits(long costBudget, int windowLines, int maxLoggedHunks, int maxLoggedBytes) {
+        if (costBudget < 0 || windowLines < 1 || maxLoggedHunks < 1 || maxLoggedBytes < 1) {
+            throw new IllegalArgumentException("Diff limits must be positive");
+        }
+        this.costBudget = costBudget;
+        this.windowLines = windowLines;
+        this.maxLoggedHunks = maxLoggedHunks;
+        this.maxLoggedBytes = maxLoggedBytes;
+    }
+
+    public long getCostBudget() {
+        return costBudget;
+    }
+
+    public int getWindowLines() {
+        return windowLines;
+    }
+
+    public int getMaxLoggedHunks() {
+        return maxLoggedHunks;
+    }
+
+    public int getMaxLoggedBytes() {
+        return maxLoggedBytes;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof DiffLimits that)) return false;
+        return costBudget == that.costBudget && windowLines == that.windowLines
+                && maxLoggedHunks == that.maxLoggedHunks && maxLoggedBytes == that.maxLoggedBytes;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(costBudget, windowLines, maxLoggedHunks, maxLoggedBytes);
+    }
+}
@@ -0,0 +1,197 @@
+package com.vawk.runtime;
+
+import com.vawk.runtime.awk.AwkScript;
+
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Lets one awk process serve several tiny fixtures. The fixtures' input files become operands of
+ * a single run of a wrapped program: a rule placed before the program's own prints a marker line
+ * carrying FILENAME at the first record of every file, and the captured output is cut back into
+ * one output per file at those markers. That equals separate runs only when nothing carries over
+ * from one file to the next, so besides the spec's stateless declaration, programs with END
+ * actions, range patterns, getline, exit, printing BEGIN actions, NR, or side effects outside
+ * standard output are refused. FNR and FILENAME restart per file and are fine.
+ */
+final class FixtureMultiplexer {
+    /** Largest input file that counts as a tiny fixture; bigger ones are worth their own process. */
+    static final long MAX_INPUT_BYTES = 64 * 1024;
+    /** Most fixtures one awk process reads, which also bounds the length of its command line. */
+    static final int MAX_CASES = 64;
+
+    private static final char MARKER_LEAD = '\036';
+
+    private FixtureMultiplexer() {
+    }
+
+    /**
+     * Explains why a program cannot serve several fixtures in one process.
+     *
+     * @param script the parsed program
+     * @return the reason, or empty when its output per input file does not depend on other files
+     */
+    static Optional<String> rejectionReason(AwkScript script) {
+        if (script.hasEndBlock()) {
+            return Optional.of("the program has an END block");
+        }
+        if (script.usesRangePatterns()) {
+            return Optional.of("the program uses range patterns");
+        }
+        if (script.usesGetline() || script.usesExit()) {
+            return Optional.of("the program uses getline or exit");
+        }
+        if (script.beginMayPrint()) {
+            return Optional.of("the BEGIN action prints");
+        }
+        if (script.usesVariable("NR")) {
+            return Optional.of("the program reads NR, which keeps counting across files");
+        }
+        if (!script.isRepeatable()) {
+            return Optional.of("the program reaches outside standard output");
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Prepends the marker rule to a program.
+     *
+     * @param source program text
+     * @param marker token unique to this run, made of letters, digits and dashes
+     * @return the wrapped program text
+     */
+    static String wrap(String source, String marker) {
+        return "FNR == 1 { printf \"%s%s\\n\", \"\\036" + marker + ":\", FILENAME }\n" + source;
+    }
+
+    /**
+     * Cuts the output of a wrapped run back into one output per input file, reading it once as a
+     * stream so no output is held whole in memory. Empty files have no first record, so they get
+     * no marker and an empty output.
+     *
+     * @param output   standard output of the wrapped run; the caller closes it
+     * @param marker   token given to {@link #wrap}
+     * @param inputs   operands of the run, in order
+     * @param newSpool creates the capture buffer for one input's output
+     * @return each input's output in input order, closed and ready to read, or empty when the
+     * output does not have exactly one marker per non-empty input, in order, with nothing before
+     * the first; no spool files are left behind then
+     */
+    static Optional<List<SpooledOutput>> split(Reader output, String marker, List<Path> inputs, Supplier<SpooledOutput> newSpool)
+            throws IOException {
+        String tag = MARKER_LEAD + marker + ":";
+        PushbackReader reader = new PushbackReader(output, tag.length());
+        List<SpooledOutput> outputs = new ArrayList<>();
+        char[] pending = new char[8192];
+        int pendingLength = 0;
+        SpooledOutput current = null;
+        int next = 0;
+        boolean attributed = false;
+        try {
+            while (true) {
+                int read = reader.read();
+                if (read == MARKER_LEAD && readsTag(reader, tag)) {
+                    if (current != null) {
+                        current.write(pending, 0, pendingLength);
+                        current.close();
+                    } else if (pendingLength > 0) {
+                        return Optional.empty();
+                    }
+                    pendingLength = 0;
+                    next = skipEmpty(inputs, next, outputs);
+                    if (next == inputs.size() || !inputs.get(next).toString().equals(readLine(reader))) {
+                        return Optional.empty();
+                    }
+                    current = newSpool.get();
+                    outputs.add(current);
+                    next++;
+                    continue;
+                }
+                if (read < 0) {
+                    break;
+                }
+                if (pendingLength == pending.length) {
+                    if (current == null) {
+                        return Optional.empty();
+                    }
+                    current.write(pending, 0, pendingLength);
+                    pendingLength = 0;
+                }
+                pending[pendingLength++] = (char) read;
+            }
+            if (current == null) {
+                if (pendingLength > 0) {
+                    return Optional.empty();
+                }
+            } else {
+                current.write(pending, 0, pendingLength);
+                current.close();
+            }
+            if (skipEmpty(inputs, next, outputs) != inputs.size()) {
+                return Optional.empty();
+            }
+            attributed = true;
+            return Optional.of(outputs);
+        } finally {
+            if (!attributed) {
+                for (SpooledOutput spooled : outputs) {
+                    spooled.delete();
+                }
+            }
+        }
+    }
+
+    /** Reads the rest of the tag after its lead character, or pushes back what does not match. */
+    private static boolean readsTag(PushbackReader reader, String tag) throws IOException {
+        char[] rest = new char[tag.length() - 1];
+        int length = 0;
+        while (length < rest.length) {
+            int read = reader.read();
+            if (read < 0) {
+                break;
+            }
+            rest[length++] = (char) read;
+            if (rest[length - 1] != tag.charAt(length)) {
+                break;
+            }
+        }
+        if (length == rest.length && rest[length - 1] == tag.charAt(length)) {
+            return true;
+        }
+        reader.unread(rest, 0, length);
+        return false;
+    }
+
+    /** Adds an empty output for each empty input from next on; returns the first non-empty one. */
+    private static int skipEmpty(List<Path> inputs, int next, List<SpooledOutput> outputs) throws IOException {
+        while (next < inputs.size() && Files.size(inputs.get(next)) == 0) {
+            SpooledOutput empty = SpooledOutput.of("");
+            empty.close();
+            outputs.add(empty);
+            next++;
+        }
+        return next;
+    }
+
+    /** @return the characters up to the next newline, which is consumed, or null when no newline follows */
+    private static String readLine(PushbackReader reader) throws IOException {
+        StringBuilder line = new StringBuilder();
+        while (true) {
+            int read = reader.read();
+            if (read < 0) {
+                return null;
+            }
+            if (read == '\n') {
+                return line.toString();
+            }
+            line.append((char) read);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.vawk.runtime;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Enforces {@link AwkRunLimits} for engines that run inside the JVM. The program runs on a worker
+ * thread while the caller's thread watches the clock and the worker's CPU time; at a limit the
+ * worker is interrupted, which the interpreter and compiled programs notice at every loop
+ * iteration and input record. A worker that still has not stopped after a grace period (say, deep
+ * in a pathological regex) is abandoned as a daemon thread and cut off from the caller's sinks.
+ */
+final class InProcessRunSupervisor {
+    private static final long POLL_MILLIS = 20;
+    private static final long STOP_GRACE_MILLIS = 2000;
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private InProcessRunSupervisor() {
+    }
+
+    /**
+     * @param cpuTime receives the worker's CPU time when it finishes, or null
+     */
+    static int stream(AwkEngine engine, AwkRunRequest request, Writer stdoutSink, Writer stderrSink, CpuTime cpuTime)
+            throws IOException, InterruptedException {
+        AwkRunLimits limits = request.getLimits();
+        AtomicReference<AwkRunLimit> limitHit = new AtomicReference<>();
+        AtomicLong remainingBytes = new AtomicLong(limits.getMaxOutputBytes());
+        Runnable outputExceeded = () -> limitHit.compareAndSet(null, AwkRunLimit.OUTPUT_BYTES);
+        OutputLimitWriter stdout = new OutputLimitWriter(stdoutSink, remainingBytes, limits, outputExceeded);
+        OutputLimitWriter stderr = new OutputLimitWriter(stderrSink, remainingBytes, limits, outputExceeded);
+
+        AtomicReference<Object> outcome = new AtomicReference<>();
+        Thread worker = new Thread(() -> {
+            long cpuStarted = CpuTime.currentThreadNanos();
+            try {
+                outcome.set(engine.stream(request, stdout, stderr));
+            } catch (Throwable e) {
+                outcome.set(e);
+            } finally {
+                if (cpuTime != null && cpuStarted >= 0) {
+                    cpuTime.offer(CpuTime.currentThreadNanos() - cpuStarted);
+                }
+            }
+        }, "vawk-awk-supervised");
+        worker.setDaemon(true);
+        worker.start();
+
+        long started = System.nanoTime();
+        long wallClockBudget = limits.getWallClock().toNanos();
+        long cpuBudget = TimeUnit.SECONDS.toNanos(limits.getCpuSeconds());
+        boolean measureCpu = cpuBudget > 0 && THREADS.isThreadCpuTimeSupported();
+        try {
+            while (worker.isAlive()) {
+                worker.join(POLL_MILLIS);
+                if (!worker.isAlive() || limitHit.get() != null) {
+                    break;
+                }
+                if (wallClockBudget > 0 && System.nanoTime() - started >= wallClockBudget) {
+                    limitHit.compareAndSet(null, AwkRunLimit.WALL_CLOCK);
+                } else if (measureCpu && THREADS.getThreadCpuTime(worker.getId()) > cpuBudget) {
+                    limitHit.compareAndSet(null, AwkRunLimit.CPU_TIME);
+                }
+            }
+        } catch (InterruptedException e) {
+            worker.interrupt();
+            throw e;
+        }
+        AwkRunLimit limit = limitHit.get();
+        if (limit != null) {
+            worker.interrupt();
+            worker.join(STOP_GRACE_MILLIS);
+            stdout.detach(limit);
+            stderr.detach(limit);
+            throw new AwkRunLimitExceededException(limit, limits);
+        }
+        return result(outcome.get());
+    }
+
+    private static int result(Object outcome) throws IOException, InterruptedException {
+        if (outcome instanceof Integer exit) {
+            return exit;
+        }
+        if (outcome instanceof IOException e) {
+            throw e;
+        }
+        if (outcome instanceof InterruptedException e) {
+            throw e;
+        }
+        if (outcome instanceof RuntimeException e) {
+            throw e;
+        }
+        if (outcome instanceof Error e) {
+            throw e;
+        }
+        throw new IOException("Supervised awk run failed", (Throwable) outcome);
+    }
+}
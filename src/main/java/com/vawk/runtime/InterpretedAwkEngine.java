@@ -0,0 +1,68 @@
+package com.vawk.runtime;
+
+import com.vawk.runtime.awk.AwkInterpreter;
+import com.vawk.runtime.awk.AwkScript;
+import com.vawk.runtime.awk.AwkSyntaxException;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs AWK programs inside the JVM with the bundled POSIX interpreter. Fixture suites run the same
+ * few programs over many small inputs, where spawning awk costs more than the script itself, so
+ * parsed scripts are kept in a small LRU keyed by source text and each run only pays for
+ * evaluation. Syntax errors are reported on stderr with awk's fatal exit status, like the process
+ * engine would.
+ */
+public class InterpretedAwkEngine implements AwkEngine {
+    private static final int MAX_CACHED_SCRIPTS = 64;
+
+    private final Map<String, AwkScript> scripts = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, AwkScript> eldest) {
+            return size() > MAX_CACHED_SCRIPTS;
+        }
+    };
+
+    @Override
+    public int stream(AwkRunRequest request, Writer stdoutSink, Writer stderrSink) throws IOException {
+        AwkScript script;
+        try {
+            script = load(request.getProgram().getPath());
+        } catch (AwkSyntaxException e) {
+            stderrSink.write("awk: " + e.getMessage() + System.lineSeparator());
+            stderrSink.flush();
+            return AwkInterpreter.FATAL_EXIT_STATUS;
+        }
+        List<String> operands = request.getInputFiles().stream().map(Path::toString).toList();
+        return new AwkInterpreter(script).execute(operands, request.getVariables(), request.getStandardInput(), stdoutSink, stderrSink);
+    }
+
+    /**
+     * Reads and parses the program at the given path, reusing an earlier parse of identical source.
+     *
+     * @param programPath path to the AWK source
+     * @return parsed script
+     * @throws AwkSyntaxException when the source is not valid POSIX AWK
+     */
+    public AwkScript load(Path programPath) throws IOException {
+        String source = Files.readString(programPath, StandardCharsets.UTF_8);
+        synchronized (scripts) {
+            AwkScript cached = scripts.get(source);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        AwkScript parsed = AwkScript.parse(source);
+        synchronized (scripts) {
+            scripts.put(source, parsed);
+        }
+        return parsed;
+    }
+}
@@ -0,0 +1,67 @@
+package com.vawk.runtime;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a byte range of a file through memory-mapped windows. The data is never copied into a
+ * heap buffer of its own; the OS pages it in as the reader advances, which keeps heap use flat for
+ * inputs far larger than the JVM. Windows are bounded because a single mapping cannot exceed 2 GiB.
+ */
+final class MappedRangeInputStream extends InputStream {
+    private static final long WINDOW_BYTES = 1L << 26;
+
+    private final FileChannel channel;
+    private final long end;
+    private long position;
+    private MappedByteBuffer window;
+
+    /**
+     * @param channel open channel; the caller keeps ownership and closes it after reading
+     * @param start   first byte of the range
+     * @param end     byte after the last one in the range
+     */
+    MappedRangeInputStream(FileChannel channel, long start, long end) {
+        this.channel = channel;
+        this.position = start;
+        this.end = end;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return nextWindow() ? window.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!nextWindow()) {
+            return -1;
+        }
+        int count = Math.min(length, window.remaining());
+        window.get(buffer, offset, count);
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return window == null ? 0 : window.remaining();
+    }
+
+    private boolean nextWindow() throws IOException {
+        if (window != null && window.hasRemaining()) {
+            return true;
+        }
+        if (position >= end) {
+            return false;
+        }
+        long length = Math.min(WINDOW_BYTES, end - position);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        position += length;
+        return true;
+    }
+}
@@ -0,0 +1,298 @@
+package com.vawk.runtime;
+
+import com.github.difflib.UnifiedDiffUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares expected and actual output as line streams. Both sides are normalized the way test
+ * verdicts always were, by trimming whitespace off the start and end of the whole content. Lines
+ * end at \n only, so a \r inside the content stays significant: CRLF output does not match an LF
+ * golden file. The comparison holds one line per side (plus any run of blank lines whose fate is
+ * still open) and stops at the first difference, so a passing test over a huge golden file
+ * allocates next to nothing. Only a failure pays for a diff, and only for a window of lines around
+ * the first mismatch; the log keeps an excerpt of it.
+ */
+public final class OutputComparator {
+    /** Unchanged lines shown before and after each change in the diff. */
+    public static final int CONTEXT_LINES = 3;
+
+    private static final int LINE_BUFFER_CHARS = 8192;
+    private static final Pattern HUNK_HEADER = Pattern.compile("^@@ -(\\d+)(,\\d+)? \\+(\\d+)(,\\d+)? @@");
+
+    private OutputComparator() {
+    }
+
+    /** Source of readers over one side of the comparison; each call starts from the beginning. */
+    @FunctionalInterface
+    public interface Source {
+        BufferedReader open() throws IOException;
+    }
+
+    /**
+     * Position of the first differing line after normalization. When one side ran out of lines,
+     * its line number is one past its last line.
+     */
+    public record Mismatch(int index, int expectedLine, int actualLine) {
+    }
+
+    /**
+     * Walks both sides line by line until they differ.
+     *
+     * @return the first mismatch, or empty when the normalized contents are equal
+     */
+    public static Optional<Mismatch> firstMismatch(BufferedReader expected, BufferedReader actual) throws IOException {
+        NormalizedLines expectedLines = new NormalizedLines(expected);
+        NormalizedLines actualLines = new NormalizedLines(actual);
+        for (int index = 0; ; index++) {
+            Line expectedLine = expectedLines.next();
+            Line actualLine = actualLines.next();
+            if (expectedLine == null && actualLine == null) {
+                return Optional.empty();
+            }
+            if (expectedLine == null || actualLine == null || !expectedLine.text().equals(actualLine.text())) {
+                return Optional.of(new Mismatch(index, lineNumber(expectedLine, expectedLines), lineNumber(actualLine, actualLines)));
+            }
+        }
+    }
+
+    /**
+     * Builds a unified diff of the lines around a mismatch: {@link #CONTEXT_LINES} before it and
+     * up to the limits' window from it on, diffed within the limits' cost budget. Hunk headers
+     * carry the real line numbers.
+     *
+     * @param expected reopens the expected side
+     * @param actual   reopens the actual side
+     * @param mismatch result of {@link #firstMismatch}
+     * @param limits   window size and cost budget
+     * @return the diff, headed by where the outputs first differ and noting when it is cut short
+     */
+    // Pattern: Trust UX
+    // - A failure shows where the outputs part ways, not a wall of text from a giant fixture.
+    public static String windowedDiff(Source expected, Source actual, Mismatch mismatch, DiffLimits limits) throws IOException {
+        int from = Math.max(0, mismatch.index() - CONTEXT_LINES);
+        int to = mismatch.index() + limits.getWindowLines();
+        Window expectedWindow;
+        try (BufferedReader reader = expected.open()) {
+            expectedWindow = window(reader, from, to);
+        }
+        Window actualWindow;
+        try (BufferedReader reader = actual.open()) {
+            actualWindow = window(reader, from, to);
+        }
+        DiffEngine.Result result = new DiffEngine(limits.getCostBudget()).diff(expectedWindow.lines(), actualWindow.lines());
+        List<String> unified = UnifiedDiffUtils.generateUnifiedDiff("expected", "actual", expectedWindow.lines(), result.patch(), CONTEXT_LINES);
+        StringBuilder diff = new StringBuilder("First difference at expected line ").append(mismatch.expectedLine())
+                .append(", actual line ").append(mismatch.actualLine())
+                .append(result.fellBack() ? " (patience diff: cost budget exceeded)" : "").append('\n');
+        for (String line : unified) {
+            diff.append(shiftHunk(line, expectedWindow.firstLine() - 1, actualWindow.firstLine() - 1)).append('\n');
+        }
+        if (expectedWindow.truncated() || actualWindow.truncated()) {
+            diff.append("... diff limited to ").append(limits.getWindowLines()).append(" lines after the first difference\n");
+        }
+        return diff.substring(0, diff.length() - 1);
+    }
+
+    /**
+     * Cuts a diff down to what the session log keeps: its header and at most the limits' number
+     * of hunks and bytes.
+     *
+     * @return the diff itself when it fits, otherwise its leading part followed by a note of how
+     * much was left out
+     */
+    public static String excerpt(String diff, DiffLimits limits) {
+        String[] lines = diff.split("\n", -1);
+        StringBuilder kept = new StringBuilder();
+        int bytes = 0;
+        int hunks = 0;
+        int index = 0;
+        for (; index < lines.length; index++) {
+            String line = lines[index];
+            if (line.startsWith("@@ ") && ++hunks > limits.getMaxLoggedHunks()) {
+                break;
+            }
+            int lineBytes = line.getBytes(StandardCharsets.UTF_8).length + 1;
+            if (bytes + lineBytes > limits.getMaxLoggedBytes()) {
+                break;
+            }
+            bytes += lineBytes;
+            kept.append(line).append('\n');
+        }
+        if (index == lines.length) {
+            return diff;
+        }
+        int omittedHunks = 0;
+        for (int rest = index; rest < lines.length; rest++) {
+            if (lines[rest].startsWith("@@ ")) {
+                omittedHunks++;
+            }
+        }
+        return kept.append("... ").append(lines.length - index).append(" more diff lines (").append(omittedHunks)
+                .append(" hunks) left out of the log").toString();
+    }
+
+    private static int lineNumber(Line line, NormalizedLines lines) {
+        return line != null ? line.number() : lines.lastNumber() + 1;
+    }
+
+    /** Lines {@code from} (inclusive) to {@code to} (exclusive) of the normalized content. */
+    private static Window window(BufferedReader reader, int from, int to) throws IOException {
+        NormalizedLines lines = new NormalizedLines(reader);
+        List<String> texts = new ArrayList<>();
+        int firstLine = -1;
+        for (int index = 0; index < to; index++) {
+            Line line = lines.next();
+            if (line == null) {
+                return new Window(texts, firstLine < 0 ? lines.lastNumber() + 1 : firstLine, false);
+            }
+            if (index >= from) {
+                if (firstLine < 0) {
+                    firstLine = line.number();
+                }
+                texts.add(line.text());
+            }
+        }
+        return new Window(texts, firstLine, lines.next() != null);
+    }
+
+    private static String shiftHunk(String line, int expectedOffset, int actualOffset) {
+        Matcher header = HUNK_HEADER.matcher(line);
+        if (!header.find()) {
+            return line;
+        }
+        String expectedCount = header.group(2) == null ? "" : header.group(2);
+        String actualCount = header.group(4) == null ? "" : header.group(4);
+        return "@@ -" + (Integer.parseInt(header.group(1)) + expectedOffset) + expectedCount
+                + " +" + (Integer.parseInt(header.group(3)) + actualOffset) + actualCount + " @@" + line.substring(header.end());
+    }
+
+    private record Line(int number, String text) {
+    }
+
+    private record Window(List<String> lines, int firstLine, boolean truncated) {
+    }
+
+    /**
+     * Yields a reader's lines with the content's leading and trailing whitespace (as
+     * {@code String.trim} defines it) removed. Blank lines are held back until a later line shows
+     * they are not trailing, and the latest non-blank line until it is known not to be the last.
+     */
+    private static final class NormalizedLines {
+        private final BufferedReader reader;
+        private final Deque<Line> ready = new ArrayDeque<>();
+        private final List<Line> blanks = new ArrayList<>();
+        private final char[] buffer = new char[LINE_BUFFER_CHARS];
+        private final StringBuilder pending = new StringBuilder();
+        private int position;
+        private int limit;
+        private Line held;
+        private int number;
+        private boolean started;
+        private boolean finished;
+
+        NormalizedLines(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        Line next() throws IOException {
+            while (ready.isEmpty() && !finished) {
+                String text = readLine();
+                if (text == null) {
+                    finished = true;
+                    if (held != null) {
+                        ready.add(new Line(held.number(), stripTrailing(held.text())));
+                    }
+                    break;
+                }
+                number++;
+                if (isBlank(text)) {
+                    if (started) {
+                        blanks.add(new Line(number, text));
+                    }
+                    continue;
+                }
+                if (!started) {
+                    started = true;
+                    text = stripLeading(text);
+                }
+                if (held != null) {
+                    ready.add(held);
+                    ready.addAll(blanks);
+                }
+                blanks.clear();
+                held = new Line(number, text);
+            }
+            return ready.poll();
+        }
+
+        /**
+         * Reads up to the next \n. Unlike {@link BufferedReader#readLine} a \r does not end the
+         * line and stays part of its text, as it does for {@code String.trim().equals}.
+         *
+         * @return the line without its \n, or null at the end of the content
+         */
+        private String readLine() throws IOException {
+            pending.setLength(0);
+            boolean read = false;
+            while (true) {
+                if (position == limit) {
+                    limit = Math.max(0, reader.read(buffer));
+                    position = 0;
+                    if (limit == 0) {
+                        return read ? pending.toString() : null;
+                    }
+                }
+                read = true;
+                int start = position;
+                while (position < limit && buffer[position] != '\n') {
+                    position++;
+                }
+                pending.append(buffer, start, position - start);
+                if (position < limit) {
+                    position++;
+                    return pending.toString();
+                }
+            }
+        }
+
+        /** @return number of the last line read from the underlying reader */
+        int lastNumber() {
+            return number;
+        }
+
+        private static boolean isBlank(String text) {
+            for (int index = 0; index < text.length(); index++) {
+                if (text.charAt(index) > ' ') {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static String stripLeading(String text) {
+            int start = 0;
+            while (start < text.length() && text.charAt(start) <= ' ') {
+                start++;
+            }
+            return text.substring(start);
+        }
+
+        private static String stripTrailing(String text) {
+            int end = text.length();
+            while (end > 0 && text.charAt(end - 1) <= ' ') {
+                end--;
+            }
+            return text.substring(0, end);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.vawk.runtime;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Passes output through to a sink while charging its UTF-8 size against a byte budget shared by
+ * stdout and stderr. The write that crosses the budget forwards only what still fits, runs the
+ * exceeded hook (which stops the run and must tolerate repeated calls) and fails; so do all later
+ * writes. A supervisor can
+ * also detach the writer, so a run it has given up on can no longer reach the caller's sink.
+ */
+final class OutputLimitWriter extends Writer {
+    private final Writer sink;
+    private final AtomicLong remainingBytes;
+    private final AwkRunLimits limits;
+    private final Runnable onExceeded;
+    private volatile AwkRunLimit detachedBy;
+
+    /**
+     * @param sink           destination
+     * @param remainingBytes budget shared with the run's other stream; unlimited when limits has no output cap
+     * @param limits         limits of the run, used for the failure message
+     * @param onExceeded     invoked by every write that finds the budget exhausted
+     */
+    OutputLimitWriter(Writer sink, AtomicLong remainingBytes, AwkRunLimits limits, Runnable onExceeded) {
+        this.sink = sink;
+        this.remainingBytes = remainingBytes;
+        this.limits = limits;
+        this.onExceeded = onExceeded;
+    }
+
+    @Override
+    public void write(char[] buffer, int offset, int length) throws IOException {
+        AwkRunLimit detached = detachedBy;
+        if (detached != null) {
+            throw new AwkRunLimitExceededException(detached, limits);
+        }
+        if (limits.getMaxOutputBytes() == 0) {
+            sink.write(buffer, offset, length);
+            return;
+        }
+        long bytes = 0;
+        for (int index = offset; index < offset + length; index++) {
+            bytes += utf8Size(buffer[index]);
+        }
+        long before = remainingBytes.getAndAdd(-bytes);
+        if (before >= bytes) {
+            sink.write(buffer, offset, length);
+            return;
+        }
+        long allowance = Math.max(before, 0);
+        int fits = 0;
+        while (fits < length && allowance >= utf8Size(buffer[offset + fits])) {
+            allowance -= utf8Size(buffer[offset + fits]);
+            fits++;
+        }
+        sink.write(buffer, offset, fits);
+        sink.flush();
+        onExceeded.run();
+        throw new AwkRunLimitExceededException(AwkRunLimit.OUTPUT_BYTES, limits);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (detachedBy == null) {
+            sink.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    /** Refuses all further output; used when a cancelled run does not stop in time. */
+    void detach(AwkRunLimit limit) {
+        detachedBy = limit;
+    }
+
+    private static int utf8Size(char character) {
+        if (character < 0x80) {
+            return 1;
+        }
+        if (character < 0x800 || Character.isSurrogate(character)) {
+            // A surrogate pair encodes to four bytes, two per half.
+            return 2;
+        }
+        return 3;
+    }
+}
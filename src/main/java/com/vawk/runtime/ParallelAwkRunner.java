@@ -0,0 +1,229 @@
+package com.vawk.runtime;
+
+import com.vawk.domain.VawkSpec;
+import com.vawk.runtime.awk.AwkScript;
+import com.vawk.runtime.awk.AwkSyntaxException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a map-only AWK program over one large input file on several cores. The file is cut into
+ * byte ranges that end on record boundaries, each range is fed from memory-mapped windows to its
+ * own awk run, and outputs are written in shard order, so the result equals a single run whenever
+ * the program keeps no state across records. The spec has to declare that; on top of it, programs
+ * with END actions, range patterns, getline, exit, printing BEGIN actions or references to NR,
+ * FNR, FILENAME or RS are refused, because their output observably depends on seeing the whole
+ * input in one process, and so are programs that reach outside standard output (redirections,
+ * pipes, system()), which every shard would repeat. Later shards' output is captured in
+ * {@link SpooledOutput}, so it spills to disk rather than the heap while the first shard streams.
+ */
+@Component
+public class ParallelAwkRunner {
+    private static final int BOUNDARY_SCAN_BYTES = 1 << 16;
+    /** Variables whose value depends on the records before the current one, across the whole input. */
+    static final List<String> WHOLE_INPUT_VARIABLES = List.of("NR", "FNR", "FILENAME", "RS");
+
+    private final AwkRunner awkRunner;
+
+    public ParallelAwkRunner(AwkRunner awkRunner) {
+        this.awkRunner = awkRunner;
+    }
+
+    /** Byte range [start, end) of the input handled by one run. */
+    public record Shard(long start, long end) {
+    }
+
+    /**
+     * Explains why a request cannot be sharded.
+     *
+     * @param spec    the project's spec, or null when there is none
+     * @param request run parameters; the input file and program path are inspected
+     * @return the reason, or empty when the request may run in parallel
+     */
+    public Optional<String> rejectionReason(VawkSpec spec, AwkRunRequest request) throws IOException {
+        if (spec == null || !Boolean.TRUE.equals(spec.getStateless())) {
+            return Optional.of("spec.yaml does not declare the program stateless (stateless: true)");
+        }
+        if (request.getInputFile() == null || !Files.isRegularFile(request.getInputFile())) {
+            return Optional.of("an input file is required");
+        }
+        if (request.getVariables().containsKey("RS")) {
+            return Optional.of("a custom RS is set");
+        }
+        AwkScript script;
+        try {
+            script = AwkScript.parse(Files.readString(request.getProgram().getPath(), StandardCharsets.UTF_8));
+        } catch (AwkSyntaxException e) {
+            return Optional.of("the program could not be analysed: " + e.getMessage());
+        }
+        if (script.hasEndBlock()) {
+            return Optional.of("the program has an END block");
+        }
+        if (script.usesRangePatterns()) {
+            return Optional.of("the program uses range patterns");
+        }
+        if (script.usesGetline() || script.usesExit()) {
+            return Optional.of("the program uses getline or exit");
+        }
+        if (script.beginMayPrint()) {
+            return Optional.of("the BEGIN action prints, which would repeat once per shard");
+        }
+        for (String variable : WHOLE_INPUT_VARIABLES) {
+            if (script.usesVariable(variable)) {
+                return Optional.of("the program reads " + variable + ", which differs per shard");
+            }
+        }
+        if (!script.isRepeatable()) {
+            return Optional.of("the program reaches outside standard output, which would repeat once per shard");
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Runs the request over record-aligned shards of its input file concurrently and writes the
+     * shards' output in input order. The first shard streams straight into the sinks; later
+     * shards are spooled (in memory up to the runner's threshold, on disk beyond) until their turn.
+     *
+     * @param request    run parameters with an input file; callers check {@link #rejectionReason} first
+     * @param shardCount number of shards, and of concurrent runs
+     * @param stdoutSink destination for the combined standard output
+     * @param stderrSink destination for the combined standard error
+     * @return the first non-zero shard exit code in shard order, or 0
+     */
+    // Pattern: Orchestration
+    // - Deterministic output order: shards are joined in input order whatever order they finish in.
+    public int stream(AwkRunRequest request, int shardCount, Writer stdoutSink, Writer stderrSink)
+            throws IOException, InterruptedException {
+        try (FileChannel channel = FileChannel.open(request.getInputFile(), StandardOpenOption.READ)) {
+            List<Shard> shards = shards(channel, shardCount);
+            if (shards.size() <= 1) {
+                return awkRunner.stream(request, stdoutSink, stderrSink);
+            }
+            ExecutorService executor = Executors.newFixedThreadPool(shards.size() - 1, task -> {
+                Thread thread = new Thread(task, "vawk-shard");
+                thread.setDaemon(true);
+                return thread;
+            });
+            List<Future<Integer>> exits = new ArrayList<>();
+            List<SpooledOutput> outputs = new ArrayList<>();
+            List<SpooledOutput> errors = new ArrayList<>();
+            try {
+                for (Shard shard : shards.subList(1, shards.size())) {
+                    SpooledOutput output = awkRunner.newSpool();
+                    SpooledOutput error = awkRunner.newSpool();
+                    outputs.add(output);
+                    errors.add(error);
+                    exits.add(executor.submit(() -> {
+                        try {
+                            return awkRunner.stream(shardRequest(request, channel, shard), output, error);
+                        } finally {
+                            output.close();
+                            error.close();
+                        }
+                    }));
+                }
+                int exit = awkRunner.stream(shardRequest(request, channel, shards.get(0)), stdoutSink, stderrSink);
+                for (int index = 0; index < exits.size(); index++) {
+                    int shardExit = await(exits.get(index));
+                    copy(outputs.get(index), stdoutSink);
+                    copy(errors.get(index), stderrSink);
+                    if (exit == 0) {
+                        exit = shardExit;
+                    }
+                }
+                return exit;
+            } finally {
+                executor.shutdownNow();
+                for (Future<Integer> pending : exits) {
+                    try {
+                        pending.get();
+                    } catch (ExecutionException | CancellationException e) {
+                        // Already reported, or abandoned because an earlier shard failed.
+                    }
+                }
+                for (SpooledOutput spooled : outputs) {
+                    spooled.delete();
+                }
+                for (SpooledOutput spooled : errors) {
+                    spooled.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Cuts a file into at most the given number of non-empty ranges, each ending just after a
+     * newline (or at end of file).
+     */
+    static List<Shard> shards(FileChannel channel, int shardCount) throws IOException {
+        long size = channel.size();
+        List<Shard> shards = new ArrayList<>();
+        long start = 0;
+        for (int index = 1; index <= shardCount && start < size; index++) {
+            long end = index == shardCount ? size : recordBoundary(channel, Math.max(start, size * index / shardCount), size);
+            if (end > start) {
+                shards.add(new Shard(start, end));
+                start = end;
+            }
+        }
+        return shards;
+    }
+
+    /** First position at or after the target that directly follows a newline. */
+    private static long recordBoundary(FileChannel channel, long target, long size) throws IOException {
+        for (long offset = Math.max(target - 1, 0); offset < size; offset += BOUNDARY_SCAN_BYTES) {
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(BOUNDARY_SCAN_BYTES, size - offset));
+            for (int index = 0; index < window.limit(); index++) {
+                if (window.get(index) == '\n') {
+                    return offset + index + 1;
+                }
+            }
+        }
+        return size;
+    }
+
+    /** Writes a finished shard's captured stream into a sink, reading spooled output from disk. */
+    private static void copy(SpooledOutput captured, Writer sink) throws IOException {
+        try (Reader reader = captured.openReader()) {
+            reader.transferTo(sink);
+        }
+        sink.flush();
+    }
+
+    private static AwkRunRequest shardRequest(AwkRunRequest request, FileChannel channel, Shard shard) {
+        AwkRunRequest shardRequest = new AwkRunRequest(request.getProgram(), null, request.getVariables());
+        shardRequest.setStandardInput(new MappedRangeInputStream(channel, shard.start(), shard.end()));
+        return shardRequest;
+    }
+
+    private static int await(Future<Integer> exit) throws IOException, InterruptedException {
+        try {
+            return exit.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException("Shard run failed", cause);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.vawk.runtime;
+
+import com.github.difflib.algorithm.Change;
+import com.github.difflib.algorithm.DiffAlgorithmI;
+import com.github.difflib.algorithm.DiffAlgorithmListener;
+import com.github.difflib.patch.DeltaType;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Patience diff: lines that occur exactly once on each side anchor the alignment (their longest
+ * increasing run, found by patience sorting), and the gaps between anchors are diffed the same way
+ * after trimming common prefixes and suffixes. A gap without anchors becomes one change. Work grows
+ * roughly linearly with the input rather than with the product of its size and the edit distance,
+ * which is what makes it safe for outputs Myers would choke on; the price is a less minimal diff.
+ */
+final class PatienceDiff<T> implements DiffAlgorithmI<T> {
+
+    @Override
+    public List<Change> computeDiff(List<T> source, List<T> target, DiffAlgorithmListener progress) {
+        if (progress != null) {
+            progress.diffStart();
+        }
+        List<Change> changes = new ArrayList<>();
+        Deque<int[]> ranges = new ArrayDeque<>();
+        ranges.push(new int[] {0, source.size(), 0, target.size()});
+        while (!ranges.isEmpty()) {
+            int[] range = ranges.pop();
+            int sourceStart = range[0];
+            int sourceEnd = range[1];
+            int targetStart = range[2];
+            int targetEnd = range[3];
+            while (sourceStart < sourceEnd && targetStart < targetEnd && source.get(sourceStart).equals(target.get(targetStart))) {
+                sourceStart++;
+                targetStart++;
+            }
+            while (sourceEnd > sourceStart && targetEnd > targetStart && source.get(sourceEnd - 1).equals(target.get(targetEnd - 1))) {
+                sourceEnd--;
+                targetEnd--;
+            }
+            if (sourceStart == sourceEnd && targetStart == targetEnd) {
+                continue;
+            }
+            List<int[]> anchors = sourceStart == sourceEnd || targetStart == targetEnd
+                    ? List.of()
+                    : anchors(source, sourceStart, sourceEnd, target, targetStart, targetEnd);
+            if (anchors.isEmpty()) {
+                DeltaType type = sourceStart == sourceEnd ? DeltaType.INSERT : targetStart == targetEnd ? DeltaType.DELETE : DeltaType.CHANGE;
+                changes.add(new Change(type, sourceStart, sourceEnd, targetStart, targetEnd));
+                continue;
+            }
+            int previousSource = sourceStart;
+            int previousTarget = targetStart;
+            for (int[] anchor : anchors) {
+                ranges.push(new int[] {previousSource, anchor[0], previousTarget, anchor[1]});
+                previousSource = anchor[0] + 1;
+                previousTarget = anchor[1] + 1;
+            }
+            ranges.push(new int[] {previousSource, sourceEnd, previousTarget, targetEnd});
+        }
+        changes.sort(Comparator.<Change>comparingInt(change -> change.startOriginal).thenComparingInt(change -> change.startRevised));
+        if (progress != null) {
+            progress.diffEnd();
+        }
+        return changes;
+    }
+
+    /** Pairs of (source, target) positions of lines unique on both sides, longest run kept in order. */
+    private List<int[]> anchors(List<T> source, int sourceStart, int sourceEnd, List<T> target, int targetStart, int targetEnd) {
+        // Per line: occurrences in source, position in source, occurrences in target, position in target.
+        Map<T, int[]> occurrences = new HashMap<>();
+        for (int index = sourceStart; index < sourceEnd; index++) {
+            int[] counts = occurrences.computeIfAbsent(source.get(index), line -> new int[4]);
+            counts[0]++;
+            counts[1] = index;
+        }
+        for (int index = targetStart; index < targetEnd; index++) {
+            int[] counts = occurrences.get(target.get(index));
+            if (counts != null) {
+                counts[2]++;
+                counts[3] = index;
+            }
+        }
+        List<int[]> candidates = new ArrayList<>();
+        for (int index = sourceStart; index < sourceEnd; index++) {
+            int[] counts = occurrences.get(source.get(index));
+            if (counts[0] == 1 && counts[2] == 1) {
+                candidates.add(new int[] {index, counts[3]});
+            }
+        }
+        return longestIncreasingRun(candidates);
+    }
+
+    /** Patience sorting over target positions; candidates arrive in source order. */
+    private static List<int[]> longestIncreasingRun(List<int[]> candidates) {
+        int[] pileTops = new int[candidates.size()];
+        int[] previous = new int[candidates.size()];
+        int piles = 0;
+        for (int index = 0; index < candidates.size(); index++) {
+            int targetPosition = candidates.get(index)[1];
+            int low = 0;
+            int high = piles;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (candidates.get(pileTops[middle])[1] < targetPosition) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            previous[index] = low > 0 ? pileTops[low - 1] : -1;
+            pileTops[low] = index;
+            if (low == piles) {
+                piles++;
+            }
+        }
+        int[][] run = new int[piles][];
+        for (int index = piles == 0 ? -1 : pileTops[piles - 1], slot = piles - 1; index >= 0; index = previous[index], slot--) {
+            run[slot] = candidates.get(index);
+        }
+        return Arrays.asList(run);
+    }
+}
@@ -0,0 +1,245 @@
+package com.vawk.runtime;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs AWK programs with the system's POSIX awk. Builds the command line with variables and input
+ * file and streams both pipes into caller-supplied sinks. Both pipes are drained concurrently
+ * through fixed-size buffers so a chatty stderr cannot deadlock the child and memory stays flat
+ * regardless of output size. When no input file is given, the request's standard input is handed
+ * to awk: the JVM's own stdin is inherited as a file descriptor, any other stream is copied through
+ * a large transfer buffer. This is the reference engine the interpreted engine is measured against.
+ * Requests with {@link AwkRunLimits} are supervised: a watchdog kills the process tree at the
+ * wall-clock limit, output beyond the byte cap kills it as well, and the CPU limit is set as an
+ * rlimit ({@code ulimit -t}) in a shell that then execs awk, so the kernel itself stops the program.
+ */
+public class ProcessAwkEngine implements AwkEngine {
+    private static final int PIPE_BUFFER_CHARS = 8192;
+    private static final long CPU_SAMPLE_MILLIS = 10;
+    private static final int STDIN_TRANSFER_BYTES = 1 << 16;
+    private static final InputStream JVM_STANDARD_INPUT = System.in;
+    private static final int SIGXCPU_EXIT_STATUS = 128 + 24;
+    private static final int SIGKILL_EXIT_STATUS = 128 + 9;
+    private static final boolean POSIX_SHELL = !System.getProperty("os.name", "").toLowerCase(Locale.ROOT).startsWith("windows");
+
+    /**
+     * Runs awk and streams its stdout and stderr into the given sinks. Stderr is drained on a
+     * helper thread while stdout is drained on the caller's thread, so neither pipe can fill up and
+     * block the child.
+     *
+     * @throws AwkRunLimitExceededException when a limit of the request was hit; the process tree
+     *                                      has been killed by then
+     */
+    // Pattern: Trust UX
+    // - A runaway program is killed with everything it spawned, and the caller learns which limit stopped it.
+    @Override
+    public int stream(AwkRunRequest request, Writer stdoutSink, Writer stderrSink) throws IOException, InterruptedException {
+        return stream(request, stdoutSink, stderrSink, null);
+    }
+
+    /**
+     * Streams like {@link #stream(AwkRunRequest, Writer, Writer)}. When cpuTime is given, the CPU
+     * time of awk and its children is sampled while they run and once more when awk closes its
+     * output; the operating system stops reporting it once the process is reaped, so a run too
+     * short to be sampled counts as 0. Runs with a CPU limit are sampled either way.
+     */
+    int stream(AwkRunRequest request, Writer stdoutSink, Writer stderrSink, CpuTime cpuTime) throws IOException, InterruptedException {
+        AwkRunLimits limits = request.getLimits();
+        long cpuSeconds = POSIX_SHELL ? limits.getCpuSeconds() : 0;
+        CpuTime sampled = cpuTime == null && cpuSeconds > 0 ? new CpuTime() : cpuTime;
+        List<String> command = buildCommand(request);
+        ProcessBuilder builder = new ProcessBuilder(command);
+        InputStream standardInput = request.getInputFile() == null ? request.getStandardInput() : null;
+        boolean inheritStandardInput = standardInput != null && standardInput == JVM_STANDARD_INPUT;
+        if (inheritStandardInput) {
+            builder.redirectInput(ProcessBuilder.Redirect.INHERIT);
+        }
+        Process process = builder.start();
+        AtomicReference<AwkRunLimit> limitHit = new AtomicReference<>();
+        if (!limits.isUnlimited()) {
+            AtomicLong remainingBytes = new AtomicLong(limits.getMaxOutputBytes());
+            Runnable outputExceeded = () -> stop(process, limitHit, AwkRunLimit.OUTPUT_BYTES);
+            stdoutSink = new OutputLimitWriter(stdoutSink, remainingBytes, limits, outputExceeded);
+            stderrSink = new OutputLimitWriter(stderrSink, remainingBytes, limits, outputExceeded);
+            if (!limits.getWallClock().isZero()) {
+                startDaemon("vawk-awk-watchdog", () -> watch(process, limits, limitHit));
+            }
+        }
+        if (!inheritStandardInput) {
+            if (standardInput != null) {
+                startDaemon("vawk-awk-stdin", () -> feed(standardInput, process.getOutputStream()));
+            } else {
+                process.getOutputStream().close();
+            }
+        }
+
+        if (sampled != null) {
+            startDaemon("vawk-awk-cpu", () -> sampleCpu(process, sampled));
+        }
+
+        AtomicReference<IOException> stderrFailure = new AtomicReference<>();
+        Writer errorSink = stderrSink;
+        Thread stderrDrainer = startDaemon("vawk-awk-stderr", () -> {
+            try {
+                drain(process.getErrorStream(), errorSink);
+            } catch (IOException e) {
+                stderrFailure.set(e);
+            }
+        });
+
+        try {
+            drain(process.getInputStream(), stdoutSink);
+        } catch (IOException e) {
+            destroyTree(process);
+            throw e;
+        } finally {
+            stderrDrainer.join();
+        }
+        if (sampled != null) {
+            sampled.offer(cpuNanos(process));
+        }
+        int exit = process.waitFor();
+        if (sampled != null) {
+            // Exited before a sample could see it: its CPU time is below the sampling resolution.
+            sampled.offer(0);
+        }
+        if (cpuSeconds > 0 && stoppedAtCpuLimit(exit, sampled, cpuSeconds)) {
+            limitHit.compareAndSet(null, AwkRunLimit.CPU_TIME);
+        }
+        if (limitHit.get() != null) {
+            throw new AwkRunLimitExceededException(limitHit.get(), limits);
+        }
+        if (stderrFailure.get() != null) {
+            throw stderrFailure.get();
+        }
+        return exit;
+    }
+
+    /**
+     * Tells whether the kernel stopped awk at its CPU limit. SIGXCPU is raised only by the soft
+     * limit. SIGKILL is also sent by the OOM killer or an outside kill -9, so it counts only when
+     * awk's measured CPU time reached the hard limit, less the one sampling interval the last
+     * sample can lag behind.
+     */
+    private static boolean stoppedAtCpuLimit(int exit, CpuTime cpuTime, long cpuSeconds) {
+        if (exit == SIGXCPU_EXIT_STATUS) {
+            return true;
+        }
+        Long usedMillis = cpuTime.millis();
+        return exit == SIGKILL_EXIT_STATUS && usedMillis != null
+                && usedMillis >= TimeUnit.SECONDS.toMillis(cpuSeconds + 1) - CPU_SAMPLE_MILLIS;
+    }
+
+    private void sampleCpu(Process process, CpuTime cpuTime) {
+        try {
+            do {
+                cpuTime.offer(cpuNanos(process));
+            } while (!process.waitFor(CPU_SAMPLE_MILLIS, TimeUnit.MILLISECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** CPU time of the process plus its live descendants, or -1 when it is no longer reported. */
+    private static long cpuNanos(Process process) {
+        long total = process.info().totalCpuDuration().map(Duration::toNanos).orElse(-1L);
+        if (total < 0) {
+            return -1;
+        }
+        for (ProcessHandle child : (Iterable<ProcessHandle>) process.descendants()::iterator) {
+            total += child.info().totalCpuDuration().map(Duration::toNanos).orElse(0L);
+        }
+        return total;
+    }
+
+    private void watch(Process process, AwkRunLimits limits, AtomicReference<AwkRunLimit> limitHit) {
+        try {
+            if (!process.waitFor(limits.getWallClock().toMillis(), TimeUnit.MILLISECONDS)) {
+                stop(process, limitHit, AwkRunLimit.WALL_CLOCK);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void stop(Process process, AtomicReference<AwkRunLimit> limitHit, AwkRunLimit limit) {
+        limitHit.compareAndSet(null, limit);
+        destroyTree(process);
+    }
+
+    /**
+     * Kills awk and everything it started through system() or pipes. Descendants are collected
+     * before the parent dies, while they can still be found through it.
+     */
+    private static void destroyTree(Process process) {
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+    }
+
+    private List<String> buildCommand(AwkRunRequest request) {
+        List<String> command = new ArrayList<>();
+        long cpuSeconds = request.getLimits().getCpuSeconds();
+        if (cpuSeconds > 0 && POSIX_SHELL) {
+            // ulimit sets RLIMIT_CPU for the shell and exec hands it, and the pid, to awk. The soft limit
+            // raises SIGXCPU; the hard limit a second later makes the kernel SIGKILL a program that ignores it.
+            command.addAll(List.of("sh", "-c", "ulimit -S -t \"$1\" && ulimit -H -t \"$(($1 + 1))\" && shift && exec \"$@\"",
+                    "vawk-awk", Long.toString(cpuSeconds)));
+        }
+        command.add("awk");
+        for (Map.Entry<String, String> entry : request.getVariables().entrySet()) {
+            command.add("-v");
+            command.add(entry.getKey() + "=" + entry.getValue());
+        }
+        command.add("-f");
+        command.add(request.getProgram().getPath().toString());
+        for (Path inputFile : request.getInputFiles()) {
+            command.add(inputFile.toString());
+        }
+        return command;
+    }
+
+    private Thread startDaemon(String name, Runnable task) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private void feed(InputStream source, OutputStream processInput) {
+        byte[] buffer = new byte[STDIN_TRANSFER_BYTES];
+        try (OutputStream target = processInput) {
+            int read;
+            while ((read = source.read(buffer)) != -1) {
+                target.write(buffer, 0, read);
+            }
+        } catch (IOException ignored) {
+            // awk may exit before consuming all input (for example via exit); a broken pipe is expected.
+        }
+    }
+
+    private void drain(InputStream in, Writer sink) throws IOException {
+        char[] buffer = new char[PIPE_BUFFER_CHARS];
+        try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                sink.write(buffer, 0, read);
+                sink.flush();
+            }
+        }
+    }
+}
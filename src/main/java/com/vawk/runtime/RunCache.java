@@ -0,0 +1,294 @@
+package com.vawk.runtime;
+
+import com.vawk.util.Hashing;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * Persistent cache of captured run results, keyed by content: the program hash, the engine that
+ * ran it, a fingerprint of the input file and the sorted -v variables. Refinement loops and test suites re-run the same
+ * combinations constantly; a hit returns the stored exit code, stdout and stderr without running
+ * awk at all. Input fingerprints are SHA-256 digests, remembered per path with the size and mtime
+ * they were computed for, so an unchanged input is not re-read on every lookup. Entries live under
+ * .vawk/cache/runs, one directory each; the directory's mtime is its last use, and the least
+ * recently used entries are evicted once the cache outgrows its byte budget. The entries' total
+ * size is kept as a running count next to the fingerprints, so a store does not walk the cache;
+ * the tree is only walked, and the count corrected, when the count says the budget is exceeded.
+ */
+public class RunCache {
+    private static final String FINGERPRINTS = "inputs.tsv";
+    /** Line of the fingerprint file holding the running total, distinct from any absolute path. */
+    private static final String TOTAL_BYTES = "#bytes";
+    private static final String EXIT = "exit";
+    private static final String STDOUT = "stdout";
+    private static final String STDERR = "stderr";
+
+    private final Path directory;
+    private final long maxBytes;
+    private Map<String, Fingerprint> fingerprints;
+    private long totalBytes = -1;
+
+    /**
+     * @param directory cache root, created on first store
+     * @param maxBytes  total size the entries may occupy before the least recently used are evicted
+     */
+    public RunCache(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /** Content hash of an input file as of the size and modification time it was hashed at. */
+    private record Fingerprint(long size, long modifiedMillis, String sha256) {
+    }
+
+    /**
+     * Computes the cache key of a request.
+     *
+     * @param request     the run; its standard input must be unset when it has no input file
+     * @param programHash hash of the program source that will run
+     * @param engine      name of the engine that will run it, since engines may differ at the edges
+     * @return the key, or empty when the input cannot be fingerprinted (piped stdin, not a file) or
+     * spans several files
+     */
+    public Optional<String> key(AwkRunRequest request, String programHash, String engine) throws IOException {
+        if (!request.getAdditionalInputFiles().isEmpty()) {
+            return Optional.empty();
+        }
+        String input = "-";
+        if (request.getInputFile() != null) {
+            if (!Files.isRegularFile(request.getInputFile())) {
+                return Optional.empty();
+            }
+            input = fingerprint(request.getInputFile());
+        } else if (request.getStandardInput() != null) {
+            return Optional.empty();
+        }
+        StringBuilder material = new StringBuilder(programHash).append('\n').append(engine).append('\n').append(input).append('\n');
+        for (Map.Entry<String, String> variable : new TreeMap<>(request.getVariables()).entrySet()) {
+            material.append(variable.getKey().length()).append(':').append(variable.getKey())
+                    .append(variable.getValue().length()).append(':').append(variable.getValue()).append('\n');
+        }
+        return Optional.of(Hashing.sha256(material.toString()));
+    }
+
+    /**
+     * Returns a stored result and marks it recently used.
+     *
+     * @param key            key from {@link #key}
+     * @param spoolDirectory where large restored output is spooled
+     * @param thresholdChars characters of restored output kept in memory
+     * @return the result, owned by the caller, or empty on a miss
+     */
+    public synchronized Optional<AwkRunResult> lookup(String key, Path spoolDirectory, long thresholdChars) throws IOException {
+        Path entry = directory.resolve(key);
+        int exitCode;
+        try {
+            exitCode = Integer.parseInt(Files.readString(entry.resolve(EXIT), StandardCharsets.UTF_8).trim());
+        } catch (NoSuchFileException | NumberFormatException e) {
+            return Optional.empty();
+        }
+        SpooledOutput stdout = SpooledOutput.copyOf(entry.resolve(STDOUT), spoolDirectory, thresholdChars);
+        SpooledOutput stderr;
+        try {
+            stderr = SpooledOutput.copyOf(entry.resolve(STDERR), spoolDirectory, thresholdChars);
+        } catch (IOException e) {
+            stdout.delete();
+            throw e;
+        }
+        Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        AwkRunResult result = AwkRunResult.spooled(exitCode, stdout, stderr);
+        result.setCached(true);
+        return Optional.of(result);
+    }
+
+    /**
+     * Stores a completed run. Results stopped at a limit, and results too large to be worth
+     * keeping (over a quarter of the budget), are not stored.
+     */
+    public synchronized void store(String key, AwkRunResult result) throws IOException {
+        if (result.getLimitExceeded() != null) {
+            return;
+        }
+        Files.createDirectories(directory);
+        long before = totalBytes();
+        Path staging = Files.createTempDirectory(directory, "store-");
+        try {
+            long stdoutBytes;
+            long stderrBytes;
+            try (InputStream in = result.openStdout()) {
+                stdoutBytes = Files.copy(in, staging.resolve(STDOUT));
+            }
+            try (InputStream in = result.openStderr()) {
+                stderrBytes = Files.copy(in, staging.resolve(STDERR));
+            }
+            if (stdoutBytes + stderrBytes > maxBytes / 4) {
+                return;
+            }
+            String exit = Integer.toString(result.getExitCode());
+            Files.writeString(staging.resolve(EXIT), exit, StandardCharsets.UTF_8);
+            Path entry = directory.resolve(key);
+            long replaced = Files.exists(entry) ? treeSize(entry) : 0;
+            deleteTree(entry);
+            Files.move(staging, entry, StandardCopyOption.ATOMIC_MOVE);
+            totalBytes = Math.max(0, before - replaced) + stdoutBytes + stderrBytes + exit.length();
+        } finally {
+            deleteTree(staging);
+        }
+        if (totalBytes > maxBytes) {
+            evict();
+        }
+        saveFingerprints();
+    }
+
+    /** Running total of the entries' sizes, counted by walking the cache once when never recorded. */
+    private long totalBytes() throws IOException {
+        fingerprints();
+        if (totalBytes < 0) {
+            totalBytes = 0;
+            try (Stream<Path> listing = Files.list(directory)) {
+                for (Path entry : (Iterable<Path>) listing.filter(Files::isDirectory)::iterator) {
+                    totalBytes += treeSize(entry);
+                }
+            }
+        }
+        return totalBytes;
+    }
+
+    /**
+     * Deletes least recently used entries until the cache fits its budget, recounting the entries'
+     * sizes on the way (other processes sharing the cache may have moved the running total).
+     */
+    private void evict() throws IOException {
+        List<Path> entries = new ArrayList<>();
+        Map<Path, Long> sizes = new HashMap<>();
+        long total = 0;
+        try (Stream<Path> listing = Files.list(directory)) {
+            for (Path entry : (Iterable<Path>) listing.filter(Files::isDirectory)::iterator) {
+                long size = treeSize(entry);
+                entries.add(entry);
+                sizes.put(entry, size);
+                total += size;
+            }
+        }
+        entries.sort(Comparator.comparing(RunCache::lastUsed));
+        for (Path entry : entries) {
+            if (total <= maxBytes) {
+                break;
+            }
+            deleteTree(entry);
+            total -= sizes.get(entry);
+        }
+        totalBytes = total;
+    }
+
+    private String fingerprint(Path input) throws IOException {
+        Path absolute = input.toAbsolutePath().normalize();
+        String path = absolute.toString();
+        long size = Files.size(absolute);
+        long modified = Files.getLastModifiedTime(absolute).toMillis();
+        synchronized (this) {
+            Fingerprint known = fingerprints().get(path);
+            if (known != null && known.size() == size && known.modifiedMillis() == modified) {
+                return known.sha256();
+            }
+        }
+        String sha256 = Hashing.sha256(absolute);
+        synchronized (this) {
+            fingerprints.put(path, new Fingerprint(size, modified, sha256));
+            saveFingerprints();
+        }
+        return sha256;
+    }
+
+    private Map<String, Fingerprint> fingerprints() throws IOException {
+        if (fingerprints == null) {
+            fingerprints = new HashMap<>();
+            Path file = directory.resolve(FINGERPRINTS);
+            if (Files.exists(file)) {
+                for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                    String[] parts = line.split("\t");
+                    if (parts.length == 2 && parts[0].equals(TOTAL_BYTES)) {
+                        try {
+                            totalBytes = Long.parseLong(parts[1]);
+                        } catch (NumberFormatException ignored) {
+                            // Recounted on the next store.
+                        }
+                    } else if (parts.length == 4) {
+                        try {
+                            fingerprints.put(parts[0], new Fingerprint(Long.parseLong(parts[1]), Long.parseLong(parts[2]), parts[3]));
+                        } catch (NumberFormatException ignored) {
+                            // A damaged line only costs a re-hash.
+                        }
+                    }
+                }
+            }
+        }
+        return fingerprints;
+    }
+
+    private void saveFingerprints() throws IOException {
+        Files.createDirectories(directory);
+        Path staging = Files.createTempFile(directory, FINGERPRINTS, ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(staging, StandardCharsets.UTF_8)) {
+            if (totalBytes >= 0) {
+                writer.write(TOTAL_BYTES + "\t" + totalBytes + "\n");
+            }
+            for (Map.Entry<String, Fingerprint> entry : fingerprints().entrySet()) {
+                if (entry.getKey().indexOf('\t') >= 0 || entry.getKey().indexOf('\n') >= 0) {
+                    continue;
+                }
+                Fingerprint fingerprint = entry.getValue();
+                writer.write(entry.getKey() + "\t" + fingerprint.size() + "\t" + fingerprint.modifiedMillis() + "\t" + fingerprint.sha256() + "\n");
+            }
+        }
+        Files.move(staging, directory.resolve(FINGERPRINTS), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static FileTime lastUsed(Path entry) {
+        try {
+            return Files.getLastModifiedTime(entry);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static long treeSize(Path entry) throws IOException {
+        try (Stream<Path> files = Files.walk(entry)) {
+            return files.filter(Files::isRegularFile).mapToLong(file -> {
+                try {
+                    return Files.size(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).sum();
+        }
+    }
+
+    private static void deleteTree(Path root) throws IOException {
+        if (!Files.exists(root)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(root)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
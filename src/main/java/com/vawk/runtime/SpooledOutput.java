@@ -0,0 +1,199 @@
+package com.vawk.runtime;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+/**
+ * Captures one output stream of an AWK run. Text stays in memory up to a threshold; past it,
+ * everything written so far and everything after is spooled to a temp file, so a multi-gigabyte
+ * output costs disk rather than heap. Readers get the content back lazily as bytes, characters or
+ * lines, whichever way it is stored. Write it fully and close it before reading; {@link #delete()}
+ * removes the spool file once the output is no longer needed.
+ */
+public final class SpooledOutput extends Writer {
+    /** Characters kept in memory before spooling when no threshold is configured (1 MiB of ASCII). */
+    public static final long DEFAULT_THRESHOLD_CHARS = 1L << 20;
+
+    private final Path spoolDirectory;
+    private final long thresholdChars;
+    private StringBuilder memory = new StringBuilder();
+    private Path file;
+    private Writer fileWriter;
+    private long length;
+    private long byteLength;
+    private boolean closed;
+
+    /**
+     * @param spoolDirectory directory for the spool file, created on first spill
+     * @param thresholdChars characters kept in memory before spilling to disk
+     */
+    public SpooledOutput(Path spoolDirectory, long thresholdChars) {
+        this.spoolDirectory = spoolDirectory;
+        this.thresholdChars = thresholdChars;
+    }
+
+    /** Wraps text that is already in memory; it never spills. */
+    public static SpooledOutput of(String text) {
+        SpooledOutput output = new SpooledOutput(null, Long.MAX_VALUE);
+        output.memory.append(text);
+        output.length = text.length();
+        output.byteLength = utf8Length(text, 0, text.length());
+        return output;
+    }
+
+    /** Reads a UTF-8 file into a new output, spooling it again if it is past the threshold. */
+    public static SpooledOutput copyOf(Path source, Path spoolDirectory, long thresholdChars) throws IOException {
+        SpooledOutput output = new SpooledOutput(spoolDirectory, thresholdChars);
+        try (Reader reader = Files.newBufferedReader(source, StandardCharsets.UTF_8)) {
+            reader.transferTo(output);
+        } catch (IOException e) {
+            output.delete();
+            throw e;
+        }
+        output.close();
+        return output;
+    }
+
+    @Override
+    public void write(char[] buffer, int offset, int count) throws IOException {
+        if (fileWriter == null && memory.length() + (long) count > thresholdChars) {
+            spill();
+        }
+        if (fileWriter != null) {
+            fileWriter.write(buffer, offset, count);
+        } else {
+            memory.append(buffer, offset, count);
+        }
+        length += count;
+        byteLength += utf8Length(CharBuffer.wrap(buffer), offset, offset + count);
+    }
+
+    @Override
+    public void write(String text, int offset, int count) throws IOException {
+        if (fileWriter == null && memory.length() + (long) count > thresholdChars) {
+            spill();
+        }
+        if (fileWriter != null) {
+            fileWriter.write(text, offset, count);
+        } else {
+            memory.append(text, offset, offset + count);
+        }
+        length += count;
+        byteLength += utf8Length(text, offset, offset + count);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (fileWriter != null && !closed) {
+            fileWriter.flush();
+        }
+    }
+
+    /** Finishes writing; the content stays readable until {@link #delete()}. */
+    @Override
+    public void close() throws IOException {
+        if (fileWriter != null && !closed) {
+            fileWriter.close();
+        }
+        closed = true;
+    }
+
+    private void spill() throws IOException {
+        Files.createDirectories(spoolDirectory);
+        file = Files.createTempFile(spoolDirectory, "run-", ".out");
+        fileWriter = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+        fileWriter.append(memory);
+        memory = null;
+    }
+
+    /** @return number of characters written */
+    public long length() {
+        return length;
+    }
+
+    /** @return size of the content encoded as UTF-8 */
+    public long byteLength() {
+        return byteLength;
+    }
+
+    /** UTF-8 size of the characters; a surrogate pair counts 2 + 2, a four-byte sequence. */
+    private static long utf8Length(CharSequence text, int from, int to) {
+        long bytes = 0;
+        for (int index = from; index < to; index++) {
+            char character = text.charAt(index);
+            bytes += character < 0x80 ? 1 : character < 0x800 ? 2 : Character.isSurrogate(character) ? 2 : 3;
+        }
+        return bytes;
+    }
+
+    /** @return true when the content lives in a spool file rather than in memory */
+    public boolean isSpooled() {
+        return file != null;
+    }
+
+    /** @return the content as UTF-8 bytes, read lazily from memory or the spool file */
+    public InputStream openStream() throws IOException {
+        if (file != null) {
+            return Files.newInputStream(file);
+        }
+        return new ByteArrayInputStream(memory.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** @return a reader over the content; the caller closes it */
+    public BufferedReader openReader() throws IOException {
+        if (file != null) {
+            return Files.newBufferedReader(file, StandardCharsets.UTF_8);
+        }
+        return new BufferedReader(new StringReader(memory.toString()));
+    }
+
+    /**
+     * @return the content's lines, read lazily; close the stream to release the spool file handle
+     */
+    public Stream<String> lines() throws IOException {
+        BufferedReader reader = openReader();
+        return reader.lines().onClose(() -> {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /** Removes the spool file, if any. The content is gone afterwards. */
+    public void delete() throws IOException {
+        close();
+        if (file != null) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * @return the whole content as one string; this materializes spooled output on the heap, so
+     * large outputs should be read through {@link #openReader()} or {@link #lines()} instead
+     */
+    @Override
+    public String toString() {
+        if (file == null) {
+            return memory.toString();
+        }
+        try {
+            flush();
+            return Files.readString(file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.vawk.runtime;
+
+import com.vawk.domain.TestTimings;
+
+/**
+ * Knobs for one {@link AwkTestRunner#runTests} call that callers such as the test command expose
+ * as flags. The defaults are what generation and refinement loops use.
+ */
+public class TestRunOptions {
+    private boolean useCache = true;
+    private int jobs = Runtime.getRuntime().availableProcessors();
+    private TestTimings timings;
+    private boolean multiplex;
+
+    public TestRunOptions() {
+    }
+
+    /** Options with every knob at its default. */
+    public static TestRunOptions defaults() {
+        return new TestRunOptions();
+    }
+
+    /**
+     * @return false to execute every case even when the run cache holds an identical run
+     */
+    public boolean isUseCache() {
+        return useCache;
+    }
+
+    public void setUseCache(boolean useCache) {
+        this.useCache = useCache;
+    }
+
+    /**
+     * @return number of cases run concurrently; defaults to the number of cores, 1 runs them in turn
+     */
+    public int getJobs() {
+        return jobs;
+    }
+
+    public void setJobs(int jobs) {
+        this.jobs = jobs;
+    }
+
+    /**
+     * @return timing history used to start failing and long cases first; null runs cases in
+     * declaration order
+     */
+    public TestTimings getTimings() {
+        return timings;
+    }
+
+    public void setTimings(TestTimings timings) {
+        this.timings = timings;
+    }
+
+    /**
+     * @return true to let tiny fixtures of an accepted program share one awk process; callers only
+     * set it when the spec declares the program stateless
+     */
+    public boolean isMultiplex() {
+        return multiplex;
+    }
+
+    public void setMultiplex(boolean multiplex) {
+        this.multiplex = multiplex;
+    }
+}
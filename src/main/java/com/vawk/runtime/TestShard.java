@@ -0,0 +1,71 @@
+package com.vawk.runtime;
+
+import com.vawk.util.Hashing;
+
+import java.util.Objects;
+
+/**
+ * One slice of a test suite, written {@code i/n} with i counting from 1. A case belongs to the
+ * shard picked by a stable hash of its name, so every executor given the same n agrees on the
+ * split without coordinating, and adding or removing a case never moves the others.
+ */
+public final class TestShard {
+    private final int index;
+    private final int count;
+
+    public TestShard(int index, int count) {
+        if (count < 1 || index < 1 || index > count) {
+            throw new IllegalArgumentException("Shard must be i/n with 1 <= i <= n, got " + index + "/" + count);
+        }
+        this.index = index;
+        this.count = count;
+    }
+
+    /**
+     * @param text shard in {@code i/n} form, e.g. {@code 2/4}
+     * @throws IllegalArgumentException when the text is not a valid shard
+     */
+    public static TestShard parse(String text) {
+        int slash = text == null ? -1 : text.indexOf('/');
+        if (slash < 0) {
+            throw new IllegalArgumentException("Shard must be i/n, got " + text);
+        }
+        try {
+            return new TestShard(Integer.parseInt(text.substring(0, slash).trim()), Integer.parseInt(text.substring(slash + 1).trim()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Shard must be i/n, got " + text);
+        }
+    }
+
+    /** @return true when the named case runs in this shard */
+    public boolean includes(String caseName) {
+        String digest = Hashing.sha256(caseName == null ? "" : caseName);
+        long bucket = Long.parseLong(digest.substring(0, 12), 16);
+        return bucket % count == index - 1;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return index + "/" + count;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof TestShard that)) return false;
+        return index == that.index && count == that.count;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(index, count);
+    }
+}
@@ -0,0 +1,49 @@
+package com.vawk.runtime.awk;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * AWK associative array. Keys are strings (numeric subscripts are converted first) and iteration
+ * follows insertion order, which keeps for-in output stable from run to run.
+ */
+final class AwkArray {
+    private final Map<String, AwkValue> elements = new LinkedHashMap<>();
+
+    /** Reads an element; like awk, referencing a missing element creates it. */
+    AwkValue get(String key) {
+        AwkValue value = elements.get(key);
+        if (value == null) {
+            elements.put(key, AwkValue.UNINITIALIZED);
+            return AwkValue.UNINITIALIZED;
+        }
+        return value;
+    }
+
+    boolean contains(String key) {
+        return elements.containsKey(key);
+    }
+
+    void put(String key, AwkValue value) {
+        elements.put(key, value);
+    }
+
+    void remove(String key) {
+        elements.remove(key);
+    }
+
+    void clear() {
+        elements.clear();
+    }
+
+    int size() {
+        return elements.size();
+    }
+
+    /** Snapshot of the keys, so a for-in body may delete elements while iterating. */
+    List<String> keys() {
+        return new ArrayList<>(elements.keySet());
+    }
+}
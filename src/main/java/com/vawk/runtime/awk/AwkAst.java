@@ -0,0 +1,469 @@
+package com.vawk.runtime.awk;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Abstract syntax tree for a parsed AWK program. Nodes are plain data: every expression and
+ * statement carries a kind tag so evaluators can dispatch with a switch instead of a visitor, and
+ * variable references are resolved to slots at parse time so lookups at run time are array reads.
+ */
+final class AwkAst {
+    static final int NR = 0;
+    static final int NF = 1;
+    static final int FNR = 2;
+    static final int FS = 3;
+    static final int OFS = 4;
+    static final int ORS = 5;
+    static final int RS = 6;
+    static final int FILENAME = 7;
+    static final int SUBSEP = 8;
+    static final int RSTART = 9;
+    static final int RLENGTH = 10;
+    static final int CONVFMT = 11;
+    static final int OFMT = 12;
+
+    static final Map<String, Integer> SPECIAL_VARIABLES = Map.ofEntries(
+            Map.entry("NR", NR), Map.entry("NF", NF), Map.entry("FNR", FNR), Map.entry("FS", FS),
+            Map.entry("OFS", OFS), Map.entry("ORS", ORS), Map.entry("RS", RS), Map.entry("FILENAME", FILENAME),
+            Map.entry("SUBSEP", SUBSEP), Map.entry("RSTART", RSTART), Map.entry("RLENGTH", RLENGTH),
+            Map.entry("CONVFMT", CONVFMT), Map.entry("OFMT", OFMT));
+
+    private AwkAst() {
+    }
+
+    enum ExpressionKind {
+        NUMBER, STRING, REGEX, GLOBAL, LOCAL, SPECIAL, FIELD, ELEMENT,
+        ASSIGN, CONDITIONAL, OR, AND, IN, MATCH, COMPARE, CONCAT, BINARY, UNARY, INCREMENT,
+        CALL, BUILTIN, GETLINE, GROUPING
+    }
+
+    enum StatementKind {
+        EXPRESSION, PRINT, PRINTF, IF, WHILE, DO, FOR, FOR_IN, BLOCK, NEXT, NEXTFILE, EXIT, RETURN,
+        BREAK, CONTINUE, DELETE
+    }
+
+    /** Operators shared by binary arithmetic, comparison, and compound assignment nodes. */
+    enum Operator {
+        ADD, SUBTRACT, MULTIPLY, DIVIDE, MODULO, POWER,
+        LESS, LESS_EQUAL, GREATER, GREATER_EQUAL, EQUAL, NOT_EQUAL,
+        NEGATE, PLUS, NOT
+    }
+
+    /** Output or input redirection attached to print/printf/getline. */
+    enum Redirect {
+        NONE, FILE, APPEND, PIPE
+    }
+
+    abstract static class Expression {
+        final ExpressionKind kind;
+
+        Expression(ExpressionKind kind) {
+            this.kind = kind;
+        }
+
+        boolean isLvalue() {
+            return kind == ExpressionKind.GLOBAL || kind == ExpressionKind.LOCAL || kind == ExpressionKind.SPECIAL
+                    || kind == ExpressionKind.FIELD || kind == ExpressionKind.ELEMENT;
+        }
+    }
+
+    static final class NumberLiteral extends Expression {
+        final double value;
+        final AwkValue constant;
+
+        NumberLiteral(double value) {
+            super(ExpressionKind.NUMBER);
+            this.value = value;
+            this.constant = AwkValue.of(value);
+        }
+    }
+
+    static final class StringLiteral extends Expression {
+        final String value;
+        final AwkValue constant;
+
+        StringLiteral(String value) {
+            super(ExpressionKind.STRING);
+            this.value = value;
+            this.constant = AwkValue.of(value);
+        }
+    }
+
+    /** A /regex/ literal; as a value it means "$0 ~ /regex/". */
+    static final class RegexLiteral extends Expression {
+        final String source;
+        final Pattern pattern;
+
+        RegexLiteral(String source, Pattern pattern) {
+            super(ExpressionKind.REGEX);
+            this.source = source;
+            this.pattern = pattern;
+        }
+    }
+
+    /** Global or function-local variable resolved to a slot; may hold a scalar or an array. */
+    static final class Variable extends Expression {
+        final String name;
+        final int slot;
+
+        Variable(ExpressionKind kind, String name, int slot) {
+            super(kind);
+            this.name = name;
+            this.slot = slot;
+        }
+    }
+
+    static final class SpecialVariable extends Expression {
+        final String name;
+        final int id;
+
+        SpecialVariable(String name, int id) {
+            super(ExpressionKind.SPECIAL);
+            this.name = name;
+            this.id = id;
+        }
+    }
+
+    static final class Field extends Expression {
+        final Expression index;
+
+        Field(Expression index) {
+            super(ExpressionKind.FIELD);
+            this.index = index;
+        }
+    }
+
+    static final class Element extends Expression {
+        final Variable array;
+        final List<Expression> subscripts;
+
+        Element(Variable array, List<Expression> subscripts) {
+            super(ExpressionKind.ELEMENT);
+            this.array = array;
+            this.subscripts = subscripts;
+        }
+    }
+
+    /** Plain (operator == null) or compound assignment. */
+    static final class Assign extends Expression {
+        final Expression target;
+        final Operator operator;
+        final Expression value;
+
+        Assign(Expression target, Operator operator, Expression value) {
+            super(ExpressionKind.ASSIGN);
+            this.target = target;
+            this.operator = operator;
+            this.value = value;
+        }
+    }
+
+    static final class Conditional extends Expression {
+        final Expression condition;
+        final Expression whenTrue;
+        final Expression whenFalse;
+
+        Conditional(Expression condition, Expression whenTrue, Expression whenFalse) {
+            super(ExpressionKind.CONDITIONAL);
+            this.condition = condition;
+            this.whenTrue = whenTrue;
+            this.whenFalse = whenFalse;
+        }
+    }
+
+    /** Short-circuit OR / AND. */
+    static final class Logical extends Expression {
+        final Expression left;
+        final Expression right;
+
+        Logical(ExpressionKind kind, Expression left, Expression right) {
+            super(kind);
+            this.left = left;
+            this.right = right;
+        }
+    }
+
+    static final class In extends Expression {
+        final List<Expression> subscripts;
+        final Variable array;
+
+        In(List<Expression> subscripts, Variable array) {
+            super(ExpressionKind.IN);
+            this.subscripts = subscripts;
+            this.array = array;
+        }
+    }
+
+    static final class Match extends Expression {
+        final Expression subject;
+        final Expression regex;
+        final boolean negated;
+
+        Match(Expression subject, Expression regex, boolean negated) {
+            super(ExpressionKind.MATCH);
+            this.subject = subject;
+            this.regex = regex;
+            this.negated = negated;
+        }
+    }
+
+    /** Relational comparison or arithmetic, depending on kind. */
+    static final class Binary extends Expression {
+        final Operator operator;
+        final Expression left;
+        final Expression right;
+
+        Binary(ExpressionKind kind, Operator operator, Expression left, Expression right) {
+            super(kind);
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+    }
+
+    static final class Concat extends Expression {
+        final List<Expression> parts;
+
+        Concat(List<Expression> parts) {
+            super(ExpressionKind.CONCAT);
+            this.parts = parts;
+        }
+    }
+
+    static final class Unary extends Expression {
+        final Operator operator;
+        final Expression operand;
+
+        Unary(Operator operator, Expression operand) {
+            super(ExpressionKind.UNARY);
+            this.operator = operator;
+            this.operand = operand;
+        }
+    }
+
+    static final class Increment extends Expression {
+        final Expression target;
+        final boolean increment;
+        final boolean prefix;
+
+        Increment(Expression target, boolean increment, boolean prefix) {
+            super(ExpressionKind.INCREMENT);
+            this.target = target;
+            this.increment = increment;
+            this.prefix = prefix;
+        }
+    }
+
+    static final class Call extends Expression {
+        final String name;
+        final List<Expression> arguments;
+        final int line;
+        Function function;
+
+        Call(String name, List<Expression> arguments, int line) {
+            super(ExpressionKind.CALL);
+            this.name = name;
+            this.arguments = arguments;
+            this.line = line;
+        }
+    }
+
+    static final class Builtin extends Expression {
+        final String name;
+        final List<Expression> arguments;
+
+        Builtin(String name, List<Expression> arguments) {
+            super(ExpressionKind.BUILTIN);
+            this.name = name;
+            this.arguments = arguments;
+        }
+    }
+
+    /**
+     * getline in all its forms: plain (main input), {@code < file}, and {@code command |}. The
+     * target is null when the record itself ($0) is replaced.
+     */
+    static final class Getline extends Expression {
+        final Redirect source;
+        final Expression sourceExpression;
+        final Expression target;
+
+        Getline(Redirect source, Expression sourceExpression, Expression target) {
+            super(ExpressionKind.GETLINE);
+            this.source = source;
+            this.sourceExpression = sourceExpression;
+            this.target = target;
+        }
+    }
+
+    /** Parenthesized expression list; only legal as print arguments or before 'in'. */
+    static final class Grouping extends Expression {
+        final List<Expression> expressions;
+
+        Grouping(List<Expression> expressions) {
+            super(ExpressionKind.GROUPING);
+            this.expressions = expressions;
+        }
+    }
+
+    abstract static class Statement {
+        final StatementKind kind;
+
+        Statement(StatementKind kind) {
+            this.kind = kind;
+        }
+    }
+
+    static final class ExpressionStatement extends Statement {
+        final Expression expression;
+
+        ExpressionStatement(Expression expression) {
+            super(StatementKind.EXPRESSION);
+            this.expression = expression;
+        }
+    }
+
+    /** print / printf with optional output redirection. */
+    static final class Output extends Statement {
+        final List<Expression> arguments;
+        final Redirect redirect;
+        final Expression destination;
+
+        Output(StatementKind kind, List<Expression> arguments, Redirect redirect, Expression destination) {
+            super(kind);
+            this.arguments = arguments;
+            this.redirect = redirect;
+            this.destination = destination;
+        }
+    }
+
+    static final class If extends Statement {
+        final Expression condition;
+        final Statement whenTrue;
+        final Statement whenFalse;
+
+        If(Expression condition, Statement whenTrue, Statement whenFalse) {
+            super(StatementKind.IF);
+            this.condition = condition;
+            this.whenTrue = whenTrue;
+            this.whenFalse = whenFalse;
+        }
+    }
+
+    /** while and do-while loops. */
+    static final class Loop extends Statement {
+        final Expression condition;
+        final Statement body;
+
+        Loop(StatementKind kind, Expression condition, Statement body) {
+            super(kind);
+            this.condition = condition;
+            this.body = body;
+        }
+    }
+
+    static final class For extends Statement {
+        final Statement initializer;
+        final Expression condition;
+        final Statement update;
+        final Statement body;
+
+        For(Statement initializer, Expression condition, Statement update, Statement body) {
+            super(StatementKind.FOR);
+            this.initializer = initializer;
+            this.condition = condition;
+            this.update = update;
+            this.body = body;
+        }
+    }
+
+    static final class ForIn extends Statement {
+        final Expression variable;
+        final Variable array;
+        final Statement body;
+
+        ForIn(Expression variable, Variable array, Statement body) {
+            super(StatementKind.FOR_IN);
+            this.variable = variable;
+            this.array = array;
+            this.body = body;
+        }
+    }
+
+    static final class Block extends Statement {
+        final List<Statement> statements;
+
+        Block(List<Statement> statements) {
+            super(StatementKind.BLOCK);
+            this.statements = statements;
+        }
+    }
+
+    /** next, nextfile, exit, return, break, continue; value is the exit/return expression. */
+    static final class Jump extends Statement {
+        final Expression value;
+
+        Jump(StatementKind kind, Expression value) {
+            super(kind);
+            this.value = value;
+        }
+    }
+
+    /** delete array[subscripts], or delete array when subscripts is null. */
+    static final class Delete extends Statement {
+        final Variable array;
+        final List<Expression> subscripts;
+
+        Delete(Variable array, List<Expression> subscripts) {
+            super(StatementKind.DELETE);
+            this.array = array;
+            this.subscripts = subscripts;
+        }
+    }
+
+    /** pattern-action rule; a null pattern matches every record, a non-null end makes a range. */
+    static final class Rule {
+        final Expression pattern;
+        final Expression rangeEnd;
+        final Block action;
+
+        Rule(Expression pattern, Expression rangeEnd, Block action) {
+            this.pattern = pattern;
+            this.rangeEnd = rangeEnd;
+            this.action = action;
+        }
+    }
+
+    static final class Function {
+        final String name;
+        final List<String> parameters;
+        Block body;
+        boolean[] arrayParameters;
+
+        Function(String name, List<String> parameters) {
+            this.name = name;
+            this.parameters = parameters;
+        }
+    }
+
+    /** Whole program: BEGIN/END actions, main rules, functions, and the global slot table. */
+    static final class Program {
+        final List<Block> beginActions = new ArrayList<>();
+        final List<Rule> rules = new ArrayList<>();
+        final List<Block> endActions = new ArrayList<>();
+        final Map<String, Function> functions = new LinkedHashMap<>();
+        final Map<String, Integer> globals = new LinkedHashMap<>();
+        final Set<String> referencedSpecials = new HashSet<>();
+        boolean usesGetline;
+        boolean usesExit;
+        boolean usesNext;
+        /** Writes files, runs commands, reads files other than the input, or reseeds from the clock. */
+        boolean usesOutsideWorld;
+    }
+}
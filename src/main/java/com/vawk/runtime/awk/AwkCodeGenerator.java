@@ -0,0 +1,1317 @@
+package com.vawk.runtime.awk;
+
+import com.vawk.runtime.awk.AwkAst.Block;
+import com.vawk.runtime.awk.AwkAst.Expression;
+import com.vawk.runtime.awk.AwkAst.ExpressionKind;
+import com.vawk.runtime.awk.AwkAst.Operator;
+import com.vawk.runtime.awk.AwkAst.Statement;
+import com.vawk.runtime.awk.AwkAst.Variable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Translates a parsed AWK program into the Java source of a {@link CompiledAwkProgram} subclass.
+ * A first pass classifies every global as scalar, array, or number: a variable that is only ever
+ * assigned numeric results (arithmetic, comparisons, increments, numeric builtins, or other
+ * numeric variables) becomes a primitive double with an "initialized" flag, so it still prints as
+ * the empty string before its first assignment. The second pass emits statically typed Java:
+ * expressions stay in double, boolean or String form as long as possible and only become AwkValue
+ * where AWK's dynamic typing is observable. Constructs the generator cannot express faithfully
+ * raise {@link UnsupportedOperationException} and the caller falls back to the interpreter.
+ */
+final class AwkCodeGenerator {
+    private static final Set<String> NUMERIC_BUILTINS = Set.of("length", "index", "match", "split", "sub", "gsub",
+            "int", "sqrt", "exp", "log", "sin", "cos", "atan2", "rand", "srand", "system", "close", "fflush");
+    private static final Set<Integer> NUMERIC_SPECIALS = Set.of(AwkAst.NR, AwkAst.NF, AwkAst.FNR, AwkAst.RSTART, AwkAst.RLENGTH);
+    private static final Expression WHOLE_RECORD = new AwkAst.Field(new AwkAst.NumberLiteral(0));
+
+    private enum Type {
+        NUMBER, VALUE, STRING, BOOLEAN
+    }
+
+    private enum Kind {
+        SCALAR, ARRAY, NUMBER
+    }
+
+    /**
+     * A generated Java expression and its static type. Reads of numeric variables carry extra
+     * renderings, because an unassigned variable must still behave as "" in string contexts.
+     */
+    private static final class Code {
+        final String text;
+        final Type type;
+        final String value;
+        final String string;
+        final String initialized;
+
+        Code(String text, Type type) {
+            this(text, type, null, null, null);
+        }
+
+        Code(String text, Type type, String value, String string, String initialized) {
+            this.text = text;
+            this.type = type;
+            this.value = value;
+            this.string = string;
+            this.initialized = initialized;
+        }
+    }
+
+    private final AwkAst.Program program;
+    private final String className;
+    private final String[] globalNames;
+    private final Kind[] kinds;
+    private final Map<String, String> constants = new LinkedHashMap<>();
+    private final Map<String, String> functionNames = new LinkedHashMap<>();
+    private final StringBuilder body = new StringBuilder();
+    private int indent;
+    private int temporaries;
+    private AwkAst.Function function;
+
+    private AwkCodeGenerator(AwkAst.Program program, String className) {
+        this.program = program;
+        this.className = className;
+        this.globalNames = new String[program.globals.size()];
+        program.globals.forEach((name, slot) -> globalNames[slot] = name);
+        this.kinds = new Analysis().classify();
+        int index = 0;
+        for (String name : program.functions.keySet()) {
+            functionNames.put(name, "f" + index++ + "_" + name);
+        }
+    }
+
+    /**
+     * Generates the Java source for a program.
+     *
+     * @param program   parsed program
+     * @param className simple name of the generated class
+     * @return Java source of a class in this package extending {@link CompiledAwkProgram}
+     * @throws UnsupportedOperationException when the program uses a construct the generator cannot
+     *                                       translate faithfully
+     */
+    static String generate(AwkAst.Program program, String className) {
+        return new AwkCodeGenerator(program, className).generate();
+    }
+
+    private String generate() {
+        generateBlocks("begin", program.beginActions);
+        generateRules();
+        generateBlocks("end", program.endActions);
+        for (AwkAst.Function each : program.functions.values()) {
+            generateFunction(each);
+        }
+        generateVariables();
+
+        StringBuilder source = new StringBuilder();
+        source.append("package com.vawk.runtime.awk;\n\n");
+        source.append("import java.io.IOException;\n");
+        source.append("import java.util.regex.Pattern;\n\n");
+        source.append("/** Generated by AwkCompiler; do not edit. */\n");
+        source.append("final class ").append(className).append(" extends CompiledAwkProgram {\n");
+        constants.forEach((initializer, name) -> source.append("    private static final ")
+                .append(initializer.startsWith("AwkRegex") ? "Pattern " : "AwkValue ")
+                .append(name).append(" = ").append(initializer).append(";\n"));
+        source.append(body);
+        source.append("}\n");
+        return source.toString();
+    }
+
+    // ----------------------------------------------------------------------------------------
+    // Members
+
+    private void generateBlocks(String name, List<Block> blocks) {
+        line("");
+        line("@Override");
+        line("void " + name + "() throws IOException {");
+        indent++;
+        for (int index = 0; index < blocks.size(); index++) {
+            line(name + index + "();");
+        }
+        indent--;
+        line("}");
+        for (int index = 0; index < blocks.size(); index++) {
+            line("");
+            line("private void " + name + index + "() throws IOException {");
+            indent++;
+            statement(blocks.get(index));
+            indent--;
+            line("}");
+        }
+    }
+
+    private void generateRules() {
+        line("");
+        line("@Override");
+        line("boolean readsInput() {");
+        line("    return " + (!program.rules.isEmpty() || !program.endActions.isEmpty()) + ";");
+        line("}");
+        line("");
+        line("@Override");
+        line("void rules() throws IOException {");
+        indent++;
+        for (int index = 0; index < program.rules.size(); index++) {
+            line("rule" + index + "();");
+        }
+        indent--;
+        line("}");
+        for (int index = 0; index < program.rules.size(); index++) {
+            AwkAst.Rule rule = program.rules.get(index);
+            line("");
+            if (rule.rangeEnd != null) {
+                line("private boolean range" + index + ";");
+                line("");
+            }
+            line("private void rule" + index + "() throws IOException {");
+            indent++;
+            if (rule.rangeEnd != null) {
+                line("if (!range" + index + ") {");
+                line("    if (!" + asBoolean(expression(rule.pattern)) + ") {");
+                line("        return;");
+                line("    }");
+                line("    range" + index + " = !" + asBoolean(expression(rule.rangeEnd)) + ";");
+                line("} else if (" + asBoolean(expression(rule.rangeEnd)) + ") {");
+                line("    range" + index + " = false;");
+                line("}");
+            } else if (rule.pattern != null) {
+                line("if (!" + asBoolean(expression(rule.pattern)) + ") {");
+                line("    return;");
+                line("}");
+            }
+            if (rule.action == null) {
+                line("write(output(), record() + runtime.outputRecordSeparator());");
+            } else {
+                statement(rule.action);
+            }
+            indent--;
+            line("}");
+        }
+    }
+
+    private void generateFunction(AwkAst.Function definition) {
+        function = definition;
+        List<String> parameters = new ArrayList<>();
+        for (int index = 0; index < definition.parameters.size(); index++) {
+            parameters.add((definition.arrayParameters[index] ? "AwkArray " : "AwkValue ") + local(index));
+        }
+        line("");
+        line("private AwkValue " + functionNames.get(definition.name) + "(" + String.join(", ", parameters) + ") throws IOException {");
+        indent++;
+        statement(definition.body);
+        line("return AwkValue.UNINITIALIZED;");
+        indent--;
+        line("}");
+        function = null;
+    }
+
+    private void generateVariables() {
+        List<String> numeric = new ArrayList<>();
+        line("");
+        line("@Override");
+        line("void assignVariable(String name, AwkValue value) {");
+        line("    switch (name) {");
+        for (int slot = 0; slot < globalNames.length; slot++) {
+            String name = globalNames[slot];
+            if (name.equals("ARGC")) {
+                continue;
+            }
+            line("        case " + javaString(name) + ":");
+            if (kinds[slot] == Kind.ARRAY) {
+                line("            throw new AwkRuntimeException(" + javaString("can't assign to " + name + "; it's an array name.") + ");");
+                continue;
+            }
+            line("            " + (kinds[slot] == Kind.NUMBER ? "set" + slot + "(value.toNumber())" : scalar(slot) + " = value") + ";");
+            line("            break;");
+        }
+        line("        default:");
+        line("            break;");
+        line("    }");
+        line("}");
+        for (int slot = 0; slot < globalNames.length; slot++) {
+            String name = globalNames[slot];
+            if (name.equals("ARGC") || name.equals("ARGV") || name.equals("ENVIRON")) {
+                continue;
+            }
+            line("");
+            switch (kinds[slot]) {
+                case ARRAY:
+                    line("private final AwkArray " + array(slot) + " = new AwkArray();");
+                    break;
+                case SCALAR:
+                    line("private AwkValue " + scalar(slot) + " = AwkValue.UNINITIALIZED;");
+                    break;
+                default:
+                    numeric.add(javaString(name));
+                    generateNumericVariable(slot);
+                    break;
+            }
+        }
+        line("");
+        line("@Override");
+        line("String[] numericVariables() {");
+        line("    return new String[] {" + String.join(", ", numeric) + "};");
+        line("}");
+    }
+
+    private void generateNumericVariable(int slot) {
+        String number = number(slot);
+        String initialized = initialized(slot);
+        line("private double " + number + ";");
+        line("private boolean " + initialized + ";");
+        line("");
+        line("private double set" + slot + "(double value) {");
+        line("    " + initialized + " = true;");
+        line("    return " + number + " = value;");
+        line("}");
+        line("");
+        line("private AwkValue copy" + slot + "(double value, boolean initialized) {");
+        line("    " + initialized + " = initialized;");
+        line("    " + number + " = value;");
+        line("    return value" + slot + "();");
+        line("}");
+        line("");
+        line("private double increment" + slot + "(double delta, boolean prefix) {");
+        line("    " + initialized + " = true;");
+        line("    double before = " + number + ";");
+        line("    " + number + " = before + delta;");
+        line("    return prefix ? " + number + " : before;");
+        line("}");
+        line("");
+        line("private AwkValue value" + slot + "() {");
+        line("    return " + initialized + " ? AwkValue.of(" + number + ") : AwkValue.UNINITIALIZED;");
+        line("}");
+        line("");
+        line("private String text" + slot + "() {");
+        line("    return " + initialized + " ? text(" + number + ") : \"\";");
+        line("}");
+    }
+
+    // ----------------------------------------------------------------------------------------
+    // Statements
+
+    private void statement(Statement statement) {
+        switch (statement.kind) {
+            case EXPRESSION:
+                line("discard(" + expression(((AwkAst.ExpressionStatement) statement).expression).text + ");");
+                break;
+            case PRINT:
+                print((AwkAst.Output) statement);
+                break;
+            case PRINTF: {
+                AwkAst.Output output = (AwkAst.Output) statement;
+                line("write(" + destination(output) + ", " + sprintf(output.arguments) + ");");
+                break;
+            }
+            case IF: {
+                AwkAst.If conditional = (AwkAst.If) statement;
+                line("if (" + asBoolean(expression(conditional.condition)) + ") {");
+                nested(conditional.whenTrue);
+                if (conditional.whenFalse != null) {
+                    line("} else {");
+                    nested(conditional.whenFalse);
+                }
+                line("}");
+                break;
+            }
+            case WHILE: {
+                AwkAst.Loop loop = (AwkAst.Loop) statement;
+                line("while (condition(" + asBoolean(expression(loop.condition)) + ")) {");
+                nested(loop.body);
+                line("}");
+                break;
+            }
+            case DO: {
+                AwkAst.Loop loop = (AwkAst.Loop) statement;
+                line("do {");
+                nested(loop.body);
+                line("} while (condition(" + asBoolean(expression(loop.condition)) + "));");
+                break;
+            }
+            case FOR:
+                forLoop((AwkAst.For) statement);
+                break;
+            case FOR_IN: {
+                AwkAst.ForIn loop = (AwkAst.ForIn) statement;
+                int temporary = temporaries++;
+                String array = "array" + temporary;
+                String key = "key" + temporary;
+                line("{");
+                indent++;
+                line("AwkArray " + array + " = " + array(loop.array) + ";");
+                line("for (String " + key + " : " + array + ".keys()) {");
+                line("    if (!" + array + ".contains(" + key + ")) {");
+                line("        continue;");
+                line("    }");
+                line("    discard(" + store(loop.variable, new Code("AwkValue.of(" + key + ")", Type.VALUE)).text + ");");
+                nested(loop.body);
+                line("}");
+                indent--;
+                line("}");
+                break;
+            }
+            case BLOCK:
+                for (Statement inner : ((Block) statement).statements) {
+                    statement(inner);
+                }
+                break;
+            case NEXT:
+                line("if (true) throw NEXT;");
+                break;
+            case NEXTFILE:
+                line("if (true) throw NEXT_FILE;");
+                break;
+            case EXIT: {
+                Expression value = ((AwkAst.Jump) statement).value;
+                if (value != null) {
+                    line("exitStatus = (int) " + asNumber(expression(value)) + " & 0xFF;");
+                }
+                line("if (true) throw EXIT;");
+                break;
+            }
+            case RETURN: {
+                if (function == null) {
+                    throw new UnsupportedOperationException("return outside a function");
+                }
+                Expression value = ((AwkAst.Jump) statement).value;
+                line("if (true) return " + (value == null ? "AwkValue.UNINITIALIZED" : asValue(expression(value))) + ";");
+                break;
+            }
+            case BREAK:
+                line("if (true) break;");
+                break;
+            case CONTINUE:
+                line("if (true) continue;");
+                break;
+            case DELETE: {
+                AwkAst.Delete delete = (AwkAst.Delete) statement;
+                if (delete.subscripts == null) {
+                    line(array(delete.array) + ".clear();");
+                } else {
+                    line(array(delete.array) + ".remove(" + key(delete.subscripts) + ");");
+                }
+                break;
+            }
+            default:
+                throw new UnsupportedOperationException("statement " + statement.kind);
+        }
+    }
+
+    private void nested(Statement statement) {
+        indent++;
+        statement(statement);
+        indent--;
+    }
+
+    private void forLoop(AwkAst.For loop) {
+        String update = "";
+        if (loop.update != null) {
+            if (loop.update.kind != AwkAst.StatementKind.EXPRESSION) {
+                throw new UnsupportedOperationException("for update that is not an expression");
+            }
+            update = "discard(" + expression(((AwkAst.ExpressionStatement) loop.update).expression).text + ")";
+        }
+        String condition = loop.condition == null ? "true" : asBoolean(expression(loop.condition));
+        line("{");
+        indent++;
+        if (loop.initializer != null) {
+            statement(loop.initializer);
+        }
+        line("for (; condition(" + condition + "); " + update + ") {");
+        nested(loop.body);
+        line("}");
+        indent--;
+        line("}");
+    }
+
+    private void print(AwkAst.Output output) {
+        StringBuilder text = new StringBuilder("(");
+        if (output.arguments.isEmpty()) {
+            text.append("record()");
+        } else {
+            for (int index = 0; index < output.arguments.size(); index++) {
+                if (index > 0) {
+                    text.append(" + runtime.outputFieldSeparator() + ");
+                }
+                text.append(asOutput(expression(output.arguments.get(index))));
+            }
+        }
+        text.append(" + runtime.outputRecordSeparator())");
+        line("write(" + destination(output) + ", " + text + ");");
+    }
+
+    private String destination(AwkAst.Output output) {
+        if (output.redirect == AwkAst.Redirect.NONE) {
+            return "output()";
+        }
+        return "output(AwkAst.Redirect." + output.redirect.name() + ", " + asString(expression(output.destination)) + ")";
+    }
+
+    private String sprintf(List<Expression> arguments) {
+        StringBuilder call = new StringBuilder("sprintf(").append(asString(expression(arguments.get(0))));
+        for (int index = 1; index < arguments.size(); index++) {
+            call.append(", ").append(asValue(expression(arguments.get(index))));
+        }
+        return call.append(")").toString();
+    }
+
+    // ----------------------------------------------------------------------------------------
+    // Expressions
+
+    private Code expression(Expression expression) {
+        switch (expression.kind) {
+            case NUMBER: {
+                String literal = literal(((AwkAst.NumberLiteral) expression).value);
+                return new Code(literal, Type.NUMBER, constant("AwkValue.of(" + literal + ")"), null, null);
+            }
+            case STRING: {
+                String literal = javaString(((AwkAst.StringLiteral) expression).value);
+                return new Code(literal, Type.STRING, constant("AwkValue.of(" + literal + ")"), null, null);
+            }
+            case REGEX:
+                return new Code(regex((AwkAst.RegexLiteral) expression) + ".matcher(record()).find()", Type.BOOLEAN);
+            case GLOBAL:
+            case LOCAL:
+                return read((Variable) expression);
+            case SPECIAL: {
+                int id = ((AwkAst.SpecialVariable) expression).id;
+                if (NUMERIC_SPECIALS.contains(id)) {
+                    return new Code("runtime.getSpecialNumber(" + id + ")", Type.NUMBER, "runtime.getSpecial(" + id + ")", null, null);
+                }
+                return new Code("runtime.getSpecial(" + id + ")", Type.VALUE);
+            }
+            case FIELD:
+                return new Code("field(" + fieldIndex(((AwkAst.Field) expression).index) + ")", Type.VALUE);
+            case ELEMENT: {
+                AwkAst.Element element = (AwkAst.Element) expression;
+                return new Code(array(element.array) + ".get(" + key(element.subscripts) + ")", Type.VALUE);
+            }
+            case ASSIGN:
+                return assign((AwkAst.Assign) expression);
+            case CONDITIONAL:
+                return conditional((AwkAst.Conditional) expression);
+            case OR:
+            case AND: {
+                AwkAst.Logical logical = (AwkAst.Logical) expression;
+                String operator = expression.kind == ExpressionKind.OR ? " || " : " && ";
+                return new Code("(" + asBoolean(expression(logical.left)) + operator + asBoolean(expression(logical.right)) + ")", Type.BOOLEAN);
+            }
+            case IN: {
+                AwkAst.In in = (AwkAst.In) expression;
+                return new Code(array(in.array) + ".contains(" + key(in.subscripts) + ")", Type.BOOLEAN);
+            }
+            case MATCH: {
+                AwkAst.Match match = (AwkAst.Match) expression;
+                String found = "matches(" + asString(expression(match.subject)) + ", " + pattern(match.regex) + ")";
+                return new Code(match.negated ? "(!" + found + ")" : found, Type.BOOLEAN);
+            }
+            case COMPARE:
+                return compare((AwkAst.Binary) expression);
+            case CONCAT: {
+                List<String> parts = new ArrayList<>();
+                for (Expression part : ((AwkAst.Concat) expression).parts) {
+                    parts.add(asString(expression(part)));
+                }
+                return new Code("(" + String.join(" + ", parts) + ")", Type.STRING);
+            }
+            case BINARY: {
+                AwkAst.Binary binary = (AwkAst.Binary) expression;
+                return new Code(arithmetic(binary.operator, asNumber(expression(binary.left)), asNumber(expression(binary.right))), Type.NUMBER);
+            }
+            case UNARY: {
+                AwkAst.Unary unary = (AwkAst.Unary) expression;
+                Code operand = expression(unary.operand);
+                switch (unary.operator) {
+                    case NOT:
+                        return new Code("(!" + asBoolean(operand) + ")", Type.BOOLEAN);
+                    case NEGATE:
+                        return new Code("(-(" + asNumber(operand) + "))", Type.NUMBER);
+                    default:
+                        return new Code(asNumber(operand), Type.NUMBER);
+                }
+            }
+            case INCREMENT:
+                return increment((AwkAst.Increment) expression);
+            case CALL:
+                return call((AwkAst.Call) expression);
+            case BUILTIN:
+                return builtin((AwkAst.Builtin) expression);
+            case GETLINE:
+                return getline((AwkAst.Getline) expression);
+            default:
+                throw new UnsupportedOperationException("parenthesized list used outside 'in' or print");
+        }
+    }
+
+    private Code read(Variable variable) {
+        if (variable.kind == ExpressionKind.LOCAL) {
+            if (function.arrayParameters[variable.slot]) {
+                throw new UnsupportedOperationException("array " + variable.name + " used as a scalar");
+            }
+            return new Code(local(variable.slot), Type.VALUE);
+        }
+        switch (kinds[variable.slot]) {
+            case NUMBER: {
+                int slot = variable.slot;
+                return new Code(number(slot), Type.NUMBER, "value" + slot + "()", "text" + slot + "()", initialized(slot));
+            }
+            case SCALAR:
+                return new Code(scalar(variable.slot), Type.VALUE);
+            default:
+                throw new UnsupportedOperationException("array " + variable.name + " used as a scalar");
+        }
+    }
+
+    /** Returns an expression that stores the value into the target and yields what was stored. */
+    private Code store(Expression target, Code value) {
+        switch (target.kind) {
+            case GLOBAL:
+            case LOCAL: {
+                Variable variable = (Variable) target;
+                if (variable.kind == ExpressionKind.GLOBAL && kinds[variable.slot] == Kind.NUMBER) {
+                    int slot = variable.slot;
+                    if (value.initialized != null) {
+                        return new Code("copy" + slot + "(" + value.text + ", " + value.initialized + ")", Type.VALUE);
+                    }
+                    return new Code("set" + slot + "(" + asNumber(value) + ")", Type.NUMBER);
+                }
+                return new Code("(" + read(variable).text + " = " + asValue(value) + ")", Type.VALUE);
+            }
+            case SPECIAL:
+                return new Code("setSpecial(" + asValue(value) + ", " + ((AwkAst.SpecialVariable) target).id + ")", Type.VALUE);
+            case FIELD:
+                return new Code("setField(" + asValue(value) + ", " + fieldIndex(((AwkAst.Field) target).index) + ")", Type.VALUE);
+            case ELEMENT: {
+                AwkAst.Element element = (AwkAst.Element) target;
+                return new Code("put(" + asValue(value) + ", " + array(element.array) + ", " + key(element.subscripts) + ")", Type.VALUE);
+            }
+            default:
+                throw new UnsupportedOperationException("assignment to non-lvalue");
+        }
+    }
+
+    private Code assign(AwkAst.Assign assign) {
+        if (assign.operator == null) {
+            return store(assign.target, expression(assign.value));
+        }
+        Expression target = assign.target;
+        char operator = operatorSymbol(assign.operator);
+        switch (target.kind) {
+            case GLOBAL:
+            case LOCAL: {
+                Variable variable = (Variable) target;
+                if (variable.kind == ExpressionKind.GLOBAL && kinds[variable.slot] == Kind.NUMBER) {
+                    String current = number(variable.slot);
+                    String result = arithmetic(assign.operator, current, asNumber(expression(assign.value)));
+                    return new Code("set" + variable.slot + "(" + result + ")", Type.NUMBER);
+                }
+                String name = read(variable).text;
+                String result = arithmetic(assign.operator, name + ".toNumber()", asNumber(expression(assign.value)));
+                return new Code("(" + name + " = AwkValue.of(" + result + ")).toNumber()", Type.NUMBER);
+            }
+            case SPECIAL:
+                return new Code("compoundSpecial(" + ((AwkAst.SpecialVariable) target).id + ", '" + operator + "', "
+                        + asNumber(expression(assign.value)) + ")", Type.NUMBER);
+            case FIELD:
+                return new Code("compoundField(" + fieldIndex(((AwkAst.Field) target).index) + ", '" + operator + "', "
+                        + asNumber(expression(assign.value)) + ")", Type.NUMBER);
+            case ELEMENT: {
+                AwkAst.Element element = (AwkAst.Element) target;
+                return new Code("compoundElement(" + array(element.array) + ", " + key(element.subscripts) + ", '" + operator + "', "
+                        + asNumber(expression(assign.value)) + ")", Type.NUMBER);
+            }
+            default:
+                throw new UnsupportedOperationException("assignment to non-lvalue");
+        }
+    }
+
+    private Code increment(AwkAst.Increment increment) {
+        Expression target = increment.target;
+        String delta = increment.increment ? "1.0" : "-1.0";
+        switch (target.kind) {
+            case GLOBAL:
+            case LOCAL: {
+                Variable variable = (Variable) target;
+                if (variable.kind == ExpressionKind.GLOBAL && kinds[variable.slot] == Kind.NUMBER) {
+                    return new Code("increment" + variable.slot + "(" + delta + ", " + increment.prefix + ")", Type.NUMBER);
+                }
+                String name = read(variable).text;
+                String update = name + " = AwkValue.of(" + name + ".toNumber() + " + delta + ")";
+                if (increment.prefix) {
+                    return new Code("(" + update + ").toNumber()", Type.NUMBER);
+                }
+                return new Code("previous(" + name + ", " + update + ")", Type.NUMBER);
+            }
+            case SPECIAL:
+                return new Code("incrementSpecial(" + ((AwkAst.SpecialVariable) target).id + ", " + delta + ", " + increment.prefix + ")", Type.NUMBER);
+            case FIELD:
+                return new Code("incrementField(" + fieldIndex(((AwkAst.Field) target).index) + ", " + delta + ", " + increment.prefix + ")", Type.NUMBER);
+            case ELEMENT: {
+                AwkAst.Element element = (AwkAst.Element) target;
+                return new Code("incrementElement(" + array(element.array) + ", " + key(element.subscripts) + ", " + delta + ", "
+                        + increment.prefix + ")", Type.NUMBER);
+            }
+            default:
+                throw new UnsupportedOperationException("increment of non-lvalue");
+        }
+    }
+
+    private Code conditional(AwkAst.Conditional conditional) {
+        String condition = asBoolean(expression(conditional.condition));
+        Code whenTrue = expression(conditional.whenTrue);
+        Code whenFalse = expression(conditional.whenFalse);
+        boolean plain = whenTrue.initialized == null && whenFalse.initialized == null;
+        if (plain && whenTrue.type == whenFalse.type) {
+            return new Code("(" + condition + " ? " + whenTrue.text + " : " + whenFalse.text + ")", whenTrue.type);
+        }
+        return new Code("(" + condition + " ? " + asValue(whenTrue) + " : " + asValue(whenFalse) + ")", Type.VALUE);
+    }
+
+    private Code compare(AwkAst.Binary binary) {
+        Code left = expression(binary.left);
+        Code right = expression(binary.right);
+        String operator = comparisonSymbol(binary.operator);
+        if (isNumeric(left) && isNumeric(right)) {
+            return new Code("(" + asNumber(left) + operator + asNumber(right) + ")", Type.BOOLEAN);
+        }
+        return new Code("(compare(" + asValue(left) + ", " + asValue(right) + ")" + operator + "0)", Type.BOOLEAN);
+    }
+
+    private Code call(AwkAst.Call call) {
+        AwkAst.Function callee = call.function;
+        List<String> arguments = new ArrayList<>();
+        for (int index = 0; index < callee.parameters.size(); index++) {
+            boolean arrayParameter = callee.arrayParameters[index];
+            if (index >= call.arguments.size()) {
+                arguments.add(arrayParameter ? "new AwkArray()" : "AwkValue.UNINITIALIZED");
+                continue;
+            }
+            Expression argument = call.arguments.get(index);
+            if (arrayParameter) {
+                if (argument.kind != ExpressionKind.GLOBAL && argument.kind != ExpressionKind.LOCAL) {
+                    throw new UnsupportedOperationException("non-variable passed as array to " + callee.name);
+                }
+                arguments.add(array((Variable) argument));
+            } else {
+                arguments.add(asValue(expression(argument)));
+            }
+        }
+        return new Code(functionNames.get(callee.name) + "(" + String.join(", ", arguments) + ")", Type.VALUE);
+    }
+
+    private Code getline(AwkAst.Getline getline) {
+        String status;
+        switch (getline.source) {
+            case FILE:
+                status = "getlineFile(" + asString(expression(getline.sourceExpression)) + ")";
+                break;
+            case PIPE:
+                status = "getlineCommand(" + asString(expression(getline.sourceExpression)) + ")";
+                break;
+            default:
+                status = "getlineMain()";
+                break;
+        }
+        String store = getline.target == null
+                ? "setRecord(getlineText)"
+                : store(getline.target, new Code("AwkValue.strnum(getlineText)", Type.VALUE)).text;
+        return new Code("(" + status + " > 0 ? stored(" + store + ") : getlineStatus)", Type.NUMBER);
+    }
+
+    private Code builtin(AwkAst.Builtin builtin) {
+        List<Expression> arguments = builtin.arguments;
+        switch (builtin.name) {
+            case "length": {
+                if (arguments.isEmpty()) {
+                    return new Code("length(record())", Type.NUMBER);
+                }
+                Expression argument = arguments.get(0);
+                if ((argument.kind == ExpressionKind.GLOBAL || argument.kind == ExpressionKind.LOCAL) && isArray((Variable) argument)) {
+                    return new Code("((double) " + array((Variable) argument) + ".size())", Type.NUMBER);
+                }
+                return new Code("length(" + asString(expression(argument)) + ")", Type.NUMBER);
+            }
+            case "substr": {
+                boolean hasLength = arguments.size() > 2;
+                return new Code("AwkRuntime.substr(" + asString(expression(arguments.get(0))) + ", " + asNumber(expression(arguments.get(1)))
+                        + ", " + (hasLength ? asNumber(expression(arguments.get(2))) : "0") + ", " + hasLength + ")", Type.STRING);
+            }
+            case "index":
+                return new Code("((double) AwkRuntime.index(" + asString(expression(arguments.get(0))) + ", "
+                        + asString(expression(arguments.get(1))) + "))", Type.NUMBER);
+            case "split": {
+                String text = asString(expression(arguments.get(0)));
+                String array = array((Variable) arguments.get(1));
+                String separator = "null, null";
+                if (arguments.size() > 2) {
+                    Expression argument = arguments.get(2);
+                    separator = argument.kind == ExpressionKind.REGEX
+                            ? "null, " + regex((AwkAst.RegexLiteral) argument)
+                            : asString(expression(argument)) + ", null";
+                }
+                return new Code("((double) runtime.split(" + text + ", " + array + ", " + separator + "))", Type.NUMBER);
+            }
+            case "sub":
+            case "gsub": {
+                String pattern = pattern(arguments.get(0));
+                String replacement = asString(expression(arguments.get(1)));
+                Expression target = arguments.size() > 2 ? arguments.get(2) : WHOLE_RECORD;
+                String text = asString(expression(target));
+                String store = store(target, new Code("AwkValue.of(substituted)", Type.VALUE)).text;
+                return new Code("(substitute(" + pattern + ", " + replacement + ", " + text + ", " + builtin.name.equals("gsub")
+                        + ") ? substitutions(" + store + ") : substitutionCount)", Type.NUMBER);
+            }
+            case "match":
+                return new Code("((double) runtime.match(" + asString(expression(arguments.get(0))) + ", " + pattern(arguments.get(1)) + "))",
+                        Type.NUMBER);
+            case "sprintf":
+                return new Code(sprintf(arguments), Type.STRING);
+            case "sin":
+            case "cos":
+            case "exp":
+            case "log":
+            case "sqrt":
+                return new Code("Math." + builtin.name + "(" + asNumber(expression(arguments.get(0))) + ")", Type.NUMBER);
+            case "atan2":
+                return new Code("Math.atan2(" + asNumber(expression(arguments.get(0))) + ", " + asNumber(expression(arguments.get(1))) + ")",
+                        Type.NUMBER);
+            case "int":
+                return new Code("truncate(" + asNumber(expression(arguments.get(0))) + ")", Type.NUMBER);
+            case "rand":
+                return new Code("runtime.rand()", Type.NUMBER);
+            case "srand":
+                return new Code(arguments.isEmpty() ? "runtime.srand(null)"
+                        : "runtime.srand(Double.valueOf(" + asNumber(expression(arguments.get(0))) + "))", Type.NUMBER);
+            case "tolower":
+                return new Code("AwkRuntime.toLower(" + asString(expression(arguments.get(0))) + ")", Type.STRING);
+            case "toupper":
+                return new Code("AwkRuntime.toUpper(" + asString(expression(arguments.get(0))) + ")", Type.STRING);
+            case "system":
+                return new Code("((double) runtime.system(" + asString(expression(arguments.get(0))) + "))", Type.NUMBER);
+            case "close":
+                return new Code("((double) runtime.close(" + asString(expression(arguments.get(0))) + "))", Type.NUMBER);
+            case "fflush":
+                return new Code("((double) runtime.flush(" + (arguments.isEmpty() ? "null" : asString(expression(arguments.get(0)))) + "))",
+                        Type.NUMBER);
+            default:
+                throw new UnsupportedOperationException("builtin " + builtin.name);
+        }
+    }
+
+    private String pattern(Expression expression) {
+        if (expression.kind == ExpressionKind.REGEX) {
+            return regex((AwkAst.RegexLiteral) expression);
+        }
+        return "runtime.regex(" + asString(expression(expression)) + ")";
+    }
+
+    private String regex(AwkAst.RegexLiteral literal) {
+        return constant("AwkRegex.compile(" + javaString(literal.source) + ")");
+    }
+
+    private String key(List<Expression> subscripts) {
+        if (subscripts.size() == 1) {
+            return asString(expression(subscripts.get(0)));
+        }
+        List<String> parts = new ArrayList<>();
+        for (Expression subscript : subscripts) {
+            parts.add(asString(expression(subscript)));
+        }
+        return "key(" + String.join(", ", parts) + ")";
+    }
+
+    private String fieldIndex(Expression index) {
+        if (index.kind == ExpressionKind.NUMBER) {
+            double value = ((AwkAst.NumberLiteral) index).value;
+            if (value == (int) value) {
+                return Integer.toString((int) value);
+            }
+        }
+        return "fieldIndex(" + asNumber(expression(index)) + ")";
+    }
+
+    private boolean isArray(Variable variable) {
+        if (variable.kind == ExpressionKind.LOCAL) {
+            return function.arrayParameters[variable.slot];
+        }
+        return kinds[variable.slot] == Kind.ARRAY;
+    }
+
+    private String array(Variable variable) {
+        if (!isArray(variable)) {
+            throw new UnsupportedOperationException("scalar " + variable.name + " used as an array");
+        }
+        if (variable.kind == ExpressionKind.LOCAL) {
+            return local(variable.slot);
+        }
+        switch (variable.name) {
+            case "ARGV":
+                return "argv";
+            case "ENVIRON":
+                return "environment()";
+            default:
+                return array(variable.slot);
+        }
+    }
+
+    // ----------------------------------------------------------------------------------------
+    // Conversions
+
+    private static boolean isNumeric(Code code) {
+        return code.type == Type.NUMBER || code.type == Type.BOOLEAN;
+    }
+
+    private static String asNumber(Code code) {
+        switch (code.type) {
+            case NUMBER: return code.text;
+            case BOOLEAN: return "bool(" + code.text + ")";
+            case STRING: return "AwkValue.parseNumber(" + code.text + ")";
+            default: return code.text + ".toNumber()";
+        }
+    }
+
+    private static String asValue(Code code) {
+        if (code.value != null) {
+            return code.value;
+        }
+        switch (code.type) {
+            case VALUE: return code.text;
+            default: return "AwkValue.of(" + code.text + ")";
+        }
+    }
+
+    private static String asString(Code code) {
+        if (code.string != null) {
+            return code.string;
+        }
+        switch (code.type) {
+            case STRING: return code.text;
+            case BOOLEAN: return "(" + code.text + " ? \"1\" : \"0\")";
+            default: return "text(" + code.text + ")";
+        }
+    }
+
+    private static String asOutput(Code code) {
+        if (code.initialized != null) {
+            return "(" + code.initialized + " ? outputText(" + code.text + ") : \"\")";
+        }
+        switch (code.type) {
+            case STRING:
+            case BOOLEAN:
+                return asString(code);
+            default:
+                return "outputText(" + code.text + ")";
+        }
+    }
+
+    private static String asBoolean(Code code) {
+        switch (code.type) {
+            case BOOLEAN: return code.text;
+            case NUMBER: return "(" + code.text + " != 0)";
+            case STRING: return "(!" + code.text + ".isEmpty())";
+            default: return code.text + ".toBoolean()";
+        }
+    }
+
+    private static String arithmetic(Operator operator, String left, String right) {
+        switch (operator) {
+            case ADD: return "(" + left + " + " + right + ")";
+            case SUBTRACT: return "(" + left + " - " + right + ")";
+            case MULTIPLY: return "(" + left + " * " + right + ")";
+            case DIVIDE: return "divide(" + left + ", " + right + ")";
+            case MODULO: return "modulo(" + left + ", " + right + ")";
+            case POWER: return "Math.pow(" + left + ", " + right + ")";
+            default: throw new IllegalStateException("Not an arithmetic operator: " + operator);
+        }
+    }
+
+    private static char operatorSymbol(Operator operator) {
+        switch (operator) {
+            case ADD: return '+';
+            case SUBTRACT: return '-';
+            case MULTIPLY: return '*';
+            case DIVIDE: return '/';
+            case MODULO: return '%';
+            default: return '^';
+        }
+    }
+
+    private static String comparisonSymbol(Operator operator) {
+        switch (operator) {
+            case LESS: return " < ";
+            case LESS_EQUAL: return " <= ";
+            case GREATER: return " > ";
+            case GREATER_EQUAL: return " >= ";
+            case EQUAL: return " == ";
+            default: return " != ";
+        }
+    }
+
+    // ----------------------------------------------------------------------------------------
+    // Names and literals
+
+    private String constant(String initializer) {
+        return constants.computeIfAbsent(initializer, ignored -> "CONSTANT" + constants.size());
+    }
+
+    private String local(int slot) {
+        return "p" + slot + "_" + function.parameters.get(slot);
+    }
+
+    private String scalar(int slot) {
+        return globalNames[slot].equals("ARGC") ? "argc" : "v" + slot + "_" + globalNames[slot];
+    }
+
+    private String array(int slot) {
+        return "a" + slot + "_" + globalNames[slot];
+    }
+
+    private String number(int slot) {
+        return "n" + slot + "_" + globalNames[slot];
+    }
+
+    private String initialized(int slot) {
+        return "i" + slot + "_" + globalNames[slot];
+    }
+
+    private static String literal(double value) {
+        if (Double.isInfinite(value)) {
+            return "Double.POSITIVE_INFINITY";
+        }
+        return Double.toString(value);
+    }
+
+    /** Quotes text as a Java string literal using only ASCII, so no unicode escape can end the literal early. */
+    static String javaString(String text) {
+        StringBuilder literal = new StringBuilder(text.length() + 2).append('"');
+        for (int index = 0; index < text.length(); index++) {
+            char current = text.charAt(index);
+            if (current == '"' || current == '\\') {
+                literal.append('\\').append(current);
+            } else if (current < 0x20 || current == 0x7F) {
+                literal.append(String.format("\\%03o", (int) current));
+            } else if (current > 0x7F) {
+                literal.append(String.format("\\u%04x", (int) current));
+            } else {
+                literal.append(current);
+            }
+        }
+        return literal.append('"').toString();
+    }
+
+    private void line(String text) {
+        if (!text.isEmpty()) {
+            body.append("    ".repeat(indent + 1)).append(text);
+        }
+        body.append('\n');
+    }
+
+    // ----------------------------------------------------------------------------------------
+    // Variable analysis
+
+    /**
+     * Walks the whole program once to decide how each global is stored. Globals used both as
+     * arrays and scalars, and locals used against their inferred kind, are rejected because only
+     * the dynamic interpreter can reproduce the resulting run-time errors.
+     */
+    private final class Analysis {
+        private final boolean[] arrayUse = new boolean[globalNames.length];
+        private final boolean[] scalarUse = new boolean[globalNames.length];
+        private final boolean[] assigned = new boolean[globalNames.length];
+        private final boolean[] nonNumeric = new boolean[globalNames.length];
+        private final List<int[]> copies = new ArrayList<>();
+        private AwkAst.Function scope;
+
+        Kind[] classify() {
+            program.beginActions.forEach(this::statement);
+            for (AwkAst.Rule rule : program.rules) {
+                expression(rule.pattern);
+                expression(rule.rangeEnd);
+                statement(rule.action);
+            }
+            program.endActions.forEach(this::statement);
+            for (AwkAst.Function each : program.functions.values()) {
+                scope = each;
+                statement(each.body);
+            }
+            scope = null;
+
+            boolean operandsAssignable = program.globals.containsKey("ARGV");
+            Kind[] result = new Kind[globalNames.length];
+            for (int slot = 0; slot < globalNames.length; slot++) {
+                String name = globalNames[slot];
+                if (arrayUse[slot] && scalarUse[slot]) {
+                    throw new UnsupportedOperationException(name + " is used both as an array and as a scalar");
+                }
+                boolean array = arrayUse[slot] || (name.equals("ARGV") || name.equals("ENVIRON")) && !scalarUse[slot];
+                if (array && name.equals("ARGC") || !array && (name.equals("ARGV") || name.equals("ENVIRON"))) {
+                    throw new UnsupportedOperationException(name + " used against its kind");
+                }
+                boolean numeric = !array && assigned[slot] && !nonNumeric[slot] && !operandsAssignable && !name.equals("ARGC");
+                result[slot] = array ? Kind.ARRAY : numeric ? Kind.NUMBER : Kind.SCALAR;
+            }
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (int[] copy : copies) {
+                    if (result[copy[0]] == Kind.NUMBER && result[copy[1]] != Kind.NUMBER) {
+                        result[copy[0]] = Kind.SCALAR;
+                        changed = true;
+                    }
+                }
+            }
+            return result;
+        }
+
+        private void useScalar(Variable variable) {
+            if (variable.kind == ExpressionKind.GLOBAL) {
+                scalarUse[variable.slot] = true;
+            } else if (scope.arrayParameters[variable.slot]) {
+                throw new UnsupportedOperationException("array parameter " + variable.name + " used as a scalar");
+            }
+        }
+
+        private void useArray(Variable variable) {
+            if (variable.kind == ExpressionKind.GLOBAL) {
+                arrayUse[variable.slot] = true;
+            } else if (!scope.arrayParameters[variable.slot]) {
+                throw new UnsupportedOperationException("parameter " + variable.name + " used as an array");
+            }
+        }
+
+        /** Records an assignment; value is null when the stored value is never known to be a number. */
+        private void assignTo(Expression target, Expression value, boolean numeric) {
+            if (target.kind != ExpressionKind.GLOBAL && target.kind != ExpressionKind.LOCAL) {
+                expression(target);
+                return;
+            }
+            Variable variable = (Variable) target;
+            useScalar(variable);
+            if (variable.kind != ExpressionKind.GLOBAL) {
+                return;
+            }
+            assigned[variable.slot] = true;
+            if (numeric) {
+                return;
+            }
+            if (value != null && isDefiniteNumber(value)) {
+                return;
+            }
+            if (value != null && value.kind == ExpressionKind.GLOBAL) {
+                copies.add(new int[] {variable.slot, ((Variable) value).slot});
+                return;
+            }
+            nonNumeric[variable.slot] = true;
+        }
+
+        private boolean isDefiniteNumber(Expression expression) {
+            switch (expression.kind) {
+                case NUMBER:
+                case REGEX:
+                case OR:
+                case AND:
+                case IN:
+                case MATCH:
+                case COMPARE:
+                case BINARY:
+                case UNARY:
+                case INCREMENT:
+                case GETLINE:
+                    return true;
+                case ASSIGN: {
+                    AwkAst.Assign assign = (AwkAst.Assign) expression;
+                    return assign.operator != null || isDefiniteNumber(assign.value);
+                }
+                case CONDITIONAL: {
+                    AwkAst.Conditional conditional = (AwkAst.Conditional) expression;
+                    return isDefiniteNumber(conditional.whenTrue) && isDefiniteNumber(conditional.whenFalse);
+                }
+                case BUILTIN:
+                    return NUMERIC_BUILTINS.contains(((AwkAst.Builtin) expression).name);
+                default:
+                    return false;
+            }
+        }
+
+        private void statement(Statement statement) {
+            if (statement == null) {
+                return;
+            }
+            switch (statement.kind) {
+                case EXPRESSION:
+                    expression(((AwkAst.ExpressionStatement) statement).expression);
+                    break;
+                case PRINT:
+                case PRINTF: {
+                    AwkAst.Output output = (AwkAst.Output) statement;
+                    output.arguments.forEach(this::expression);
+                    expression(output.destination);
+                    break;
+                }
+                case IF: {
+                    AwkAst.If conditional = (AwkAst.If) statement;
+                    expression(conditional.condition);
+                    statement(conditional.whenTrue);
+                    statement(conditional.whenFalse);
+                    break;
+                }
+                case WHILE:
+                case DO: {
+                    AwkAst.Loop loop = (AwkAst.Loop) statement;
+                    expression(loop.condition);
+                    statement(loop.body);
+                    break;
+                }
+                case FOR: {
+                    AwkAst.For loop = (AwkAst.For) statement;
+                    statement(loop.initializer);
+                    expression(loop.condition);
+                    statement(loop.update);
+                    statement(loop.body);
+                    break;
+                }
+                case FOR_IN: {
+                    AwkAst.ForIn loop = (AwkAst.ForIn) statement;
+                    useArray(loop.array);
+                    assignTo(loop.variable, null, false);
+                    statement(loop.body);
+                    break;
+                }
+                case BLOCK:
+                    ((Block) statement).statements.forEach(this::statement);
+                    break;
+                case EXIT:
+                case RETURN:
+                    expression(((AwkAst.Jump) statement).value);
+                    break;
+                case DELETE: {
+                    AwkAst.Delete delete = (AwkAst.Delete) statement;
+                    useArray(delete.array);
+                    if (delete.subscripts != null) {
+                        delete.subscripts.forEach(this::expression);
+                    }
+                    break;
+                }
+                default:
+                    break;
+            }
+        }
+
+        private void expression(Expression expression) {
+            if (expression == null) {
+                return;
+            }
+            switch (expression.kind) {
+                case GLOBAL:
+                case LOCAL:
+                    useScalar((Variable) expression);
+                    break;
+                case FIELD:
+                    expression(((AwkAst.Field) expression).index);
+                    break;
+                case ELEMENT: {
+                    AwkAst.Element element = (AwkAst.Element) expression;
+                    useArray(element.array);
+                    element.subscripts.forEach(this::expression);
+                    break;
+                }
+                case ASSIGN: {
+                    AwkAst.Assign assign = (AwkAst.Assign) expression;
+                    assignTo(assign.target, assign.value, assign.operator != null);
+                    expression(assign.value);
+                    break;
+                }
+                case CONDITIONAL: {
+                    AwkAst.Conditional conditional = (AwkAst.Conditional) expression;
+                    expression(conditional.condition);
+                    expression(conditional.whenTrue);
+                    expression(conditional.whenFalse);
+                    break;
+                }
+                case OR:
+                case AND: {
+                    AwkAst.Logical logical = (AwkAst.Logical) expression;
+                    expression(logical.left);
+                    expression(logical.right);
+                    break;
+                }
+                case IN: {
+                    AwkAst.In in = (AwkAst.In) expression;
+                    useArray(in.array);
+                    in.subscripts.forEach(this::expression);
+                    break;
+                }
+                case MATCH: {
+                    AwkAst.Match match = (AwkAst.Match) expression;
+                    expression(match.subject);
+                    expression(match.regex);
+                    break;
+                }
+                case COMPARE:
+                case BINARY: {
+                    AwkAst.Binary binary = (AwkAst.Binary) expression;
+                    expression(binary.left);
+                    expression(binary.right);
+                    break;
+                }
+                case CONCAT:
+                    ((AwkAst.Concat) expression).parts.forEach(this::expression);
+                    break;
+                case UNARY:
+                    expression(((AwkAst.Unary) expression).operand);
+                    break;
+                case INCREMENT:
+                    assignTo(((AwkAst.Increment) expression).target, null, true);
+                    break;
+                case CALL: {
+                    AwkAst.Call call = (AwkAst.Call) expression;
+                    for (int index = 0; index < call.arguments.size(); index++) {
+                        Expression argument = call.arguments.get(index);
+                        boolean variable = argument.kind == ExpressionKind.GLOBAL || argument.kind == ExpressionKind.LOCAL;
+                        if (call.function.arrayParameters[index] && variable) {
+                            useArray((Variable) argument);
+                        } else {
+                            expression(argument);
+                        }
+                    }
+                    break;
+                }
+                case BUILTIN:
+                    builtin((AwkAst.Builtin) expression);
+                    break;
+                case GETLINE: {
+                    AwkAst.Getline getline = (AwkAst.Getline) expression;
+                    expression(getline.sourceExpression);
+                    if (getline.target != null) {
+                        assignTo(getline.target, null, false);
+                    }
+                    break;
+                }
+                case GROUPING:
+                    ((AwkAst.Grouping) expression).expressions.forEach(this::expression);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void builtin(AwkAst.Builtin builtin) {
+            List<Expression> arguments = builtin.arguments;
+            for (int index = 0; index < arguments.size(); index++) {
+                Expression argument = arguments.get(index);
+                boolean variable = argument.kind == ExpressionKind.GLOBAL || argument.kind == ExpressionKind.LOCAL;
+                if (builtin.name.equals("split") && index == 1) {
+                    useArray((Variable) argument);
+                } else if (builtin.name.equals("length") && variable) {
+                    continue;
+                } else if ((builtin.name.equals("sub") || builtin.name.equals("gsub")) && index == 2) {
+                    assignTo(argument, null, false);
+                } else {
+                    expression(argument);
+                }
+            }
+        }
+    }
+}
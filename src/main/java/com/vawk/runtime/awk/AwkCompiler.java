@@ -0,0 +1,266 @@
+package com.vawk.runtime.awk;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Compiles parsed AWK programs to JVM classes. The generator emits Java source for a
+ * {@link CompiledAwkProgram} subclass, the JDK compiler turns it into bytecode in memory, and the
+ * class is defined as a hidden class in this package so it can use the runtime's package-private
+ * API and be unloaded with its script. Class files are keyed by program hash and generator version
+ * and kept under the cache directory, so later runs of an unchanged program skip generation and
+ * javac entirely. Compilation is best effort: without a system Java compiler (a JRE), or for
+ * programs the generator cannot translate, {@link #compile} returns empty and callers interpret.
+ */
+public final class AwkCompiler {
+    /** Bump whenever generated code changes shape, so stale class files are not reused. */
+    static final int GENERATOR_VERSION = 1;
+
+    private static final String PACKAGE = "com.vawk.runtime.awk";
+    private static final List<Class<?>> RUNTIME_CLASSES = List.of(AwkArray.class, AwkAst.class, AwkFormat.class,
+            AwkInterpreter.class, AwkLexer.class, AwkRecordReader.class, AwkRegex.class, AwkRuntime.class,
+            AwkRuntimeException.class, AwkScript.class, AwkSyntaxException.class, AwkValue.class, CompiledAwkProgram.class);
+    private static final List<String> JAVAC_OPTIONS = List.of("--release", "17", "-proc:none", "-implicit:none", "-nowarn", "-g:none");
+    private static final int MAX_CACHED_SCRIPTS = 64;
+
+    private final Path cacheDirectory;
+    /** Most recently used compilations; evicted hidden classes can be unloaded once no run holds them. */
+    private final Map<String, Optional<CompiledAwkScript>> compiled = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Optional<CompiledAwkScript>> eldest) {
+            return size() > MAX_CACHED_SCRIPTS;
+        }
+    };
+
+    /**
+     * @param cacheDirectory directory for compiled class files; null keeps them in memory only
+     */
+    public AwkCompiler(Path cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    /**
+     * Returns the compiled form of a script, loading it from the cache when possible.
+     *
+     * @param script parsed program
+     * @param hash   content hash of the program source, used as the cache key
+     * @return compiled script, or empty when the program must be interpreted instead
+     */
+    public Optional<CompiledAwkScript> compile(AwkScript script, String hash) {
+        synchronized (compiled) {
+            Optional<CompiledAwkScript> known = compiled.get(hash);
+            if (known != null) {
+                return known;
+            }
+        }
+        Optional<CompiledAwkScript> result = load(script, hash);
+        synchronized (compiled) {
+            compiled.putIfAbsent(hash, result);
+            return compiled.get(hash);
+        }
+    }
+
+    private Optional<CompiledAwkScript> load(AwkScript script, String hash) {
+        String className = "AwkProgram_" + hash.replaceAll("[^A-Za-z0-9]", "");
+        Path classFile = cacheDirectory == null ? null : cacheDirectory.resolve(className + "-g" + GENERATOR_VERSION + ".class");
+        if (classFile != null && Files.isRegularFile(classFile)) {
+            try {
+                return Optional.of(define(Files.readAllBytes(classFile), hash));
+            } catch (IOException | LinkageError | IllegalStateException e) {
+                // Unreadable or stale class file; regenerate below.
+            }
+        }
+        String source;
+        try {
+            source = AwkCodeGenerator.generate(script.program(), className);
+        } catch (RuntimeException e) {
+            return Optional.empty();
+        }
+        byte[] bytes = javac(className, source);
+        if (bytes == null) {
+            return Optional.empty();
+        }
+        CompiledAwkScript compiledScript;
+        try {
+            compiledScript = define(bytes, hash);
+        } catch (LinkageError | IllegalStateException e) {
+            return Optional.empty();
+        }
+        if (classFile != null) {
+            store(classFile, bytes, source);
+        }
+        return Optional.of(compiledScript);
+    }
+
+    private static CompiledAwkScript define(byte[] bytes, String hash) {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            MethodHandle constructor = lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(CompiledAwkProgram.class));
+            return new CompiledAwkScript(constructor, hash);
+        } catch (IllegalAccessException | NoSuchMethodException e) {
+            throw new IllegalStateException("Compiled AWK program " + hash + " has no usable constructor", e);
+        }
+    }
+
+    /** Writes the class file atomically, with the generated source alongside for inspection. */
+    private static void store(Path classFile, byte[] bytes, String source) {
+        try {
+            Files.createDirectories(classFile.getParent());
+            Path temporary = Files.createTempFile(classFile.getParent(), classFile.getFileName().toString(), ".tmp");
+            Files.write(temporary, bytes);
+            Files.move(temporary, classFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            String sourceName = classFile.getFileName().toString().replaceFirst("\\.class$", ".java");
+            Files.writeString(classFile.resolveSibling(sourceName), source, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            // The cache is an optimization; a read-only or full disk only costs a recompile next time.
+        }
+    }
+
+    /** Compiles the generated source in memory; returns null when javac is unavailable or rejects it. */
+    private static byte[] javac(String className, String source) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            return null;
+        }
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        JavaFileObject unit = new SimpleJavaFileObject(URI.create("string:///" + PACKAGE.replace('.', '/') + "/" + className + ".java"),
+                JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+        try (MemoryFileManager files = new MemoryFileManager(compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8))) {
+            boolean success = compiler.getTask(null, files, diagnostics, JAVAC_OPTIONS, null, List.of(unit)).call();
+            return success ? files.output(PACKAGE + "." + className) : null;
+        } catch (IOException | UncheckedIOException | IllegalStateException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Serves this package's runtime classes to javac from class resources, which works the same
+     * from a build directory and from inside the executable jar, and captures output in memory.
+     * Nothing else is on the class path, so generated code can only reach the AWK runtime and the JDK.
+     */
+    private static final class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+        private final Map<String, ByteArrayOutputStream> outputs = new HashMap<>();
+        private List<JavaFileObject> runtimeClasses;
+
+        MemoryFileManager(StandardJavaFileManager delegate) {
+            super(delegate);
+        }
+
+        byte[] output(String className) {
+            ByteArrayOutputStream bytes = outputs.get(className);
+            return bytes == null ? null : bytes.toByteArray();
+        }
+
+        @Override
+        public Iterable<JavaFileObject> list(Location location, String packageName, Set<JavaFileObject.Kind> kinds,
+                                             boolean recurse) throws IOException {
+            if (location == StandardLocation.CLASS_PATH) {
+                if (packageName.equals(PACKAGE) && kinds.contains(JavaFileObject.Kind.CLASS)) {
+                    return runtimeClasses();
+                }
+                return List.of();
+            }
+            return super.list(location, packageName, kinds, recurse);
+        }
+
+        @Override
+        public String inferBinaryName(Location location, JavaFileObject file) {
+            if (file instanceof RuntimeClassFile) {
+                return ((RuntimeClassFile) file).binaryName;
+            }
+            return super.inferBinaryName(location, file);
+        }
+
+        @Override
+        public boolean isSameFile(FileObject a, FileObject b) {
+            return a.toUri().equals(b.toUri());
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind,
+                                                   FileObject sibling) {
+            return new SimpleJavaFileObject(URI.create("memory:///" + className.replace('.', '/') + kind.extension), kind) {
+                @Override
+                public OutputStream openOutputStream() {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    outputs.put(className, bytes);
+                    return bytes;
+                }
+            };
+        }
+
+        private List<JavaFileObject> runtimeClasses() {
+            if (runtimeClasses == null) {
+                List<JavaFileObject> files = new ArrayList<>();
+                Set<Class<?>> seen = new HashSet<>();
+                List<Class<?>> pending = new ArrayList<>(RUNTIME_CLASSES);
+                while (!pending.isEmpty()) {
+                    Class<?> type = pending.remove(pending.size() - 1);
+                    if (seen.add(type)) {
+                        files.add(new RuntimeClassFile(type));
+                        pending.addAll(List.of(type.getDeclaredClasses()));
+                    }
+                }
+                runtimeClasses = files;
+            }
+            return runtimeClasses;
+        }
+    }
+
+    private static final class RuntimeClassFile extends SimpleJavaFileObject {
+        private final Class<?> type;
+        private final String binaryName;
+
+        RuntimeClassFile(Class<?> type) {
+            super(URI.create("runtime:///" + type.getName().replace('.', '/') + ".class"), Kind.CLASS);
+            this.type = type;
+            this.binaryName = type.getName();
+        }
+
+        @Override
+        public InputStream openInputStream() throws IOException {
+            String resource = binaryName.substring(binaryName.lastIndexOf('.') + 1) + ".class";
+            try (InputStream in = type.getResourceAsStream(resource)) {
+                if (in == null) {
+                    throw new IOException("Class resource not found: " + resource);
+                }
+                return new ByteArrayInputStream(in.readAllBytes());
+            }
+        }
+    }
+}
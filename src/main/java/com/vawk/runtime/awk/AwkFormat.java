@@ -0,0 +1,378 @@
+package com.vawk.runtime.awk;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.List;
+
+/**
+ * C-compatible printf formatting for AWK. java.util.Formatter differs from C in %g (no trailing
+ * zero removal), in rounding of halfway cases, and in accepted flags, so conversions are done here
+ * on the exact binary value of each double, rounding half-to-even the way glibc does.
+ */
+final class AwkFormat {
+
+    private AwkFormat() {
+    }
+
+    /**
+     * Formats a number with a CONVFMT/OFMT-style format; "%.6g" takes a fast path.
+     */
+    static String formatNumber(String format, double value) {
+        if (format.equals("%.6g")) {
+            return general(value, 6, false);
+        }
+        return sprintf(format, List.of(AwkValue.of(value)), format);
+    }
+
+    /**
+     * Implements sprintf/printf.
+     *
+     * @param format       format string
+     * @param arguments    values consumed by the conversions; missing ones read as empty
+     * @param numberFormat CONVFMT used when %s receives a non-integral number
+     * @return formatted text
+     */
+    static String sprintf(String format, List<AwkValue> arguments, String numberFormat) {
+        StringBuilder out = new StringBuilder(format.length() + 16);
+        int next = 0;
+        int index = 0;
+        int length = format.length();
+        while (index < length) {
+            char current = format.charAt(index);
+            if (current != '%') {
+                out.append(current);
+                index++;
+                continue;
+            }
+            int specStart = index;
+            index++;
+            if (index < length && format.charAt(index) == '%') {
+                out.append('%');
+                index++;
+                continue;
+            }
+            boolean leftAlign = false;
+            boolean plus = false;
+            boolean space = false;
+            boolean alternate = false;
+            boolean zeroPad = false;
+            while (index < length) {
+                char flag = format.charAt(index);
+                if (flag == '-') {
+                    leftAlign = true;
+                } else if (flag == '+') {
+                    plus = true;
+                } else if (flag == ' ') {
+                    space = true;
+                } else if (flag == '#') {
+                    alternate = true;
+                } else if (flag == '0') {
+                    zeroPad = true;
+                } else {
+                    break;
+                }
+                index++;
+            }
+            int width = 0;
+            if (index < length && format.charAt(index) == '*') {
+                width = (int) argument(arguments, next++).toNumber();
+                if (width < 0) {
+                    leftAlign = true;
+                    width = -width;
+                }
+                index++;
+            } else {
+                while (index < length && Character.isDigit(format.charAt(index))) {
+                    width = width * 10 + (format.charAt(index) - '0');
+                    index++;
+                }
+            }
+            int precision = -1;
+            if (index < length && format.charAt(index) == '.') {
+                index++;
+                precision = 0;
+                if (index < length && format.charAt(index) == '*') {
+                    precision = (int) argument(arguments, next++).toNumber();
+                    index++;
+                } else {
+                    while (index < length && Character.isDigit(format.charAt(index))) {
+                        precision = precision * 10 + (format.charAt(index) - '0');
+                        index++;
+                    }
+                }
+            }
+            while (index < length && "hlLqjzt".indexOf(format.charAt(index)) >= 0) {
+                index++;
+            }
+            if (index >= length) {
+                out.append(format, specStart, length);
+                break;
+            }
+            char conversion = format.charAt(index++);
+            String body;
+            boolean numeric = true;
+            switch (conversion) {
+                case 'd':
+                case 'i': {
+                    double value = argument(arguments, next++).toNumber();
+                    body = integer(value, precision, plus, space);
+                    zeroPad &= precision < 0;
+                    break;
+                }
+                case 'o':
+                case 'x':
+                case 'X':
+                case 'u': {
+                    double value = argument(arguments, next++).toNumber();
+                    body = unsigned(value, conversion, precision, alternate);
+                    zeroPad &= precision < 0;
+                    break;
+                }
+                case 'e':
+                case 'E':
+                case 'f':
+                case 'F':
+                case 'g':
+                case 'G': {
+                    double value = argument(arguments, next++).toNumber();
+                    body = floating(value, conversion, precision < 0 ? 6 : precision, alternate);
+                    if (!body.startsWith("-") && (plus || space)) {
+                        body = (plus ? "+" : " ") + body;
+                    }
+                    zeroPad &= Double.isFinite(value);
+                    break;
+                }
+                case 'c': {
+                    AwkValue value = argument(arguments, next++);
+                    if (value.isNumber()) {
+                        int codePoint = (int) value.toNumber();
+                        body = Character.isValidCodePoint(codePoint) ? new String(Character.toChars(codePoint)) : "";
+                    } else {
+                        String text = value.toString(numberFormat);
+                        body = text.isEmpty() ? "" : text.substring(0, Character.charCount(text.codePointAt(0)));
+                    }
+                    numeric = false;
+                    break;
+                }
+                case 's': {
+                    String text = argument(arguments, next++).toString(numberFormat);
+                    body = precision >= 0 && precision < text.length() ? text.substring(0, precision) : text;
+                    numeric = false;
+                    break;
+                }
+                default:
+                    out.append(format, specStart, index);
+                    continue;
+            }
+            pad(out, body, width, leftAlign, zeroPad && numeric);
+        }
+        return out.toString();
+    }
+
+    private static AwkValue argument(List<AwkValue> arguments, int index) {
+        return index < arguments.size() ? arguments.get(index) : AwkValue.UNINITIALIZED;
+    }
+
+    private static void pad(StringBuilder out, String body, int width, boolean leftAlign, boolean zeroPad) {
+        int padding = width - body.length();
+        if (padding <= 0) {
+            out.append(body);
+            return;
+        }
+        if (leftAlign) {
+            out.append(body);
+            out.append(" ".repeat(padding));
+        } else if (zeroPad) {
+            int signLength = 0;
+            if (!body.isEmpty() && (body.charAt(0) == '-' || body.charAt(0) == '+' || body.charAt(0) == ' ')) {
+                signLength = 1;
+            }
+            if (body.startsWith("0x", signLength) || body.startsWith("0X", signLength)) {
+                signLength += 2;
+            }
+            out.append(body, 0, signLength);
+            out.append("0".repeat(padding));
+            out.append(body, signLength, body.length());
+        } else {
+            out.append(" ".repeat(padding));
+            out.append(body);
+        }
+    }
+
+    private static String integer(double value, int precision, boolean plus, boolean space) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return floating(value, 'f', 0, false);
+        }
+        BigInteger integral = Math.abs(value) < 9.2e18 ? BigInteger.valueOf((long) value)
+                : new BigDecimal(value).toBigInteger();
+        String digits = integral.abs().toString();
+        if (precision >= 0) {
+            if (precision == 0 && integral.signum() == 0) {
+                digits = "";
+            }
+            if (digits.length() < precision) {
+                digits = "0".repeat(precision - digits.length()) + digits;
+            }
+        }
+        String sign = integral.signum() < 0 ? "-" : plus ? "+" : space ? " " : "";
+        return sign + digits;
+    }
+
+    private static String unsigned(double value, char conversion, int precision, boolean alternate) {
+        long bits;
+        if (Double.isNaN(value)) {
+            bits = 0;
+        } else if (value >= 9.2e18) {
+            bits = new BigDecimal(value).toBigInteger().longValue();
+        } else {
+            bits = (long) value;
+        }
+        String digits;
+        switch (conversion) {
+            case 'o':
+                digits = Long.toOctalString(bits);
+                if (alternate && !digits.startsWith("0")) {
+                    digits = "0" + digits;
+                }
+                break;
+            case 'x':
+                digits = Long.toHexString(bits);
+                break;
+            case 'X':
+                digits = Long.toHexString(bits).toUpperCase();
+                break;
+            default:
+                digits = Long.toUnsignedString(bits);
+                break;
+        }
+        if (precision == 0 && bits == 0) {
+            digits = "";
+        }
+        if (precision > digits.length()) {
+            digits = "0".repeat(precision - digits.length()) + digits;
+        }
+        if (alternate && bits != 0 && (conversion == 'x' || conversion == 'X')) {
+            digits = (conversion == 'x' ? "0x" : "0X") + digits;
+        }
+        return digits;
+    }
+
+    private static String floating(double value, char conversion, int precision, boolean alternate) {
+        boolean upper = Character.isUpperCase(conversion);
+        if (Double.isNaN(value)) {
+            return upper ? "NAN" : "nan";
+        }
+        if (Double.isInfinite(value)) {
+            String text = value < 0 ? "-inf" : "inf";
+            return upper ? text.toUpperCase() : text;
+        }
+        switch (Character.toLowerCase(conversion)) {
+            case 'f':
+                return fixed(value, precision, alternate);
+            case 'e': {
+                String text = exponential(value, precision, alternate);
+                return upper ? text.toUpperCase() : text;
+            }
+            default: {
+                String text = general(value, precision, alternate);
+                return upper ? text.toUpperCase() : text;
+            }
+        }
+    }
+
+    private static String fixed(double value, int precision, boolean alternate) {
+        String digits = new BigDecimal(Math.abs(value)).setScale(precision, RoundingMode.HALF_EVEN).toPlainString();
+        if (alternate && precision == 0) {
+            digits = digits + ".";
+        }
+        return isNegative(value) ? "-" + digits : digits;
+    }
+
+    private static String exponential(double value, int precision, boolean alternate) {
+        StringBuilder text = new StringBuilder();
+        if (isNegative(value)) {
+            text.append('-');
+        }
+        int exponent;
+        String digits;
+        if (value == 0) {
+            exponent = 0;
+            digits = "0".repeat(precision + 1);
+        } else {
+            BigDecimal rounded = new BigDecimal(Math.abs(value)).round(new MathContext(precision + 1, RoundingMode.HALF_EVEN));
+            digits = rounded.unscaledValue().toString();
+            exponent = digits.length() - 1 - rounded.scale();
+            if (digits.length() < precision + 1) {
+                digits = digits + "0".repeat(precision + 1 - digits.length());
+            } else if (digits.length() > precision + 1) {
+                digits = digits.substring(0, precision + 1);
+            }
+        }
+        text.append(digits.charAt(0));
+        if (precision > 0 || alternate) {
+            text.append('.');
+        }
+        text.append(digits, 1, digits.length());
+        text.append('e').append(exponent < 0 ? '-' : '+');
+        int magnitude = Math.abs(exponent);
+        if (magnitude < 10) {
+            text.append('0');
+        }
+        text.append(magnitude);
+        return text.toString();
+    }
+
+    /**
+     * %g: chooses %e or %f by the exponent of the value rounded to {@code precision} significant
+     * digits, then strips trailing zeros unless the '#' flag is set.
+     */
+    private static String general(double value, int precision, boolean alternate) {
+        if (Double.isNaN(value)) {
+            return "nan";
+        }
+        if (Double.isInfinite(value)) {
+            return value < 0 ? "-inf" : "inf";
+        }
+        int significant = precision == 0 ? 1 : precision;
+        int exponent;
+        if (value == 0) {
+            exponent = 0;
+        } else {
+            BigDecimal rounded = new BigDecimal(Math.abs(value)).round(new MathContext(significant, RoundingMode.HALF_EVEN));
+            exponent = rounded.precision() - rounded.scale() - 1;
+        }
+        String text;
+        if (exponent < -4 || exponent >= significant) {
+            text = exponential(value, significant - 1, alternate);
+        } else {
+            text = fixed(value, significant - 1 - exponent, alternate);
+        }
+        if (alternate) {
+            return text;
+        }
+        return stripTrailingZeros(text);
+    }
+
+    private static String stripTrailingZeros(String text) {
+        int exponentAt = text.indexOf('e');
+        String mantissa = exponentAt < 0 ? text : text.substring(0, exponentAt);
+        String suffix = exponentAt < 0 ? "" : text.substring(exponentAt);
+        if (mantissa.indexOf('.') >= 0) {
+            int end = mantissa.length();
+            while (end > 0 && mantissa.charAt(end - 1) == '0') {
+                end--;
+            }
+            if (end > 0 && mantissa.charAt(end - 1) == '.') {
+                end--;
+            }
+            mantissa = mantissa.substring(0, end);
+        }
+        return mantissa + suffix;
+    }
+
+    private static boolean isNegative(double value) {
+        return value < 0 || value == 0 && 1 / value < 0;
+    }
+}
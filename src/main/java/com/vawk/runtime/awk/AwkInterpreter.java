@@ -0,0 +1,823 @@
+package com.vawk.runtime.awk;
+
+import com.vawk.runtime.awk.AwkAst.Block;
+import com.vawk.runtime.awk.AwkAst.Expression;
+import com.vawk.runtime.awk.AwkAst.ExpressionKind;
+import com.vawk.runtime.awk.AwkAst.Operator;
+import com.vawk.runtime.awk.AwkAst.Statement;
+import com.vawk.runtime.awk.AwkAst.Variable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleSupplier;
+import java.util.regex.Pattern;
+
+/**
+ * Tree-walking interpreter for parsed AWK programs. A script is immutable and may be executed
+ * many times, concurrently; all run state lives in a per-call execution. Loop control and function
+ * returns travel as status codes, while next, nextfile and exit unwind with preallocated signals
+ * because they cross rule and function boundaries.
+ */
+public final class AwkInterpreter {
+    /** Exit status awk uses for fatal errors. */
+    public static final int FATAL_EXIT_STATUS = 2;
+
+    private static final int NORMAL = 0;
+    private static final int BREAK = 1;
+    private static final int CONTINUE = 2;
+    private static final int RETURN = 3;
+    private static final Object[] NO_LOCALS = new Object[0];
+    private static final ControlSignal NEXT = new ControlSignal();
+    private static final ControlSignal NEXT_FILE = new ControlSignal();
+    private static final ControlSignal EXIT = new ControlSignal();
+    private static final Expression WHOLE_RECORD = new AwkAst.Field(new AwkAst.NumberLiteral(0));
+
+    private final AwkScript script;
+
+    public AwkInterpreter(AwkScript script) {
+        this.script = script;
+    }
+
+    /**
+     * Runs the program the way {@code awk -v name=value... -f program operand...} would.
+     *
+     * @param operands    command-line operands: input files, "-", or name=value assignments
+     * @param assignments -v assignments applied before BEGIN
+     * @param stdin       standard input, read when no file operand is given; null means empty
+     * @param stdout      destination for standard output
+     * @param stderr      destination for diagnostics and /dev/stderr
+     * @return exit status: the program's exit value, or 2 after a fatal error
+     */
+    public int execute(List<String> operands, Map<String, String> assignments, InputStream stdin,
+                       Writer stdout, Writer stderr) throws IOException {
+        return new Execution(operands, assignments, stdin, stdout, stderr).run();
+    }
+
+    private static final class ControlSignal extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ControlSignal() {
+            super(null, null, false, false);
+        }
+    }
+
+    private final class Execution {
+        private final AwkAst.Program program = script.program();
+        private final Object[] globals = new Object[program.globals.size()];
+        private final boolean[] rangeActive = new boolean[program.rules.size()];
+        private final AwkRuntime runtime;
+        private final Map<String, String> assignments;
+        private Object[] locals = NO_LOCALS;
+        private AwkValue returnValue;
+        private int exitStatus;
+
+        Execution(List<String> operands, Map<String, String> assignments, InputStream stdin, Writer stdout, Writer stderr) {
+            AwkArray argv = new AwkArray();
+            argv.put("0", AwkValue.of("awk"));
+            for (int index = 0; index < operands.size(); index++) {
+                argv.put(Integer.toString(index + 1), AwkValue.strnum(operands.get(index)));
+            }
+            setGlobal("ARGV", argv);
+            Integer argcSlot = program.globals.get("ARGC");
+            DoubleSupplier argc;
+            if (argcSlot != null) {
+                globals[argcSlot] = AwkValue.of(operands.size() + 1);
+                argc = () -> globals[argcSlot] instanceof AwkValue ? ((AwkValue) globals[argcSlot]).toNumber() : 0;
+            } else {
+                int count = operands.size() + 1;
+                argc = () -> count;
+            }
+            if (program.globals.containsKey("ENVIRON")) {
+                AwkArray environment = new AwkArray();
+                System.getenv().forEach((name, value) -> environment.put(name, AwkValue.strnum(value)));
+                setGlobal("ENVIRON", environment);
+            }
+            runtime = new AwkRuntime(stdout, stderr, stdin, argv, argc, this::assignOperand);
+            this.assignments = assignments;
+        }
+
+        private void setGlobal(String name, Object value) {
+            Integer slot = program.globals.get(name);
+            if (slot != null) {
+                globals[slot] = value;
+            }
+        }
+
+        private void assignOperand(String name, String value) {
+            Integer special = AwkAst.SPECIAL_VARIABLES.get(name);
+            if (special != null) {
+                runtime.setSpecial(special, AwkValue.strnum(value));
+                return;
+            }
+            Integer slot = program.globals.get(name);
+            if (slot == null) {
+                return;
+            }
+            if (globals[slot] instanceof AwkArray) {
+                throw new AwkRuntimeException("can't assign to " + name + "; it's an array name.");
+            }
+            globals[slot] = AwkValue.strnum(value);
+        }
+
+        int run() throws IOException {
+            try {
+                for (Map.Entry<String, String> assignment : assignments.entrySet()) {
+                    assignOperand(assignment.getKey(), AwkLexer.expandEscapes(assignment.getValue()));
+                }
+                try {
+                    for (Block action : program.beginActions) {
+                        execute(action);
+                    }
+                    if (!program.rules.isEmpty() || !program.endActions.isEmpty()) {
+                        readMainInput();
+                    }
+                } catch (ControlSignal signal) {
+                    checkExit(signal);
+                }
+                try {
+                    for (Block action : program.endActions) {
+                        execute(action);
+                    }
+                } catch (ControlSignal signal) {
+                    checkExit(signal);
+                }
+                runtime.closeAll();
+                return exitStatus;
+            } catch (AwkRuntimeException e) {
+                runtime.reportError(e.getMessage());
+                runtime.abandon();
+                return FATAL_EXIT_STATUS;
+            } catch (StackOverflowError e) {
+                runtime.reportError("function call nesting too deep");
+                runtime.abandon();
+                return FATAL_EXIT_STATUS;
+            } catch (IOException | RuntimeException e) {
+                runtime.abandon();
+                throw e;
+            }
+        }
+
+        private void checkExit(ControlSignal signal) {
+            if (signal != EXIT) {
+                throw new AwkRuntimeException("next used in BEGIN or END action");
+            }
+        }
+
+        private void readMainInput() throws IOException {
+            String text;
+            while ((text = runtime.readMainRecord()) != null) {
+                runtime.setRecord(text);
+                try {
+                    applyRules();
+                } catch (ControlSignal signal) {
+                    if (signal == NEXT_FILE) {
+                        runtime.nextFile();
+                    } else if (signal != NEXT) {
+                        throw signal;
+                    }
+                }
+            }
+        }
+
+        private void applyRules() throws IOException {
+            List<AwkAst.Rule> rules = program.rules;
+            for (int index = 0; index < rules.size(); index++) {
+                AwkAst.Rule rule = rules.get(index);
+                if (!matches(rule, index)) {
+                    continue;
+                }
+                if (rule.action == null) {
+                    Writer out = runtime.output(AwkAst.Redirect.NONE, null);
+                    runtime.write(out, runtime.getRecord() + runtime.outputRecordSeparator());
+                } else {
+                    execute(rule.action);
+                }
+            }
+        }
+
+        private boolean matches(AwkAst.Rule rule, int index) throws IOException {
+            if (rule.pattern == null) {
+                return true;
+            }
+            if (rule.rangeEnd == null) {
+                return evaluate(rule.pattern).toBoolean();
+            }
+            if (!rangeActive[index]) {
+                if (!evaluate(rule.pattern).toBoolean()) {
+                    return false;
+                }
+                rangeActive[index] = !evaluate(rule.rangeEnd).toBoolean();
+                return true;
+            }
+            if (evaluate(rule.rangeEnd).toBoolean()) {
+                rangeActive[index] = false;
+            }
+            return true;
+        }
+
+        // ------------------------------------------------------------------------------------
+        // Statements
+
+        private int execute(Statement statement) throws IOException {
+            switch (statement.kind) {
+                case EXPRESSION:
+                    evaluate(((AwkAst.ExpressionStatement) statement).expression);
+                    return NORMAL;
+                case PRINT:
+                    print((AwkAst.Output) statement);
+                    return NORMAL;
+                case PRINTF: {
+                    AwkAst.Output output = (AwkAst.Output) statement;
+                    runtime.write(destination(output), sprintf(output.arguments));
+                    return NORMAL;
+                }
+                case IF: {
+                    AwkAst.If conditional = (AwkAst.If) statement;
+                    if (evaluate(conditional.condition).toBoolean()) {
+                        return execute(conditional.whenTrue);
+                    }
+                    return conditional.whenFalse == null ? NORMAL : execute(conditional.whenFalse);
+                }
+                case WHILE: {
+                    AwkAst.Loop loop = (AwkAst.Loop) statement;
+                    while (evaluate(loop.condition).toBoolean()) {
+                        AwkRuntime.checkCancelled();
+                        int status = execute(loop.body);
+                        if (status == BREAK) {
+                            break;
+                        }
+                        if (status == RETURN) {
+                            return RETURN;
+                        }
+                    }
+                    return NORMAL;
+                }
+                case DO: {
+                    AwkAst.Loop loop = (AwkAst.Loop) statement;
+                    do {
+                        AwkRuntime.checkCancelled();
+                        int status = execute(loop.body);
+                        if (status == BREAK) {
+                            break;
+                        }
+                        if (status == RETURN) {
+                            return RETURN;
+                        }
+                    } while (evaluate(loop.condition).toBoolean());
+                    return NORMAL;
+                }
+                case FOR: {
+                    AwkAst.For loop = (AwkAst.For) statement;
+                    if (loop.initializer != null) {
+                        execute(loop.initializer);
+                    }
+                    while (loop.condition == null || evaluate(loop.condition).toBoolean()) {
+                        AwkRuntime.checkCancelled();
+                        int status = execute(loop.body);
+                        if (status == BREAK) {
+                            break;
+                        }
+                        if (status == RETURN) {
+                            return RETURN;
+                        }
+                        if (loop.update != null) {
+                            execute(loop.update);
+                        }
+                    }
+                    return NORMAL;
+                }
+                case FOR_IN: {
+                    AwkAst.ForIn loop = (AwkAst.ForIn) statement;
+                    AwkArray array = array(loop.array);
+                    for (String key : array.keys()) {
+                        if (!array.contains(key)) {
+                            continue;
+                        }
+                        store(loop.variable, AwkValue.of(key));
+                        int status = execute(loop.body);
+                        if (status == BREAK) {
+                            break;
+                        }
+                        if (status == RETURN) {
+                            return RETURN;
+                        }
+                    }
+                    return NORMAL;
+                }
+                case BLOCK: {
+                    for (Statement inner : ((Block) statement).statements) {
+                        int status = execute(inner);
+                        if (status != NORMAL) {
+                            return status;
+                        }
+                    }
+                    return NORMAL;
+                }
+                case NEXT:
+                    throw NEXT;
+                case NEXTFILE:
+                    throw NEXT_FILE;
+                case EXIT: {
+                    Expression value = ((AwkAst.Jump) statement).value;
+                    if (value != null) {
+                        exitStatus = (int) evaluate(value).toNumber() & 0xFF;
+                    }
+                    throw EXIT;
+                }
+                case RETURN: {
+                    Expression value = ((AwkAst.Jump) statement).value;
+                    returnValue = value == null ? AwkValue.UNINITIALIZED : evaluate(value);
+                    return RETURN;
+                }
+                case BREAK:
+                    return BREAK;
+                case CONTINUE:
+                    return CONTINUE;
+                case DELETE: {
+                    AwkAst.Delete delete = (AwkAst.Delete) statement;
+                    AwkArray array = array(delete.array);
+                    if (delete.subscripts == null) {
+                        array.clear();
+                    } else {
+                        array.remove(key(delete.subscripts));
+                    }
+                    return NORMAL;
+                }
+                default:
+                    throw new IllegalStateException("Unknown statement " + statement.kind);
+            }
+        }
+
+        private void print(AwkAst.Output output) throws IOException {
+            StringBuilder line = new StringBuilder();
+            if (output.arguments.isEmpty()) {
+                line.append(runtime.getRecord());
+            } else {
+                String outputFormat = runtime.outputNumberFormat();
+                for (int index = 0; index < output.arguments.size(); index++) {
+                    if (index > 0) {
+                        line.append(runtime.outputFieldSeparator());
+                    }
+                    line.append(evaluate(output.arguments.get(index)).toString(outputFormat));
+                }
+            }
+            line.append(runtime.outputRecordSeparator());
+            runtime.write(destination(output), line.toString());
+        }
+
+        private Writer destination(AwkAst.Output output) throws IOException {
+            if (output.redirect == AwkAst.Redirect.NONE) {
+                return runtime.output(AwkAst.Redirect.NONE, null);
+            }
+            return runtime.output(output.redirect, text(evaluate(output.destination)));
+        }
+
+        private String sprintf(List<Expression> arguments) throws IOException {
+            String format = text(evaluate(arguments.get(0)));
+            List<AwkValue> values = new ArrayList<>(arguments.size() - 1);
+            for (int index = 1; index < arguments.size(); index++) {
+                values.add(evaluate(arguments.get(index)));
+            }
+            return AwkFormat.sprintf(format, values, runtime.numberFormat());
+        }
+
+        // ------------------------------------------------------------------------------------
+        // Expressions
+
+        private AwkValue evaluate(Expression expression) throws IOException {
+            switch (expression.kind) {
+                case NUMBER:
+                    return ((AwkAst.NumberLiteral) expression).constant;
+                case STRING:
+                    return ((AwkAst.StringLiteral) expression).constant;
+                case REGEX:
+                    return AwkValue.of(((AwkAst.RegexLiteral) expression).pattern.matcher(runtime.getRecord()).find());
+                case GLOBAL:
+                case LOCAL:
+                    return scalar((Variable) expression);
+                case SPECIAL:
+                    return runtime.getSpecial(((AwkAst.SpecialVariable) expression).id);
+                case FIELD:
+                    return runtime.getField(fieldIndex(((AwkAst.Field) expression).index));
+                case ELEMENT: {
+                    AwkAst.Element element = (AwkAst.Element) expression;
+                    return array(element.array).get(key(element.subscripts));
+                }
+                case ASSIGN:
+                    return assign((AwkAst.Assign) expression);
+                case CONDITIONAL: {
+                    AwkAst.Conditional conditional = (AwkAst.Conditional) expression;
+                    return evaluate(conditional.condition).toBoolean()
+                            ? evaluate(conditional.whenTrue) : evaluate(conditional.whenFalse);
+                }
+                case OR: {
+                    AwkAst.Logical logical = (AwkAst.Logical) expression;
+                    return AwkValue.of(evaluate(logical.left).toBoolean() || evaluate(logical.right).toBoolean());
+                }
+                case AND: {
+                    AwkAst.Logical logical = (AwkAst.Logical) expression;
+                    return AwkValue.of(evaluate(logical.left).toBoolean() && evaluate(logical.right).toBoolean());
+                }
+                case IN: {
+                    AwkAst.In in = (AwkAst.In) expression;
+                    return AwkValue.of(array(in.array).contains(key(in.subscripts)));
+                }
+                case MATCH: {
+                    AwkAst.Match match = (AwkAst.Match) expression;
+                    String subject = text(evaluate(match.subject));
+                    boolean found = pattern(match.regex).matcher(subject).find();
+                    return AwkValue.of(found != match.negated);
+                }
+                case COMPARE: {
+                    AwkAst.Binary binary = (AwkAst.Binary) expression;
+                    int comparison = AwkValue.compare(evaluate(binary.left), evaluate(binary.right), runtime.numberFormat());
+                    return AwkValue.of(compare(binary.operator, comparison));
+                }
+                case CONCAT: {
+                    StringBuilder text = new StringBuilder();
+                    for (Expression part : ((AwkAst.Concat) expression).parts) {
+                        text.append(text(evaluate(part)));
+                    }
+                    return AwkValue.of(text.toString());
+                }
+                case BINARY: {
+                    AwkAst.Binary binary = (AwkAst.Binary) expression;
+                    double left = evaluate(binary.left).toNumber();
+                    double right = evaluate(binary.right).toNumber();
+                    return AwkValue.of(arithmetic(binary.operator, left, right));
+                }
+                case UNARY: {
+                    AwkAst.Unary unary = (AwkAst.Unary) expression;
+                    AwkValue operand = evaluate(unary.operand);
+                    switch (unary.operator) {
+                        case NOT:
+                            return AwkValue.of(!operand.toBoolean());
+                        case NEGATE:
+                            return AwkValue.of(-operand.toNumber());
+                        default:
+                            return AwkValue.of(operand.toNumber());
+                    }
+                }
+                case INCREMENT:
+                    return increment((AwkAst.Increment) expression);
+                case CALL:
+                    return call((AwkAst.Call) expression);
+                case BUILTIN:
+                    return builtin((AwkAst.Builtin) expression);
+                case GETLINE:
+                    return getline((AwkAst.Getline) expression);
+                default:
+                    throw new AwkRuntimeException("parenthesized list used outside 'in' or print");
+            }
+        }
+
+        private AwkValue assign(AwkAst.Assign assign) throws IOException {
+            Expression target = assign.target;
+            if (assign.operator == null) {
+                AwkValue value = evaluate(assign.value);
+                store(target, value);
+                return value;
+            }
+            switch (target.kind) {
+                case ELEMENT: {
+                    AwkAst.Element element = (AwkAst.Element) target;
+                    AwkArray array = array(element.array);
+                    String key = key(element.subscripts);
+                    double current = array.get(key).toNumber();
+                    AwkValue result = AwkValue.of(arithmetic(assign.operator, current, evaluate(assign.value).toNumber()));
+                    array.put(key, result);
+                    return result;
+                }
+                case FIELD: {
+                    int index = fieldIndex(((AwkAst.Field) target).index);
+                    double current = runtime.getField(index).toNumber();
+                    AwkValue result = AwkValue.of(arithmetic(assign.operator, current, evaluate(assign.value).toNumber()));
+                    runtime.setField(index, result);
+                    return result;
+                }
+                default: {
+                    double current = evaluate(target).toNumber();
+                    AwkValue result = AwkValue.of(arithmetic(assign.operator, current, evaluate(assign.value).toNumber()));
+                    store(target, result);
+                    return result;
+                }
+            }
+        }
+
+        private AwkValue increment(AwkAst.Increment increment) throws IOException {
+            Expression target = increment.target;
+            double delta = increment.increment ? 1 : -1;
+            double previous;
+            switch (target.kind) {
+                case ELEMENT: {
+                    AwkAst.Element element = (AwkAst.Element) target;
+                    AwkArray array = array(element.array);
+                    String key = key(element.subscripts);
+                    previous = array.get(key).toNumber();
+                    array.put(key, AwkValue.of(previous + delta));
+                    break;
+                }
+                case FIELD: {
+                    int index = fieldIndex(((AwkAst.Field) target).index);
+                    previous = runtime.getField(index).toNumber();
+                    runtime.setField(index, AwkValue.of(previous + delta));
+                    break;
+                }
+                default:
+                    previous = evaluate(target).toNumber();
+                    store(target, AwkValue.of(previous + delta));
+                    break;
+            }
+            return AwkValue.of(increment.prefix ? previous + delta : previous);
+        }
+
+        private void store(Expression target, AwkValue value) throws IOException {
+            switch (target.kind) {
+                case GLOBAL:
+                case LOCAL: {
+                    Variable variable = (Variable) target;
+                    Object[] slots = variable.kind == ExpressionKind.GLOBAL ? globals : locals;
+                    if (slots[variable.slot] instanceof AwkArray) {
+                        throw new AwkRuntimeException("can't assign to " + variable.name + "; it's an array name.");
+                    }
+                    slots[variable.slot] = value;
+                    break;
+                }
+                case SPECIAL:
+                    runtime.setSpecial(((AwkAst.SpecialVariable) target).id, value);
+                    break;
+                case FIELD:
+                    runtime.setField(fieldIndex(((AwkAst.Field) target).index), value);
+                    break;
+                case ELEMENT: {
+                    AwkAst.Element element = (AwkAst.Element) target;
+                    array(element.array).put(key(element.subscripts), value);
+                    break;
+                }
+                default:
+                    throw new AwkRuntimeException("assignment to non-lvalue");
+            }
+        }
+
+        private AwkValue scalar(Variable variable) {
+            Object content = variable.kind == ExpressionKind.GLOBAL ? globals[variable.slot] : locals[variable.slot];
+            if (content == null) {
+                return AwkValue.UNINITIALIZED;
+            }
+            if (content instanceof AwkValue) {
+                return (AwkValue) content;
+            }
+            throw new AwkRuntimeException("can't use array " + variable.name + " in scalar context");
+        }
+
+        private AwkArray array(Variable variable) {
+            Object[] slots = variable.kind == ExpressionKind.GLOBAL ? globals : locals;
+            Object content = slots[variable.slot];
+            if (content instanceof AwkArray) {
+                return (AwkArray) content;
+            }
+            if (content == null || ((AwkValue) content).isUninitialized()) {
+                AwkArray array = new AwkArray();
+                slots[variable.slot] = array;
+                return array;
+            }
+            throw new AwkRuntimeException("can't use scalar " + variable.name + " as array");
+        }
+
+        private String key(List<Expression> subscripts) throws IOException {
+            if (subscripts.size() == 1) {
+                return text(evaluate(subscripts.get(0)));
+            }
+            StringBuilder key = new StringBuilder();
+            for (int index = 0; index < subscripts.size(); index++) {
+                if (index > 0) {
+                    key.append(runtime.subscriptSeparator());
+                }
+                key.append(text(evaluate(subscripts.get(index))));
+            }
+            return key.toString();
+        }
+
+        private int fieldIndex(Expression index) throws IOException {
+            double value = evaluate(index).toNumber();
+            if (value > Integer.MAX_VALUE) {
+                throw new AwkRuntimeException("field index " + value + " too large");
+            }
+            return (int) value;
+        }
+
+        private String text(AwkValue value) {
+            return value.toString(runtime.numberFormat());
+        }
+
+        private Pattern pattern(Expression expression) throws IOException {
+            if (expression.kind == ExpressionKind.REGEX) {
+                return ((AwkAst.RegexLiteral) expression).pattern;
+            }
+            return runtime.regex(text(evaluate(expression)));
+        }
+
+        private boolean compare(Operator operator, int comparison) {
+            switch (operator) {
+                case LESS: return comparison < 0;
+                case LESS_EQUAL: return comparison <= 0;
+                case GREATER: return comparison > 0;
+                case GREATER_EQUAL: return comparison >= 0;
+                case EQUAL: return comparison == 0;
+                default: return comparison != 0;
+            }
+        }
+
+        private double arithmetic(Operator operator, double left, double right) {
+            switch (operator) {
+                case ADD: return left + right;
+                case SUBTRACT: return left - right;
+                case MULTIPLY: return left * right;
+                case DIVIDE:
+                    if (right == 0) {
+                        throw new AwkRuntimeException("division by zero");
+                    }
+                    return left / right;
+                case MODULO:
+                    if (right == 0) {
+                        throw new AwkRuntimeException("division by zero in %");
+                    }
+                    return left % right;
+                case POWER: return Math.pow(left, right);
+                default: throw new IllegalStateException("Not an arithmetic operator: " + operator);
+            }
+        }
+
+        private AwkValue call(AwkAst.Call call) throws IOException {
+            AwkAst.Function function = call.function;
+            Object[] frame = new Object[function.parameters.size()];
+            for (int index = 0; index < call.arguments.size(); index++) {
+                Expression argument = call.arguments.get(index);
+                if (argument.kind == ExpressionKind.GLOBAL || argument.kind == ExpressionKind.LOCAL) {
+                    Variable variable = (Variable) argument;
+                    Object[] slots = variable.kind == ExpressionKind.GLOBAL ? globals : locals;
+                    Object content = slots[variable.slot];
+                    if (content instanceof AwkArray) {
+                        frame[index] = content;
+                    } else if (function.arrayParameters[index]
+                            && (content == null || ((AwkValue) content).isUninitialized())) {
+                        AwkArray array = new AwkArray();
+                        slots[variable.slot] = array;
+                        frame[index] = array;
+                    } else {
+                        frame[index] = content;
+                    }
+                } else {
+                    frame[index] = evaluate(argument);
+                }
+            }
+            Object[] callerLocals = locals;
+            locals = frame;
+            try {
+                int status = execute(function.body);
+                AwkValue result = status == RETURN ? returnValue : AwkValue.UNINITIALIZED;
+                returnValue = null;
+                return result;
+            } finally {
+                locals = callerLocals;
+            }
+        }
+
+        private AwkValue getline(AwkAst.Getline getline) throws IOException {
+            String text;
+            switch (getline.source) {
+                case FILE:
+                    try {
+                        text = runtime.readFromFile(text(evaluate(getline.sourceExpression)));
+                    } catch (IOException e) {
+                        return AwkValue.of(-1);
+                    }
+                    break;
+                case PIPE:
+                    try {
+                        text = runtime.readFromCommand(text(evaluate(getline.sourceExpression)));
+                    } catch (IOException e) {
+                        return AwkValue.of(-1);
+                    }
+                    if (text != null) {
+                        runtime.incrementRecordNumber();
+                    }
+                    break;
+                default:
+                    text = runtime.readMainRecord();
+                    break;
+            }
+            if (text == null) {
+                return AwkValue.ZERO;
+            }
+            if (getline.target == null) {
+                runtime.setRecord(text);
+            } else {
+                store(getline.target, AwkValue.strnum(text));
+            }
+            return AwkValue.ONE;
+        }
+
+        private AwkValue builtin(AwkAst.Builtin builtin) throws IOException {
+            List<Expression> arguments = builtin.arguments;
+            switch (builtin.name) {
+                case "length": {
+                    if (arguments.isEmpty()) {
+                        String record = runtime.getRecord();
+                        return AwkValue.of(record.codePointCount(0, record.length()));
+                    }
+                    Expression argument = arguments.get(0);
+                    if (argument.kind == ExpressionKind.GLOBAL || argument.kind == ExpressionKind.LOCAL) {
+                        Variable variable = (Variable) argument;
+                        Object content = variable.kind == ExpressionKind.GLOBAL ? globals[variable.slot] : locals[variable.slot];
+                        if (content instanceof AwkArray) {
+                            return AwkValue.of(((AwkArray) content).size());
+                        }
+                    }
+                    String text = text(evaluate(argument));
+                    return AwkValue.of(text.codePointCount(0, text.length()));
+                }
+                case "substr": {
+                    String text = text(evaluate(arguments.get(0)));
+                    double start = evaluate(arguments.get(1)).toNumber();
+                    boolean hasLength = arguments.size() > 2;
+                    double length = hasLength ? evaluate(arguments.get(2)).toNumber() : 0;
+                    return AwkValue.of(AwkRuntime.substr(text, start, length, hasLength));
+                }
+                case "index":
+                    return AwkValue.of(AwkRuntime.index(text(evaluate(arguments.get(0))), text(evaluate(arguments.get(1)))));
+                case "split": {
+                    String text = text(evaluate(arguments.get(0)));
+                    AwkArray array = array((Variable) arguments.get(1));
+                    if (arguments.size() < 3) {
+                        return AwkValue.of(runtime.split(text, array, null, null));
+                    }
+                    Expression separator = arguments.get(2);
+                    if (separator.kind == ExpressionKind.REGEX) {
+                        return AwkValue.of(runtime.split(text, array, null, ((AwkAst.RegexLiteral) separator).pattern));
+                    }
+                    return AwkValue.of(runtime.split(text, array, text(evaluate(separator)), null));
+                }
+                case "sub":
+                case "gsub": {
+                    Pattern pattern = pattern(arguments.get(0));
+                    String replacement = text(evaluate(arguments.get(1)));
+                    Expression target = arguments.size() > 2 ? arguments.get(2) : WHOLE_RECORD;
+                    int[] count = new int[1];
+                    String result = runtime.substitute(pattern, replacement, text(evaluate(target)),
+                            builtin.name.equals("gsub"), count);
+                    if (result != null) {
+                        store(target, AwkValue.of(result));
+                    }
+                    return AwkValue.of(count[0]);
+                }
+                case "match": {
+                    String text = text(evaluate(arguments.get(0)));
+                    return AwkValue.of(runtime.match(text, pattern(arguments.get(1))));
+                }
+                case "sprintf":
+                    return AwkValue.of(sprintf(arguments));
+                case "sin":
+                    return AwkValue.of(Math.sin(number(arguments, 0)));
+                case "cos":
+                    return AwkValue.of(Math.cos(number(arguments, 0)));
+                case "atan2":
+                    return AwkValue.of(Math.atan2(number(arguments, 0), number(arguments, 1)));
+                case "exp":
+                    return AwkValue.of(Math.exp(number(arguments, 0)));
+                case "log":
+                    return AwkValue.of(Math.log(number(arguments, 0)));
+                case "sqrt":
+                    return AwkValue.of(Math.sqrt(number(arguments, 0)));
+                case "int": {
+                    double value = number(arguments, 0);
+                    return AwkValue.of(value < 0 ? Math.ceil(value) : Math.floor(value));
+                }
+                case "rand":
+                    return AwkValue.of(runtime.rand());
+                case "srand":
+                    return AwkValue.of(runtime.srand(arguments.isEmpty() ? null : number(arguments, 0)));
+                case "tolower":
+                    return AwkValue.of(AwkRuntime.toLower(text(evaluate(arguments.get(0)))));
+                case "toupper":
+                    return AwkValue.of(AwkRuntime.toUpper(text(evaluate(arguments.get(0)))));
+                case "system":
+                    return AwkValue.of(runtime.system(text(evaluate(arguments.get(0)))));
+                case "close":
+                    return AwkValue.of(runtime.close(text(evaluate(arguments.get(0)))));
+                case "fflush":
+                    return AwkValue.of(runtime.flush(arguments.isEmpty() ? null : text(evaluate(arguments.get(0)))));
+                default:
+                    throw new AwkRuntimeException("unknown function " + builtin.name);
+            }
+        }
+
+        private double number(List<Expression> arguments, int index) throws IOException {
+            return evaluate(arguments.get(index)).toNumber();
+        }
+    }
+}
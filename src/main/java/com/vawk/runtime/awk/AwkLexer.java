@@ -0,0 +1,388 @@
+package com.vawk.runtime.awk;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Splits AWK source text into tokens. Newlines are significant in AWK, so they are emitted as
+ * tokens and the parser decides where they may be skipped. A leading slash is ambiguous between
+ * division and a regular expression literal; the lexer always returns the division token and the
+ * parser asks for a rescan when it expects an operand.
+ */
+final class AwkLexer {
+
+    enum TokenType {
+        NEWLINE, EOF,
+        LBRACE, RBRACE, LPAREN, RPAREN, LBRACKET, RBRACKET, SEMICOLON, COMMA,
+        PLUS, MINUS, STAR, SLASH, PERCENT, CARET, NOT, GREATER, LESS, PIPE, QUESTION, COLON, DOLLAR,
+        ASSIGN, ADD_ASSIGN, SUBTRACT_ASSIGN, MULTIPLY_ASSIGN, DIVIDE_ASSIGN, MODULO_ASSIGN, POWER_ASSIGN,
+        EQUAL, NOT_EQUAL, LESS_EQUAL, GREATER_EQUAL, MATCH, NO_MATCH, AND, OR, INCREMENT, DECREMENT, APPEND,
+        NUMBER, STRING, REGEX, NAME, FUNCTION_NAME, BUILTIN_FUNCTION,
+        BEGIN, END, FUNCTION, IF, ELSE, WHILE, FOR, DO, BREAK, CONTINUE, NEXT, NEXTFILE, EXIT, RETURN,
+        DELETE, GETLINE, PRINT, PRINTF, IN
+    }
+
+    static final class Token {
+        final TokenType type;
+        final String text;
+        final double number;
+        final int line;
+        final int start;
+
+        Token(TokenType type, String text, double number, int line, int start) {
+            this.type = type;
+            this.text = text;
+            this.number = number;
+            this.line = line;
+            this.start = start;
+        }
+
+        @Override
+        public String toString() {
+            return type == TokenType.NEWLINE ? "newline" : type == TokenType.EOF ? "end of program" : "'" + text + "'";
+        }
+    }
+
+    private static final Map<String, TokenType> KEYWORDS = Map.ofEntries(
+            Map.entry("BEGIN", TokenType.BEGIN),
+            Map.entry("END", TokenType.END),
+            Map.entry("function", TokenType.FUNCTION),
+            Map.entry("func", TokenType.FUNCTION),
+            Map.entry("if", TokenType.IF),
+            Map.entry("else", TokenType.ELSE),
+            Map.entry("while", TokenType.WHILE),
+            Map.entry("for", TokenType.FOR),
+            Map.entry("do", TokenType.DO),
+            Map.entry("break", TokenType.BREAK),
+            Map.entry("continue", TokenType.CONTINUE),
+            Map.entry("next", TokenType.NEXT),
+            Map.entry("nextfile", TokenType.NEXTFILE),
+            Map.entry("exit", TokenType.EXIT),
+            Map.entry("return", TokenType.RETURN),
+            Map.entry("delete", TokenType.DELETE),
+            Map.entry("getline", TokenType.GETLINE),
+            Map.entry("print", TokenType.PRINT),
+            Map.entry("printf", TokenType.PRINTF),
+            Map.entry("in", TokenType.IN));
+
+    static final Set<String> BUILTIN_FUNCTIONS = Set.of(
+            "length", "substr", "index", "split", "sub", "gsub", "match", "sprintf",
+            "sin", "cos", "atan2", "exp", "log", "sqrt", "int", "rand", "srand",
+            "tolower", "toupper", "system", "close", "fflush");
+
+    private final String source;
+    private int position;
+    private int line = 1;
+
+    AwkLexer(String source) {
+        this.source = source;
+    }
+
+    /**
+     * Reads the next token, skipping blanks, comments, and backslash-newline continuations.
+     */
+    Token next() {
+        skipBlanksAndComments();
+        if (position >= source.length()) {
+            return token(TokenType.EOF, "", position);
+        }
+        int start = position;
+        char current = source.charAt(position);
+        if (current == '\n') {
+            position++;
+            Token newline = token(TokenType.NEWLINE, "\n", start);
+            line++;
+            return newline;
+        }
+        if (Character.isDigit(current) || (current == '.' && position + 1 < source.length() && Character.isDigit(source.charAt(position + 1)))) {
+            return readNumber(start);
+        }
+        if (Character.isLetter(current) || current == '_') {
+            return readWord(start);
+        }
+        if (current == '"') {
+            return readString(start);
+        }
+        position++;
+        switch (current) {
+            case '{': return token(TokenType.LBRACE, "{", start);
+            case '}': return token(TokenType.RBRACE, "}", start);
+            case '(': return token(TokenType.LPAREN, "(", start);
+            case ')': return token(TokenType.RPAREN, ")", start);
+            case '[': return token(TokenType.LBRACKET, "[", start);
+            case ']': return token(TokenType.RBRACKET, "]", start);
+            case ';': return token(TokenType.SEMICOLON, ";", start);
+            case ',': return token(TokenType.COMMA, ",", start);
+            case '?': return token(TokenType.QUESTION, "?", start);
+            case ':': return token(TokenType.COLON, ":", start);
+            case '$': return token(TokenType.DOLLAR, "$", start);
+            case '~': return token(TokenType.MATCH, "~", start);
+            case '+':
+                if (accept('+')) return token(TokenType.INCREMENT, "++", start);
+                if (accept('=')) return token(TokenType.ADD_ASSIGN, "+=", start);
+                return token(TokenType.PLUS, "+", start);
+            case '-':
+                if (accept('-')) return token(TokenType.DECREMENT, "--", start);
+                if (accept('=')) return token(TokenType.SUBTRACT_ASSIGN, "-=", start);
+                return token(TokenType.MINUS, "-", start);
+            case '*':
+                if (accept('*')) {
+                    if (accept('=')) return token(TokenType.POWER_ASSIGN, "**=", start);
+                    return token(TokenType.CARET, "**", start);
+                }
+                if (accept('=')) return token(TokenType.MULTIPLY_ASSIGN, "*=", start);
+                return token(TokenType.STAR, "*", start);
+            case '/':
+                if (accept('=')) return token(TokenType.DIVIDE_ASSIGN, "/=", start);
+                return token(TokenType.SLASH, "/", start);
+            case '%':
+                if (accept('=')) return token(TokenType.MODULO_ASSIGN, "%=", start);
+                return token(TokenType.PERCENT, "%", start);
+            case '^':
+                if (accept('=')) return token(TokenType.POWER_ASSIGN, "^=", start);
+                return token(TokenType.CARET, "^", start);
+            case '!':
+                if (accept('=')) return token(TokenType.NOT_EQUAL, "!=", start);
+                if (accept('~')) return token(TokenType.NO_MATCH, "!~", start);
+                return token(TokenType.NOT, "!", start);
+            case '=':
+                if (accept('=')) return token(TokenType.EQUAL, "==", start);
+                return token(TokenType.ASSIGN, "=", start);
+            case '<':
+                if (accept('=')) return token(TokenType.LESS_EQUAL, "<=", start);
+                return token(TokenType.LESS, "<", start);
+            case '>':
+                if (accept('=')) return token(TokenType.GREATER_EQUAL, ">=", start);
+                if (accept('>')) return token(TokenType.APPEND, ">>", start);
+                return token(TokenType.GREATER, ">", start);
+            case '&':
+                if (accept('&')) return token(TokenType.AND, "&&", start);
+                break;
+            case '|':
+                if (accept('|')) return token(TokenType.OR, "||", start);
+                return token(TokenType.PIPE, "|", start);
+            default:
+                break;
+        }
+        throw new AwkSyntaxException("unexpected character '" + current + "'", line);
+    }
+
+    /**
+     * Re-reads a token that started with '/' (or '/=') as a regular expression literal. Returns a
+     * REGEX token whose text is the raw expression between the slashes, with escaped slashes
+     * unescaped.
+     */
+    Token rescanAsRegex(Token slashToken) {
+        position = slashToken.start + 1;
+        line = slashToken.line;
+        StringBuilder regex = new StringBuilder();
+        boolean inBracket = false;
+        while (position < source.length()) {
+            char current = source.charAt(position);
+            if (current == '\n') {
+                break;
+            }
+            if (current == '\\' && position + 1 < source.length()) {
+                char escaped = source.charAt(position + 1);
+                if (escaped == '/') {
+                    regex.append('/');
+                } else {
+                    regex.append(current).append(escaped);
+                }
+                position += 2;
+                continue;
+            }
+            if (current == '[' && !inBracket) {
+                inBracket = true;
+                regex.append(current);
+                position++;
+                if (position < source.length() && source.charAt(position) == '^') {
+                    regex.append('^');
+                    position++;
+                }
+                if (position < source.length() && source.charAt(position) == ']') {
+                    regex.append(']');
+                    position++;
+                }
+                continue;
+            }
+            if (inBracket && current == '[' && position + 1 < source.length() && source.charAt(position + 1) == ':') {
+                int close = source.indexOf(":]", position + 2);
+                if (close > 0) {
+                    regex.append(source, position, close + 2);
+                    position = close + 2;
+                    continue;
+                }
+            }
+            if (current == ']' && inBracket) {
+                inBracket = false;
+            } else if (current == '/' && !inBracket) {
+                position++;
+                return new Token(TokenType.REGEX, regex.toString(), 0, line, slashToken.start);
+            }
+            regex.append(current);
+            position++;
+        }
+        throw new AwkSyntaxException("non-terminated regular expression", line);
+    }
+
+    private void skipBlanksAndComments() {
+        while (position < source.length()) {
+            char current = source.charAt(position);
+            if (current == ' ' || current == '\t' || current == '\r') {
+                position++;
+            } else if (current == '\\' && position + 1 < source.length() && source.charAt(position + 1) == '\n') {
+                position += 2;
+                line++;
+            } else if (current == '\\' && position + 2 < source.length() && source.charAt(position + 1) == '\r' && source.charAt(position + 2) == '\n') {
+                position += 3;
+                line++;
+            } else if (current == '#') {
+                while (position < source.length() && source.charAt(position) != '\n') {
+                    position++;
+                }
+            } else {
+                return;
+            }
+        }
+    }
+
+    private Token readNumber(int start) {
+        while (position < source.length() && Character.isDigit(source.charAt(position))) {
+            position++;
+        }
+        if (position < source.length() && source.charAt(position) == '.') {
+            position++;
+            while (position < source.length() && Character.isDigit(source.charAt(position))) {
+                position++;
+            }
+        }
+        if (position < source.length() && (source.charAt(position) == 'e' || source.charAt(position) == 'E')) {
+            int exponentStart = position;
+            position++;
+            if (position < source.length() && (source.charAt(position) == '+' || source.charAt(position) == '-')) {
+                position++;
+            }
+            if (position < source.length() && Character.isDigit(source.charAt(position))) {
+                while (position < source.length() && Character.isDigit(source.charAt(position))) {
+                    position++;
+                }
+            } else {
+                position = exponentStart;
+            }
+        }
+        String text = source.substring(start, position);
+        return new Token(TokenType.NUMBER, text, Double.parseDouble(text), line, start);
+    }
+
+    private Token readWord(int start) {
+        while (position < source.length() && (Character.isLetterOrDigit(source.charAt(position)) || source.charAt(position) == '_')) {
+            position++;
+        }
+        String word = source.substring(start, position);
+        TokenType keyword = KEYWORDS.get(word);
+        if (keyword != null) {
+            return token(keyword, word, start);
+        }
+        if (BUILTIN_FUNCTIONS.contains(word)) {
+            return token(TokenType.BUILTIN_FUNCTION, word, start);
+        }
+        if (position < source.length() && source.charAt(position) == '(') {
+            return token(TokenType.FUNCTION_NAME, word, start);
+        }
+        return token(TokenType.NAME, word, start);
+    }
+
+    private Token readString(int start) {
+        position++;
+        StringBuilder value = new StringBuilder();
+        while (true) {
+            if (position >= source.length() || source.charAt(position) == '\n') {
+                throw new AwkSyntaxException("non-terminated string", line);
+            }
+            char current = source.charAt(position++);
+            if (current == '"') {
+                break;
+            }
+            if (current != '\\' || position >= source.length()) {
+                value.append(current);
+                continue;
+            }
+            char escaped = source.charAt(position++);
+            if (escaped == '\n') {
+                line++;
+                continue;
+            }
+            position = appendEscape(source, position - 1, value);
+        }
+        return new Token(TokenType.STRING, value.toString(), 0, line, start);
+    }
+
+    /**
+     * Appends the character denoted by the escape sequence whose first character (after the
+     * backslash) sits at {@code index}, returning the index just past the sequence. Unknown escapes
+     * keep their backslash so dynamic regular expressions such as "\." still work.
+     */
+    static int appendEscape(String text, int index, StringBuilder target) {
+        char escaped = text.charAt(index);
+        switch (escaped) {
+            case 'n': target.append('\n'); return index + 1;
+            case 't': target.append('\t'); return index + 1;
+            case 'r': target.append('\r'); return index + 1;
+            case 'b': target.append('\b'); return index + 1;
+            case 'f': target.append('\f'); return index + 1;
+            case 'v': target.append('\u000B'); return index + 1;
+            case 'a': target.append('\u0007'); return index + 1;
+            case '"': target.append('"'); return index + 1;
+            case '/': target.append('/'); return index + 1;
+            case '\\': target.append('\\'); return index + 1;
+            default:
+                break;
+        }
+        if (escaped >= '0' && escaped <= '7') {
+            int value = 0;
+            int end = index;
+            while (end < text.length() && end < index + 3 && text.charAt(end) >= '0' && text.charAt(end) <= '7') {
+                value = value * 8 + (text.charAt(end) - '0');
+                end++;
+            }
+            target.append((char) value);
+            return end;
+        }
+        target.append('\\').append(escaped);
+        return index + 1;
+    }
+
+    /**
+     * Expands escape sequences in a command-line assignment value (-v name=value), as awk does.
+     */
+    static String expandEscapes(String text) {
+        if (text.indexOf('\\') < 0) {
+            return text;
+        }
+        StringBuilder expanded = new StringBuilder(text.length());
+        int index = 0;
+        while (index < text.length()) {
+            char current = text.charAt(index);
+            if (current == '\\' && index + 1 < text.length()) {
+                index = appendEscape(text, index + 1, expanded);
+            } else {
+                expanded.append(current);
+                index++;
+            }
+        }
+        return expanded.toString();
+    }
+
+    private boolean accept(char expected) {
+        if (position < source.length() && source.charAt(position) == expected) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private Token token(TokenType type, String text, int start) {
+        return new Token(type, text, 0, line, start);
+    }
+}
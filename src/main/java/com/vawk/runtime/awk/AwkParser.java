@@ -0,0 +1,1045 @@
+package com.vawk.runtime.awk;
+
+import com.vawk.runtime.awk.AwkAst.Block;
+import com.vawk.runtime.awk.AwkAst.Expression;
+import com.vawk.runtime.awk.AwkAst.ExpressionKind;
+import com.vawk.runtime.awk.AwkAst.Operator;
+import com.vawk.runtime.awk.AwkAst.Redirect;
+import com.vawk.runtime.awk.AwkAst.Statement;
+import com.vawk.runtime.awk.AwkAst.StatementKind;
+import com.vawk.runtime.awk.AwkAst.Variable;
+import com.vawk.runtime.awk.AwkLexer.Token;
+import com.vawk.runtime.awk.AwkLexer.TokenType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Recursive-descent parser for POSIX AWK. Precedence follows the POSIX grammar from lowest to
+ * highest: assignment, ?:, ||, &&, in, ~ and !~, relational, "cmd | getline", concatenation,
+ * additive, multiplicative, unary, exponent, increment/decrement, $, grouping. Two contextual rules
+ * need parser state rather than grammar: inside print/printf arguments an unparenthesized '>' is an
+ * output redirection, and a '/' in operand position starts a regular expression literal.
+ */
+final class AwkParser {
+    private final AwkLexer lexer;
+    private final AwkAst.Program program = new AwkAst.Program();
+    private final List<AwkAst.Call> calls = new ArrayList<>();
+    private Token current;
+    private Token lookahead;
+    private Map<String, Integer> locals;
+    private boolean printContext;
+
+    private AwkParser(String source) {
+        this.lexer = new AwkLexer(source);
+        this.current = lexer.next();
+    }
+
+    /**
+     * Parses a complete AWK program.
+     *
+     * @param source program text
+     * @return resolved syntax tree
+     * @throws AwkSyntaxException when the source is not valid AWK
+     */
+    static AwkAst.Program parse(String source) {
+        AwkParser parser = new AwkParser(source);
+        parser.parseProgram();
+        parser.resolveCalls();
+        return parser.program;
+    }
+
+    private void parseProgram() {
+        skipTerminators();
+        while (current.type != TokenType.EOF) {
+            switch (current.type) {
+                case BEGIN:
+                    advance();
+                    program.beginActions.add(block());
+                    break;
+                case END:
+                    advance();
+                    program.endActions.add(block());
+                    break;
+                case FUNCTION:
+                    function();
+                    break;
+                default:
+                    rule();
+                    break;
+            }
+            skipTerminators();
+        }
+    }
+
+    private void rule() {
+        Expression pattern = null;
+        Expression rangeEnd = null;
+        if (current.type != TokenType.LBRACE) {
+            pattern = expression();
+            if (current.type == TokenType.COMMA) {
+                advance();
+                skipNewlines();
+                rangeEnd = expression();
+            }
+        }
+        Block action = current.type == TokenType.LBRACE ? block() : null;
+        program.rules.add(new AwkAst.Rule(pattern, rangeEnd, action));
+    }
+
+    private void function() {
+        advance();
+        if (current.type != TokenType.NAME && current.type != TokenType.FUNCTION_NAME) {
+            throw error("function name expected");
+        }
+        String name = current.text;
+        if (program.functions.containsKey(name)) {
+            throw error("function " + name + " redefined");
+        }
+        advance();
+        expect(TokenType.LPAREN);
+        List<String> parameters = new ArrayList<>();
+        locals = new HashMap<>();
+        skipNewlines();
+        while (current.type != TokenType.RPAREN) {
+            if (current.type != TokenType.NAME) {
+                throw error("parameter name expected");
+            }
+            locals.put(current.text, parameters.size());
+            parameters.add(current.text);
+            advance();
+            skipNewlines();
+            if (current.type == TokenType.COMMA) {
+                advance();
+                skipNewlines();
+            } else if (current.type != TokenType.RPAREN) {
+                throw error("',' or ')' expected in parameter list");
+            }
+        }
+        advance();
+        AwkAst.Function function = new AwkAst.Function(name, parameters);
+        program.functions.put(name, function);
+        skipNewlines();
+        function.body = block();
+        locals = null;
+    }
+
+    private Block block() {
+        expect(TokenType.LBRACE);
+        List<Statement> statements = new ArrayList<>();
+        skipTerminators();
+        while (current.type != TokenType.RBRACE) {
+            if (current.type == TokenType.EOF) {
+                throw error("missing '}'");
+            }
+            statements.add(statement());
+            skipTerminators();
+        }
+        advance();
+        return new Block(statements);
+    }
+
+    private Statement statement() {
+        switch (current.type) {
+            case LBRACE:
+                return block();
+            case IF:
+                return ifStatement();
+            case WHILE: {
+                advance();
+                Expression condition = parenthesized();
+                skipNewlines();
+                if (current.type == TokenType.SEMICOLON) {
+                    advance();
+                    return new AwkAst.Loop(StatementKind.WHILE, condition, new Block(List.of()));
+                }
+                return new AwkAst.Loop(StatementKind.WHILE, condition, statement());
+            }
+            case DO: {
+                advance();
+                skipNewlines();
+                Statement body = statement();
+                skipTerminators();
+                expect(TokenType.WHILE);
+                Expression condition = parenthesized();
+                endSimpleStatement();
+                return new AwkAst.Loop(StatementKind.DO, condition, body);
+            }
+            case FOR:
+                return forStatement();
+            case SEMICOLON:
+                advance();
+                return new Block(List.of());
+            default:
+                Statement simple = simpleStatement();
+                endSimpleStatement();
+                return simple;
+        }
+    }
+
+    private Statement ifStatement() {
+        advance();
+        Expression condition = parenthesized();
+        skipNewlines();
+        Statement whenTrue = current.type == TokenType.SEMICOLON ? emptyStatement() : statement();
+        skipTerminators();
+        Statement whenFalse = null;
+        if (current.type == TokenType.ELSE) {
+            advance();
+            skipNewlines();
+            whenFalse = current.type == TokenType.SEMICOLON ? emptyStatement() : statement();
+        }
+        return new AwkAst.If(condition, whenTrue, whenFalse);
+    }
+
+    private Statement forStatement() {
+        advance();
+        expect(TokenType.LPAREN);
+        Statement initializer = null;
+        if (current.type != TokenType.SEMICOLON) {
+            Expression first = expression();
+            if (current.type == TokenType.RPAREN && first.kind == ExpressionKind.IN
+                    && ((AwkAst.In) first).subscripts.size() == 1
+                    && ((AwkAst.In) first).subscripts.get(0).isLvalue()) {
+                AwkAst.In in = (AwkAst.In) first;
+                advance();
+                skipNewlines();
+                Statement body = current.type == TokenType.SEMICOLON ? emptyStatement() : statement();
+                return new AwkAst.ForIn(in.subscripts.get(0), in.array, body);
+            }
+            initializer = new AwkAst.ExpressionStatement(first);
+        }
+        expect(TokenType.SEMICOLON);
+        skipNewlines();
+        Expression condition = current.type == TokenType.SEMICOLON ? null : expression();
+        expect(TokenType.SEMICOLON);
+        skipNewlines();
+        Statement update = current.type == TokenType.RPAREN ? null : simpleStatement();
+        expect(TokenType.RPAREN);
+        skipNewlines();
+        Statement body = current.type == TokenType.SEMICOLON ? emptyStatement() : statement();
+        return new AwkAst.For(initializer, condition, update, body);
+    }
+
+    private Statement emptyStatement() {
+        advance();
+        return new Block(List.of());
+    }
+
+    private Statement simpleStatement() {
+        switch (current.type) {
+            case PRINT:
+            case PRINTF:
+                return output();
+            case NEXT:
+                advance();
+                program.usesNext = true;
+                return new AwkAst.Jump(StatementKind.NEXT, null);
+            case NEXTFILE:
+                advance();
+                program.usesNext = true;
+                return new AwkAst.Jump(StatementKind.NEXTFILE, null);
+            case EXIT:
+                advance();
+                program.usesExit = true;
+                return new AwkAst.Jump(StatementKind.EXIT, endsStatement() ? null : expression());
+            case RETURN:
+                if (locals == null) {
+                    throw error("return outside function body");
+                }
+                advance();
+                return new AwkAst.Jump(StatementKind.RETURN, endsStatement() ? null : expression());
+            case BREAK:
+                advance();
+                return new AwkAst.Jump(StatementKind.BREAK, null);
+            case CONTINUE:
+                advance();
+                return new AwkAst.Jump(StatementKind.CONTINUE, null);
+            case DELETE: {
+                advance();
+                Variable array = arrayName();
+                List<Expression> subscripts = null;
+                if (current.type == TokenType.LBRACKET) {
+                    subscripts = subscripts();
+                }
+                return new AwkAst.Delete(array, subscripts);
+            }
+            default:
+                return new AwkAst.ExpressionStatement(expression());
+        }
+    }
+
+    private Statement output() {
+        StatementKind kind = current.type == TokenType.PRINT ? StatementKind.PRINT : StatementKind.PRINTF;
+        advance();
+        List<Expression> arguments = new ArrayList<>();
+        boolean savedContext = printContext;
+        printContext = true;
+        try {
+            if (!endsStatement() && current.type != TokenType.GREATER && current.type != TokenType.APPEND
+                    && current.type != TokenType.PIPE) {
+                arguments.add(expression());
+                while (current.type == TokenType.COMMA) {
+                    advance();
+                    skipNewlines();
+                    arguments.add(expression());
+                }
+            }
+        } finally {
+            printContext = savedContext;
+        }
+        if (arguments.size() == 1 && arguments.get(0).kind == ExpressionKind.GROUPING) {
+            arguments = ((AwkAst.Grouping) arguments.get(0)).expressions;
+        }
+        if (kind == StatementKind.PRINTF && arguments.isEmpty()) {
+            throw error("printf: no format");
+        }
+        Redirect redirect = Redirect.NONE;
+        Expression destination = null;
+        if (current.type == TokenType.GREATER || current.type == TokenType.APPEND || current.type == TokenType.PIPE) {
+            redirect = current.type == TokenType.GREATER ? Redirect.FILE
+                    : current.type == TokenType.APPEND ? Redirect.APPEND : Redirect.PIPE;
+            advance();
+            destination = concatenation();
+            program.usesOutsideWorld = true;
+        }
+        return new AwkAst.Output(kind, arguments, redirect, destination);
+    }
+
+    private boolean endsStatement() {
+        return current.type == TokenType.SEMICOLON || current.type == TokenType.NEWLINE
+                || current.type == TokenType.RBRACE || current.type == TokenType.EOF;
+    }
+
+    private void endSimpleStatement() {
+        if (current.type == TokenType.SEMICOLON || current.type == TokenType.NEWLINE) {
+            advance();
+        } else if (current.type != TokenType.RBRACE && current.type != TokenType.EOF && current.type != TokenType.ELSE) {
+            throw error("unexpected " + current);
+        }
+    }
+
+    private Expression parenthesized() {
+        expect(TokenType.LPAREN);
+        boolean savedContext = printContext;
+        printContext = false;
+        Expression expression = expression();
+        printContext = savedContext;
+        expect(TokenType.RPAREN);
+        return expression;
+    }
+
+    private Expression expression() {
+        Expression left = ternary();
+        AwkAst.Operator operator;
+        switch (current.type) {
+            case ASSIGN: operator = null; break;
+            case ADD_ASSIGN: operator = Operator.ADD; break;
+            case SUBTRACT_ASSIGN: operator = Operator.SUBTRACT; break;
+            case MULTIPLY_ASSIGN: operator = Operator.MULTIPLY; break;
+            case DIVIDE_ASSIGN: operator = Operator.DIVIDE; break;
+            case MODULO_ASSIGN: operator = Operator.MODULO; break;
+            case POWER_ASSIGN: operator = Operator.POWER; break;
+            default: return left;
+        }
+        if (!left.isLvalue()) {
+            throw error("assignment to non-lvalue");
+        }
+        advance();
+        skipNewlines();
+        return new AwkAst.Assign(left, operator, expression());
+    }
+
+    private Expression ternary() {
+        Expression condition = or();
+        if (current.type != TokenType.QUESTION) {
+            return condition;
+        }
+        advance();
+        skipNewlines();
+        Expression whenTrue = expression();
+        skipNewlines();
+        expect(TokenType.COLON);
+        skipNewlines();
+        Expression whenFalse = expression();
+        return new AwkAst.Conditional(condition, whenTrue, whenFalse);
+    }
+
+    private Expression or() {
+        Expression left = and();
+        while (current.type == TokenType.OR) {
+            advance();
+            skipNewlines();
+            left = new AwkAst.Logical(ExpressionKind.OR, left, and());
+        }
+        return left;
+    }
+
+    private Expression and() {
+        Expression left = in();
+        while (current.type == TokenType.AND) {
+            advance();
+            skipNewlines();
+            left = new AwkAst.Logical(ExpressionKind.AND, left, in());
+        }
+        return left;
+    }
+
+    private Expression in() {
+        Expression left = match();
+        while (current.type == TokenType.IN) {
+            advance();
+            Variable array = arrayName();
+            List<Expression> subscripts = left.kind == ExpressionKind.GROUPING
+                    ? ((AwkAst.Grouping) left).expressions : List.of(left);
+            left = new AwkAst.In(subscripts, array);
+        }
+        return left;
+    }
+
+    private Expression match() {
+        Expression left = comparison();
+        while (current.type == TokenType.MATCH || current.type == TokenType.NO_MATCH) {
+            boolean negated = current.type == TokenType.NO_MATCH;
+            advance();
+            left = new AwkAst.Match(left, comparison(), negated);
+        }
+        return left;
+    }
+
+    private Expression comparison() {
+        Expression left = pipeGetline();
+        Operator operator;
+        switch (current.type) {
+            case LESS: operator = Operator.LESS; break;
+            case LESS_EQUAL: operator = Operator.LESS_EQUAL; break;
+            case EQUAL: operator = Operator.EQUAL; break;
+            case NOT_EQUAL: operator = Operator.NOT_EQUAL; break;
+            case GREATER_EQUAL: operator = Operator.GREATER_EQUAL; break;
+            case GREATER:
+                if (printContext) {
+                    return left;
+                }
+                operator = Operator.GREATER;
+                break;
+            default:
+                return left;
+        }
+        advance();
+        return new AwkAst.Binary(ExpressionKind.COMPARE, operator, left, pipeGetline());
+    }
+
+    private Expression pipeGetline() {
+        Expression left = concatenation();
+        while (current.type == TokenType.PIPE && peek().type == TokenType.GETLINE) {
+            advance();
+            advance();
+            program.usesGetline = true;
+            program.usesOutsideWorld = true;
+            left = new AwkAst.Getline(Redirect.PIPE, left, optionalLvalue());
+        }
+        return left;
+    }
+
+    private Expression concatenation() {
+        Expression first = additive();
+        if (!startsConcatenationOperand()) {
+            return first;
+        }
+        List<Expression> parts = new ArrayList<>();
+        parts.add(first);
+        while (startsConcatenationOperand()) {
+            parts.add(additive());
+        }
+        return new AwkAst.Concat(parts);
+    }
+
+    private boolean startsConcatenationOperand() {
+        switch (current.type) {
+            case NUMBER:
+            case STRING:
+            case NAME:
+            case FUNCTION_NAME:
+            case BUILTIN_FUNCTION:
+            case DOLLAR:
+            case LPAREN:
+            case INCREMENT:
+            case DECREMENT:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private Expression additive() {
+        Expression left = multiplicative();
+        while (current.type == TokenType.PLUS || current.type == TokenType.MINUS) {
+            Operator operator = current.type == TokenType.PLUS ? Operator.ADD : Operator.SUBTRACT;
+            advance();
+            left = new AwkAst.Binary(ExpressionKind.BINARY, operator, left, multiplicative());
+        }
+        return left;
+    }
+
+    private Expression multiplicative() {
+        Expression left = unary();
+        while (current.type == TokenType.STAR || current.type == TokenType.SLASH || current.type == TokenType.PERCENT) {
+            Operator operator = current.type == TokenType.STAR ? Operator.MULTIPLY
+                    : current.type == TokenType.SLASH ? Operator.DIVIDE : Operator.MODULO;
+            advance();
+            left = new AwkAst.Binary(ExpressionKind.BINARY, operator, left, unary());
+        }
+        return left;
+    }
+
+    private Expression unary() {
+        switch (current.type) {
+            case NOT:
+                advance();
+                return new AwkAst.Unary(Operator.NOT, unary());
+            case MINUS:
+                advance();
+                return new AwkAst.Unary(Operator.NEGATE, unary());
+            case PLUS:
+                advance();
+                return new AwkAst.Unary(Operator.PLUS, unary());
+            default:
+                return power();
+        }
+    }
+
+    private Expression power() {
+        Expression base = increment();
+        if (current.type != TokenType.CARET) {
+            return base;
+        }
+        advance();
+        Expression exponent;
+        if (current.type == TokenType.MINUS || current.type == TokenType.PLUS || current.type == TokenType.NOT) {
+            exponent = unary();
+        } else {
+            exponent = power();
+        }
+        return new AwkAst.Binary(ExpressionKind.BINARY, Operator.POWER, base, exponent);
+    }
+
+    private Expression increment() {
+        if (current.type == TokenType.INCREMENT || current.type == TokenType.DECREMENT) {
+            boolean increment = current.type == TokenType.INCREMENT;
+            advance();
+            Expression target = increment();
+            if (!target.isLvalue()) {
+                throw error("++ or -- applied to non-lvalue");
+            }
+            return new AwkAst.Increment(target, increment, true);
+        }
+        Expression operand = primary();
+        if (operand.isLvalue() && (current.type == TokenType.INCREMENT || current.type == TokenType.DECREMENT)) {
+            boolean increment = current.type == TokenType.INCREMENT;
+            advance();
+            return new AwkAst.Increment(operand, increment, false);
+        }
+        return operand;
+    }
+
+    private Expression primary() {
+        Token token = current;
+        switch (token.type) {
+            case NUMBER:
+                advance();
+                return new AwkAst.NumberLiteral(token.number);
+            case STRING:
+                advance();
+                return new AwkAst.StringLiteral(token.text);
+            case SLASH:
+            case DIVIDE_ASSIGN: {
+                Token regex = lexer.rescanAsRegex(token);
+                current = lexer.next();
+                try {
+                    return new AwkAst.RegexLiteral(regex.text, AwkRegex.compile(regex.text));
+                } catch (AwkRuntimeException e) {
+                    throw new AwkSyntaxException(e.getMessage(), regex.line);
+                }
+            }
+            case DOLLAR:
+                advance();
+                return new AwkAst.Field(fieldIndex());
+            case LPAREN: {
+                advance();
+                boolean savedContext = printContext;
+                printContext = false;
+                List<Expression> expressions = new ArrayList<>();
+                skipNewlines();
+                expressions.add(expression());
+                skipNewlines();
+                while (current.type == TokenType.COMMA) {
+                    advance();
+                    skipNewlines();
+                    expressions.add(expression());
+                    skipNewlines();
+                }
+                printContext = savedContext;
+                expect(TokenType.RPAREN);
+                if (expressions.size() > 1) {
+                    if (current.type != TokenType.IN && !printContext) {
+                        throw error("parenthesized list must be followed by 'in'");
+                    }
+                    return new AwkAst.Grouping(expressions);
+                }
+                return expressions.get(0);
+            }
+            case NAME: {
+                advance();
+                if (current.type == TokenType.LBRACKET) {
+                    return new AwkAst.Element(variable(token.text, token), subscripts());
+                }
+                return variableOrSpecial(token);
+            }
+            case FUNCTION_NAME: {
+                advance();
+                AwkAst.Call call = new AwkAst.Call(token.text, arguments(), token.line);
+                calls.add(call);
+                return call;
+            }
+            case BUILTIN_FUNCTION:
+                return builtin();
+            case GETLINE: {
+                advance();
+                program.usesGetline = true;
+                Expression target = optionalLvalue();
+                if (current.type == TokenType.LESS) {
+                    advance();
+                    program.usesOutsideWorld = true;
+                    return new AwkAst.Getline(Redirect.FILE, increment(), target);
+                }
+                return new AwkAst.Getline(Redirect.NONE, null, target);
+            }
+            case NOT:
+            case MINUS:
+            case PLUS:
+                return unary();
+            default:
+                throw error("unexpected " + token);
+        }
+    }
+
+    private Expression fieldIndex() {
+        if (current.type == TokenType.INCREMENT || current.type == TokenType.DECREMENT) {
+            return increment();
+        }
+        if (current.type == TokenType.MINUS || current.type == TokenType.PLUS || current.type == TokenType.NOT) {
+            return unary();
+        }
+        return primary();
+    }
+
+    private Expression builtin() {
+        Token token = current;
+        advance();
+        String name = token.text;
+        if (current.type != TokenType.LPAREN) {
+            if (name.equals("length")) {
+                return new AwkAst.Builtin(name, List.of());
+            }
+            throw error(name + " requires arguments in parentheses");
+        }
+        List<Expression> arguments = arguments();
+        int count = arguments.size();
+        switch (name) {
+            case "split":
+                if (count < 2 || count > 3 || arguments.get(1).kind != ExpressionKind.GLOBAL
+                        && arguments.get(1).kind != ExpressionKind.LOCAL) {
+                    throw error("split requires a string and an array name");
+                }
+                break;
+            case "sub":
+            case "gsub":
+                if (count < 2 || count > 3 || count == 3 && !arguments.get(2).isLvalue()) {
+                    throw error(name + " requires a regex, a replacement and an optional target");
+                }
+                break;
+            case "substr":
+                if (count < 2 || count > 3) {
+                    throw error("substr requires 2 or 3 arguments");
+                }
+                break;
+            case "index":
+            case "match":
+            case "atan2":
+                if (count != 2) {
+                    throw error(name + " requires 2 arguments");
+                }
+                break;
+            case "sprintf":
+                if (count == 0) {
+                    throw error("sprintf requires a format");
+                }
+                break;
+            case "sin":
+            case "cos":
+            case "exp":
+            case "log":
+            case "sqrt":
+            case "int":
+            case "tolower":
+            case "toupper":
+            case "system":
+            case "close":
+                if (count != 1) {
+                    throw error(name + " requires 1 argument");
+                }
+                break;
+            default:
+                break;
+        }
+        if (name.equals("system") || name.equals("srand") || name.equals("close") || name.equals("fflush")) {
+            program.usesOutsideWorld = true;
+        }
+        return new AwkAst.Builtin(name, arguments);
+    }
+
+    private List<Expression> arguments() {
+        expect(TokenType.LPAREN);
+        boolean savedContext = printContext;
+        printContext = false;
+        List<Expression> arguments = new ArrayList<>();
+        skipNewlines();
+        if (current.type != TokenType.RPAREN) {
+            arguments.add(expression());
+            skipNewlines();
+            while (current.type == TokenType.COMMA) {
+                advance();
+                skipNewlines();
+                arguments.add(expression());
+                skipNewlines();
+            }
+        }
+        printContext = savedContext;
+        expect(TokenType.RPAREN);
+        return arguments;
+    }
+
+    private List<Expression> subscripts() {
+        expect(TokenType.LBRACKET);
+        boolean savedContext = printContext;
+        printContext = false;
+        List<Expression> subscripts = new ArrayList<>();
+        subscripts.add(expression());
+        while (current.type == TokenType.COMMA) {
+            advance();
+            skipNewlines();
+            subscripts.add(expression());
+        }
+        printContext = savedContext;
+        expect(TokenType.RBRACKET);
+        return subscripts;
+    }
+
+    private Expression optionalLvalue() {
+        if (current.type == TokenType.DOLLAR) {
+            advance();
+            return new AwkAst.Field(fieldIndex());
+        }
+        if (current.type == TokenType.NAME) {
+            Token token = current;
+            advance();
+            if (current.type == TokenType.LBRACKET) {
+                return new AwkAst.Element(variable(token.text, token), subscripts());
+            }
+            return variableOrSpecial(token);
+        }
+        return null;
+    }
+
+    private Variable arrayName() {
+        if (current.type != TokenType.NAME) {
+            throw error("array name expected");
+        }
+        Token token = current;
+        advance();
+        return variable(token.text, token);
+    }
+
+    private Expression variableOrSpecial(Token token) {
+        Integer special = AwkAst.SPECIAL_VARIABLES.get(token.text);
+        if (special != null && (locals == null || !locals.containsKey(token.text))) {
+            program.referencedSpecials.add(token.text);
+            return new AwkAst.SpecialVariable(token.text, special);
+        }
+        return variable(token.text, token);
+    }
+
+    private Variable variable(String name, Token token) {
+        if (locals != null && locals.containsKey(name)) {
+            return new Variable(ExpressionKind.LOCAL, name, locals.get(name));
+        }
+        if (AwkAst.SPECIAL_VARIABLES.containsKey(name)) {
+            throw new AwkSyntaxException("can't use special variable " + name + " as an array", token.line);
+        }
+        if (program.functions.containsKey(name) && locals == null) {
+            throw new AwkSyntaxException("function name " + name + " used as a variable", token.line);
+        }
+        Integer slot = program.globals.get(name);
+        if (slot == null) {
+            slot = program.globals.size();
+            program.globals.put(name, slot);
+        }
+        return new Variable(ExpressionKind.GLOBAL, name, slot);
+    }
+
+    /**
+     * Binds calls to their function definitions (functions may be called before they are defined)
+     * and works out which parameters are used as arrays, so callers can pass an untouched variable
+     * by reference.
+     */
+    private void resolveCalls() {
+        for (AwkAst.Call call : calls) {
+            AwkAst.Function function = program.functions.get(call.name);
+            if (function == null) {
+                throw new AwkSyntaxException("calling undefined function " + call.name, call.line);
+            }
+            if (call.arguments.size() > function.parameters.size()) {
+                throw new AwkSyntaxException("function " + call.name + " called with too many arguments", call.line);
+            }
+            call.function = function;
+        }
+        for (AwkAst.Function function : program.functions.values()) {
+            function.arrayParameters = new boolean[function.parameters.size()];
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (AwkAst.Function function : program.functions.values()) {
+                ArrayUsage usage = new ArrayUsage(function.arrayParameters);
+                usage.statement(function.body);
+                changed |= usage.changed;
+            }
+        }
+    }
+
+    private Token peek() {
+        if (lookahead == null) {
+            lookahead = lexer.next();
+        }
+        return lookahead;
+    }
+
+    private void advance() {
+        if (lookahead != null) {
+            current = lookahead;
+            lookahead = null;
+        } else {
+            current = lexer.next();
+        }
+    }
+
+    private void expect(TokenType type) {
+        if (current.type != type) {
+            throw error("unexpected " + current);
+        }
+        advance();
+    }
+
+    private void skipNewlines() {
+        while (current.type == TokenType.NEWLINE) {
+            advance();
+        }
+    }
+
+    private void skipTerminators() {
+        while (current.type == TokenType.NEWLINE || current.type == TokenType.SEMICOLON) {
+            advance();
+        }
+    }
+
+    private AwkSyntaxException error(String message) {
+        return new AwkSyntaxException(message, current.line);
+    }
+
+    /**
+     * Marks function parameters that are used as arrays: subscripted, iterated, deleted, split
+     * into, tested with 'in', or passed on to another function's array parameter.
+     */
+    private static final class ArrayUsage {
+        private final boolean[] arrayParameters;
+        private boolean changed;
+
+        ArrayUsage(boolean[] arrayParameters) {
+            this.arrayParameters = arrayParameters;
+        }
+
+        private void mark(Variable variable) {
+            if (variable.kind == ExpressionKind.LOCAL && !arrayParameters[variable.slot]) {
+                arrayParameters[variable.slot] = true;
+                changed = true;
+            }
+        }
+
+        void statement(Statement statement) {
+            if (statement == null) {
+                return;
+            }
+            switch (statement.kind) {
+                case EXPRESSION:
+                    expression(((AwkAst.ExpressionStatement) statement).expression);
+                    break;
+                case PRINT:
+                case PRINTF: {
+                    AwkAst.Output output = (AwkAst.Output) statement;
+                    output.arguments.forEach(this::expression);
+                    expression(output.destination);
+                    break;
+                }
+                case IF: {
+                    AwkAst.If ifStatement = (AwkAst.If) statement;
+                    expression(ifStatement.condition);
+                    statement(ifStatement.whenTrue);
+                    statement(ifStatement.whenFalse);
+                    break;
+                }
+                case WHILE:
+                case DO: {
+                    AwkAst.Loop loop = (AwkAst.Loop) statement;
+                    expression(loop.condition);
+                    statement(loop.body);
+                    break;
+                }
+                case FOR: {
+                    AwkAst.For loop = (AwkAst.For) statement;
+                    statement(loop.initializer);
+                    expression(loop.condition);
+                    statement(loop.update);
+                    statement(loop.body);
+                    break;
+                }
+                case FOR_IN: {
+                    AwkAst.ForIn loop = (AwkAst.ForIn) statement;
+                    mark(loop.array);
+                    expression(loop.variable);
+                    statement(loop.body);
+                    break;
+                }
+                case BLOCK:
+                    ((Block) statement).statements.forEach(this::statement);
+                    break;
+                case EXIT:
+                case RETURN:
+                    expression(((AwkAst.Jump) statement).value);
+                    break;
+                case DELETE: {
+                    AwkAst.Delete delete = (AwkAst.Delete) statement;
+                    mark(delete.array);
+                    if (delete.subscripts != null) {
+                        delete.subscripts.forEach(this::expression);
+                    }
+                    break;
+                }
+                default:
+                    break;
+            }
+        }
+
+        void expression(Expression expression) {
+            if (expression == null) {
+                return;
+            }
+            switch (expression.kind) {
+                case FIELD:
+                    expression(((AwkAst.Field) expression).index);
+                    break;
+                case ELEMENT: {
+                    AwkAst.Element element = (AwkAst.Element) expression;
+                    mark(element.array);
+                    element.subscripts.forEach(this::expression);
+                    break;
+                }
+                case ASSIGN: {
+                    AwkAst.Assign assign = (AwkAst.Assign) expression;
+                    expression(assign.target);
+                    expression(assign.value);
+                    break;
+                }
+                case CONDITIONAL: {
+                    AwkAst.Conditional conditional = (AwkAst.Conditional) expression;
+                    expression(conditional.condition);
+                    expression(conditional.whenTrue);
+                    expression(conditional.whenFalse);
+                    break;
+                }
+                case OR:
+                case AND: {
+                    AwkAst.Logical logical = (AwkAst.Logical) expression;
+                    expression(logical.left);
+                    expression(logical.right);
+                    break;
+                }
+                case IN: {
+                    AwkAst.In in = (AwkAst.In) expression;
+                    mark(in.array);
+                    in.subscripts.forEach(this::expression);
+                    break;
+                }
+                case MATCH: {
+                    AwkAst.Match match = (AwkAst.Match) expression;
+                    expression(match.subject);
+                    expression(match.regex);
+                    break;
+                }
+                case COMPARE:
+                case BINARY: {
+                    AwkAst.Binary binary = (AwkAst.Binary) expression;
+                    expression(binary.left);
+                    expression(binary.right);
+                    break;
+                }
+                case CONCAT:
+                    ((AwkAst.Concat) expression).parts.forEach(this::expression);
+                    break;
+                case UNARY:
+                    expression(((AwkAst.Unary) expression).operand);
+                    break;
+                case INCREMENT:
+                    expression(((AwkAst.Increment) expression).target);
+                    break;
+                case CALL: {
+                    AwkAst.Call call = (AwkAst.Call) expression;
+                    for (int index = 0; index < call.arguments.size(); index++) {
+                        Expression argument = call.arguments.get(index);
+                        if (argument.kind == ExpressionKind.LOCAL && call.function.arrayParameters != null
+                                && call.function.arrayParameters[index]) {
+                            mark((Variable) argument);
+                        } else {
+                            expression(argument);
+                        }
+                    }
+                    break;
+                }
+                case BUILTIN: {
+                    AwkAst.Builtin builtin = (AwkAst.Builtin) expression;
+                    for (int index = 0; index < builtin.arguments.size(); index++) {
+                        Expression argument = builtin.arguments.get(index);
+                        if (index == 1 && builtin.name.equals("split")) {
+                            mark((Variable) argument);
+                        } else {
+                            expression(argument);
+                        }
+                    }
+                    break;
+                }
+                case GETLINE: {
+                    AwkAst.Getline getline = (AwkAst.Getline) expression;
+                    expression(getline.sourceExpression);
+                    expression(getline.target);
+                    break;
+                }
+                case GROUPING:
+                    ((AwkAst.Grouping) expression).expressions.forEach(this::expression);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.vawk.runtime.awk;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads records from a character stream according to RS. The separator is passed on every read
+ * because a program may change RS between records. Single-character separators scan the buffer
+ * directly; the empty separator selects paragraph mode (records separated by blank lines); longer
+ * separators are regular expressions.
+ */
+final class AwkRecordReader implements Closeable {
+    private static final int INITIAL_BUFFER_CHARS = 1 << 16;
+
+    private final Reader reader;
+    private char[] data = new char[INITIAL_BUFFER_CHARS];
+    private int start;
+    private int end;
+    private boolean endOfInput;
+
+    AwkRecordReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Reads the next record.
+     *
+     * @param separator current RS value
+     * @param pattern   compiled RS when it is longer than one character, otherwise ignored
+     * @return the record text, or null at end of input
+     */
+    String read(String separator, Pattern pattern) throws IOException {
+        if (separator.isEmpty()) {
+            return readParagraph();
+        }
+        if (separator.length() == 1) {
+            return readUntil(separator.charAt(0));
+        }
+        return readUntil(pattern);
+    }
+
+    private String readUntil(char separator) throws IOException {
+        int scan = start;
+        while (true) {
+            for (; scan < end; scan++) {
+                if (data[scan] == separator) {
+                    String record = new String(data, start, scan - start);
+                    start = scan + 1;
+                    return record;
+                }
+            }
+            int offset = scan - start;
+            if (!fill()) {
+                return remainder();
+            }
+            scan = start + offset;
+        }
+    }
+
+    private String readParagraph() throws IOException {
+        while (true) {
+            while (start < end && data[start] == '\n') {
+                start++;
+            }
+            if (start < end) {
+                break;
+            }
+            if (!fill()) {
+                return null;
+            }
+        }
+        int scan = start;
+        while (true) {
+            for (; scan + 1 < end; scan++) {
+                if (data[scan] == '\n' && data[scan + 1] == '\n') {
+                    String record = new String(data, start, scan - start);
+                    start = scan + 2;
+                    return record;
+                }
+            }
+            int offset = scan - start;
+            if (!fill()) {
+                int last = end;
+                while (last > start && data[last - 1] == '\n') {
+                    last--;
+                }
+                String record = last > start ? new String(data, start, last - start) : null;
+                start = end;
+                return record;
+            }
+            scan = start + offset;
+        }
+    }
+
+    private String readUntil(Pattern separator) throws IOException {
+        while (true) {
+            Matcher matcher = separator.matcher(CharBuffer.wrap(data, start, end - start));
+            boolean found = false;
+            while (matcher.find()) {
+                if (matcher.end() > matcher.start()) {
+                    found = true;
+                    break;
+                }
+            }
+            if (found && (endOfInput || matcher.end() < end - start)) {
+                String record = new String(data, start, matcher.start());
+                start += matcher.end();
+                return record;
+            }
+            if (!fill() && !found) {
+                return remainder();
+            }
+        }
+    }
+
+    private String remainder() {
+        if (end > start) {
+            String record = new String(data, start, end - start);
+            start = end;
+            return record;
+        }
+        return null;
+    }
+
+    private boolean fill() throws IOException {
+        if (endOfInput) {
+            return false;
+        }
+        if (start > 0) {
+            System.arraycopy(data, start, data, 0, end - start);
+            end -= start;
+            start = 0;
+        }
+        if (end == data.length) {
+            char[] grown = new char[data.length * 2];
+            System.arraycopy(data, 0, grown, 0, end);
+            data = grown;
+        }
+        int read;
+        do {
+            read = reader.read(data, end, data.length - end);
+        } while (read == 0);
+        if (read < 0) {
+            endOfInput = true;
+            return false;
+        }
+        end += read;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
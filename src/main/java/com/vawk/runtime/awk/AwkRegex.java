@@ -0,0 +1,217 @@
+package com.vawk.runtime.awk;
+
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Translates POSIX extended regular expressions, as written in AWK programs, into
+ * java.util.regex patterns. The dialects mostly agree; the differences handled here are bracket
+ * expressions (POSIX classes, literal ']' first, backslash escapes), '$' meaning end of string
+ * only, '.' matching newlines, a literal '{' that does not start an interval, and AWK string
+ * escapes such as \t and \/.
+ */
+final class AwkRegex {
+    private static final Map<String, String> CLASSES = Map.ofEntries(
+            Map.entry("alpha", "\\p{Alpha}"),
+            Map.entry("digit", "0-9"),
+            Map.entry("alnum", "\\p{Alnum}"),
+            Map.entry("upper", "\\p{Upper}"),
+            Map.entry("lower", "\\p{Lower}"),
+            Map.entry("space", " \\t\\n\\r\\f\\x0B"),
+            Map.entry("blank", " \\t"),
+            Map.entry("punct", "\\p{Punct}"),
+            Map.entry("print", "\\p{Print}"),
+            Map.entry("graph", "\\p{Graph}"),
+            Map.entry("cntrl", "\\p{Cntrl}"),
+            Map.entry("xdigit", "0-9A-Fa-f"));
+
+    private AwkRegex() {
+    }
+
+    /**
+     * Compiles an AWK regular expression.
+     *
+     * @param expression ERE source as written between slashes or held in a string
+     * @return compiled pattern
+     * @throws AwkRuntimeException when the expression is malformed
+     */
+    static Pattern compile(String expression) {
+        try {
+            return Pattern.compile(translate(expression), Pattern.DOTALL);
+        } catch (IllegalArgumentException e) {
+            throw new AwkRuntimeException("invalid regular expression /" + expression + "/", e);
+        }
+    }
+
+    static String translate(String expression) {
+        StringBuilder java = new StringBuilder(expression.length() + 8);
+        int index = 0;
+        boolean atomStart = true;
+        while (index < expression.length()) {
+            char current = expression.charAt(index);
+            switch (current) {
+                case '\\':
+                    index = escape(expression, index + 1, java, false);
+                    atomStart = false;
+                    continue;
+                case '[':
+                    index = bracket(expression, index, java);
+                    atomStart = false;
+                    continue;
+                case '$':
+                    java.append("\\z");
+                    break;
+                case '{':
+                    if (atomStart || !isInterval(expression, index)) {
+                        java.append("\\{");
+                    } else {
+                        int close = expression.indexOf('}', index);
+                        java.append(expression, index, close + 1);
+                        index = close + 1;
+                        continue;
+                    }
+                    break;
+                case '}':
+                    java.append("\\}");
+                    break;
+                case '*':
+                case '+':
+                case '?':
+                    java.append(atomStart ? "\\" + current : String.valueOf(current));
+                    break;
+                case '(':
+                case '|':
+                    java.append(current);
+                    index++;
+                    atomStart = true;
+                    continue;
+                default:
+                    java.append(current);
+                    break;
+            }
+            atomStart = false;
+            index++;
+        }
+        return java.toString();
+    }
+
+    private static boolean isInterval(String expression, int open) {
+        int index = open + 1;
+        int digits = 0;
+        while (index < expression.length() && Character.isDigit(expression.charAt(index))) {
+            index++;
+            digits++;
+        }
+        if (digits == 0) {
+            return false;
+        }
+        if (index < expression.length() && expression.charAt(index) == ',') {
+            index++;
+            while (index < expression.length() && Character.isDigit(expression.charAt(index))) {
+                index++;
+            }
+        }
+        return index < expression.length() && expression.charAt(index) == '}';
+    }
+
+    /**
+     * Translates the escape whose character sits at {@code index} and returns the index after it.
+     * Inside a bracket expression the result must be a single class member.
+     */
+    private static int escape(String expression, int index, StringBuilder java, boolean inBracket) {
+        if (index >= expression.length()) {
+            java.append("\\\\");
+            return index;
+        }
+        char escaped = expression.charAt(index);
+        switch (escaped) {
+            case 'n': java.append("\\n"); return index + 1;
+            case 't': java.append("\\t"); return index + 1;
+            case 'r': java.append("\\r"); return index + 1;
+            case 'f': java.append("\\f"); return index + 1;
+            case 'v': java.append("\\x0B"); return index + 1;
+            case 'a': java.append("\\x07"); return index + 1;
+            case 'b': java.append("\\x08"); return index + 1;
+            default:
+                break;
+        }
+        if (escaped >= '0' && escaped <= '7') {
+            int value = 0;
+            int end = index;
+            while (end < expression.length() && end < index + 3 && expression.charAt(end) >= '0' && expression.charAt(end) <= '7') {
+                value = value * 8 + (expression.charAt(end) - '0');
+                end++;
+            }
+            appendLiteral((char) value, java);
+            return end;
+        }
+        if (!inBracket && Character.isLetterOrDigit(escaped)) {
+            java.append(escaped);
+        } else {
+            appendLiteral(escaped, java);
+        }
+        return index + 1;
+    }
+
+    private static void appendLiteral(char literal, StringBuilder java) {
+        if (Character.isLetterOrDigit(literal)) {
+            java.append(literal);
+        } else if (literal < 0x20 || literal == 0x7F) {
+            java.append(String.format("\\x%02X", (int) literal));
+        } else {
+            java.append('\\').append(literal);
+        }
+    }
+
+    /**
+     * Translates a bracket expression starting at {@code open} and returns the index after its
+     * closing bracket. An unterminated bracket is treated as a literal '['.
+     */
+    private static int bracket(String expression, int open, StringBuilder java) {
+        StringBuilder members = new StringBuilder();
+        int index = open + 1;
+        boolean negated = false;
+        if (index < expression.length() && expression.charAt(index) == '^') {
+            negated = true;
+            index++;
+        }
+        boolean first = true;
+        while (index < expression.length()) {
+            char current = expression.charAt(index);
+            if (current == ']' && !first) {
+                java.append('[');
+                if (negated) {
+                    java.append('^');
+                }
+                java.append(members).append(']');
+                return index + 1;
+            }
+            first = false;
+            if (current == '[' && index + 1 < expression.length() && expression.charAt(index + 1) == ':') {
+                int close = expression.indexOf(":]", index + 2);
+                if (close > 0) {
+                    String name = expression.substring(index + 2, close);
+                    String translated = CLASSES.get(name);
+                    if (translated == null) {
+                        throw new AwkRuntimeException("invalid character class [:" + name + ":]");
+                    }
+                    members.append(translated);
+                    index = close + 2;
+                    continue;
+                }
+            }
+            if (current == '\\') {
+                index = escape(expression, index + 1, members, true);
+                continue;
+            }
+            if (current == '-' && members.length() > 0 && index + 1 < expression.length() && expression.charAt(index + 1) != ']') {
+                members.append('-');
+            } else {
+                appendLiteral(current, members);
+            }
+            index++;
+        }
+        java.append("\\[");
+        return open + 1;
+    }
+}
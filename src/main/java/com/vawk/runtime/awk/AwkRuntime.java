@@ -0,0 +1,904 @@
+package com.vawk.runtime.awk;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.DoubleSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Per-run state shared by every way of executing an AWK program: the current record and its
+ * fields, the special variables, the main input walk over ARGV, redirected files and pipes, and
+ * the string builtins. Fields are split lazily and $0 is rebuilt lazily, so programs that only
+ * look at $0 never pay for splitting and programs that assign several fields rebuild once.
+ */
+final class AwkRuntime {
+    private static final String DEFAULT_NUMBER_FORMAT = "%.6g";
+    private static final int REGEX_CACHE_SIZE = 64;
+    private static final String STANDARD_STREAM = "-";
+
+    private final Writer stdout;
+    private final Writer stderr;
+    private final InputStream stdin;
+    private final AwkArray argv;
+    private final DoubleSupplier argc;
+    private final BiConsumer<String, String> operandAssignment;
+    private final Map<String, Pattern> regexCache = new LinkedHashMap<>(REGEX_CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest) {
+            return size() > REGEX_CACHE_SIZE;
+        }
+    };
+    private final Map<String, Writer> outputs = new LinkedHashMap<>();
+    private final Map<String, Process> outputProcesses = new LinkedHashMap<>();
+    private final Map<String, AwkRecordReader> inputs = new LinkedHashMap<>();
+    private final Map<String, Process> inputProcesses = new LinkedHashMap<>();
+    private final List<Thread> pumps = new ArrayList<>();
+
+    private String fieldSeparator = " ";
+    private Pattern fieldPattern;
+    private String outputFieldSeparator = " ";
+    private String outputRecordSeparator = "\n";
+    private String recordSeparator = "\n";
+    private Pattern recordPattern;
+    private String subscriptSeparator = "\u001C";
+    private String numberFormat = DEFAULT_NUMBER_FORMAT;
+    private String outputNumberFormat = DEFAULT_NUMBER_FORMAT;
+    private AwkValue filename = AwkValue.EMPTY;
+    private double recordNumber;
+    private double fileRecordNumber;
+    private double matchStart;
+    private double matchLength = -1;
+
+    private String record = "";
+    private AwkValue recordValue = AwkValue.strnum("");
+    private boolean recordStale;
+    private boolean fieldsSplit = true;
+    private String[] fieldText = new String[16];
+    private AwkValue[] fieldValue = new AwkValue[16];
+    private int fieldCount;
+
+    private int nextArgument = 1;
+    private boolean readAnyFile;
+    private AwkRecordReader mainInput;
+    private AwkRecordReader standardInputReader;
+
+    private Random random = new Random(0);
+    private double seed;
+
+    AwkRuntime(Writer stdout, Writer stderr, InputStream stdin, AwkArray argv, DoubleSupplier argc,
+               BiConsumer<String, String> operandAssignment) {
+        this.stdout = new BufferedWriter(stdout, 1 << 16);
+        this.stderr = stderr;
+        this.stdin = stdin;
+        this.argv = argv;
+        this.argc = argc;
+        this.operandAssignment = operandAssignment;
+    }
+
+    // ----------------------------------------------------------------------------------------
+    // Special variables
+
+    AwkValue getSpecial(int id) {
+        switch (id) {
+            case AwkAst.NR: return AwkValue.of(recordNumber);
+            case AwkAst.NF: return AwkValue.of(getFieldCount());
+            case AwkAst.FNR: return AwkValue.of(fileRecordNumber);
+            case AwkAst.FS: return AwkValue.of(fieldSeparator);
+            case AwkAst.OFS: return AwkValue.of(outputFieldSeparator);
+            case AwkAst.ORS: return AwkValue.of(outputRecordSeparator);
+            case AwkAst.RS: return AwkValue.of(recordSeparator);
+            case AwkAst.FILENAME: return filename;
+            case AwkAst.SUBSEP: return AwkValue.of(subscriptSeparator);
+            case AwkAst.RSTART: return AwkValue.of(matchStart);
+            case AwkAst.RLENGTH: return AwkValue.of(matchLength);
+            case AwkAst.CONVFMT: return AwkValue.of(numberFormat);
+            case AwkAst.OFMT: return AwkValue.of(outputNumberFormat);
+            default: throw new IllegalArgumentException("Unknown special variable " + id);
+        }
+    }
+
+    /** Reads a special variable that always holds a number (NR, NF, FNR, RSTART, RLENGTH). */
+    double getSpecialNumber(int id) {
+        switch (id) {
+            case AwkAst.NR: return recordNumber;
+            case AwkAst.NF: return getFieldCount();
+            case AwkAst.FNR: return fileRecordNumber;
+            case AwkAst.RSTART: return matchStart;
+            case AwkAst.RLENGTH: return matchLength;
+            default: return getSpecial(id).toNumber();
+        }
+    }
+
+    void setSpecial(int id, AwkValue value) {
+        switch (id) {
+            case AwkAst.NR: recordNumber = truncate(value.toNumber()); break;
+            case AwkAst.NF: setFieldCount((int) value.toNumber()); break;
+            case AwkAst.FNR: fileRecordNumber = truncate(value.toNumber()); break;
+            case AwkAst.FS: setFieldSeparator(text(value)); break;
+            case AwkAst.OFS: outputFieldSeparator = text(value); break;
+            case AwkAst.ORS: outputRecordSeparator = text(value); break;
+            case AwkAst.RS:
+                recordSeparator = text(value);
+                recordPattern = recordSeparator.length() > 1 ? regex(recordSeparator) : null;
+                break;
+            case AwkAst.FILENAME: filename = value; break;
+            case AwkAst.SUBSEP: subscriptSeparator = text(value); break;
+            case AwkAst.RSTART: matchStart = value.toNumber(); break;
+            case AwkAst.RLENGTH: matchLength = value.toNumber(); break;
+            case AwkAst.CONVFMT: numberFormat = text(value); break;
+            case AwkAst.OFMT: outputNumberFormat = text(value); break;
+            default: throw new IllegalArgumentException("Unknown special variable " + id);
+        }
+    }
+
+    private static double truncate(double value) {
+        return value < 0 ? Math.ceil(value) : Math.floor(value);
+    }
+
+    private void setFieldSeparator(String separator) {
+        fieldSeparator = separator;
+        fieldPattern = separator.length() > 1 ? regex(separator) : null;
+    }
+
+    String numberFormat() {
+        return numberFormat;
+    }
+
+    String outputNumberFormat() {
+        return outputNumberFormat;
+    }
+
+    String subscriptSeparator() {
+        return subscriptSeparator;
+    }
+
+    String outputFieldSeparator() {
+        return outputFieldSeparator;
+    }
+
+    String outputRecordSeparator() {
+        return outputRecordSeparator;
+    }
+
+    /** String conversion using CONVFMT. */
+    String text(AwkValue value) {
+        return value.toString(numberFormat);
+    }
+
+    // ----------------------------------------------------------------------------------------
+    // Record and fields
+
+    /** Replaces $0; fields are re-split on next access. */
+    void setRecord(String text) {
+        record = text;
+        recordValue = AwkValue.strnum(text);
+        recordStale = false;
+        fieldsSplit = false;
+    }
+
+    String getRecord() {
+        if (recordStale) {
+            rebuildRecord();
+        }
+        return record;
+    }
+
+    AwkValue getField(int index) {
+        if (index == 0) {
+            if (recordStale) {
+                rebuildRecord();
+            }
+            return recordValue;
+        }
+        if (index < 0) {
+            throw new AwkRuntimeException("trying to access out of range field " + index);
+        }
+        splitIfNeeded();
+        if (index > fieldCount) {
+            return AwkValue.UNINITIALIZED;
+        }
+        AwkValue value = fieldValue[index];
+        if (value == null) {
+            value = AwkValue.strnum(fieldText[index]);
+            fieldValue[index] = value;
+        }
+        return value;
+    }
+
+    void setField(int index, AwkValue value) {
+        if (index == 0) {
+            setRecord(text(value));
+            return;
+        }
+        if (index < 0) {
+            throw new AwkRuntimeException("trying to access out of range field " + index);
+        }
+        splitIfNeeded();
+        if (index > fieldCount) {
+            growFields(index);
+        }
+        fieldText[index] = text(value);
+        fieldValue[index] = value;
+        recordStale = true;
+    }
+
+    int getFieldCount() {
+        splitIfNeeded();
+        return fieldCount;
+    }
+
+    void setFieldCount(int count) {
+        if (count < 0) {
+            throw new AwkRuntimeException("NF set to negative value");
+        }
+        splitIfNeeded();
+        if (count > fieldCount) {
+            growFields(count);
+        }
+        fieldCount = count;
+        recordStale = true;
+    }
+
+    private void growFields(int count) {
+        ensureCapacity(count);
+        for (int index = fieldCount + 1; index <= count; index++) {
+            fieldText[index] = "";
+            fieldValue[index] = AwkValue.UNINITIALIZED;
+        }
+        fieldCount = count;
+    }
+
+    private void ensureCapacity(int count) {
+        if (count >= fieldText.length) {
+            int capacity = Math.max(count + 1, fieldText.length * 2);
+            fieldText = Arrays.copyOf(fieldText, capacity);
+            fieldValue = Arrays.copyOf(fieldValue, capacity);
+        }
+    }
+
+    private void rebuildRecord() {
+        StringBuilder rebuilt = new StringBuilder();
+        for (int index = 1; index <= fieldCount; index++) {
+            if (index > 1) {
+                rebuilt.append(outputFieldSeparator);
+            }
+            rebuilt.append(fieldText[index]);
+        }
+        record = rebuilt.toString();
+        recordValue = AwkValue.strnum(record);
+        recordStale = false;
+    }
+
+    private void splitIfNeeded() {
+        if (fieldsSplit) {
+            return;
+        }
+        fieldsSplit = true;
+        fieldCount = 0;
+        String text = record;
+        if (text.isEmpty()) {
+            return;
+        }
+        boolean paragraphMode = recordSeparator.isEmpty();
+        if (fieldSeparator.equals(" ")) {
+            splitOnBlanks(text);
+        } else if (fieldPattern == null && fieldSeparator.isEmpty()) {
+            for (int index = 0; index < text.length(); ) {
+                int next = text.offsetByCodePoints(index, 1);
+                addField(text.substring(index, next));
+                index = next;
+            }
+        } else if (fieldPattern == null && !paragraphMode) {
+            char separator = fieldSeparator.charAt(0);
+            int from = 0;
+            int at;
+            while ((at = text.indexOf(separator, from)) >= 0) {
+                addField(text.substring(from, at));
+                from = at + 1;
+            }
+            addField(text.substring(from));
+        } else if (paragraphMode) {
+            String separator = fieldPattern != null ? fieldSeparator : quoteLiteral(fieldSeparator);
+            splitOnPattern(text, regex("(" + separator + ")|\n"), this::addField);
+        } else {
+            splitOnPattern(text, fieldPattern, this::addField);
+        }
+    }
+
+    private void splitOnBlanks(String text) {
+        int length = text.length();
+        int index = 0;
+        while (true) {
+            while (index < length && isFieldBlank(text.charAt(index))) {
+                index++;
+            }
+            if (index >= length) {
+                return;
+            }
+            int start = index;
+            while (index < length && !isFieldBlank(text.charAt(index))) {
+                index++;
+            }
+            addField(text.substring(start, index));
+        }
+    }
+
+    private static boolean isFieldBlank(char character) {
+        return character == ' ' || character == '\t' || character == '\n';
+    }
+
+    private void addField(String text) {
+        fieldCount++;
+        ensureCapacity(fieldCount);
+        fieldText[fieldCount] = text;
+        fieldValue[fieldCount] = null;
+    }
+
+    private static void splitOnPattern(String text, Pattern pattern, Consumer<String> sink) {
+        Matcher matcher = pattern.matcher(text);
+        int from = 0;
+        while (matcher.find()) {
+            if (matcher.end() == matcher.start()) {
+                continue;
+            }
+            sink.accept(text.substring(from, matcher.start()));
+            from = matcher.end();
+        }
+        sink.accept(text.substring(from));
+    }
+
+    /**
+     * Stops the program when a supervisor has interrupted the thread running it (a wall-clock or
+     * CPU limit was hit). Called per input record and per loop iteration, which is everywhere a
+     * program can spend unbounded time.
+     */
+    static void checkCancelled() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new AwkRuntimeException("run cancelled by its supervisor");
+        }
+    }
+
+    // ----------------------------------------------------------------------------------------
+    // Main input
+
+    /**
+     * Reads the next record of the main input, walking ARGV as awk does: operands of the form
+     * name=value are assignments, "-" is standard input, and standard input is read when no file
+     * operand is present. Increments NR and FNR.
+     *
+     * @return record text, or null when all input is exhausted
+     */
+    String readMainRecord() throws IOException {
+        checkCancelled();
+        while (true) {
+            if (mainInput == null && !openNextInput()) {
+                return null;
+            }
+            String text = mainInput.read(recordSeparator, recordPattern);
+            if (text != null) {
+                recordNumber++;
+                fileRecordNumber++;
+                return text;
+            }
+            closeMainInput();
+        }
+    }
+
+    /** Abandons the current input file (nextfile). */
+    void nextFile() throws IOException {
+        closeMainInput();
+    }
+
+    private void closeMainInput() throws IOException {
+        if (mainInput != null && mainInput != standardInputReader) {
+            mainInput.close();
+        }
+        mainInput = null;
+    }
+
+    private boolean openNextInput() throws IOException {
+        while (nextArgument < argc.getAsDouble()) {
+            String key = Integer.toString(nextArgument++);
+            if (!argv.contains(key)) {
+                continue;
+            }
+            AwkValue argument = argv.get(key);
+            String operand = text(argument);
+            if (operand.isEmpty()) {
+                continue;
+            }
+            int equals = operand.indexOf('=');
+            if (equals > 0 && operand.substring(0, equals).matches("[A-Za-z_][A-Za-z0-9_]*")) {
+                operandAssignment.accept(operand.substring(0, equals), AwkLexer.expandEscapes(operand.substring(equals + 1)));
+                continue;
+            }
+            readAnyFile = true;
+            filename = argument;
+            fileRecordNumber = 0;
+            if (operand.equals(STANDARD_STREAM) || operand.equals("/dev/stdin")) {
+                mainInput = standardInput();
+            } else {
+                try {
+                    mainInput = new AwkRecordReader(Files.newBufferedReader(Paths.get(operand), StandardCharsets.UTF_8));
+                } catch (NoSuchFileException e) {
+                    throw new AwkRuntimeException("cannot open \"" + operand + "\" (No such file or directory)", e);
+                } catch (IOException e) {
+                    throw new AwkRuntimeException("cannot open \"" + operand + "\" (" + e.getMessage() + ")", e);
+                }
+            }
+            return true;
+        }
+        if (!readAnyFile) {
+            readAnyFile = true;
+            fileRecordNumber = 0;
+            mainInput = standardInput();
+            return true;
+        }
+        return false;
+    }
+
+    private AwkRecordReader standardInput() {
+        if (standardInputReader == null) {
+            InputStream source = stdin != null ? stdin : InputStream.nullInputStream();
+            standardInputReader = new AwkRecordReader(new InputStreamReader(source, StandardCharsets.UTF_8));
+        }
+        return standardInputReader;
+    }
+
+    void incrementRecordNumber() {
+        recordNumber++;
+    }
+
+    // ----------------------------------------------------------------------------------------
+    // Redirected input and output
+
+    /** Reads a record from a file for "getline < file"; returns null at end, throws if unreadable. */
+    String readFromFile(String name) throws IOException {
+        AwkRecordReader reader = inputs.get(name);
+        if (reader == null) {
+            if (name.equals(STANDARD_STREAM) || name.equals("/dev/stdin")) {
+                reader = standardInput();
+            } else {
+                reader = new AwkRecordReader(Files.newBufferedReader(Paths.get(name), StandardCharsets.UTF_8));
+            }
+            inputs.put(name, reader);
+        }
+        return reader.read(recordSeparator, recordPattern);
+    }
+
+    /** Reads a record from a command's output for "command | getline". */
+    String readFromCommand(String command) throws IOException {
+        AwkRecordReader reader = inputs.get(command);
+        if (reader == null) {
+            stdout.flush();
+            Process process = startShell(command);
+            process.getOutputStream().close();
+            pump(process.getErrorStream(), stderr);
+            reader = new AwkRecordReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+            inputs.put(command, reader);
+            inputProcesses.put(command, process);
+        }
+        return reader.read(recordSeparator, recordPattern);
+    }
+
+    /**
+     * Resolves the destination of print/printf.
+     *
+     * @param redirect kind of redirection, NONE for standard output
+     * @param name     file name or command, ignored for NONE
+     */
+    Writer output(AwkAst.Redirect redirect, String name) throws IOException {
+        if (redirect == AwkAst.Redirect.NONE) {
+            return stdout;
+        }
+        Writer writer = outputs.get(name);
+        if (writer != null) {
+            return writer;
+        }
+        if (redirect == AwkAst.Redirect.PIPE) {
+            stdout.flush();
+            Process process = startShell(name);
+            pump(process.getInputStream(), stdout);
+            pump(process.getErrorStream(), stderr);
+            writer = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+            outputProcesses.put(name, process);
+        } else if (name.equals("/dev/stdout") || name.equals(STANDARD_STREAM)) {
+            return stdout;
+        } else if (name.equals("/dev/stderr")) {
+            return stderr;
+        } else {
+            StandardOpenOption mode = redirect == AwkAst.Redirect.APPEND ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING;
+            try {
+                writer = Files.newBufferedWriter(Paths.get(name), StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, mode);
+            } catch (IOException e) {
+                throw new AwkRuntimeException("can't redirect to \"" + name + "\"", e);
+            }
+        }
+        outputs.put(name, writer);
+        return writer;
+    }
+
+    /** Writes text to a destination; standard error is flushed immediately like stdio does. */
+    void write(Writer writer, String text) throws IOException {
+        writer.write(text);
+        if (writer == stderr) {
+            writer.flush();
+        }
+    }
+
+    /** Implements close(): returns the command's exit status, 0 for files, -1 if not open. */
+    int close(String name) throws IOException {
+        int result = -1;
+        Writer writer = outputs.remove(name);
+        if (writer != null) {
+            writer.close();
+            result = 0;
+            Process process = outputProcesses.remove(name);
+            if (process != null) {
+                result = waitFor(process);
+            }
+        }
+        AwkRecordReader reader = inputs.remove(name);
+        if (reader != null) {
+            result = 0;
+            Process process = inputProcesses.remove(name);
+            if (reader != standardInputReader) {
+                reader.close();
+            }
+            if (process != null) {
+                result = waitFor(process);
+            }
+        }
+        return result;
+    }
+
+    /** Implements fflush(): flushes one named destination, or everything when name is null. */
+    int flush(String name) throws IOException {
+        if (name == null) {
+            stdout.flush();
+            for (Writer writer : outputs.values()) {
+                writer.flush();
+            }
+            return 0;
+        }
+        Writer writer = outputs.get(name);
+        if (writer == null) {
+            if (name.equals("/dev/stdout")) {
+                stdout.flush();
+                return 0;
+            }
+            return -1;
+        }
+        writer.flush();
+        return 0;
+    }
+
+    /** Implements system(): runs a shell command with its output interleaved into ours. */
+    int system(String command) throws IOException {
+        flush(null);
+        Process process = startShell(command);
+        process.getOutputStream().close();
+        Thread out = pump(process.getInputStream(), stdout);
+        Thread err = pump(process.getErrorStream(), stderr);
+        int status = waitFor(process);
+        join(out);
+        join(err);
+        return status;
+    }
+
+    private Process startShell(String command) throws IOException {
+        return new ProcessBuilder("sh", "-c", command).start();
+    }
+
+    private int waitFor(Process process) throws IOException {
+        try {
+            int status = process.waitFor();
+            for (Thread pump : new ArrayList<>(pumps)) {
+                join(pump);
+            }
+            return status;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for command", e);
+        }
+    }
+
+    private void join(Thread thread) throws IOException {
+        try {
+            thread.join();
+            pumps.remove(thread);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for command output", e);
+        }
+    }
+
+    private Thread pump(InputStream source, Writer target) {
+        Thread thread = new Thread(() -> {
+            char[] buffer = new char[8192];
+            try (Reader reader = new InputStreamReader(source, StandardCharsets.UTF_8)) {
+                int read;
+                while ((read = reader.read(buffer)) != -1) {
+                    synchronized (target) {
+                        target.write(buffer, 0, read);
+                        target.flush();
+                    }
+                }
+            } catch (IOException ignored) {
+                // The command's output is best effort once the program has finished with it.
+            }
+        }, "vawk-awk-command");
+        thread.setDaemon(true);
+        thread.start();
+        pumps.add(thread);
+        return thread;
+    }
+
+    /** Flushes standard output and closes every redirection, waiting for commands to finish. */
+    void closeAll() throws IOException {
+        stdout.flush();
+        for (String name : new ArrayList<>(outputs.keySet())) {
+            close(name);
+        }
+        for (String name : new ArrayList<>(inputs.keySet())) {
+            close(name);
+        }
+        closeMainInput();
+        for (Thread pump : new ArrayList<>(pumps)) {
+            join(pump);
+        }
+        stdout.flush();
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+            // Already failing; the original error is more useful.
+        }
+    }
+
+    void abandon() {
+        for (Writer writer : outputs.values()) {
+            closeQuietly(writer);
+        }
+        for (Process process : outputProcesses.values()) {
+            process.destroy();
+        }
+        for (Process process : inputProcesses.values()) {
+            process.destroy();
+        }
+        try {
+            stdout.flush();
+        } catch (IOException ignored) {
+            // Nothing more can be reported.
+        }
+    }
+
+    // ----------------------------------------------------------------------------------------
+    // Regular expressions and string builtins
+
+    Pattern regex(String expression) {
+        Pattern pattern = regexCache.get(expression);
+        if (pattern == null) {
+            pattern = AwkRegex.compile(expression);
+            regexCache.put(expression, pattern);
+        }
+        return pattern;
+    }
+
+    /** split(text, array, separator): separator null means FS; a pattern is used as a regex. */
+    int split(String text, AwkArray array, String separator, Pattern pattern) {
+        array.clear();
+        if (text.isEmpty()) {
+            return 0;
+        }
+        List<String> parts = new ArrayList<>();
+        String effective = separator == null ? fieldSeparator : separator;
+        if (pattern == null && effective.equals(" ")) {
+            int length = text.length();
+            int index = 0;
+            while (true) {
+                while (index < length && isFieldBlank(text.charAt(index))) {
+                    index++;
+                }
+                if (index >= length) {
+                    break;
+                }
+                int start = index;
+                while (index < length && !isFieldBlank(text.charAt(index))) {
+                    index++;
+                }
+                parts.add(text.substring(start, index));
+            }
+        } else if (pattern == null && effective.isEmpty()) {
+            text.codePoints().forEach(codePoint -> parts.add(new String(Character.toChars(codePoint))));
+        } else if (pattern == null && effective.length() == 1 && effective.charAt(0) != '\\') {
+            char character = effective.charAt(0);
+            int from = 0;
+            int at;
+            while ((at = text.indexOf(character, from)) >= 0) {
+                parts.add(text.substring(from, at));
+                from = at + 1;
+            }
+            parts.add(text.substring(from));
+        } else {
+            splitOnPattern(text, pattern != null ? pattern : regex(effective), parts::add);
+        }
+        for (int index = 0; index < parts.size(); index++) {
+            array.put(Integer.toString(index + 1), AwkValue.strnum(parts.get(index)));
+        }
+        return parts.size();
+    }
+
+    /**
+     * sub/gsub core: returns the substituted text, or null when nothing matched. Empty matches
+     * directly after a previous match are skipped, as in awk ("abc" gsub(/b*\/, "-") gives "-a-c-").
+     */
+    String substitute(Pattern pattern, String replacement, String text, boolean global, int[] count) {
+        Matcher matcher = pattern.matcher(text);
+        StringBuilder result = null;
+        int position = 0;
+        int lastMatchEnd = -1;
+        int length = text.length();
+        int replaced = 0;
+        while (position <= length && matcher.find(position)) {
+            int start = matcher.start();
+            int end = matcher.end();
+            if (result == null) {
+                result = new StringBuilder(length + 16);
+            }
+            if (start == end && start == lastMatchEnd) {
+                if (start >= length) {
+                    break;
+                }
+                result.append(text, position, start + 1);
+                position = start + 1;
+                continue;
+            }
+            result.append(text, position, start);
+            appendReplacement(result, replacement, text, start, end);
+            replaced++;
+            if (start == end) {
+                if (start < length) {
+                    result.append(text.charAt(start));
+                }
+                position = start + 1;
+            } else {
+                position = end;
+            }
+            lastMatchEnd = end;
+            if (!global) {
+                break;
+            }
+        }
+        count[0] = replaced;
+        if (replaced == 0) {
+            return null;
+        }
+        if (position < length) {
+            result.append(text, position, length);
+        }
+        return result.toString();
+    }
+
+    private static void appendReplacement(StringBuilder result, String replacement, String text, int start, int end) {
+        int length = replacement.length();
+        for (int index = 0; index < length; index++) {
+            char current = replacement.charAt(index);
+            if (current == '\\' && index + 1 < length && (replacement.charAt(index + 1) == '&' || replacement.charAt(index + 1) == '\\')) {
+                result.append(replacement.charAt(++index));
+            } else if (current == '&') {
+                result.append(text, start, end);
+            } else {
+                result.append(current);
+            }
+        }
+    }
+
+    /** match(): sets RSTART and RLENGTH and returns RSTART. */
+    int match(String text, Pattern pattern) {
+        Matcher matcher = pattern.matcher(text);
+        if (matcher.find()) {
+            matchStart = text.codePointCount(0, matcher.start()) + 1;
+            matchLength = text.codePointCount(matcher.start(), matcher.end());
+        } else {
+            matchStart = 0;
+            matchLength = -1;
+        }
+        return (int) matchStart;
+    }
+
+    static String substr(String text, double start, double length, boolean hasLength) {
+        int characters = text.codePointCount(0, text.length());
+        double first = roundHalfEven(start);
+        double last = hasLength ? first + roundHalfEven(length) : Double.POSITIVE_INFINITY;
+        if (Double.isNaN(first) || Double.isNaN(last)) {
+            return "";
+        }
+        double from = Math.max(1, first);
+        double to = Math.min(characters + 1, last);
+        if (to <= from) {
+            return "";
+        }
+        int beginIndex = text.offsetByCodePoints(0, (int) from - 1);
+        int endIndex = text.offsetByCodePoints(beginIndex, (int) to - (int) from);
+        return text.substring(beginIndex, endIndex);
+    }
+
+    private static double roundHalfEven(double value) {
+        return Math.rint(value);
+    }
+
+    static int index(String text, String target) {
+        int at = text.indexOf(target);
+        return at < 0 ? 0 : text.codePointCount(0, at) + 1;
+    }
+
+    static String toLower(String text) {
+        return text.toLowerCase(Locale.ROOT);
+    }
+
+    static String toUpper(String text) {
+        return text.toUpperCase(Locale.ROOT);
+    }
+
+    double rand() {
+        return random.nextDouble();
+    }
+
+    /** srand(): reseeds and returns the previous seed. */
+    double srand(Double newSeed) {
+        double previous = seed;
+        seed = newSeed != null ? newSeed : (double) (System.currentTimeMillis() / 1000);
+        random = new Random(Double.doubleToLongBits(seed));
+        return previous;
+    }
+
+    /** Quotes a literal field separator for use inside a larger regular expression. */
+    private static String quoteLiteral(String literal) {
+        StringBuilder quoted = new StringBuilder();
+        for (char character : literal.toCharArray()) {
+            if ("\\^$.[]|()*+?{}/".indexOf(character) >= 0) {
+                quoted.append('\\');
+            }
+            quoted.append(character);
+        }
+        return quoted.toString();
+    }
+
+    // ----------------------------------------------------------------------------------------
+    // Diagnostics
+
+    void reportError(String message) {
+        try {
+            stdout.flush();
+            stderr.write("awk: " + message + "\n");
+            stderr.flush();
+        } catch (IOException ignored) {
+            // Nowhere left to report to.
+        }
+    }
+}
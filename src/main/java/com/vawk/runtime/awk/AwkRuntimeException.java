@@ -0,0 +1,18 @@
+package com.vawk.runtime.awk;
+
+/**
+ * Raised when a parsed AWK program fails while running (division by zero, scalar used as array,
+ * unreadable redirection target). The interpreter reports it on stderr and exits with status 2,
+ * matching awk's fatal-error convention.
+ */
+public class AwkRuntimeException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public AwkRuntimeException(String message) {
+        super(message);
+    }
+
+    public AwkRuntimeException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,114 @@
+package com.vawk.runtime.awk;
+
+import java.util.Objects;
+
+/**
+ * A parsed AWK program. Parsing once and keeping the tree lets callers cache scripts by source
+ * and ask structural questions (does it have an END block, does it read NR, does it call getline)
+ * before deciding how to run it.
+ */
+public final class AwkScript {
+    private final String source;
+    private final AwkAst.Program program;
+
+    private AwkScript(String source, AwkAst.Program program) {
+        this.source = source;
+        this.program = program;
+    }
+
+    /**
+     * Parses AWK source text.
+     *
+     * @param source program text
+     * @return parsed script
+     * @throws AwkSyntaxException when the source is not valid AWK
+     */
+    public static AwkScript parse(String source) {
+        Objects.requireNonNull(source, "source");
+        return new AwkScript(source, AwkParser.parse(source));
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public boolean hasBeginBlock() {
+        return !program.beginActions.isEmpty();
+    }
+
+    public boolean hasEndBlock() {
+        return !program.endActions.isEmpty();
+    }
+
+    /** True when the program has pattern-action rules and therefore reads its main input. */
+    public boolean hasMainRules() {
+        return !program.rules.isEmpty();
+    }
+
+    /** True when the program references the named variable, special (NR, FS, ...) or user-defined. */
+    public boolean usesVariable(String name) {
+        return program.referencedSpecials.contains(name) || program.globals.containsKey(name);
+    }
+
+    public boolean usesGetline() {
+        return program.usesGetline;
+    }
+
+    public boolean usesExit() {
+        return program.usesExit;
+    }
+
+    /**
+     * True when the program's output depends only on its source, input and -v variables: it runs
+     * no commands, writes and reads no other files, does not reseed rand() from the clock and does
+     * not read ENVIRON. Re-running such a program on the same input is pointless.
+     */
+    public boolean isRepeatable() {
+        return !program.usesOutsideWorld && !program.globals.containsKey("ENVIRON");
+    }
+
+    /** True when a rule uses a range pattern, which carries state from one record to the next. */
+    public boolean usesRangePatterns() {
+        return program.rules.stream().anyMatch(rule -> rule.rangeEnd != null);
+    }
+
+    /**
+     * True when a BEGIN action can print. Function bodies count too when the program has BEGIN
+     * actions, since calls are not traced.
+     */
+    public boolean beginMayPrint() {
+        if (program.beginActions.isEmpty()) {
+            return false;
+        }
+        return program.beginActions.stream().anyMatch(AwkScript::prints)
+                || program.functions.values().stream().anyMatch(function -> prints(function.body));
+    }
+
+    private static boolean prints(AwkAst.Statement statement) {
+        if (statement == null) {
+            return false;
+        }
+        switch (statement.kind) {
+            case PRINT:
+            case PRINTF:
+                return true;
+            case IF:
+                return prints(((AwkAst.If) statement).whenTrue) || prints(((AwkAst.If) statement).whenFalse);
+            case WHILE:
+            case DO:
+                return prints(((AwkAst.Loop) statement).body);
+            case FOR:
+                return prints(((AwkAst.For) statement).initializer) || prints(((AwkAst.For) statement).body);
+            case FOR_IN:
+                return prints(((AwkAst.ForIn) statement).body);
+            case BLOCK:
+                return ((AwkAst.Block) statement).statements.stream().anyMatch(AwkScript::prints);
+            default:
+                return false;
+        }
+    }
+
+    AwkAst.Program program() {
+        return program;
+    }
+}
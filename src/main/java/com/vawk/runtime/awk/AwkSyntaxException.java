@@ -0,0 +1,20 @@
+package com.vawk.runtime.awk;
+
+/**
+ * Raised when AWK source cannot be tokenized or parsed. Carries the 1-based source line so callers
+ * can report the failure the way awk itself does ("syntax error at source line N").
+ */
+public class AwkSyntaxException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final int line;
+
+    public AwkSyntaxException(String message, int line) {
+        super("syntax error at source line " + line + ": " + message);
+        this.line = line;
+    }
+
+    public int getLine() {
+        return line;
+    }
+}
@@ -0,0 +1,225 @@
+package com.vawk.runtime.awk;
+
+/**
+ * An AWK scalar. Values are numbers, strings, or "strnums": strings that came from input (fields,
+ * getline, -v assignments, ARGV) and compare numerically when they look like numbers. Conversions
+ * are cached because AWK programs convert the same field back and forth many times per record.
+ */
+final class AwkValue {
+    private static final byte UNINITIALIZED_KIND = 0;
+    private static final byte NUMBER_KIND = 1;
+    private static final byte STRING_KIND = 2;
+    private static final byte STRNUM_KIND = 3;
+    private static final byte UNKNOWN = 0;
+    private static final byte NUMERIC = 1;
+    private static final byte NOT_NUMERIC = 2;
+
+    static final AwkValue UNINITIALIZED = new AwkValue(UNINITIALIZED_KIND, 0, "");
+    static final AwkValue EMPTY = new AwkValue(STRING_KIND, 0, "");
+    static final AwkValue ZERO = new AwkValue(NUMBER_KIND, 0, null);
+    static final AwkValue ONE = new AwkValue(NUMBER_KIND, 1, null);
+
+    private final byte kind;
+    private double number;
+    private String string;
+    private byte numericState;
+
+    private AwkValue(byte kind, double number, String string) {
+        this.kind = kind;
+        this.number = number;
+        this.string = string;
+    }
+
+    static AwkValue of(double number) {
+        if (number == 0 && 1 / number > 0) {
+            return ZERO;
+        }
+        if (number == 1) {
+            return ONE;
+        }
+        return new AwkValue(NUMBER_KIND, number, null);
+    }
+
+    static AwkValue of(boolean truth) {
+        return truth ? ONE : ZERO;
+    }
+
+    static AwkValue of(String string) {
+        return string.isEmpty() ? EMPTY : new AwkValue(STRING_KIND, 0, string);
+    }
+
+    /** Wraps text that came from input so it compares numerically when it looks like a number. */
+    static AwkValue strnum(String string) {
+        return new AwkValue(STRNUM_KIND, 0, string);
+    }
+
+    boolean isNumber() {
+        return kind == NUMBER_KIND;
+    }
+
+    boolean isUninitialized() {
+        return kind == UNINITIALIZED_KIND;
+    }
+
+    double toNumber() {
+        if (kind == NUMBER_KIND || kind == UNINITIALIZED_KIND) {
+            return number;
+        }
+        if (numericState == UNKNOWN) {
+            parse();
+        }
+        return number;
+    }
+
+    /**
+     * Converts to a string, formatting non-integral numbers with the given CONVFMT/OFMT.
+     */
+    String toString(String numberFormat) {
+        if (kind != NUMBER_KIND) {
+            return string;
+        }
+        if (string == null && isIntegral(number)) {
+            string = Long.toString((long) number);
+        }
+        return string != null ? string : AwkFormat.formatNumber(numberFormat, number);
+    }
+
+    /** Converts a number to a string the way AWK does: integers exactly, others with the format. */
+    static String toString(double number, String numberFormat) {
+        return isIntegral(number) ? Long.toString((long) number) : AwkFormat.formatNumber(numberFormat, number);
+    }
+
+    private static boolean isIntegral(double number) {
+        return number == (long) number && Math.abs(number) < 1e16;
+    }
+
+    boolean toBoolean() {
+        switch (kind) {
+            case NUMBER_KIND:
+                return number != 0;
+            case STRING_KIND:
+                return !string.isEmpty();
+            case STRNUM_KIND:
+                return looksNumeric() ? toNumber() != 0 : !string.isEmpty();
+            default:
+                return false;
+        }
+    }
+
+    /** True when comparisons involving this value may be numeric. */
+    boolean comparesNumerically() {
+        return kind == NUMBER_KIND || kind == UNINITIALIZED_KIND || kind == STRNUM_KIND && looksNumeric();
+    }
+
+    /**
+     * Compares two values the AWK way: numerically when both sides are numeric, otherwise as
+     * strings.
+     */
+    static int compare(AwkValue left, AwkValue right, String numberFormat) {
+        if (left.comparesNumerically() && right.comparesNumerically()) {
+            return Double.compare(left.toNumber() + 0.0, right.toNumber() + 0.0);
+        }
+        return left.toString(numberFormat).compareTo(right.toString(numberFormat));
+    }
+
+    private boolean looksNumeric() {
+        if (numericState == UNKNOWN) {
+            parse();
+        }
+        return numericState == NUMERIC;
+    }
+
+    private void parse() {
+        String text = string;
+        int length = text.length();
+        int index = 0;
+        while (index < length && isBlank(text.charAt(index))) {
+            index++;
+        }
+        int start = index;
+        int end = numberEnd(text, index);
+        if (end == start) {
+            number = 0;
+            numericState = NOT_NUMERIC;
+            return;
+        }
+        number = parseDouble(text, start, end);
+        int trailing = end;
+        while (trailing < length && isBlank(text.charAt(trailing))) {
+            trailing++;
+        }
+        numericState = trailing == length ? NUMERIC : NOT_NUMERIC;
+    }
+
+    /** Numeric value of the longest numeric prefix of {@code text}, as strtod would read it. */
+    static double parseNumber(String text) {
+        int index = 0;
+        while (index < text.length() && isBlank(text.charAt(index))) {
+            index++;
+        }
+        int end = numberEnd(text, index);
+        return end == index ? 0 : parseDouble(text, index, end);
+    }
+
+    private static double parseDouble(String text, int start, int end) {
+        int digitsEnd = start;
+        char first = text.charAt(start);
+        if (first == '+' || first == '-') {
+            digitsEnd++;
+        }
+        boolean plainInteger = end - digitsEnd <= 15;
+        for (int index = digitsEnd; index < end && plainInteger; index++) {
+            char current = text.charAt(index);
+            plainInteger = current >= '0' && current <= '9';
+        }
+        if (plainInteger) {
+            long value = 0;
+            for (int index = digitsEnd; index < end; index++) {
+                value = value * 10 + (text.charAt(index) - '0');
+            }
+            return first == '-' ? -(double) value : value;
+        }
+        return Double.parseDouble(text.substring(start, end));
+    }
+
+    private static int numberEnd(String text, int start) {
+        int length = text.length();
+        int index = start;
+        if (index < length && (text.charAt(index) == '+' || text.charAt(index) == '-')) {
+            index++;
+        }
+        int digits = 0;
+        while (index < length && Character.isDigit(text.charAt(index)) && text.charAt(index) < 128) {
+            index++;
+            digits++;
+        }
+        if (index < length && text.charAt(index) == '.') {
+            index++;
+            while (index < length && Character.isDigit(text.charAt(index)) && text.charAt(index) < 128) {
+                index++;
+                digits++;
+            }
+        }
+        if (digits == 0) {
+            return start;
+        }
+        if (index < length && (text.charAt(index) == 'e' || text.charAt(index) == 'E')) {
+            int exponent = index + 1;
+            if (exponent < length && (text.charAt(exponent) == '+' || text.charAt(exponent) == '-')) {
+                exponent++;
+            }
+            if (exponent < length && Character.isDigit(text.charAt(exponent))) {
+                while (exponent < length && Character.isDigit(text.charAt(exponent))) {
+                    exponent++;
+                }
+                index = exponent;
+            }
+        }
+        return index;
+    }
+
+    private static boolean isBlank(char character) {
+        return character == ' ' || character == '\t' || character == '\n' || character == '\r'
+                || character == '\f' || character == '\u000B';
+    }
+}
@@ -0,0 +1,381 @@
+package com.vawk.runtime.awk;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Base class of the classes {@link AwkCompiler} generates. A generated subclass holds the program's
+ * variables as fields (numbers as primitive doubles where the compiler can prove it), its regex
+ * literals as precompiled static patterns, and one method per action; this class supplies the run
+ * loop that mirrors {@link AwkInterpreter} and the small helpers the generated code calls. Generated
+ * classes are defined in this package, so they share the interpreter's runtime, values and arrays.
+ * An instance is good for exactly one run.
+ */
+abstract class CompiledAwkProgram {
+    static final ControlSignal NEXT = new ControlSignal();
+    static final ControlSignal NEXT_FILE = new ControlSignal();
+    static final ControlSignal EXIT = new ControlSignal();
+
+    AwkRuntime runtime;
+    AwkArray argv;
+    AwkValue argc;
+    int exitStatus;
+    double getlineStatus;
+    String getlineText;
+    String substituted;
+    double substitutionCount;
+    private AwkArray environment;
+
+    /** Runs the BEGIN actions in order. */
+    abstract void begin() throws IOException;
+
+    /** Applies every pattern-action rule to the current record. */
+    abstract void rules() throws IOException;
+
+    /** Runs the END actions in order. */
+    abstract void end() throws IOException;
+
+    /** True when the program has rules or END actions and therefore reads its main input. */
+    abstract boolean readsInput();
+
+    /** Assigns a -v or command-line operand value to a user variable; unknown names are ignored. */
+    abstract void assignVariable(String name, AwkValue value);
+
+    /** Names of the variables held as primitive doubles. */
+    abstract String[] numericVariables();
+
+    /** Runs the program; same contract as {@link AwkInterpreter#execute}. */
+    final int execute(List<String> operands, Map<String, String> assignments, InputStream stdin,
+                      Writer stdout, Writer stderr) throws IOException {
+        argv = new AwkArray();
+        argv.put("0", AwkValue.of("awk"));
+        for (int index = 0; index < operands.size(); index++) {
+            argv.put(Integer.toString(index + 1), AwkValue.strnum(operands.get(index)));
+        }
+        argc = AwkValue.of(operands.size() + 1);
+        runtime = new AwkRuntime(stdout, stderr, stdin, argv, () -> argc.toNumber(), this::assignOperand);
+        try {
+            for (Map.Entry<String, String> assignment : assignments.entrySet()) {
+                assignOperand(assignment.getKey(), AwkLexer.expandEscapes(assignment.getValue()));
+            }
+            try {
+                begin();
+                if (readsInput()) {
+                    readMainInput();
+                }
+            } catch (ControlSignal signal) {
+                checkExit(signal);
+            }
+            try {
+                end();
+            } catch (ControlSignal signal) {
+                checkExit(signal);
+            }
+            runtime.closeAll();
+            return exitStatus;
+        } catch (AwkRuntimeException e) {
+            runtime.reportError(e.getMessage());
+            runtime.abandon();
+            return AwkInterpreter.FATAL_EXIT_STATUS;
+        } catch (StackOverflowError e) {
+            runtime.reportError("function call nesting too deep");
+            runtime.abandon();
+            return AwkInterpreter.FATAL_EXIT_STATUS;
+        } catch (IOException | RuntimeException e) {
+            runtime.abandon();
+            throw e;
+        }
+    }
+
+    private void assignOperand(String name, String value) {
+        Integer special = AwkAst.SPECIAL_VARIABLES.get(name);
+        if (special != null) {
+            runtime.setSpecial(special, AwkValue.strnum(value));
+        } else if (name.equals("ARGC")) {
+            argc = AwkValue.strnum(value);
+        } else {
+            assignVariable(name, AwkValue.strnum(value));
+        }
+    }
+
+    private void checkExit(ControlSignal signal) {
+        if (signal != EXIT) {
+            throw new AwkRuntimeException("next used in BEGIN or END action");
+        }
+    }
+
+    private void readMainInput() throws IOException {
+        String text;
+        while ((text = runtime.readMainRecord()) != null) {
+            runtime.setRecord(text);
+            try {
+                rules();
+            } catch (ControlSignal signal) {
+                if (signal == NEXT_FILE) {
+                    runtime.nextFile();
+                } else if (signal != NEXT) {
+                    throw signal;
+                }
+            }
+        }
+    }
+
+    final AwkArray environment() {
+        if (environment == null) {
+            environment = new AwkArray();
+            System.getenv().forEach((name, value) -> environment.put(name, AwkValue.strnum(value)));
+        }
+        return environment;
+    }
+
+    // ----------------------------------------------------------------------------------------
+    // Conversions
+
+    final String text(AwkValue value) {
+        return value.toString(runtime.numberFormat());
+    }
+
+    final String text(double value) {
+        return AwkValue.toString(value, runtime.numberFormat());
+    }
+
+    final String outputText(AwkValue value) {
+        return value.toString(runtime.outputNumberFormat());
+    }
+
+    final String outputText(double value) {
+        return AwkValue.toString(value, runtime.outputNumberFormat());
+    }
+
+    final int compare(AwkValue left, AwkValue right) {
+        return AwkValue.compare(left, right, runtime.numberFormat());
+    }
+
+    final String key(String... subscripts) {
+        return String.join(runtime.subscriptSeparator(), subscripts);
+    }
+
+    /** The ~ operator; the subject is evaluated before the pattern, as in the interpreter. */
+    static boolean matches(String text, Pattern pattern) {
+        return pattern.matcher(text).find();
+    }
+
+    static double bool(boolean truth) {
+        return truth ? 1 : 0;
+    }
+
+    static double length(String text) {
+        return text.codePointCount(0, text.length());
+    }
+
+    static double truncate(double value) {
+        return value < 0 ? Math.ceil(value) : Math.floor(value);
+    }
+
+    /** Lets any expression stand as a Java statement. */
+    static void discard(Object ignored) {
+    }
+
+    static void discard(double ignored) {
+    }
+
+    static void discard(boolean ignored) {
+    }
+
+    /**
+     * Keeps loop conditions non-constant so Java's reachability rules match AWK's, and lets a
+     * supervisor cancel a program stuck in a loop.
+     */
+    static boolean condition(boolean truth) {
+        AwkRuntime.checkCancelled();
+        return truth;
+    }
+
+    // ----------------------------------------------------------------------------------------
+    // Arithmetic
+
+    static double divide(double left, double right) {
+        if (right == 0) {
+            throw new AwkRuntimeException("division by zero");
+        }
+        return left / right;
+    }
+
+    static double modulo(double left, double right) {
+        if (right == 0) {
+            throw new AwkRuntimeException("division by zero in %");
+        }
+        return left % right;
+    }
+
+    static double arithmetic(char operator, double left, double right) {
+        switch (operator) {
+            case '+': return left + right;
+            case '-': return left - right;
+            case '*': return left * right;
+            case '/': return divide(left, right);
+            case '%': return modulo(left, right);
+            default: return Math.pow(left, right);
+        }
+    }
+
+    /** Value of a postfix increment: the number before the update, which the second argument performs. */
+    static double previous(AwkValue before, AwkValue updated) {
+        return before.toNumber();
+    }
+
+    // ----------------------------------------------------------------------------------------
+    // Fields, elements and special variables
+
+    static int fieldIndex(double value) {
+        if (value > Integer.MAX_VALUE) {
+            throw new AwkRuntimeException("field index " + value + " too large");
+        }
+        return (int) value;
+    }
+
+    final AwkValue field(int index) {
+        return runtime.getField(index);
+    }
+
+    final String record() {
+        return runtime.getRecord();
+    }
+
+    final AwkValue setRecord(String text) {
+        runtime.setRecord(text);
+        return runtime.getField(0);
+    }
+
+    final AwkValue setField(AwkValue value, int index) {
+        runtime.setField(index, value);
+        return value;
+    }
+
+    final double incrementField(int index, double delta, boolean prefix) {
+        double before = runtime.getField(index).toNumber();
+        runtime.setField(index, AwkValue.of(before + delta));
+        return prefix ? before + delta : before;
+    }
+
+    final double compoundField(int index, char operator, double operand) {
+        double result = arithmetic(operator, runtime.getField(index).toNumber(), operand);
+        runtime.setField(index, AwkValue.of(result));
+        return result;
+    }
+
+    static AwkValue put(AwkValue value, AwkArray array, String key) {
+        array.put(key, value);
+        return value;
+    }
+
+    static double incrementElement(AwkArray array, String key, double delta, boolean prefix) {
+        double before = array.get(key).toNumber();
+        array.put(key, AwkValue.of(before + delta));
+        return prefix ? before + delta : before;
+    }
+
+    static double compoundElement(AwkArray array, String key, char operator, double operand) {
+        double result = arithmetic(operator, array.get(key).toNumber(), operand);
+        array.put(key, AwkValue.of(result));
+        return result;
+    }
+
+    final AwkValue setSpecial(AwkValue value, int id) {
+        runtime.setSpecial(id, value);
+        return value;
+    }
+
+    final double incrementSpecial(int id, double delta, boolean prefix) {
+        double before = runtime.getSpecial(id).toNumber();
+        runtime.setSpecial(id, AwkValue.of(before + delta));
+        return prefix ? before + delta : before;
+    }
+
+    final double compoundSpecial(int id, char operator, double operand) {
+        double result = arithmetic(operator, runtime.getSpecial(id).toNumber(), operand);
+        runtime.setSpecial(id, AwkValue.of(result));
+        return result;
+    }
+
+    // ----------------------------------------------------------------------------------------
+    // Input, output and builtins
+
+    /** getline from the main input; the text is left in {@link #getlineText} when the status is 1. */
+    final double getlineMain() throws IOException {
+        getlineText = runtime.readMainRecord();
+        return getlineStatus = getlineText == null ? 0 : 1;
+    }
+
+    final double getlineFile(String name) {
+        try {
+            getlineText = runtime.readFromFile(name);
+        } catch (IOException e) {
+            return getlineStatus = -1;
+        }
+        return getlineStatus = getlineText == null ? 0 : 1;
+    }
+
+    final double getlineCommand(String command) {
+        try {
+            getlineText = runtime.readFromCommand(command);
+        } catch (IOException e) {
+            return getlineStatus = -1;
+        }
+        if (getlineText == null) {
+            return getlineStatus = 0;
+        }
+        runtime.incrementRecordNumber();
+        return getlineStatus = 1;
+    }
+
+    /** Returns 1 after a getline target has been stored. */
+    static double stored(Object ignored) {
+        return 1;
+    }
+
+    /**
+     * sub/gsub: true when the text changed, with the new text in {@link #substituted} and the
+     * count in {@link #substitutionCount}.
+     */
+    final boolean substitute(Pattern pattern, String replacement, String text, boolean global) {
+        int[] count = new int[1];
+        substituted = runtime.substitute(pattern, replacement, text, global, count);
+        substitutionCount = count[0];
+        return substituted != null;
+    }
+
+    /** Returns the substitution count after the changed text has been stored. */
+    final double substitutions(Object ignored) {
+        return substitutionCount;
+    }
+
+    final Writer output() throws IOException {
+        return runtime.output(AwkAst.Redirect.NONE, null);
+    }
+
+    final Writer output(AwkAst.Redirect redirect, String name) throws IOException {
+        return runtime.output(redirect, name);
+    }
+
+    final void write(Writer destination, String text) throws IOException {
+        runtime.write(destination, text);
+    }
+
+    final String sprintf(String format, AwkValue... arguments) {
+        return AwkFormat.sprintf(format, Arrays.asList(arguments), runtime.numberFormat());
+    }
+
+    static final class ControlSignal extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ControlSignal() {
+            super(null, null, false, false);
+        }
+    }
+}
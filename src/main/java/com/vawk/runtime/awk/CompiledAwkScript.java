@@ -0,0 +1,54 @@
+package com.vawk.runtime.awk;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.lang.invoke.MethodHandle;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An AWK program compiled to a JVM class by {@link AwkCompiler}. Like a parsed {@link AwkScript} it
+ * may be executed many times and concurrently; every run gets a fresh instance of the generated
+ * class, because program variables live in its fields.
+ */
+public final class CompiledAwkScript {
+    private final MethodHandle constructor;
+    private final String hash;
+    private final Set<String> numericVariables;
+
+    CompiledAwkScript(MethodHandle constructor, String hash) {
+        this.constructor = constructor;
+        this.hash = hash;
+        this.numericVariables = Set.of(instantiate().numericVariables());
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    /**
+     * Names of the user variables compiled to primitive doubles. A -v assignment to one of these
+     * would lose AWK's string value, so callers interpret such runs instead.
+     */
+    public Set<String> getNumericVariables() {
+        return numericVariables;
+    }
+
+    /** Runs the program; same contract as {@link AwkInterpreter#execute}. */
+    public int execute(List<String> operands, Map<String, String> assignments, InputStream stdin,
+                       Writer stdout, Writer stderr) throws IOException {
+        return instantiate().execute(operands, assignments, stdin, stdout, stderr);
+    }
+
+    private CompiledAwkProgram instantiate() {
+        try {
+            return (CompiledAwkProgram) constructor.invokeExact();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot instantiate compiled AWK program " + hash, e);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.vawk.store;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cuts a document into overlapping passages of whole lines for retrieval. A passage holds up to
+ * {@link #PASSAGE_LINES} lines and {@link #MAX_PASSAGE_CHARS} characters, and the next one starts
+ * {@link #OVERLAP_LINES} lines before it ends, so a paragraph straddling a cut is whole in one of
+ * the two. The bounds match what a prompt shows per reference, so a retrieved passage is used
+ * as it is rather than truncated.
+ */
+final class DocumentChunker {
+    static final int PASSAGE_LINES = 20;
+    static final int OVERLAP_LINES = 5;
+    static final int MAX_PASSAGE_CHARS = 1000;
+
+    private DocumentChunker() {
+    }
+
+    /** Lines firstLine to lastLine (1-based, inclusive) of a document, joined by newlines. */
+    record Chunk(int firstLine, int lastLine, String text) {
+    }
+
+    /**
+     * @param body document text, possibly null
+     * @return the passages in document order; blank passages are left out
+     */
+    static List<Chunk> chunks(String body) {
+        List<Chunk> chunks = new ArrayList<>();
+        if (body == null || body.isBlank()) {
+            return chunks;
+        }
+        String[] lines = body.split("\\R");
+        int start = 0;
+        while (start < lines.length) {
+            int end = start;
+            int characters = 0;
+            while (end < lines.length && end - start < PASSAGE_LINES
+                    && (end == start || characters + lines[end].length() + 1 <= MAX_PASSAGE_CHARS)) {
+                characters += lines[end].length() + 1;
+                end++;
+            }
+            String text = String.join("\n", List.of(lines).subList(start, end)).strip();
+            if (text.length() > MAX_PASSAGE_CHARS) {
+                text = text.substring(0, MAX_PASSAGE_CHARS);
+            }
+            if (!text.isEmpty()) {
+                chunks.add(new Chunk(start + 1, end, text));
+            }
+            if (end >= lines.length) {
+                break;
+            }
+            start = Math.max(start + 1, end - OVERLAP_LINES);
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,206 @@
+package com.vawk.store;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.vawk.domain.GenerationCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Persists verified generations at .vawk/gen-cache.json and finds the one whose request reads
+ * like a new one. Descriptions are compared as the RAG index compares text: split into stemmed
+ * terms without stop words by {@link TextTokenizer}, weighted by TF-IDF over the cached
+ * descriptions, scored by cosine similarity. A request matches only when the similarity reaches the
+ * configured minimum and both name the same numbers, since "sum column 3" and "sum column 4" differ
+ * in one term yet need different programs. Only a match with the very same terms is exact; a merely
+ * similar one ("GET requests" against "POST requests") may need another program, so callers ask
+ * before reusing it. A missing or unreadable cache reads as empty.
+ */
+@Repository
+public class GenerationCacheRepository {
+    private static final double DEFAULT_MIN_SIMILARITY = 0.9;
+    /** Most generations kept; the oldest go first. */
+    static final int MAX_ENTRIES = 200;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private final Path cachePath;
+    private final double minSimilarity;
+
+    /**
+     * A cached generation and how similar its request is to the one looked up.
+     *
+     * @param exact whether both requests have the same terms, repeats included, in any order
+     */
+    public record Match(GenerationCache.Entry entry, double similarity, boolean exact) {
+    }
+
+    public GenerationCacheRepository() {
+        this(Paths.get(".vawk", "gen-cache.json"), DEFAULT_MIN_SIMILARITY);
+    }
+
+    /**
+     * @param minSimilarity lowest cosine similarity of two descriptions that counts as the same request
+     */
+    @Autowired
+    public GenerationCacheRepository(@Value("${vawk.gen.cache.min-similarity:0.9}") double minSimilarity) {
+        this(Paths.get(".vawk", "gen-cache.json"), minSimilarity);
+    }
+
+    public GenerationCacheRepository(Path cachePath, double minSimilarity) {
+        this.cachePath = cachePath;
+        this.minSimilarity = minSimilarity;
+    }
+
+    /**
+     * @return the cached generations, or an empty cache
+     */
+    public GenerationCache load() throws IOException {
+        if (!Files.exists(cachePath)) {
+            return new GenerationCache();
+        }
+        try {
+            return objectMapper.readValue(Files.readAllBytes(cachePath), GenerationCache.class);
+        } catch (JsonProcessingException e) {
+            return new GenerationCache();
+        }
+    }
+
+    /**
+     * Finds the verified generation whose request is most similar to description.
+     *
+     * @return an exact match, else the best match at or above the minimum similarity, or empty
+     */
+    // Pattern: Verification + Learning
+    // - Reuses only programs that passed their tests; anything else goes back to the model.
+    public Optional<Match> findVerified(String description) throws IOException {
+        List<String> query = TextTokenizer.terms(description);
+        if (query.isEmpty()) {
+            return Optional.empty();
+        }
+        List<GenerationCache.Entry> entries = load().getEntries().stream()
+                .filter(GenerationCache.Entry::isVerified)
+                .toList();
+        List<List<String>> documents = new ArrayList<>();
+        for (GenerationCache.Entry entry : entries) {
+            documents.add(TextTokenizer.terms(entry.getDescription()));
+        }
+        Map<String, Double> idf = inverseDocumentFrequencies(documents);
+        // A term no cached description uses weighs what a term in none of them would.
+        double unseen = Math.log(documents.size() + 1.0) + 1;
+        Map<String, Double> queryVector = vector(query, idf, unseen);
+        List<String> sortedQuery = query.stream().sorted().toList();
+        Match best = null;
+        for (int index = 0; index < entries.size(); index++) {
+            if (!numbers(documents.get(index)).equals(numbers(query))) {
+                continue;
+            }
+            boolean exact = documents.get(index).stream().sorted().toList().equals(sortedQuery);
+            double similarity = exact ? 1 : cosine(queryVector, vector(documents.get(index), idf, unseen));
+            if ((exact || similarity >= minSimilarity) && (best == null || (exact && !best.exact())
+                    || (exact == best.exact() && similarity > best.similarity()))) {
+                best = new Match(entries.get(index), similarity, exact);
+            }
+        }
+        return Optional.ofNullable(best);
+    }
+
+    /**
+     * Records a verified generation, replacing one for a request with the same terms. Unverified
+     * generations are ignored.
+     */
+    public void record(GenerationCache.Entry entry) throws IOException {
+        if (!entry.isVerified()) {
+            return;
+        }
+        List<String> terms = TextTokenizer.terms(entry.getDescription());
+        GenerationCache cache = load();
+        List<GenerationCache.Entry> entries = new ArrayList<>(cache.getEntries());
+        entries.removeIf(existing -> TextTokenizer.terms(existing.getDescription()).equals(terms));
+        entries.add(entry);
+        if (entries.size() > MAX_ENTRIES) {
+            entries = new ArrayList<>(entries.subList(entries.size() - MAX_ENTRIES, entries.size()));
+        }
+        cache.setEntries(entries);
+        save(cache);
+    }
+
+    /**
+     * Writes the cache atomically, so an interrupted run leaves the previous one intact.
+     */
+    private void save(GenerationCache cache) throws IOException {
+        Path directory = cachePath.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path staging = Files.createTempFile(directory, "gen-cache", ".tmp");
+        Files.write(staging, objectMapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(cache));
+        Files.move(staging, cachePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** ln((n + 1) / (df + 1)) + 1 per term, as for the RAG vectors. */
+    private static Map<String, Double> inverseDocumentFrequencies(List<List<String>> documents) {
+        Map<String, Integer> documentFrequencies = new HashMap<>();
+        for (List<String> terms : documents) {
+            for (String term : Set.copyOf(terms)) {
+                documentFrequencies.merge(term, 1, Integer::sum);
+            }
+        }
+        Map<String, Double> idf = new HashMap<>();
+        for (Map.Entry<String, Integer> frequency : documentFrequencies.entrySet()) {
+            idf.put(frequency.getKey(), Math.log((documents.size() + 1.0) / (frequency.getValue() + 1.0)) + 1);
+        }
+        return idf;
+    }
+
+    private static Map<String, Double> vector(List<String> terms, Map<String, Double> idf, double unseen) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (String term : terms) {
+            frequencies.merge(term, 1, Integer::sum);
+        }
+        Map<String, Double> vector = new HashMap<>();
+        for (Map.Entry<String, Integer> frequency : frequencies.entrySet()) {
+            vector.put(frequency.getKey(), (1 + Math.log(frequency.getValue())) * idf.getOrDefault(frequency.getKey(), unseen));
+        }
+        return vector;
+    }
+
+    private static double cosine(Map<String, Double> left, Map<String, Double> right) {
+        double dot = 0;
+        for (Map.Entry<String, Double> component : left.entrySet()) {
+            dot += component.getValue() * right.getOrDefault(component.getKey(), 0.0);
+        }
+        double norms = Math.sqrt(squaredNorm(left) * squaredNorm(right));
+        return norms == 0 ? 0 : dot / norms;
+    }
+
+    private static double squaredNorm(Map<String, Double> vector) {
+        double sum = 0;
+        for (double component : vector.values()) {
+            sum += component * component;
+        }
+        return sum;
+    }
+
+    private static Set<String> numbers(List<String> terms) {
+        Set<String> numbers = new TreeSet<>();
+        for (String term : terms) {
+            if (term.chars().allMatch(Character::isDigit)) {
+                numbers.add(term);
+            }
+        }
+        return numbers;
+    }
+}
@@ -0,0 +1,161 @@
+package com.vawk.store;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Turns terms into TF-IDF vectors without a vocabulary, using the hashing trick: each term lands
+ * in one of {@link #DIMENSIONS} buckets with a sign taken from the same hash, so the rare
+ * colliding terms tend to cancel rather than pile up. Term frequencies are damped (1 + ln tf),
+ * weighted by the inverse document frequency of their bucket and the vector is scaled to unit
+ * length, so the dot product of two vectors is their cosine similarity. A text uses a few dozen
+ * of the buckets, so vectors are kept sparse: only the non-zero buckets and their weights. Everything
+ * is computed locally from the indexed text; there is no model to download and nothing to call.
+ */
+final class HashingVectorizer {
+    static final int DIMENSIONS = 1 << 18;
+
+    /** The non-zero components of a vector: bucket numbers in ascending order and their weights. */
+    record SparseVector(int[] buckets, float[] weights) {
+        static final SparseVector EMPTY = new SparseVector(new int[0], new float[0]);
+
+        /** @return the non-zero components of a dense vector */
+        static SparseVector of(float[] dense) {
+            int count = 0;
+            for (float component : dense) {
+                if (component != 0) {
+                    count++;
+                }
+            }
+            int[] buckets = new int[count];
+            float[] weights = new float[count];
+            count = 0;
+            for (int bucket = 0; bucket < dense.length; bucket++) {
+                if (dense[bucket] != 0) {
+                    buckets[count] = bucket;
+                    weights[count++] = dense[bucket];
+                }
+            }
+            return new SparseVector(buckets, weights);
+        }
+
+        int size() {
+            return buckets.length;
+        }
+
+        /** @return the weight of a bucket, 0 when the vector does not use it */
+        float get(int bucket) {
+            int found = Arrays.binarySearch(buckets, bucket);
+            return found < 0 ? 0 : weights[found];
+        }
+
+        float dot(SparseVector other) {
+            float sum = 0;
+            int left = 0;
+            int right = 0;
+            while (left < buckets.length && right < other.buckets.length) {
+                if (buckets[left] < other.buckets[right]) {
+                    left++;
+                } else if (buckets[left] > other.buckets[right]) {
+                    right++;
+                } else {
+                    sum += weights[left++] * other.weights[right++];
+                }
+            }
+            return sum;
+        }
+    }
+
+    /**
+     * Inverse document frequencies: the weight of each bucket some document uses, and the one
+     * weight every other bucket shares.
+     */
+    record Weights(SparseVector seen, float unseen) {
+        float of(int bucket) {
+            int found = Arrays.binarySearch(seen.buckets(), bucket);
+            return found < 0 ? unseen : seen.weights()[found];
+        }
+    }
+
+    private HashingVectorizer() {
+    }
+
+    /**
+     * Inverse document frequency per bucket over a corpus.
+     *
+     * @param documents each document's terms
+     * @return ln((n + 1) / (df + 1)) + 1 per bucket, where df counts the documents using the bucket
+     */
+    static Weights inverseDocumentFrequencies(List<List<String>> documents) {
+        Map<Integer, Integer> documentFrequencies = new TreeMap<>();
+        for (List<String> terms : documents) {
+            terms.stream().map(HashingVectorizer::bucket).distinct()
+                    .forEach(bucket -> documentFrequencies.merge(bucket, 1, Integer::sum));
+        }
+        int[] buckets = new int[documentFrequencies.size()];
+        float[] weights = new float[buckets.length];
+        int index = 0;
+        for (Map.Entry<Integer, Integer> frequency : documentFrequencies.entrySet()) {
+            buckets[index] = frequency.getKey();
+            weights[index++] = weight(documents.size(), frequency.getValue());
+        }
+        return new Weights(new SparseVector(buckets, weights), weight(documents.size(), 0));
+    }
+
+    /**
+     * @param terms the text's terms, repeats included
+     * @param idf   bucket weights from {@link #inverseDocumentFrequencies}
+     * @return the unit-length vector, or an empty one when there are no terms
+     */
+    static SparseVector vector(List<String> terms, Weights idf) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (String term : terms) {
+            frequencies.merge(term, 1, Integer::sum);
+        }
+        TreeMap<Integer, Float> components = new TreeMap<>();
+        for (Map.Entry<String, Integer> frequency : frequencies.entrySet()) {
+            int hash = mix(frequency.getKey().hashCode());
+            int bucket = Math.floorMod(hash >> 1, DIMENSIONS);
+            float sign = (hash & 1) == 0 ? 1 : -1;
+            components.merge(bucket, sign * (float) (1 + Math.log(frequency.getValue())) * idf.of(bucket), Float::sum);
+        }
+        components.values().removeIf(component -> component == 0);
+        double norm = 0;
+        for (float component : components.values()) {
+            norm += component * component;
+        }
+        if (norm == 0) {
+            return SparseVector.EMPTY;
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        int[] buckets = new int[components.size()];
+        float[] weights = new float[buckets.length];
+        int index = 0;
+        for (Map.Entry<Integer, Float> component : components.entrySet()) {
+            buckets[index] = component.getKey();
+            weights[index++] = component.getValue() * scale;
+        }
+        return new SparseVector(buckets, weights);
+    }
+
+    static int bucket(String term) {
+        return Math.floorMod(mix(term.hashCode()) >> 1, DIMENSIONS);
+    }
+
+    private static float weight(int documents, int documentFrequency) {
+        return (float) (Math.log((documents + 1.0) / (documentFrequency + 1.0)) + 1);
+    }
+
+    /** Spreads String.hashCode, which is specified and so stable across runs, over all bits. */
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        hash *= 0xC2B2AE35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+}
@@ -0,0 +1,110 @@
+package com.vawk.store;
+
+import com.vawk.domain.SessionLog;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Writes test receipts as a JUnit XML report, the format CI servers chart and compare across
+ * builds. Every test case carries its wall time in the {@code time} attribute plus its CPU time,
+ * bytes in and out and lines per second as properties, so a script that slowed down is flagged by
+ * the same tooling that flags one that broke. Mismatches are failures; errors and runs stopped at
+ * a limit are errors.
+ */
+public class JUnitReportWriter {
+
+    /**
+     * @param target    report file, replaced if present
+     * @param suiteName name of the test suite, e.g. the program under test
+     * @param runs      receipts in the order they should appear
+     */
+    // Pattern: Trust UX
+    // - Receipts in the format CI already reads; timings become a regression signal like failures.
+    public void write(Path target, String suiteName, List<SessionLog.TestRun> runs) throws IOException {
+        long failures = runs.stream().filter(run -> !run.isPassed() && !isError(run)).count();
+        long errors = runs.stream().filter(JUnitReportWriter::isError).count();
+        long totalMillis = runs.stream().mapToLong(run -> run.getDurationMillis() == null ? 0 : run.getDurationMillis()).sum();
+        Path parent = target.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        try (Writer out = Files.newBufferedWriter(target, StandardCharsets.UTF_8)) {
+            out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            out.write("<testsuite name=\"" + escape(suiteName) + "\" tests=\"" + runs.size() + "\" failures=\"" + failures
+                    + "\" errors=\"" + errors + "\" skipped=\"0\" time=\"" + seconds(totalMillis) + "\" timestamp=\""
+                    + Instant.now().truncatedTo(ChronoUnit.SECONDS) + "\">\n");
+            for (SessionLog.TestRun run : runs) {
+                out.write("  <testcase name=\"" + escape(run.getName()) + "\" classname=\"" + escape(suiteName) + "\" time=\""
+                        + seconds(run.getDurationMillis() == null ? 0 : run.getDurationMillis()) + "\">\n");
+                writeProperties(out, run);
+                if (!run.isPassed()) {
+                    String element = isError(run) ? "error" : "failure";
+                    String kind = run.getFailureKind() == null ? "FAILED" : run.getFailureKind().name();
+                    out.write("    <" + element + " type=\"" + kind + "\" message=\"" + escape(kind.toLowerCase(Locale.ROOT).replace('_', ' '))
+                            + "\">" + escape(run.getDiff() == null ? "" : run.getDiff()) + "</" + element + ">\n");
+                }
+                out.write("  </testcase>\n");
+            }
+            out.write("</testsuite>\n");
+        }
+    }
+
+    private static void writeProperties(Writer out, SessionLog.TestRun run) throws IOException {
+        StringBuilder properties = new StringBuilder();
+        appendProperty(properties, "cpuMillis", run.getCpuMillis());
+        appendProperty(properties, "inputBytes", run.getInputBytes());
+        appendProperty(properties, "outputBytes", run.getOutputBytes());
+        appendProperty(properties, "linesPerSecond", run.getLinesPerSecond() == null ? null : Math.round(run.getLinesPerSecond()));
+        appendProperty(properties, "cached", run.getCached());
+        if (properties.length() > 0) {
+            out.write("    <properties>\n" + properties + "    </properties>\n");
+        }
+    }
+
+    private static void appendProperty(StringBuilder properties, String name, Object value) {
+        if (value != null) {
+            properties.append("      <property name=\"").append(name).append("\" value=\"").append(escape(value.toString())).append("\"/>\n");
+        }
+    }
+
+    private static boolean isError(SessionLog.TestRun run) {
+        return !run.isPassed() && (run.getFailureKind() == SessionLog.FailureKind.ERROR
+                || run.getFailureKind() == SessionLog.FailureKind.LIMIT_EXCEEDED);
+    }
+
+    private static String seconds(long millis) {
+        return String.format(Locale.ROOT, "%.3f", millis / 1000.0);
+    }
+
+    /** Escapes markup and drops characters XML 1.0 cannot carry at all. */
+    static String escape(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (int index = 0; index < text.length(); index++) {
+            char character = text.charAt(index);
+            switch (character) {
+                case '&' -> escaped.append("&amp;");
+                case '<' -> escaped.append("&lt;");
+                case '>' -> escaped.append("&gt;");
+                case '"' -> escaped.append("&quot;");
+                case '\'' -> escaped.append("&apos;");
+                default -> {
+                    if (character >= 0x20 || character == '\t' || character == '\n' || character == '\r') {
+                        escaped.append(character);
+                    }
+                }
+            }
+        }
+        return escaped.toString();
+    }
+}
@@ -0,0 +1,124 @@
+package com.vawk.store;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+
+/**
+ * Chooses which retrieved passages go into a prompt under a token budget. Each passage is rendered
+ * the way the caller will show it and its size estimated in tokens; passages whose text repeats
+ * or sits inside a better-ranked one are dropped; then the set with the highest total score that
+ * fits the budget is picked (a 0/1 knapsack over the few candidates a query returns) rather than
+ * a fixed number of passages. The prompt's RAG share is therefore bounded by the budget, whatever
+ * the passages' lengths. {@link #render} is the rendering generation and refinement share.
+ */
+public final class RagContextPacker {
+    /** Passages to retrieve as candidates; more than any budget in use is expected to hold. */
+    public static final int CANDIDATES = 12;
+    /** Rough characters per token of English prose and code for BPE tokenizers. */
+    private static final int CHARS_PER_TOKEN = 4;
+    /** Tokens taken by the blank line between two blocks. */
+    private static final int SEPARATOR_TOKENS = 1;
+    /** Worth of a passage beyond its score, so an unscored passage is still better than none. */
+    private static final double BASE_VALUE = 1e-3;
+    /** Longest passage text shown in a generation or refinement prompt. */
+    private static final int MAX_PASSAGE_CHARS = 2000;
+
+    private RagContextPacker() {
+    }
+
+    /**
+     * @return the estimated token count of text
+     */
+    public static int estimateTokens(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        return (text.length() + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+    }
+
+    /**
+     * @param ranked      candidate passages, best first
+     * @param render      the block a passage becomes in the prompt, header included
+     * @param tokenBudget most tokens the chosen blocks may take together
+     * @return the chosen passages in rank order
+     */
+    public static List<RagRepository.RagPassage> pack(List<RagRepository.RagPassage> ranked,
+                                                      Function<RagRepository.RagPassage, String> render,
+                                                      int tokenBudget) {
+        List<RagRepository.RagPassage> candidates = new ArrayList<>();
+        List<String> kept = new ArrayList<>();
+        for (RagRepository.RagPassage passage : ranked) {
+            String normalized = normalize(passage.text);
+            if (!normalized.isEmpty() && kept.stream().anyMatch(text -> text.contains(normalized))) {
+                continue;
+            }
+            candidates.add(passage);
+            kept.add(normalized);
+        }
+        if (candidates.isEmpty() || tokenBudget <= 0) {
+            return List.of();
+        }
+        int[] costs = new int[candidates.size()];
+        for (int index = 0; index < costs.length; index++) {
+            costs[index] = estimateTokens(render.apply(candidates.get(index))) + SEPARATOR_TOKENS;
+        }
+        // best[i][t]: highest value from the first i candidates within t tokens.
+        double[][] best = new double[costs.length + 1][tokenBudget + SEPARATOR_TOKENS + 1];
+        for (int index = 1; index <= costs.length; index++) {
+            double value = Math.max(candidates.get(index - 1).score, 0) + BASE_VALUE;
+            for (int tokens = 0; tokens < best[index].length; tokens++) {
+                best[index][tokens] = best[index - 1][tokens];
+                if (costs[index - 1] <= tokens) {
+                    best[index][tokens] = Math.max(best[index][tokens], best[index - 1][tokens - costs[index - 1]] + value);
+                }
+            }
+        }
+        boolean[] chosen = new boolean[costs.length];
+        int tokens = best[0].length - 1;
+        for (int index = costs.length; index > 0; index--) {
+            if (best[index][tokens] != best[index - 1][tokens]) {
+                chosen[index - 1] = true;
+                tokens -= costs[index - 1];
+            }
+        }
+        List<RagRepository.RagPassage> packed = new ArrayList<>();
+        for (int index = 0; index < chosen.length; index++) {
+            if (chosen[index]) {
+                packed.add(candidates.get(index));
+            }
+        }
+        return packed;
+    }
+
+    /**
+     * Packs passages as {@link #pack} does and renders them as one context block for a generation
+     * or refinement prompt: a "## RAG" header per passage naming its entry, file and lines, then its
+     * text, blocks separated by a blank line.
+     *
+     * @param ranked      candidate passages, best first
+     * @param tokenBudget most tokens the rendered blocks may take together
+     * @return the context block, empty when nothing fits
+     */
+    public static String render(List<RagRepository.RagPassage> ranked, int tokenBudget) {
+        StringBuilder context = new StringBuilder();
+        for (RagRepository.RagPassage passage : pack(ranked, RagContextPacker::renderPassage, tokenBudget)) {
+            if (context.length() > 0) {
+                context.append("\n\n");
+            }
+            context.append(renderPassage(passage));
+        }
+        return context.toString();
+    }
+
+    private static String renderPassage(RagRepository.RagPassage passage) {
+        String content = passage.text.length() > MAX_PASSAGE_CHARS ? passage.text.substring(0, MAX_PASSAGE_CHARS) : passage.text;
+        return "## RAG: " + passage.entry.id + " (" + passage.entry.path + ", lines " + passage.firstLine + "-" + passage.lastLine + ")\n"
+                + content;
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.strip().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+}
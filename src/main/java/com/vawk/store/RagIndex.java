@@ -0,0 +1,402 @@
+package com.vawk.store;
+
+import com.vawk.util.Hashing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UTFDataFormatException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * Inverted index over passages of the RAG documents, scored with Okapi BM25. Every document is
+ * cut into overlapping passages ({@link DocumentChunker}) and each passage is indexed on its own,
+ * together with its document's id and description (counted twice, since they are written to say
+ * what the document is about). Retrieval therefore lands on the part of a long section that
+ * matches instead of its preamble. Postings hold passage numbers and term frequencies in primitive
+ * arrays, a query only touches the postings of its own terms, and the best matches are kept in a
+ * heap bounded by the requested limit. The index remembers the source files it was built from
+ * (size, modification time and SHA-256) so callers can tell when it is stale, and it round-trips
+ * through a compact binary file that includes the passage text.
+ */
+public final class RagIndex {
+    private static final int MAGIC = 0x5641574B;
+    private static final int FORMAT_VERSION = 2;
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final int TITLE_WEIGHT = 2;
+
+    private final List<RagRepository.RagEntry> entries;
+    private final Map<String, SourceFile> sources;
+    private final List<Passage> passages;
+    private final int[] passageLengths;
+    private final double averageLength;
+    private final Map<String, Postings> postings;
+
+    /**
+     * A file the index was built from. A missing file is recorded with size -1, so its
+     * appearance makes the index stale too.
+     */
+    public record SourceFile(long size, long modifiedMillis, String sha256) {
+        public static final SourceFile MISSING = new SourceFile(-1, 0, "");
+    }
+
+    /** A passage of a document: its entry's position in the index and its 1-based line range. */
+    private record Passage(int entry, int firstLine, int lastLine, String text) {
+    }
+
+    /** One scored passage. */
+    public record Hit(RagRepository.RagEntry entry, int firstLine, int lastLine, String text, double score) {
+    }
+
+    private record Postings(int[] passages, int[] frequencies) {
+    }
+
+    private RagIndex(List<RagRepository.RagEntry> entries, Map<String, SourceFile> sources, List<Passage> passages,
+                     int[] passageLengths, Map<String, Postings> postings) {
+        this.entries = entries;
+        this.sources = sources;
+        this.passages = passages;
+        this.passageLengths = passageLengths;
+        this.postings = postings;
+        long total = 0;
+        for (int length : passageLengths) {
+            total += length;
+        }
+        this.averageLength = passageLengths.length == 0 ? 0 : (double) total / passageLengths.length;
+    }
+
+    /**
+     * Cuts documents into passages and indexes them.
+     *
+     * @param entries index entries, one per document
+     * @param bodies  document text, parallel to entries; empty when a document could not be read
+     * @param sources files the entries and bodies were read from, keyed by path
+     */
+    public static RagIndex build(List<RagRepository.RagEntry> entries, List<String> bodies, Map<String, SourceFile> sources) {
+        List<Passage> passages = new ArrayList<>();
+        for (int entry = 0; entry < entries.size(); entry++) {
+            List<DocumentChunker.Chunk> chunks = DocumentChunker.chunks(bodies.get(entry));
+            if (chunks.isEmpty()) {
+                passages.add(new Passage(entry, 0, 0, ""));
+            }
+            for (DocumentChunker.Chunk chunk : chunks) {
+                passages.add(new Passage(entry, chunk.firstLine(), chunk.lastLine(), chunk.text()));
+            }
+        }
+        int[] passageLengths = new int[passages.size()];
+        Map<String, List<int[]>> collected = new HashMap<>();
+        for (int passage = 0; passage < passages.size(); passage++) {
+            RagRepository.RagEntry entry = entries.get(passages.get(passage).entry());
+            Map<String, Integer> frequencies = new LinkedHashMap<>();
+            for (String term : indexedTerms(entry, passages.get(passage).text())) {
+                frequencies.merge(term, 1, Integer::sum);
+            }
+            int length = 0;
+            for (Map.Entry<String, Integer> frequency : frequencies.entrySet()) {
+                collected.computeIfAbsent(frequency.getKey(), term -> new ArrayList<>()).add(new int[]{passage, frequency.getValue()});
+                length += frequency.getValue();
+            }
+            passageLengths[passage] = length;
+        }
+        Map<String, Postings> postings = new HashMap<>();
+        for (Map.Entry<String, List<int[]>> term : collected.entrySet()) {
+            int[] passageNumbers = new int[term.getValue().size()];
+            int[] frequencies = new int[passageNumbers.length];
+            for (int index = 0; index < passageNumbers.length; index++) {
+                passageNumbers[index] = term.getValue().get(index)[0];
+                frequencies[index] = term.getValue().get(index)[1];
+            }
+            postings.put(term.getKey(), new Postings(passageNumbers, frequencies));
+        }
+        return new RagIndex(List.copyOf(entries), Map.copyOf(sources), List.copyOf(passages), passageLengths, postings);
+    }
+
+    /**
+     * Finds the passages that best match the query. A passage overlapping a better one of the same
+     * document is skipped, so the hits never repeat text.
+     *
+     * @param query free text
+     * @param limit most hits returned
+     * @return the best passages, highest score first; passages matching no query term are left
+     * out, and equal scores keep index order
+     */
+    public List<Hit> search(String query, int limit) {
+        if (limit <= 0 || passages.isEmpty()) {
+            return Collections.emptyList();
+        }
+        double[] scores = scores(query);
+        // A passage overlaps at most its two neighbours, so three times the limit leaves enough after skipping.
+        List<Hit> ranked = new ArrayList<>();
+        for (int passage : top(scores, limit * 3)) {
+            ranked.add(hit(passage, scores[passage]));
+        }
+        return distinct(ranked, limit);
+    }
+
+    /** A scored hit on a passage, by the passage's position in the index. */
+    Hit hit(int passage, double score) {
+        Passage found = passages.get(passage);
+        return new Hit(entries.get(found.entry()), found.firstLine(), found.lastLine(), found.text(), score);
+    }
+
+    /**
+     * @param ranked hits, best first
+     * @return the first hits up to the limit, skipping any that overlap an earlier hit on the same document
+     */
+    static List<Hit> distinct(List<Hit> ranked, int limit) {
+        List<Hit> hits = new ArrayList<>();
+        for (Hit candidate : ranked) {
+            if (hits.size() == limit) {
+                break;
+            }
+            boolean overlaps = hits.stream().anyMatch(hit -> hit.entry() == candidate.entry()
+                    && hit.firstLine() <= candidate.lastLine() && candidate.firstLine() <= hit.lastLine());
+            if (!overlaps) {
+                hits.add(candidate);
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Ranks whole documents by their best passage.
+     *
+     * @return the best entries, highest score first; entries matching no query term are left out
+     */
+    public List<RagRepository.RagEntry> searchEntries(String query, int limit) {
+        if (limit <= 0 || passages.isEmpty()) {
+            return Collections.emptyList();
+        }
+        double[] passageScores = scores(query);
+        double[] entryScores = new double[entries.size()];
+        for (int passage = 0; passage < passageScores.length; passage++) {
+            int entry = passages.get(passage).entry();
+            entryScores[entry] = Math.max(entryScores[entry], passageScores[passage]);
+        }
+        List<RagRepository.RagEntry> best = new ArrayList<>();
+        for (int entry : top(entryScores, limit)) {
+            best.add(entries.get(entry));
+        }
+        return best;
+    }
+
+    /** Terms of a passage as it is indexed. */
+    List<String> passageTerms(int passage) {
+        return indexedTerms(entries.get(passages.get(passage).entry()), passages.get(passage).text());
+    }
+
+    /** A passage's document id and description, counted twice, followed by the passage text. */
+    private static List<String> indexedTerms(RagRepository.RagEntry entry, String text) {
+        List<String> title = TextTokenizer.terms(entry.id + " " + entry.description);
+        List<String> terms = new ArrayList<>();
+        for (int repeat = 0; repeat < TITLE_WEIGHT; repeat++) {
+            terms.addAll(title);
+        }
+        terms.addAll(TextTokenizer.terms(text));
+        return terms;
+    }
+
+    /** BM25 score of every passage; 0 means the passage shares no term with the query. */
+    private double[] scores(String query) {
+        double[] scores = new double[passages.size()];
+        for (String term : new LinkedHashSet<>(TextTokenizer.terms(query))) {
+            Postings termPostings = postings.get(term);
+            if (termPostings == null) {
+                continue;
+            }
+            int passageFrequency = termPostings.passages().length;
+            double idf = Math.log(1 + (passages.size() - passageFrequency + 0.5) / (passageFrequency + 0.5));
+            for (int index = 0; index < passageFrequency; index++) {
+                int passage = termPostings.passages()[index];
+                int frequency = termPostings.frequencies()[index];
+                double norm = K1 * (1 - B + B * passageLengths[passage] / averageLength);
+                scores[passage] += idf * frequency * (K1 + 1) / (frequency + norm);
+            }
+        }
+        return scores;
+    }
+
+    /** Indexes of the highest positive scores, best first, ties in index order, via a bounded heap. */
+    private static List<Integer> top(double[] scores, int limit) {
+        Comparator<Integer> worstFirst = Comparator.<Integer>comparingDouble(index -> scores[index])
+                .thenComparing(Comparator.<Integer>reverseOrder());
+        PriorityQueue<Integer> best = new PriorityQueue<>(worstFirst);
+        for (int index = 0; index < scores.length; index++) {
+            if (scores[index] <= 0) {
+                continue;
+            }
+            if (best.size() < limit) {
+                best.add(index);
+            } else if (worstFirst.compare(index, best.peek()) > 0) {
+                best.poll();
+                best.add(index);
+            }
+        }
+        List<Integer> ordered = new ArrayList<>();
+        while (!best.isEmpty()) {
+            ordered.add(best.poll());
+        }
+        Collections.reverse(ordered);
+        return ordered;
+    }
+
+    public List<RagRepository.RagEntry> getEntries() {
+        return entries;
+    }
+
+    /** @return number of indexed passages across all documents */
+    public int getPassageCount() {
+        return passages.size();
+    }
+
+    /** @return the files the index was built from, keyed by path */
+    public Map<String, SourceFile> getSources() {
+        return sources;
+    }
+
+    /**
+     * @return a digest of the content the index was built from: the source paths and their
+     * SHA-256, but not their modification times
+     */
+    public String getContentStamp() {
+        StringBuilder content = new StringBuilder();
+        for (Map.Entry<String, SourceFile> source : new TreeMap<>(sources).entrySet()) {
+            content.append(source.getKey()).append('\0').append(source.getValue().sha256()).append('\n');
+        }
+        return Hashing.sha256(content.toString());
+    }
+
+    /** @return this index recorded against other source fingerprints, sharing everything else */
+    public RagIndex withSources(Map<String, SourceFile> sources) {
+        return new RagIndex(entries, Map.copyOf(sources), passages, passageLengths, postings);
+    }
+
+    /** Writes the index to a file, replacing it atomically. */
+    public void write(Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path staging = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(staging)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(sources.size());
+            for (Map.Entry<String, SourceFile> source : sources.entrySet()) {
+                out.writeUTF(source.getKey());
+                out.writeLong(source.getValue().size());
+                out.writeLong(source.getValue().modifiedMillis());
+                out.writeUTF(source.getValue().sha256());
+            }
+            out.writeInt(entries.size());
+            for (RagRepository.RagEntry entry : entries) {
+                out.writeUTF(entry.id);
+                out.writeUTF(entry.description);
+                out.writeUTF(entry.path);
+                out.writeUTF(entry.group);
+            }
+            out.writeInt(passages.size());
+            for (int passage = 0; passage < passages.size(); passage++) {
+                Passage written = passages.get(passage);
+                out.writeInt(written.entry());
+                out.writeInt(written.firstLine());
+                out.writeInt(written.lastLine());
+                out.writeUTF(written.text());
+                out.writeInt(passageLengths[passage]);
+            }
+            out.writeInt(postings.size());
+            for (Map.Entry<String, Postings> term : postings.entrySet()) {
+                out.writeUTF(term.getKey());
+                int[] passageNumbers = term.getValue().passages();
+                out.writeInt(passageNumbers.length);
+                for (int index = 0; index < passageNumbers.length; index++) {
+                    out.writeInt(passageNumbers[index]);
+                    out.writeInt(term.getValue().frequencies()[index]);
+                }
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(staging);
+            throw e;
+        }
+        Files.move(staging, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads an index written by {@link #write}.
+     *
+     * @return the index, or empty when the file is missing, from another format version, or damaged
+     */
+    public static Optional<RagIndex> read(Path file) throws IOException {
+        try (InputStream stream = Files.newInputStream(file)) {
+            return read(stream);
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Reads an index written by {@link #write} from a stream, which is left open.
+     *
+     * @return the index, or empty when the stream holds another format version or is damaged
+     */
+    public static Optional<RagIndex> read(InputStream stream) throws IOException {
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                return Optional.empty();
+            }
+            Map<String, SourceFile> sources = new HashMap<>();
+            for (int count = in.readInt(); count > 0; count--) {
+                sources.put(in.readUTF(), new SourceFile(in.readLong(), in.readLong(), in.readUTF()));
+            }
+            List<RagRepository.RagEntry> entries = new ArrayList<>();
+            for (int count = in.readInt(); count > 0; count--) {
+                entries.add(new RagRepository.RagEntry(in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF()));
+            }
+            int passageCount = in.readInt();
+            List<Passage> passages = new ArrayList<>();
+            int[] passageLengths = new int[passageCount];
+            for (int passage = 0; passage < passageCount; passage++) {
+                Passage read = new Passage(in.readInt(), in.readInt(), in.readInt(), in.readUTF());
+                if (read.entry() < 0 || read.entry() >= entries.size()) {
+                    return Optional.empty();
+                }
+                passages.add(read);
+                passageLengths[passage] = in.readInt();
+            }
+            Map<String, Postings> postings = new HashMap<>();
+            for (int count = in.readInt(); count > 0; count--) {
+                String term = in.readUTF();
+                int[] passageNumbers = new int[in.readInt()];
+                int[] frequencies = new int[passageNumbers.length];
+                for (int index = 0; index < passageNumbers.length; index++) {
+                    passageNumbers[index] = in.readInt();
+                    frequencies[index] = in.readInt();
+                    if (passageNumbers[index] < 0 || passageNumbers[index] >= passageCount) {
+                        return Optional.empty();
+                    }
+                }
+                postings.put(term, new Postings(passageNumbers, frequencies));
+            }
+            return Optional.of(new RagIndex(List.copyOf(entries), Map.copyOf(sources), List.copyOf(passages), passageLengths, postings));
+        } catch (EOFException | UTFDataFormatException | NegativeArraySizeException e) {
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.vawk.store;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Build-time entry point that indexes the project's docs into the file packaged as
+ * {@link RagRepository#BUNDLED_INDEX}, so a vawk jar answers RAG lookups outside a checkout
+ * without parsing or tokenizing anything at startup. Run by the Maven build in the
+ * prepare-package phase with the docs directory and the output file as arguments. The bundled
+ * index is never checked for freshness; its source fingerprints only give it a content stamp, so
+ * a vector graph built from an older bundle is recognized as stale.
+ */
+public final class RagIndexBundler {
+    private RagIndexBundler() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            throw new IllegalArgumentException("usage: RagIndexBundler <docs directory> <output file>");
+        }
+        RagIndex index = bundle(Paths.get(args[0]), Paths.get(args[1]));
+        System.out.println("[vawk] Bundled RAG index: " + index.getEntries().size() + " documents, "
+                + index.getPassageCount() + " passages -> " + args[1]);
+    }
+
+    /**
+     * Indexes the docs under docsRoot and writes the index to output.
+     *
+     * @return the written index
+     */
+    static RagIndex bundle(Path docsRoot, Path output) throws IOException {
+        if (!Files.isDirectory(docsRoot)) {
+            throw new IOException("Docs directory not found: " + docsRoot);
+        }
+        RagRepository repository = new RagRepository(docsRoot, output, RagRepository.RetrievalMode.LEXICAL);
+        RagIndex built = repository.build();
+        // Record sources relative to the docs root, so the jar carries no build-machine paths.
+        Map<String, RagIndex.SourceFile> sources = new HashMap<>();
+        for (Map.Entry<String, RagIndex.SourceFile> source : built.getSources().entrySet()) {
+            Path relative = docsRoot.relativize(Paths.get(source.getKey()));
+            sources.put(Paths.get("docs").resolve(relative).toString(), source.getValue());
+        }
+        RagIndex index = built.withSources(sources);
+        index.write(output);
+        return index;
+    }
+}
@@ -1,29 +1,125 @@
 package com.vawk.store;
 
+import com.vawk.util.Hashing;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
  * Provides guarded access to RAG documents (snippets and learn.awk sections). Parses indexes,
- * scores relevance heuristically, and returns document content for chat context without allowing
- * path escapes outside docs.
+ * ranks overlapping passages of the documents with a BM25 inverted index, and returns the best
+ * passages for prompt context without allowing path escapes outside docs. The inverted
+ * index is persisted under .vawk/rag and rebuilt only when one of the files it was built from
+ * changes content; an unchanged file is recognized by its size and modification time without
+ * being read.
+ *
+ * <p>In {@link RetrievalMode#VECTOR} mode the same passages are ranked by cosine similarity of
+ * hashed TF-IDF vectors instead, looked up in an HNSW graph memory-mapped from .vawk/rag. The
+ * graph is rebuilt whenever the inverted index's content changes; retrieval never leaves the
+ * machine in either mode.
+ *
+ * <p>The packaged jar carries an index of the project's own docs, built during the Maven build
+ * ({@link RagIndexBundler}). When the working directory has no snippet or book index under docs,
+ * that bundled index is streamed from the classpath instead of building an empty one; a workspace
+ * docs directory, when present, takes its place.
+ *
+ * <p>{@link #searchCode} greps AWK code itself: the ```awk blocks of the snippets and the
+ * promoted jobs' script.awk files, through an in-memory {@link TrigramIndex} rebuilt when one of
+ * those files is added, removed or modified.
  */
 @Repository
 public class RagRepository {
     private static final Path ROOT_INDEX = Paths.get("docs", "rag-index.md");
     private static final Pattern INDEX_ENTRY = Pattern.compile("-\\s+`([^`]+)`\\s+\\u2013\\s+(.*)\\(([^)]+)\\)");
+    private static final Pattern BOOK_ENTRY = Pattern.compile("-\\s+`([^`]+)`\\s+\\u2013\\s+(\\S+\\.md)\\s*$");
+    /** Classpath location of the index built from the project's docs at package time. */
+    static final String BUNDLED_INDEX = "/rag/index.bin";
+
+    /** How passages are ranked against a query. */
+    public enum RetrievalMode {
+        /** BM25 over the inverted index: exact (stemmed) term matches. */
+        LEXICAL,
+        /** Approximate nearest neighbours of hashed TF-IDF vectors. */
+        VECTOR
+    }
+
+    private final Path docsRoot;
+    private final Path snippetsIndex;
+    private final Path bookIndex;
+    private final Path bookSections;
+    private final Path snippetsDirectory;
+    private final Path jobsRoot;
+    private final Path indexFile;
+    private final Path vectorFile;
+    private final RetrievalMode mode;
+    private RagIndex index;
+    private boolean bundled;
+    private VectorIndex vectors;
+    private TrigramIndex codeIndex;
+    private Map<Path, List<Long>> codeSources = Map.of();
+
+    public RagRepository() {
+        this(Paths.get(".vawk", "rag", "index.bin"));
+    }
+
+    /**
+     * @param indexFile where the inverted index is persisted
+     */
+    public RagRepository(Path indexFile) {
+        this(indexFile, RetrievalMode.LEXICAL);
+    }
+
+    /**
+     * @param indexFile where the inverted index is persisted; the vector graph sits next to it
+     * @param mode      how passages are ranked
+     */
+    public RagRepository(Path indexFile, RetrievalMode mode) {
+        this(Paths.get("docs"), indexFile, mode);
+    }
+
+    /**
+     * @param docsRoot directory holding examples/ and book/ with their index files
+     */
+    public RagRepository(Path docsRoot, Path indexFile, RetrievalMode mode) {
+        this(docsRoot, Paths.get("vawk", "jobs"), indexFile, mode);
+    }
+
+    /**
+     * @param jobsRoot directory of promoted jobs, each with a script.awk
+     */
+    public RagRepository(Path docsRoot, Path jobsRoot, Path indexFile, RetrievalMode mode) {
+        this.docsRoot = docsRoot;
+        this.snippetsIndex = docsRoot.resolve("examples").resolve("awk-snippets-index.md");
+        this.bookIndex = docsRoot.resolve("book").resolve("learn.awk-index.md");
+        this.bookSections = docsRoot.resolve("book").resolve("learn.awk-sections");
+        this.snippetsDirectory = docsRoot.resolve("examples").resolve("snippets");
+        this.jobsRoot = jobsRoot;
+        this.indexFile = indexFile;
+        this.vectorFile = indexFile.resolveSibling("vectors.hnsw");
+        this.mode = mode;
+    }
+
+    @Autowired
+    public RagRepository(@Value("${vawk.rag.mode:lexical}") String mode) {
+        this(Paths.get(".vawk", "rag", "index.bin"), RetrievalMode.valueOf(mode.trim().toUpperCase(Locale.ROOT)));
+    }
 
     public static class RagDocument {
         public final String id;
@@ -37,12 +133,43 @@ public class RagRepository {
         }
     }
 
+    /**
+     * A passage of a RAG document: lines firstLine to lastLine (1-based, inclusive), with its
+     * retrieval score (BM25 or cosine similarity, depending on the mode).
+     */
+    public static class RagPassage {
+        public final RagEntry entry;
+        public final int firstLine;
+        public final int lastLine;
+        public final String text;
+        public final double score;
+
+        public RagPassage(RagEntry entry, int firstLine, int lastLine, String text, double score) {
+            this.entry = entry;
+            this.firstLine = firstLine;
+            this.lastLine = lastLine;
+            this.text = text;
+            this.score = score;
+        }
+    }
+
+    /** A line of AWK code matching a code search: path:line: text. */
+    public static class CodeMatch {
+        public final String path;
+        public final int line;
+        public final String text;
+
+        public CodeMatch(String path, int line, String text) {
+            this.path = path;
+            this.line = line;
+            this.text = text;
+        }
+    }
+
     /**
      * Lists all RAG entries from snippet and book indexes.
      */
     public List<RagEntry> listAllEntries() throws IOException {
-        Path snippetsIndex = Paths.get("docs", "examples", "awk-snippets-index.md");
-        Path bookIndex = Paths.get("docs", "book", "learn.awk-index.md");
         List<RagEntry> entries = new ArrayList<>();
         entries.addAll(parseIndex(snippetsIndex, "snippets"));
         entries.addAll(parseIndex(bookIndex, "book"));
@@ -50,22 +177,22 @@ public class RagRepository {
     }
 
     /**
-     * Finds the top documents for a chat query and returns full content.
+     * Finds the top passages for a chat query; each document is titled with the passage's lines.
      */
     // Pattern: Grounding
-    // - Retrieves relevant RAG docs so answers are constrained by project references.
+    // - Retrieves relevant RAG passages so answers are constrained by project references.
     public List<RagDocument> searchForChat(String query, int limit) throws IOException {
-        List<RagEntry> top = findRelevant(query, limit);
         List<RagDocument> docs = new ArrayList<>();
-        for (RagEntry entry : top) {
-            String content = readContent(entry);
-            docs.add(new RagDocument(entry.id, entry.description, content));
+        for (RagPassage passage : findPassages(query, limit)) {
+            docs.add(new RagDocument(passage.entry.id, passage.entry.description + " (lines " + passage.firstLine + "-" + passage.lastLine + ")",
+                    passage.text));
         }
         return docs;
     }
 
     /**
-     * Heuristically scores entries against query tokens and returns the top matches.
+     * Ranks entries against the query with BM25, each by its best passage, and returns the top
+     * matches; entries sharing no term with the query are not returned.
      */
     // Pattern: Grounding
     // - Scores and selects references to bound the model's context to known docs.
@@ -73,13 +200,236 @@ public class RagRepository {
         if (query == null) {
             return Collections.emptyList();
         }
-        String[] tokens = query.toLowerCase(Locale.ROOT).split("\\W+");
+        if (mode == RetrievalMode.VECTOR) {
+            List<RagEntry> best = new ArrayList<>();
+            for (RagIndex.Hit hit : vectorHits(query, limit * 3)) {
+                if (best.size() < limit && !best.contains(hit.entry())) {
+                    best.add(hit.entry());
+                }
+            }
+            return best;
+        }
+        return index().searchEntries(query, limit);
+    }
+
+    /**
+     * Returns the passages that best match the query, never two overlapping passages of one
+     * document.
+     */
+    // Pattern: Grounding
+    // - Spends prompt tokens on the matching part of a document, not on its preamble.
+    public List<RagPassage> findPassages(String query, int limit) throws IOException {
+        if (query == null) {
+            return Collections.emptyList();
+        }
+        List<RagIndex.Hit> hits = mode == RetrievalMode.VECTOR
+                ? RagIndex.distinct(vectorHits(query, limit * 3), limit)
+                : index().search(query, limit);
+        List<RagPassage> passages = new ArrayList<>();
+        for (RagIndex.Hit hit : hits) {
+            passages.add(new RagPassage(hit.entry(), hit.firstLine(), hit.lastLine(), hit.text(), hit.score()));
+        }
+        return passages;
+    }
+
+    /**
+     * Returns the inverted index, loading it from disk on first use and rebuilding it when a
+     * source file's content changed since it was built.
+     */
+    synchronized RagIndex index() throws IOException {
+        if (!Files.exists(snippetsIndex) && !Files.exists(bookIndex)) {
+            // Outside a checkout: serve the docs that were packaged with vawk.
+            if (index == null || !bundled) {
+                index = readBundledIndex().orElse(null);
+                bundled = index != null;
+            }
+            if (index != null) {
+                return index;
+            }
+        } else if (bundled) {
+            index = null;
+            bundled = false;
+        }
+        if (index == null) {
+            index = RagIndex.read(indexFile).orElse(null);
+        }
+        if (index != null) {
+            Map<String, RagIndex.SourceFile> current = new HashMap<>();
+            boolean fresh = true;
+            for (Map.Entry<String, RagIndex.SourceFile> source : index.getSources().entrySet()) {
+                RagIndex.SourceFile now = fingerprint(Paths.get(source.getKey()), source.getValue());
+                current.put(source.getKey(), now);
+                if (!now.sha256().equals(source.getValue().sha256()) || (now.size() < 0) != (source.getValue().size() < 0)) {
+                    fresh = false;
+                    break;
+                }
+            }
+            if (fresh) {
+                if (!current.equals(index.getSources())) {
+                    // Touched but unchanged: remember the new modification times to skip re-hashing next time.
+                    index = index.withSources(current);
+                    persist(index);
+                }
+                return index;
+            }
+        }
+        index = build();
+        persist(index);
+        return index;
+    }
+
+    /**
+     * Finds lines of snippet and promoted-job code containing query, or matching it as a regular
+     * expression when regex is set.
+     *
+     * @throws java.util.regex.PatternSyntaxException when regex is set and query is not a valid pattern
+     */
+    // Pattern: Grounding
+    // - Finds existing code that already does what is asked, which descriptions rarely name.
+    public List<CodeMatch> searchCode(String query, boolean regex, int limit) throws IOException {
+        if (query == null || query.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        List<CodeMatch> matches = new ArrayList<>();
+        for (TrigramIndex.Match match : codeIndex().search(query, regex, limit)) {
+            matches.add(new CodeMatch(match.path(), match.line(), match.text()));
+        }
+        return matches;
+    }
+
+    /**
+     * Returns the code index, rebuilding it when a snippet or job script was added, removed or
+     * modified since it was built. Listing the two directories costs a stat per file, not a read.
+     */
+    synchronized TrigramIndex codeIndex() throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (Files.isDirectory(snippetsDirectory)) {
+            try (var snippets = Files.list(snippetsDirectory)) {
+                snippets.filter(file -> file.toString().endsWith(".md")).forEach(files::add);
+            }
+        }
+        if (Files.isDirectory(jobsRoot)) {
+            try (var jobs = Files.list(jobsRoot)) {
+                jobs.map(job -> job.resolve("script.awk")).filter(Files::isRegularFile).forEach(files::add);
+            }
+        }
+        Collections.sort(files);
+        Map<Path, List<Long>> current = new HashMap<>();
+        for (Path file : files) {
+            current.put(file, List.of(Files.size(file), Files.getLastModifiedTime(file).toMillis()));
+        }
+        if (codeIndex != null && current.equals(codeSources)) {
+            return codeIndex;
+        }
+        List<TrigramIndex.CodeBlock> blocks = new ArrayList<>();
+        for (Path file : files) {
+            String text;
+            try {
+                text = Files.readString(file, StandardCharsets.UTF_8);
+            } catch (NoSuchFileException e) {
+                continue;
+            }
+            if (file.startsWith(snippetsDirectory)) {
+                blocks.addAll(TrigramIndex.awkFences(file.toString(), text));
+            } else {
+                blocks.add(new TrigramIndex.CodeBlock(file.toString(), 1, text));
+            }
+        }
+        codeIndex = TrigramIndex.build(blocks);
+        codeSources = current;
+        return codeIndex;
+    }
+
+    /**
+     * Streams the index packaged on the classpath at build time.
+     *
+     * @return the index, or empty when vawk runs from classes without one (tests, IDE runs)
+     */
+    protected Optional<RagIndex> readBundledIndex() throws IOException {
+        try (InputStream in = RagRepository.class.getResourceAsStream(BUNDLED_INDEX)) {
+            return in == null ? Optional.empty() : RagIndex.read(in);
+        }
+    }
+
+    /** Nearest passages by vector similarity, most similar first. */
+    private List<RagIndex.Hit> vectorHits(String query, int limit) throws IOException {
+        RagIndex lexical;
+        VectorIndex graph;
+        synchronized (this) {
+            lexical = index();
+            graph = vectors(lexical);
+        }
+        List<RagIndex.Hit> hits = new ArrayList<>();
+        for (VectorIndex.Neighbour neighbour : graph.search(query, limit)) {
+            hits.add(lexical.hit(neighbour.passage(), neighbour.similarity()));
+        }
+        return hits;
+    }
+
+    /**
+     * Returns the vector graph of the given index's passages, mapping it from disk on first use
+     * and rebuilding it when it was built from other content.
+     */
+    private synchronized VectorIndex vectors(RagIndex lexical) throws IOException {
+        String stamp = lexical.getContentStamp();
+        if (vectors != null && vectors.getStamp().equals(stamp)) {
+            return vectors;
+        }
+        vectors = VectorIndex.read(vectorFile)
+                .filter(read -> read.getStamp().equals(stamp) && read.size() == lexical.getPassageCount())
+                .orElse(null);
+        if (vectors == null) {
+            VectorIndex.write(lexical, stamp, vectorFile);
+            vectors = VectorIndex.read(vectorFile).orElseThrow(() -> new IOException("Vector index unreadable after writing: " + vectorFile));
+        }
+        return vectors;
+    }
+
+    /** Indexes the documents under the docs root as they are now. */
+    RagIndex build() throws IOException {
+        Map<String, RagIndex.SourceFile> sources = new HashMap<>();
+        for (Path indexPath : List.of(snippetsIndex, bookIndex)) {
+            sources.put(indexPath.toString(), fingerprint(indexPath, null));
+        }
         List<RagEntry> entries = listAllEntries();
-        entries.sort(Comparator.comparingInt((RagEntry e) -> -score(e, tokens)));
-        if (entries.size() > limit) {
-            entries = entries.subList(0, limit);
+        List<String> bodies = new ArrayList<>();
+        for (RagEntry entry : entries) {
+            String body = "";
+            try {
+                Path document = resolve(entry);
+                sources.put(document.toString(), fingerprint(document, null));
+                if (Files.isRegularFile(document)) {
+                    body = Files.readString(document, StandardCharsets.UTF_8);
+                }
+            } catch (IOException e) {
+                // Unreadable documents are still found by id and description.
+            }
+            bodies.add(body);
+        }
+        return RagIndex.build(entries, bodies, sources);
+    }
+
+    private void persist(RagIndex built) {
+        try {
+            built.write(indexFile);
+        } catch (IOException e) {
+            // The in-memory index still serves this process; the next one rebuilds.
         }
-        return entries;
+    }
+
+    /**
+     * Fingerprints a file, reusing the known hash when its size and modification time are unchanged.
+     */
+    private static RagIndex.SourceFile fingerprint(Path file, RagIndex.SourceFile known) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return RagIndex.SourceFile.MISSING;
+        }
+        long size = Files.size(file);
+        long modified = Files.getLastModifiedTime(file).toMillis();
+        if (known != null && known.size() == size && known.modifiedMillis() == modified) {
+            return known;
+        }
+        return new RagIndex.SourceFile(size, modified, Hashing.sha256(file));
     }
 
     /**
@@ -88,7 +438,11 @@ public class RagRepository {
     // Pattern: Grounding + Verification
     // - Loads only allowed doc paths to prevent context escapes or prompt injection via filesystem.
     public String readContent(RagEntry entry) throws IOException {
-        Path base = Paths.get("docs");
+        return Files.readString(resolve(entry), StandardCharsets.UTF_8);
+    }
+
+    private Path resolve(RagEntry entry) throws IOException {
+        Path base = docsRoot;
         if (entry.path.startsWith("snippets/")) {
             base = base.resolve("examples");
         } else if (entry.path.startsWith("learn.awk/")) {
@@ -98,7 +452,14 @@ public class RagRepository {
         if (!target.startsWith(base.normalize())) {
             throw new IOException("RAG path escapes docs: " + entry.path);
         }
-        return Files.readString(target, StandardCharsets.UTF_8);
+        if (entry.path.startsWith("learn.awk/") && !Files.exists(target)) {
+            // The book's sections are kept split out under learn.awk-sections.
+            Path section = bookSections.resolve(entry.path).normalize();
+            if (section.startsWith(bookSections.normalize()) && Files.exists(section)) {
+                return section;
+            }
+        }
+        return target;
     }
 
     private List<RagEntry> parseIndex(Path indexPath, String group) throws IOException {
@@ -109,29 +470,29 @@ public class RagRepository {
         List<String> lines = Files.readAllLines(indexPath, StandardCharsets.UTF_8);
         for (String line : lines) {
             Matcher m = INDEX_ENTRY.matcher(line);
+            String id;
+            String desc;
+            String relPath;
             if (m.find()) {
-                String id = m.group(1).trim();
-                String desc = m.group(2).trim();
-                String relPath = m.group(3).trim();
-                if (relPath.contains("..") || relPath.startsWith("/")) {
+                id = m.group(1).trim();
+                desc = m.group(2).trim();
+                relPath = m.group(3).trim();
+            } else {
+                // Book sections are listed by title only: - `Title` \u2013 path.md
+                Matcher titled = BOOK_ENTRY.matcher(line);
+                if (!titled.find()) {
                     continue;
                 }
-                entries.add(new RagEntry(id, desc, relPath, group));
+                id = titled.group(1).trim();
+                desc = id;
+                relPath = titled.group(2).trim();
             }
-        }
-        return entries;
-    }
-
-    private int score(RagEntry entry, String[] tokens) {
-        int score = 0;
-        String hay = (entry.id + " " + entry.description).toLowerCase(Locale.ROOT);
-        for (String t : tokens) {
-            if (t.isEmpty()) continue;
-            if (hay.contains(t)) {
-                score += 1;
+            if (relPath.contains("..") || relPath.startsWith("/")) {
+                continue;
             }
+            entries.add(new RagEntry(id, desc, relPath, group));
         }
-        return score;
+        return entries;
     }
 
     public static class RagEntry {
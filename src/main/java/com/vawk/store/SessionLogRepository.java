@@ -14,7 +14,8 @@ import java.time.format.DateTimeFormatter;
 import java.util.UUID;
 
 /**
- * Persists SessionLog entries under .vawk/logs with timestamped filenames for auditability.
+ * Persists SessionLog entries under .vawk/logs with timestamped filenames for auditability, and
+ * reads them back for tools that combine receipts.
  */
 @Repository
 public class SessionLogRepository {
@@ -47,4 +48,14 @@ public class SessionLogRepository {
         Files.write(target, bytes);
         return target;
     }
+
+    /**
+     * Reads a session log written by {@link #write(SessionLog)}.
+     *
+     * @param path log file
+     * @return the parsed log
+     */
+    public SessionLog read(Path path) throws IOException {
+        return objectMapper.readValue(Files.readAllBytes(path), SessionLog.class);
+    }
 }
@@ -0,0 +1,150 @@
+package com.vawk.store;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vawk.domain.AwkProgram;
+import com.vawk.domain.AwkTestCase;
+import com.vawk.domain.TestState;
+import com.vawk.util.Hashing;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * Persists the test-state manifest at .vawk/test-state.json and fingerprints test cases for it. A
+ * missing or unreadable manifest reads as empty, which simply makes every case run. A fixture file
+ * is re-hashed only when its size or modification time differs from the last run's.
+ */
+@Repository
+public class TestStateRepository {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Path statePath;
+
+    public TestStateRepository() {
+        this(Paths.get(".vawk", "test-state.json"));
+    }
+
+    public TestStateRepository(Path statePath) {
+        this.statePath = statePath;
+    }
+
+    /**
+     * @return the manifest from the last test run, or an empty one
+     */
+    public TestState load() throws IOException {
+        if (!Files.exists(statePath)) {
+            return new TestState();
+        }
+        try {
+            return objectMapper.readValue(Files.readAllBytes(statePath), TestState.class);
+        } catch (JsonProcessingException e) {
+            return new TestState();
+        }
+    }
+
+    /**
+     * Writes the manifest atomically, so an interrupted run leaves the previous one intact.
+     */
+    public void save(TestState state) throws IOException {
+        Path directory = statePath.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path staging = Files.createTempFile(directory, "test-state", ".tmp");
+        Files.write(staging, objectMapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(state));
+        Files.move(staging, statePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Records the state of the given cases, leaving every other case as it is on disk. The
+     * manifest is re-read and written under a file lock, so shards of one suite running as
+     * separate processes do not overwrite each other's entries. Nothing is written when the
+     * entries are already current.
+     *
+     * @param cases state per case name
+     */
+    public void update(Map<String, TestState.CaseState> cases) throws IOException {
+        if (cases.isEmpty()) {
+            return;
+        }
+        Path directory = statePath.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path lockPath = directory.resolve(statePath.getFileName() + ".lock");
+        try (FileChannel channel = FileChannel.open(lockPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            // Held until the channel is closed.
+            channel.lock();
+            TestState state = load();
+            TestState next = new TestState();
+            next.setCases(state.getCases());
+            next.getCases().putAll(cases);
+            if (!next.equals(state)) {
+                save(next);
+            }
+        }
+    }
+
+    /**
+     * Hashes what a case's verdict depends on. Its verdict is not recorded yet.
+     *
+     * @param testCase       the case
+     * @param defaultProgram program run when the case has no override
+     * @return the ingredients, or empty when a fixture file is missing and the case must just run
+     */
+    public Optional<TestState.CaseState> fingerprint(AwkTestCase testCase, AwkProgram defaultProgram) throws IOException {
+        return fingerprint(testCase, defaultProgram, null);
+    }
+
+    /**
+     * Hashes what a case's verdict depends on, reusing the hash of a fixture file whose size and
+     * modification time are those recorded in known.
+     *
+     * @param known the case's state from the last run, or null
+     */
+    // Pattern: Verification
+    // - Verdicts are reused only when every ingredient hashes the same as in a passing run.
+    public Optional<TestState.CaseState> fingerprint(AwkTestCase testCase, AwkProgram defaultProgram, TestState.CaseState known)
+            throws IOException {
+        if (testCase.getInputPath() == null || testCase.getExpectedPath() == null
+                || !Files.isRegularFile(testCase.getInputPath()) || !Files.isRegularFile(testCase.getExpectedPath())) {
+            return Optional.empty();
+        }
+        String programHash;
+        if (testCase.getProgramOverride() != null) {
+            programHash = Hashing.sha256(testCase.getProgramOverride());
+        } else if (defaultProgram.getHash() != null) {
+            programHash = defaultProgram.getHash();
+        } else if (defaultProgram.getContent() != null) {
+            programHash = Hashing.sha256(defaultProgram.getContent());
+        } else {
+            return Optional.empty();
+        }
+        StringBuilder variables = new StringBuilder();
+        for (Map.Entry<String, String> variable : new TreeMap<>(testCase.getVariables()).entrySet()) {
+            variables.append(variable.getKey()).append('=').append(variable.getValue()).append('\n');
+        }
+        long inputSize = Files.size(testCase.getInputPath());
+        long inputModified = Files.getLastModifiedTime(testCase.getInputPath()).toMillis();
+        long expectedSize = Files.size(testCase.getExpectedPath());
+        long expectedModified = Files.getLastModifiedTime(testCase.getExpectedPath()).toMillis();
+        String inputHash = known != null && known.getInputHash() != null && known.getInputSize() == inputSize
+                && known.getInputModifiedMillis() == inputModified
+                ? known.getInputHash() : Hashing.sha256(testCase.getInputPath());
+        String expectedHash = known != null && known.getExpectedHash() != null && known.getExpectedSize() == expectedSize
+                && known.getExpectedModifiedMillis() == expectedModified
+                ? known.getExpectedHash() : Hashing.sha256(testCase.getExpectedPath());
+        TestState.CaseState state = new TestState.CaseState(programHash, inputHash, expectedHash,
+                Hashing.sha256(variables.toString()), false);
+        state.setInputSize(inputSize);
+        state.setInputModifiedMillis(inputModified);
+        state.setExpectedSize(expectedSize);
+        state.setExpectedModifiedMillis(expectedModified);
+        return Optional.of(state);
+    }
+}
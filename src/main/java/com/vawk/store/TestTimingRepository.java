@@ -0,0 +1,79 @@
+package com.vawk.store;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vawk.domain.SessionLog;
+import com.vawk.domain.TestTimings;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Persists the rolling test timing history at .vawk/test-timings.json. A missing or unreadable
+ * file reads as empty, which only costs the scheduler its ordering hints.
+ */
+@Repository
+public class TestTimingRepository {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Path timingsPath;
+
+    public TestTimingRepository() {
+        this(Paths.get(".vawk", "test-timings.json"));
+    }
+
+    public TestTimingRepository(Path timingsPath) {
+        this.timingsPath = timingsPath;
+    }
+
+    /**
+     * @return the recorded history, or an empty one
+     */
+    public TestTimings load() throws IOException {
+        if (!Files.exists(timingsPath)) {
+            return new TestTimings();
+        }
+        try {
+            return objectMapper.readValue(Files.readAllBytes(timingsPath), TestTimings.class);
+        } catch (JsonProcessingException e) {
+            return new TestTimings();
+        }
+    }
+
+    /**
+     * Adds the executed runs to the history. Runs without a duration (cached verdicts) are
+     * skipped. The file is re-read and written under a lock, so concurrent shards add to one
+     * history rather than replacing each other's.
+     *
+     * @param runs receipts of a test run
+     */
+    // Pattern: Learning
+    // - Every run teaches the scheduler how long each case takes and which ones are red.
+    public void record(List<SessionLog.TestRun> runs) throws IOException {
+        if (runs.stream().allMatch(run -> run.getDurationMillis() == null)) {
+            return;
+        }
+        Path directory = timingsPath.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path lockPath = directory.resolve(timingsPath.getFileName() + ".lock");
+        try (FileChannel channel = FileChannel.open(lockPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            // Held until the channel is closed.
+            channel.lock();
+            TestTimings timings = load();
+            for (SessionLog.TestRun run : runs) {
+                if (run.getDurationMillis() != null) {
+                    timings.record(run.getName(), run.getDurationMillis(), run.isPassed());
+                }
+            }
+            Path staging = Files.createTempFile(directory, "test-timings", ".tmp");
+            Files.write(staging, objectMapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(timings));
+            Files.move(staging, timingsPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+}
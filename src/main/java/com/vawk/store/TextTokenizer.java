@@ -0,0 +1,79 @@
+package com.vawk.store;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Turns documentation text and queries into index terms: lower-cased runs of letters and digits,
+ * minus common English stop words, reduced by a light suffix-stripping stemmer so that "counts",
+ * "counting" and "counted" meet at "count". Indexing and querying must use the same tokenizer.
+ */
+public final class TextTokenizer {
+    private static final Set<String> STOP_WORDS = Set.of(
+            "a", "an", "and", "are", "as", "at", "be", "by", "for", "from", "how", "i", "in", "is", "it",
+            "of", "on", "or", "that", "the", "this", "to", "what", "with");
+
+    private TextTokenizer() {
+    }
+
+    /**
+     * @param text any text, possibly null
+     * @return the text's terms in order, repeats included
+     */
+    public static List<String> terms(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int index = 0; index <= lower.length(); index++) {
+            boolean wordCharacter = index < lower.length() && Character.isLetterOrDigit(lower.charAt(index));
+            if (wordCharacter && start < 0) {
+                start = index;
+            } else if (!wordCharacter && start >= 0) {
+                String word = lower.substring(start, index);
+                if (!STOP_WORDS.contains(word)) {
+                    terms.add(stem(word));
+                }
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Strips plural and -ing/-ed endings, undoubling a final consonant left behind ("running" to
+     * "run"). Short words and numbers are kept as they are.
+     */
+    static String stem(String word) {
+        if (word.length() <= 3 || !Character.isLetter(word.charAt(word.length() - 1))) {
+            return word;
+        }
+        String stem = word;
+        if (stem.endsWith("ies") && stem.length() > 4) {
+            stem = stem.substring(0, stem.length() - 3) + "y";
+        } else if (stem.endsWith("sses")) {
+            stem = stem.substring(0, stem.length() - 2);
+        } else if (stem.endsWith("s") && !stem.endsWith("ss") && !stem.endsWith("us") && !stem.endsWith("is")) {
+            stem = stem.substring(0, stem.length() - 1);
+        }
+        if (stem.endsWith("ing") && stem.length() > 5) {
+            stem = undouble(stem.substring(0, stem.length() - 3));
+        } else if (stem.endsWith("ed") && stem.length() > 4) {
+            stem = undouble(stem.substring(0, stem.length() - 2));
+        }
+        return stem;
+    }
+
+    private static String undouble(String stem) {
+        int length = stem.length();
+        if (length > 2 && stem.charAt(length - 1) == stem.charAt(length - 2) && "lsz".indexOf(stem.charAt(length - 1)) < 0
+                && "aeiou".indexOf(stem.charAt(length - 1)) < 0) {
+            return stem.substring(0, length - 1);
+        }
+        return stem;
+    }
+}
@@ -0,0 +1,303 @@
+package com.vawk.store;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory trigram index over AWK code, for grep-like lookups of existing code rather than
+ * descriptions. Every three-character sequence of each code block maps to the sorted list of blocks
+ * that contain it. A search first intersects the lists of the trigrams the query must contain,
+ * then runs the actual match only on the blocks left, so the cost follows the number of likely
+ * blocks instead of the size of the library. A regular expression is pruned by the literal runs it
+ * cannot match without; one it cannot read that way (alternation, inline flags) checks every block.
+ */
+final class TrigramIndex {
+    private static final int GRAM = 3;
+
+    private final List<CodeBlock> blocks;
+    private final Map<Long, int[]> postings;
+
+    /** A piece of AWK code and where it starts in its file. */
+    record CodeBlock(String path, int firstLine, String code) {
+    }
+
+    /** One matching line. */
+    record Match(String path, int line, String text) {
+    }
+
+    private TrigramIndex(List<CodeBlock> blocks, Map<Long, int[]> postings) {
+        this.blocks = blocks;
+        this.postings = postings;
+    }
+
+    /**
+     * Indexes the given blocks; search results keep their order.
+     */
+    static TrigramIndex build(List<CodeBlock> blocks) {
+        Map<Long, List<Integer>> lists = new HashMap<>();
+        for (int block = 0; block < blocks.size(); block++) {
+            String code = blocks.get(block).code();
+            for (int start = 0; start + GRAM <= code.length(); start++) {
+                List<Integer> list = lists.computeIfAbsent(trigram(code, start), key -> new ArrayList<>());
+                // Blocks are added in order, so a repeat within one block is always the last element.
+                if (list.isEmpty() || list.get(list.size() - 1) != block) {
+                    list.add(block);
+                }
+            }
+        }
+        Map<Long, int[]> postings = new HashMap<>(lists.size() * 2);
+        for (Map.Entry<Long, List<Integer>> list : lists.entrySet()) {
+            postings.put(list.getKey(), list.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+        return new TrigramIndex(List.copyOf(blocks), postings);
+    }
+
+    /**
+     * Returns the code blocks of a Markdown document: the bodies of its ```awk fences.
+     */
+    static List<CodeBlock> awkFences(String path, String markdown) {
+        List<CodeBlock> found = new ArrayList<>();
+        String[] lines = markdown.split("\n", -1);
+        int open = -1;
+        StringBuilder code = new StringBuilder();
+        for (int line = 0; line < lines.length; line++) {
+            String trimmed = lines[line].strip();
+            if (open < 0) {
+                if (trimmed.startsWith("```awk")) {
+                    open = line + 1;
+                    code.setLength(0);
+                }
+            } else if (trimmed.startsWith("```")) {
+                found.add(new CodeBlock(path, open + 1, code.toString()));
+                open = -1;
+            } else {
+                code.append(lines[line].replace("\r", "")).append('\n');
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @param query   text to find, or a regular expression when regex is set
+     * @param regex   whether query is a java.util.regex pattern (^ and $ match at line ends)
+     * @param limit   most lines to return
+     * @return matching lines in block order, one per line
+     * @throws java.util.regex.PatternSyntaxException when regex is set and query is not a valid pattern
+     */
+    List<Match> search(String query, boolean regex, int limit) {
+        Pattern pattern = Pattern.compile(regex ? query : Pattern.quote(query), Pattern.MULTILINE);
+        List<Match> matches = new ArrayList<>();
+        for (int block : candidates(query, regex)) {
+            if (matches.size() >= limit) {
+                break;
+            }
+            CodeBlock candidate = blocks.get(block);
+            String code = candidate.code();
+            Matcher matcher = pattern.matcher(code);
+            int lastLine = -1;
+            int lineStart = 0;
+            int lineNumber = 0;
+            while (matches.size() < limit && matcher.find()) {
+                while (true) {
+                    int next = code.indexOf('\n', lineStart);
+                    if (next < 0 || next >= matcher.start()) {
+                        break;
+                    }
+                    lineStart = next + 1;
+                    lineNumber++;
+                }
+                if (lineNumber != lastLine) {
+                    int lineEnd = code.indexOf('\n', lineStart);
+                    String text = code.substring(lineStart, lineEnd < 0 ? code.length() : lineEnd);
+                    matches.add(new Match(candidate.path(), candidate.firstLine() + lineNumber, text));
+                    lastLine = lineNumber;
+                }
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * @return the blocks that may match, in order: those holding every trigram the query requires
+     */
+    int[] candidates(String query, boolean regex) {
+        List<String> required = regex ? requiredLiterals(query) : List.of(query);
+        int[] candidates = null; // every block, until a trigram narrows it
+        for (String literal : required) {
+            for (int start = 0; start + GRAM <= literal.length(); start++) {
+                int[] list = postings.get(trigram(literal, start));
+                if (list == null) {
+                    return new int[0];
+                }
+                candidates = candidates == null ? list : intersect(candidates, list);
+                if (candidates.length == 0) {
+                    return candidates;
+                }
+            }
+        }
+        if (candidates == null) {
+            candidates = new int[blocks.size()];
+            Arrays.setAll(candidates, block -> block);
+        }
+        return candidates;
+    }
+
+    int size() {
+        return blocks.size();
+    }
+
+    /**
+     * Reads the literal runs every match of a regular expression must contain. Conservative: a
+     * part it does not understand only ends the current run, and a pattern whose alternatives or
+     * flags could avoid any run yields none.
+     */
+    static List<String> requiredLiterals(String regex) {
+        if (regex.contains("(?") || regex.contains("\\Q")) {
+            return List.of();
+        }
+        List<String> runs = new ArrayList<>();
+        StringBuilder run = new StringBuilder();
+        int depth = 0;
+        for (int at = 0; at < regex.length(); at++) {
+            char c = regex.charAt(at);
+            if (c == '\\' && at + 1 < regex.length()) {
+                char escaped = regex.charAt(++at);
+                at = skipEscapeOperand(regex, at);
+                if (depth > 0) {
+                    continue;
+                }
+                if (Character.isLetterOrDigit(escaped)) {
+                    endRun(runs, run);
+                } else {
+                    run.append(escaped);
+                }
+            } else if (c == '[') {
+                // Skip the class; a ] right after [ or [^ is a literal member.
+                at++;
+                if (at < regex.length() && regex.charAt(at) == '^') {
+                    at++;
+                }
+                if (at < regex.length() && regex.charAt(at) == ']') {
+                    at++;
+                }
+                while (at < regex.length() && regex.charAt(at) != ']') {
+                    if (regex.charAt(at) == '\\') {
+                        at++;
+                    }
+                    at++;
+                }
+                if (depth == 0) {
+                    endRun(runs, run);
+                }
+            } else if (c == '(') {
+                depth++;
+                endRun(runs, run);
+            } else if (c == ')') {
+                depth = Math.max(0, depth - 1);
+            } else if (c == '|') {
+                if (depth == 0) {
+                    return List.of();
+                }
+            } else if (depth > 0) {
+                continue;
+            } else if (c == '*' || c == '?' || c == '{') {
+                // The atom before may be absent.
+                if (run.length() > 0) {
+                    run.setLength(run.length() - 1);
+                }
+                endRun(runs, run);
+                if (c == '{') {
+                    while (at < regex.length() && regex.charAt(at) != '}') {
+                        at++;
+                    }
+                }
+            } else if (c == '+' || c == '.' || c == '^' || c == '$') {
+                endRun(runs, run);
+            } else {
+                run.append(c);
+            }
+        }
+        endRun(runs, run);
+        return runs;
+    }
+
+    /**
+     * Steps over what an escape letter consumes after itself: the hex digits of the x and u escapes,
+     * the octal digits of the 0 escape, the property of p and P, the name of N and k, the character
+     * of c. Those are not literal text, so they must not extend a run.
+     *
+     * @param at index of the escape letter
+     * @return index of the last character the escape consumes
+     */
+    private static int skipEscapeOperand(String regex, int at) {
+        char escaped = regex.charAt(at);
+        if ((escaped == 'x' || escaped == 'p' || escaped == 'P' || escaped == 'N') && at + 1 < regex.length()
+                && regex.charAt(at + 1) == '{') {
+            int close = regex.indexOf('}', at);
+            return close < 0 ? regex.length() - 1 : close;
+        }
+        switch (escaped) {
+            case 'x':
+                return skipWhile(regex, at, 2, "0123456789abcdefABCDEF");
+            case 'u':
+                return skipWhile(regex, at, 4, "0123456789abcdefABCDEF");
+            case '0':
+                return skipWhile(regex, at, 3, "01234567");
+            case 'p':
+            case 'P':
+            case 'c':
+                return Math.min(at + 1, regex.length() - 1);
+            case 'k':
+                if (at + 1 < regex.length() && regex.charAt(at + 1) == '<') {
+                    int close = regex.indexOf('>', at);
+                    return close < 0 ? regex.length() - 1 : close;
+                }
+                return at;
+            default:
+                return at;
+        }
+    }
+
+    private static int skipWhile(String regex, int at, int most, String allowed) {
+        int last = at;
+        while (last - at < most && last + 1 < regex.length() && allowed.indexOf(regex.charAt(last + 1)) >= 0) {
+            last++;
+        }
+        return last;
+    }
+
+    private static void endRun(List<String> runs, StringBuilder run) {
+        if (run.length() >= GRAM) {
+            runs.add(run.toString());
+        }
+        run.setLength(0);
+    }
+
+    private static int[] intersect(int[] left, int[] right) {
+        int[] both = new int[Math.min(left.length, right.length)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < left.length && j < right.length) {
+            if (left[i] < right[j]) {
+                i++;
+            } else if (left[i] > right[j]) {
+                j++;
+            } else {
+                both[count++] = left[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(both, count);
+    }
+
+    private static long trigram(String text, int start) {
+        return ((long) text.charAt(start) << 32) | ((long) text.charAt(start + 1) << 16) | text.charAt(start + 2);
+    }
+}
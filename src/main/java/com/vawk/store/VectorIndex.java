@@ -0,0 +1,517 @@
+package com.vawk.store;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Approximate nearest-neighbour index over the passage vectors of a {@link RagIndex}, a
+ * Hierarchical Navigable Small World graph. Every passage is a node linked to its closest
+ * neighbours on layer 0 and, with geometrically falling probability, on sparser layers above; a
+ * query descends greedily from the top layer and then explores a bounded candidate list on layer
+ * 0, so it visits a few hundred nodes whatever the corpus size.
+ *
+ * <p>The graph is built in memory once and written to a file that is then memory-mapped read-only:
+ * vectors and links stay off the heap, pages are loaded on demand and shared with other vawk
+ * processes through the page cache. The file carries the stamp of the lexical index it was built
+ * from, so a stale file is recognized and rebuilt. Vectors are stored sparsely, as the buckets a
+ * passage uses and their weights, so the bucket space can be large enough to keep terms apart.
+ * Layout (big-endian): a header; the buckets and weights of the bucket IDF table; where each
+ * vector's components start; all vectors' buckets, then their weights; one offset per node; then
+ * per node its top layer and, per layer, a neighbour count followed by a fixed number of neighbour
+ * slots.
+ */
+final class VectorIndex {
+    private static final int MAGIC = 0x56415756;
+    private static final int FORMAT_VERSION = 2;
+    private static final int STAMP_BYTES = 64;
+    /** Magic, version, dimensions, size, top layer, entry point, IDF table size, component count, unseen weight, stamp. */
+    private static final int HEADER_BYTES = 8 * Integer.BYTES + Float.BYTES + STAMP_BYTES;
+    /** Links per node on the upper layers; layer 0 keeps twice as many. */
+    private static final int LINKS = 16;
+    private static final int LAYER_ZERO_LINKS = 2 * LINKS;
+    private static final int BUILD_CANDIDATES = 100;
+    private static final int SEARCH_CANDIDATES = 64;
+    private static final int MAX_LAYER = 16;
+    private static final long SEED = 42;
+
+    private final String stamp;
+    private final int dimensions;
+    private final int size;
+    private final int topLayer;
+    private final int entryPoint;
+    private final HashingVectorizer.Weights idf;
+    private final IntBuffer vectorStarts;
+    private final IntBuffer componentBuckets;
+    private final FloatBuffer componentWeights;
+    private final IntBuffer offsets;
+    private final IntBuffer links;
+
+    /** A passage and its cosine similarity to the query. */
+    record Neighbour(int passage, float similarity) {
+    }
+
+    /** Read access to a graph, whether being built in memory or mapped from a file. */
+    private interface Graph {
+        float similarity(HashingVectorizer.SparseVector query, int node);
+
+        int linkCount(int node, int layer);
+
+        int link(int node, int layer, int slot);
+    }
+
+    private VectorIndex(String stamp, int dimensions, int size, int topLayer, int entryPoint, HashingVectorizer.Weights idf,
+                        IntBuffer vectorStarts, IntBuffer componentBuckets, FloatBuffer componentWeights, IntBuffer offsets, IntBuffer links) {
+        this.stamp = stamp;
+        this.dimensions = dimensions;
+        this.size = size;
+        this.topLayer = topLayer;
+        this.entryPoint = entryPoint;
+        this.idf = idf;
+        this.vectorStarts = vectorStarts;
+        this.componentBuckets = componentBuckets;
+        this.componentWeights = componentWeights;
+        this.offsets = offsets;
+        this.links = links;
+    }
+
+    /**
+     * Vectorizes the passages of a lexical index, links them and writes the graph to a file,
+     * replacing it atomically.
+     *
+     * @param stamp identifies the indexed content; at most 64 ASCII characters
+     */
+    static void write(RagIndex index, String stamp, Path file) throws IOException {
+        List<List<String>> documents = new ArrayList<>();
+        for (int passage = 0; passage < index.getPassageCount(); passage++) {
+            documents.add(index.passageTerms(passage));
+        }
+        HashingVectorizer.Weights idf = HashingVectorizer.inverseDocumentFrequencies(documents);
+        HashingVectorizer.SparseVector[] vectors = new HashingVectorizer.SparseVector[documents.size()];
+        for (int passage = 0; passage < vectors.length; passage++) {
+            vectors[passage] = HashingVectorizer.vector(documents.get(passage), idf);
+        }
+        write(HashingVectorizer.DIMENSIONS, idf, vectors, stamp, file);
+    }
+
+    /**
+     * Links unit-length vectors into a graph and writes it; node numbers are vector positions.
+     *
+     * @param dimensions size of the bucket space the vectors and weights are drawn from
+     */
+    static void write(int dimensions, HashingVectorizer.Weights idf, HashingVectorizer.SparseVector[] vectors, String stamp, Path file)
+            throws IOException {
+        if (stamp.length() > STAMP_BYTES || !StandardCharsets.US_ASCII.newEncoder().canEncode(stamp)) {
+            throw new IllegalArgumentException("stamp must be at most " + STAMP_BYTES + " ASCII characters");
+        }
+        GraphBuilder graph = new GraphBuilder(vectors);
+        Random random = new Random(SEED);
+        for (int node = 0; node < vectors.length; node++) {
+            graph.insert(node, Math.min(MAX_LAYER, (int) (-Math.log(1 - random.nextDouble()) / Math.log(LINKS))));
+        }
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path staging = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(staging)))) {
+            int components = 0;
+            for (HashingVectorizer.SparseVector vector : vectors) {
+                components += vector.size();
+            }
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(dimensions);
+            out.writeInt(vectors.length);
+            out.writeInt(graph.topLayer);
+            out.writeInt(graph.entryPoint);
+            out.writeInt(idf.seen().size());
+            out.writeInt(components);
+            out.writeFloat(idf.unseen());
+            byte[] stampBytes = new byte[STAMP_BYTES];
+            byte[] encoded = stamp.getBytes(StandardCharsets.US_ASCII);
+            System.arraycopy(encoded, 0, stampBytes, 0, encoded.length);
+            out.write(stampBytes);
+            for (int bucket : idf.seen().buckets()) {
+                out.writeInt(bucket);
+            }
+            for (float weight : idf.seen().weights()) {
+                out.writeFloat(weight);
+            }
+            int start = 0;
+            for (HashingVectorizer.SparseVector vector : vectors) {
+                out.writeInt(start);
+                start += vector.size();
+            }
+            out.writeInt(start);
+            for (HashingVectorizer.SparseVector vector : vectors) {
+                for (int bucket : vector.buckets()) {
+                    out.writeInt(bucket);
+                }
+            }
+            for (HashingVectorizer.SparseVector vector : vectors) {
+                for (float weight : vector.weights()) {
+                    out.writeFloat(weight);
+                }
+            }
+            int offset = 0;
+            for (int node = 0; node < vectors.length; node++) {
+                out.writeInt(offset);
+                offset += 1 + LAYER_ZERO_LINKS + 1 + graph.layers[node] * (LINKS + 1);
+            }
+            for (int node = 0; node < vectors.length; node++) {
+                out.writeInt(graph.layers[node]);
+                for (int layer = 0; layer <= graph.layers[node]; layer++) {
+                    int[] nodeLinks = graph.links[node][layer];
+                    out.writeInt(graph.linkCounts[node][layer]);
+                    for (int slot = 0; slot < nodeLinks.length; slot++) {
+                        out.writeInt(slot < graph.linkCounts[node][layer] ? nodeLinks[slot] : -1);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(staging);
+            throw e;
+        }
+        Files.move(staging, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Maps a file written by {@link #write}.
+     *
+     * @return the index, or empty when the file is missing, from another format version, or damaged
+     */
+    static Optional<VectorIndex> read(Path file) throws IOException {
+        ByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES || channel.size() > Integer.MAX_VALUE) {
+                return Optional.empty();
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+        if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != FORMAT_VERSION) {
+            return Optional.empty();
+        }
+        int dimensions = mapped.getInt(8);
+        int size = mapped.getInt(12);
+        int topLayer = mapped.getInt(16);
+        int entryPoint = mapped.getInt(20);
+        int idfSize = mapped.getInt(24);
+        int components = mapped.getInt(28);
+        float unseen = mapped.getFloat(32);
+        long idfWeightsStart = HEADER_BYTES + (long) idfSize * Integer.BYTES;
+        long startsStart = idfWeightsStart + (long) idfSize * Float.BYTES;
+        long bucketsStart = startsStart + (size + 1L) * Integer.BYTES;
+        long weightsStart = bucketsStart + (long) components * Integer.BYTES;
+        long offsetsStart = weightsStart + (long) components * Float.BYTES;
+        long linksStart = offsetsStart + (long) size * Integer.BYTES;
+        if (dimensions <= 0 || size < 0 || idfSize < 0 || components < 0 || topLayer < 0 || topLayer > MAX_LAYER
+                || linksStart > mapped.capacity() || (size > 0 && (entryPoint < 0 || entryPoint >= size))) {
+            return Optional.empty();
+        }
+        byte[] stampBytes = new byte[STAMP_BYTES];
+        mapped.get(8 * Integer.BYTES + Float.BYTES, stampBytes);
+        int stampLength = 0;
+        while (stampLength < STAMP_BYTES && stampBytes[stampLength] != 0) {
+            stampLength++;
+        }
+        int[] idfBuckets = new int[idfSize];
+        float[] idfWeights = new float[idfSize];
+        mapped.slice(HEADER_BYTES, idfSize * Integer.BYTES).asIntBuffer().get(idfBuckets);
+        mapped.slice((int) idfWeightsStart, idfSize * Float.BYTES).asFloatBuffer().get(idfWeights);
+        HashingVectorizer.Weights idf = new HashingVectorizer.Weights(new HashingVectorizer.SparseVector(idfBuckets, idfWeights), unseen);
+        IntBuffer vectorStarts = mapped.slice((int) startsStart, (int) (bucketsStart - startsStart)).asIntBuffer();
+        IntBuffer componentBuckets = mapped.slice((int) bucketsStart, (int) (weightsStart - bucketsStart)).asIntBuffer();
+        FloatBuffer componentWeights = mapped.slice((int) weightsStart, (int) (offsetsStart - weightsStart)).asFloatBuffer();
+        IntBuffer offsets = mapped.slice((int) offsetsStart, (int) (linksStart - offsetsStart)).asIntBuffer();
+        IntBuffer links = mapped.slice((int) linksStart, (int) (mapped.capacity() - linksStart)).asIntBuffer();
+        if (vectorStarts.get(size) != components || (size > 0 && offsets.get(size - 1) + 1 + LAYER_ZERO_LINKS + 1 > links.capacity())) {
+            return Optional.empty();
+        }
+        return Optional.of(new VectorIndex(new String(stampBytes, 0, stampLength, StandardCharsets.US_ASCII), dimensions, size,
+                topLayer, entryPoint, idf, vectorStarts, componentBuckets, componentWeights, offsets, links));
+    }
+
+    /**
+     * @param query free text
+     * @param limit most neighbours returned
+     * @return the passages closest to the query, most similar first; passages with no positive
+     * similarity are left out
+     */
+    List<Neighbour> search(String query, int limit) {
+        return nearest(HashingVectorizer.vector(TextTokenizer.terms(query), idf), limit);
+    }
+
+    /** Approximate nearest neighbours of a unit-length vector, most similar first. */
+    List<Neighbour> nearest(HashingVectorizer.SparseVector query, int limit) {
+        List<Neighbour> found = new ArrayList<>();
+        if (limit <= 0 || size == 0 || query.size() == 0 || query.buckets()[query.size() - 1] >= dimensions) {
+            return found;
+        }
+        Graph graph = new MappedGraph();
+        int entry = entryPoint;
+        for (int layer = topLayer; layer > 0; layer--) {
+            entry = closest(graph, query, entry, layer);
+        }
+        List<Neighbour> candidates = searchLayer(graph, query, entry, Math.max(SEARCH_CANDIDATES, limit), 0, new BitSet(size));
+        for (Neighbour candidate : candidates) {
+            if (candidate.similarity() <= 0 || found.size() == limit) {
+                break;
+            }
+            found.add(candidate);
+        }
+        return found;
+    }
+
+    String getStamp() {
+        return stamp;
+    }
+
+    /** @return number of indexed passages */
+    int size() {
+        return size;
+    }
+
+    private final class MappedGraph implements Graph {
+        /**
+         * Looks each query bucket up among the node's stored buckets by binary search; both are
+         * ascending, so every search starts where the previous one ended.
+         */
+        @Override
+        public float similarity(HashingVectorizer.SparseVector query, int node) {
+            int low = vectorStarts.get(node);
+            int high = vectorStarts.get(node + 1);
+            float sum = 0;
+            for (int component = 0; component < query.size() && low < high; component++) {
+                int bucket = query.buckets()[component];
+                int first = low;
+                int last = high - 1;
+                while (first <= last) {
+                    int middle = (first + last) >>> 1;
+                    int stored = componentBuckets.get(middle);
+                    if (stored < bucket) {
+                        first = middle + 1;
+                    } else if (stored > bucket) {
+                        last = middle - 1;
+                    } else {
+                        sum += query.weights()[component] * componentWeights.get(middle);
+                        first = middle + 1;
+                        break;
+                    }
+                }
+                low = first;
+            }
+            return sum;
+        }
+
+        @Override
+        public int linkCount(int node, int layer) {
+            return links.get(slotBase(node, layer));
+        }
+
+        @Override
+        public int link(int node, int layer, int slot) {
+            return links.get(slotBase(node, layer) + 1 + slot);
+        }
+
+        private int slotBase(int node, int layer) {
+            return offsets.get(node) + 1 + (layer == 0 ? 0 : LAYER_ZERO_LINKS + 1 + (layer - 1) * (LINKS + 1));
+        }
+    }
+
+    /** Mutable graph used while inserting nodes. */
+    private static final class GraphBuilder implements Graph {
+        private final HashingVectorizer.SparseVector[] vectors;
+        private final int[] layers;
+        private final int[][][] links;
+        private final int[][] linkCounts;
+        private int entryPoint = -1;
+        private int topLayer;
+
+        GraphBuilder(HashingVectorizer.SparseVector[] vectors) {
+            this.vectors = vectors;
+            this.layers = new int[vectors.length];
+            this.links = new int[vectors.length][][];
+            this.linkCounts = new int[vectors.length][];
+        }
+
+        @Override
+        public float similarity(HashingVectorizer.SparseVector query, int node) {
+            return query.dot(vectors[node]);
+        }
+
+        @Override
+        public int linkCount(int node, int layer) {
+            return linkCounts[node][layer];
+        }
+
+        @Override
+        public int link(int node, int layer, int slot) {
+            return links[node][layer][slot];
+        }
+
+        void insert(int node, int layer) {
+            layers[node] = layer;
+            links[node] = new int[layer + 1][];
+            linkCounts[node] = new int[layer + 1];
+            for (int level = 0; level <= layer; level++) {
+                links[node][level] = new int[level == 0 ? LAYER_ZERO_LINKS : LINKS];
+            }
+            if (entryPoint < 0) {
+                entryPoint = node;
+                topLayer = layer;
+                return;
+            }
+            HashingVectorizer.SparseVector query = vectors[node];
+            int entry = entryPoint;
+            for (int level = topLayer; level > layer; level--) {
+                entry = closest(this, query, entry, level);
+            }
+            for (int level = Math.min(layer, topLayer); level >= 0; level--) {
+                List<Neighbour> candidates = searchLayer(this, query, entry, BUILD_CANDIDATES, level, new BitSet(vectors.length));
+                int[] chosen = select(candidates, links[node][level].length);
+                System.arraycopy(chosen, 0, links[node][level], 0, chosen.length);
+                linkCounts[node][level] = chosen.length;
+                for (int neighbour : chosen) {
+                    connect(neighbour, node, level);
+                }
+                entry = candidates.get(0).passage();
+            }
+            if (layer > topLayer) {
+                entryPoint = node;
+                topLayer = layer;
+            }
+        }
+
+        /**
+         * Adds a back link. When the node's slots are full the new link replaces its least similar
+         * one, if it is more similar; re-running the selection here would cost a full comparison
+         * of all links for every insert.
+         */
+        private void connect(int node, int neighbour, int level) {
+            int[] nodeLinks = links[node][level];
+            if (linkCounts[node][level] < nodeLinks.length) {
+                nodeLinks[linkCounts[node][level]++] = neighbour;
+                return;
+            }
+            HashingVectorizer.SparseVector query = vectors[node];
+            int weakest = 0;
+            float weakestSimilarity = Float.MAX_VALUE;
+            for (int slot = 0; slot < nodeLinks.length; slot++) {
+                float similarity = similarity(query, nodeLinks[slot]);
+                if (similarity < weakestSimilarity) {
+                    weakestSimilarity = similarity;
+                    weakest = slot;
+                }
+            }
+            if (similarity(query, neighbour) > weakestSimilarity) {
+                nodeLinks[weakest] = neighbour;
+            }
+        }
+
+        /**
+         * Picks up to max links from candidates sorted most similar first, preferring candidates
+         * that are closer to the node than to any link already picked, so links point in varied
+         * directions; the remaining slots are filled with the closest skipped candidates.
+         */
+        private int[] select(List<Neighbour> candidates, int max) {
+            List<Integer> chosen = new ArrayList<>();
+            List<Integer> skipped = new ArrayList<>();
+            for (Neighbour candidate : candidates) {
+                if (chosen.size() == max) {
+                    break;
+                }
+                boolean diverse = true;
+                HashingVectorizer.SparseVector probe = vectors[candidate.passage()];
+                for (int picked : chosen) {
+                    if (similarity(probe, picked) > candidate.similarity()) {
+                        diverse = false;
+                        break;
+                    }
+                }
+                (diverse ? chosen : skipped).add(candidate.passage());
+            }
+            for (int index = 0; index < skipped.size() && chosen.size() < max; index++) {
+                chosen.add(skipped.get(index));
+            }
+            return chosen.stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    private static final Comparator<Neighbour> MOST_SIMILAR_FIRST = Comparator.comparingDouble(Neighbour::similarity).reversed()
+            .thenComparingInt(Neighbour::passage);
+
+    /** Greedy walk on one layer towards the node most similar to the query. */
+    private static int closest(Graph graph, HashingVectorizer.SparseVector query, int entry, int layer) {
+        int current = entry;
+        float best = graph.similarity(query, current);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int slot = 0, count = graph.linkCount(current, layer); slot < count; slot++) {
+                int neighbour = graph.link(current, layer, slot);
+                float similarity = graph.similarity(query, neighbour);
+                if (similarity > best) {
+                    best = similarity;
+                    current = neighbour;
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Best-first search of one layer keeping the width most similar nodes seen.
+     *
+     * @return those nodes, most similar first
+     */
+    private static List<Neighbour> searchLayer(Graph graph, HashingVectorizer.SparseVector query, int entry, int width, int layer, BitSet visited) {
+        PriorityQueue<Neighbour> frontier = new PriorityQueue<>(MOST_SIMILAR_FIRST);
+        PriorityQueue<Neighbour> best = new PriorityQueue<>(MOST_SIMILAR_FIRST.reversed());
+        Neighbour start = new Neighbour(entry, graph.similarity(query, entry));
+        visited.set(entry);
+        frontier.add(start);
+        best.add(start);
+        while (!frontier.isEmpty()) {
+            Neighbour current = frontier.poll();
+            if (best.size() >= width && current.similarity() < best.peek().similarity()) {
+                break;
+            }
+            for (int slot = 0, count = graph.linkCount(current.passage(), layer); slot < count; slot++) {
+                int neighbour = graph.link(current.passage(), layer, slot);
+                if (visited.get(neighbour)) {
+                    continue;
+                }
+                visited.set(neighbour);
+                Neighbour candidate = new Neighbour(neighbour, graph.similarity(query, neighbour));
+                if (best.size() < width || candidate.similarity() > best.peek().similarity()) {
+                    frontier.add(candidate);
+                    best.add(candidate);
+                    if (best.size() > width) {
+                        best.poll();
+                    }
+                }
+            }
+        }
+        List<Neighbour> ordered = new ArrayList<>(best);
+        ordered.sort(MOST_SIMILAR_FIRST);
+        return ordered;
+    }
+}
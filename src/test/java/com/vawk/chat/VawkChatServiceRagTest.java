@@ -54,10 +54,10 @@ class VawkChatServiceRagTest {
 
         RagRepository ragRepository = new RagRepository() {
             @Override
-            public List<RagDocument> searchForChat(String query, int limit) {
+            public List<RagPassage> findPassages(String query, int limit) {
                 return List.of(
-                        new RagDocument("d1", "Doc One", "Content line one\nContent line two"),
-                        new RagDocument("d2", "Doc Two", "Other content")
+                        new RagPassage(new RagEntry("d1", "Doc One", "snippets/d1.md", "snippets"), 1, 20, "Content line one\nContent line two", 1.0),
+                        new RagPassage(new RagEntry("d2", "Doc Two", "snippets/d2.md", "snippets"), 1, 20, "Other content", 1.0)
                 );
             }
         };
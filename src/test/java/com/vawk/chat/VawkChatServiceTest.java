@@ -101,8 +101,8 @@ class VawkChatServiceTest {
     void buildRagContextReturnsFormattedDocs(@TempDir Path tempDir) {
         RagRepository ragRepository = new RagRepository() {
             @Override
-            public List<RagDocument> searchForChat(String query, int limit) {
-                return List.of(new RagDocument("id", "title", "content"));
+            public List<RagPassage> findPassages(String query, int limit) {
+                return List.of(new RagPassage(new RagEntry("id", "title", "snippets/id.md", "snippets"), 1, 20, "content", 1.0));
             }
         };
         VawkChatService service = new VawkChatService(new TestDirectoryService(tempDir.resolve(".vawk")), Optional.empty(), new VawkChatPromptBuilder(new VawkPromptLoader()), ragRepository);
@@ -141,7 +141,7 @@ class VawkChatServiceTest {
     void buildRagContextReturnsEmptyWhenRepositoryErrors(@TempDir Path tempDir) {
         RagRepository ragRepository = new RagRepository() {
             @Override
-            public List<RagDocument> searchForChat(String query, int limit) throws IOException {
+            public List<RagPassage> findPassages(String query, int limit) throws IOException {
                 throw new IOException("boom");
             }
         };
@@ -154,9 +154,9 @@ class VawkChatServiceTest {
     void buildRagContextTruncatesLongContent(@TempDir Path tempDir) {
         RagRepository ragRepository = new RagRepository() {
             @Override
-            public List<RagDocument> searchForChat(String query, int limit) {
+            public List<RagPassage> findPassages(String query, int limit) {
                 String longContent = "line\n".repeat(300);
-                return List.of(new RagDocument("id", "title", longContent));
+                return List.of(new RagPassage(new RagEntry("id", "title", "snippets/id.md", "snippets"), 1, 20, longContent, 1.0));
             }
         };
         VawkChatService service = new VawkChatService(new TestDirectoryService(tempDir.resolve(".vawk")), Optional.empty(), new VawkChatPromptBuilder(new VawkPromptLoader()), ragRepository);
@@ -183,7 +183,7 @@ class VawkChatServiceTest {
     void buildRagContextReturnsEmptyWhenDocsEmpty(@TempDir Path tempDir) {
         RagRepository ragRepository = new RagRepository() {
             @Override
-            public List<RagDocument> searchForChat(String query, int limit) {
+            public List<RagPassage> findPassages(String query, int limit) {
                 return List.of();
             }
         };
@@ -196,8 +196,8 @@ class VawkChatServiceTest {
     void buildRagContextHandlesNullDocContent(@TempDir Path tempDir) {
         RagRepository ragRepository = new RagRepository() {
             @Override
-            public List<RagDocument> searchForChat(String query, int limit) {
-                return List.of(new RagDocument("id", "title", null));
+            public List<RagPassage> findPassages(String query, int limit) {
+                return List.of(new RagPassage(new RagEntry("id", "title", "snippets/id.md", "snippets"), 1, 20, null, 1.0));
             }
         };
         VawkChatService service = new VawkChatService(new TestDirectoryService(tempDir.resolve(".vawk")), Optional.empty(), new VawkChatPromptBuilder(new VawkPromptLoader()), ragRepository);
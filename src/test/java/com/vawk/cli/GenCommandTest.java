@@ -1,17 +1,22 @@
 package com.vawk.cli;
 
 import com.vawk.domain.AwkProgram;
+import com.vawk.domain.GenerationCache;
 import com.vawk.domain.GenerationMode;
 import com.vawk.domain.SessionLog;
 import com.vawk.domain.VawkSpec;
 import com.vawk.orchestration.GenerateResult;
 import com.vawk.orchestration.VawkGeneratorService;
 import com.vawk.runtime.DirectoryService;
+import com.vawk.store.GenerationCacheRepository;
 import org.junit.jupiter.api.Test;
 import picocli.CommandLine;
 
+import java.io.BufferedReader;
 import java.io.PrintWriter;
+import java.io.StringReader;
 import java.io.StringWriter;
+import java.util.function.Predicate;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -35,6 +40,53 @@ class GenCommandTest {
         assertThat(buffer.toString()).contains("Generated spec.yaml and main.awk");
         assertThat(buffer.toString()).contains("PLAN snippet");
         assertThat(buffer.toString()).contains("stub-plan");
+        assertThat(generatorService.lastFresh).isFalse();
+    }
+
+    @Test
+    void reportsReusedGenerationAndPassesFresh() throws Exception {
+        StubGeneratorService generatorService = new StubGeneratorService();
+        generatorService.cachedFrom = "sum the third column";
+        GenCommand command = new GenCommand(generatorService, new StubDirectoryService());
+        CommandLine cmd = new CommandLine(command);
+        StringWriter buffer = new StringWriter();
+        cmd.setOut(new PrintWriter(buffer, true));
+
+        cmd.parseArgs("sum", "column", "3");
+        command.call();
+
+        assertThat(buffer.toString()).contains("Reused the verified generation for \"sum the third column\"");
+        assertThat(generatorService.lastFresh).isFalse();
+
+        cmd.parseArgs("--fresh", "sum", "column", "3");
+        command.call();
+
+        assertThat(generatorService.lastFresh).isTrue();
+    }
+
+    @Test
+    void asksBeforeReusingAGenerationForASimilarRequest() throws Exception {
+        StubGeneratorService generatorService = new StubGeneratorService();
+        GenerationCache.Entry entry = new GenerationCache.Entry();
+        entry.setDescription("count GET requests per host");
+        generatorService.similar = new GenerationCacheRepository.Match(entry, 0.95, false);
+        GenCommand command = new GenCommand(generatorService, new StubDirectoryService());
+        CommandLine cmd = new CommandLine(command);
+        StringWriter buffer = new StringWriter();
+        cmd.setOut(new PrintWriter(buffer, true));
+        cmd.parseArgs("count", "POST", "requests", "per", "host");
+
+        command.input = new BufferedReader(new StringReader("y\n"));
+        command.call();
+
+        assertThat(buffer.toString()).contains("similar request (similarity 0.95):\n  count GET requests per host")
+                .contains("Reuse it? [y/N]");
+        assertThat(generatorService.reuseConfirmed).isTrue();
+
+        command.input = new BufferedReader(new StringReader("\n"));
+        command.call();
+
+        assertThat(generatorService.reuseConfirmed).isFalse();
     }
 
     private static final class StubDirectoryService extends DirectoryService {
@@ -47,18 +99,28 @@ class GenCommandTest {
     }
 
     private static final class StubGeneratorService extends VawkGeneratorService {
+        private String cachedFrom;
+        private boolean lastFresh;
+        private GenerationCacheRepository.Match similar;
+        private boolean reuseConfirmed;
+
         private StubGeneratorService() {
             super(null, null, null, null, null, null, null, null, null, "local-stub");
         }
 
         @Override
-        public GenerateResult generate(String description, GenerationMode mode, String modelOverride, boolean autoTest, String testsDir) {
+        public GenerateResult generate(String description, GenerationMode mode, String modelOverride, boolean autoTest, String testsDir,
+                                       boolean fresh, Predicate<GenerationCacheRepository.Match> confirmReuse) {
+            lastFresh = fresh;
+            if (similar != null) {
+                reuseConfirmed = confirmReuse.test(similar);
+            }
             VawkSpec spec = new VawkSpec();
             AwkProgram program = new AwkProgram(null, "code", "hash");
             SessionLog log = new SessionLog();
             log.setPlanText("stub-plan");
             log.setProgramHash("hash");
-            return new GenerateResult(spec, program, log);
+            return new GenerateResult(spec, program, log, cachedFrom);
         }
     }
 }
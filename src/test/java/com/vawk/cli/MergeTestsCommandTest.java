@@ -0,0 +1,127 @@
+package com.vawk.cli;
+
+import com.vawk.domain.AwkTestCase;
+import com.vawk.domain.SessionLog;
+import com.vawk.runtime.DirectoryService;
+import com.vawk.store.SessionLogRepository;
+import com.vawk.store.TestRepository;
+import org.junit.jupiter.api.Test;
+import picocli.CommandLine;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MergeTestsCommandTest {
+
+    @Test
+    void mergesShardsInDeclarationOrder() throws Exception {
+        StubSessionLogRepository logs = new StubSessionLogRepository();
+        logs.add("one.json", shardLog("1/2", "hash", run("c", true), run("a", true)));
+        logs.add("two.json", shardLog("2/2", "hash", run("b", true)));
+        MergeTestsCommand command = command(logs, List.of(testCase("a"), testCase("b"), testCase("c")));
+        new CommandLine(command).parseArgs("one.json", "two.json");
+
+        int exit = command.call();
+
+        assertThat(exit).isZero();
+        assertThat(logs.lastLog.getCommand()).isEqualTo("TEST");
+        assertThat(logs.lastLog.getShard()).isNull();
+        assertThat(logs.lastLog.getProgramHash()).isEqualTo("hash");
+        assertThat(logs.lastLog.getTestsRun()).extracting(SessionLog.TestRun::getName).containsExactly("a", "b", "c");
+    }
+
+    @Test
+    void failsWhenAnyMergedTestFailed() throws Exception {
+        StubSessionLogRepository logs = new StubSessionLogRepository();
+        logs.add("one.json", shardLog("1/2", "hash", run("a", true)));
+        logs.add("two.json", shardLog("2/2", "hash", run("b", false)));
+        MergeTestsCommand command = command(logs, List.of());
+        new CommandLine(command).parseArgs("one.json", "two.json");
+
+        assertThat(command.call()).isEqualTo(1);
+        assertThat(logs.lastLog.getTestsRun()).extracting(SessionLog.TestRun::getName).containsExactly("a", "b");
+    }
+
+    @Test
+    void refusesIncompleteOrInconsistentShards() throws Exception {
+        StubSessionLogRepository logs = new StubSessionLogRepository();
+        logs.add("one.json", shardLog("1/3", "hash", run("a", true)));
+        logs.add("two.json", shardLog("2/3", "hash", run("b", true)));
+        logs.add("other.json", shardLog("3/3", "changed", run("c", true)));
+        logs.add("again.json", shardLog("3/3", "hash", run("a", true)));
+        logs.add("plain.json", shardLog(null, "hash", run("d", true)));
+        logs.add("garbled.json", shardLog("4/3", "hash", run("e", true)));
+
+        assertThat(merge(logs, "one.json", "two.json")).isEqualTo(1);
+        assertThat(merge(logs, "one.json", "two.json", "other.json")).isEqualTo(1);
+        assertThat(merge(logs, "one.json", "two.json", "again.json")).isEqualTo(1);
+        assertThat(merge(logs, "one.json", "one.json")).isEqualTo(1);
+        assertThat(merge(logs, "plain.json")).isEqualTo(1);
+        assertThat(merge(logs, "one.json", "garbled.json")).isEqualTo(1);
+        assertThat(logs.lastLog).isNull();
+    }
+
+    private static int merge(StubSessionLogRepository logs, String... files) throws Exception {
+        MergeTestsCommand command = command(logs, List.of());
+        new CommandLine(command).parseArgs(files);
+        return command.call();
+    }
+
+    private static MergeTestsCommand command(StubSessionLogRepository logs, List<AwkTestCase> declared) {
+        TestRepository testRepository = new TestRepository() {
+            @Override
+            public List<AwkTestCase> load(Path testsDir) {
+                return declared;
+            }
+        };
+        MergeTestsCommand command = new MergeTestsCommand(logs, testRepository, new DirectoryService() {
+            @Override
+            public void ensureBaseDirs() {
+            }
+        });
+        return command;
+    }
+
+    private static SessionLog shardLog(String shard, String programHash, SessionLog.TestRun... runs) {
+        SessionLog log = new SessionLog();
+        log.setCommand("TEST");
+        log.setShard(shard);
+        log.setProgramHash(programHash);
+        log.setTestsRun(List.of(runs));
+        return log;
+    }
+
+    private static SessionLog.TestRun run(String name, boolean passed) {
+        return new SessionLog.TestRun(name, passed, passed ? null : "diff");
+    }
+
+    private static AwkTestCase testCase(String name) {
+        AwkTestCase testCase = new AwkTestCase();
+        testCase.setName(name);
+        return testCase;
+    }
+
+    private static final class StubSessionLogRepository extends SessionLogRepository {
+        private final Map<Path, SessionLog> logs = new HashMap<>();
+        private SessionLog lastLog;
+
+        void add(String file, SessionLog log) {
+            logs.put(Path.of(file), log);
+        }
+
+        @Override
+        public SessionLog read(Path path) {
+            return logs.get(path);
+        }
+
+        @Override
+        public Path write(SessionLog log) {
+            lastLog = log;
+            return Path.of(".vawk/logs/merged.json");
+        }
+    }
+}
@@ -1,8 +1,11 @@
 package com.vawk.cli;
 
+import com.vawk.runtime.AggregateRunner;
 import com.vawk.runtime.AwkRunner;
+import com.vawk.runtime.ParallelAwkRunner;
 import com.vawk.store.ProgramRepository;
 import com.vawk.store.SessionLogRepository;
+import com.vawk.store.SpecRepository;
 import org.junit.jupiter.api.Test;
 import picocli.CommandLine;
 
@@ -19,7 +22,10 @@ class RunCommandIntegrationTest {
 
     @Test
     void runsMainAwkAgainstInput() throws Exception {
-        RunCommand command = new RunCommand(new ProgramRepository(), new AwkRunner(), new SessionLogRepository(), new com.vawk.runtime.DirectoryService());
+        AwkRunner awkRunner = new AwkRunner();
+        ParallelAwkRunner parallelAwkRunner = new ParallelAwkRunner(awkRunner);
+        RunCommand command = new RunCommand(new ProgramRepository(), awkRunner, new SessionLogRepository(), new com.vawk.runtime.DirectoryService(),
+                new SpecRepository(), parallelAwkRunner, new AggregateRunner(awkRunner, parallelAwkRunner));
         ByteArrayOutputStream out = new ByteArrayOutputStream();
         ByteArrayOutputStream err = new ByteArrayOutputStream();
         CommandLine cmd = new CommandLine(command);
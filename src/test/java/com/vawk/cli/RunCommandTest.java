@@ -2,17 +2,24 @@ package com.vawk.cli;
 
 import com.vawk.domain.AwkProgram;
 import com.vawk.domain.SessionLog;
+import com.vawk.runtime.AggregateRunner;
 import com.vawk.runtime.AwkRunRequest;
 import com.vawk.runtime.AwkRunResult;
 import com.vawk.runtime.AwkRunner;
 import com.vawk.runtime.DirectoryService;
+import com.vawk.runtime.ParallelAwkRunner;
 import com.vawk.store.ProgramRepository;
 import com.vawk.store.SessionLogRepository;
+import com.vawk.store.SpecRepository;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import picocli.CommandLine;
 
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.Files;
 import java.nio.file.Path;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -23,7 +30,8 @@ class RunCommandTest {
     void invalidVarAssignmentReturnsError() throws Exception {
         StubProgramRepository programRepository = new StubProgramRepository();
         StubSessionLogRepository sessionLogRepository = new StubSessionLogRepository();
-        RunCommand command = new RunCommand(programRepository, new StubAwkRunner(), sessionLogRepository, new StubDirectoryService());
+        RunCommand command = new RunCommand(programRepository, new StubAwkRunner(), sessionLogRepository, new StubDirectoryService(),
+                new SpecRepository(), new ParallelAwkRunner(new StubAwkRunner()), new AggregateRunner(new StubAwkRunner(), new ParallelAwkRunner(new StubAwkRunner())));
 
         CommandLine cmd = new CommandLine(command);
         StringWriter err = new StringWriter();
@@ -40,7 +48,8 @@ class RunCommandTest {
     void runWritesSessionLogWhenValid() throws Exception {
         StubProgramRepository programRepository = new StubProgramRepository();
         StubSessionLogRepository sessionLogRepository = new StubSessionLogRepository();
-        RunCommand command = new RunCommand(programRepository, new StubAwkRunner(), sessionLogRepository, new StubDirectoryService());
+        RunCommand command = new RunCommand(programRepository, new StubAwkRunner(), sessionLogRepository, new StubDirectoryService(),
+                new SpecRepository(), new ParallelAwkRunner(new StubAwkRunner()), new AggregateRunner(new StubAwkRunner(), new ParallelAwkRunner(new StubAwkRunner())));
 
         CommandLine cmd = new CommandLine(command);
         StringWriter out = new StringWriter();
@@ -54,9 +63,70 @@ class RunCommandTest {
         assertThat(sessionLogRepository.lastLog).isNotNull();
     }
 
+    @Test
+    void parallelRunRequiresStatelessSpec() throws Exception {
+        RunCommand command = new RunCommand(new StubProgramRepository(), new StubAwkRunner(), new StubSessionLogRepository(), new StubDirectoryService(),
+                new SpecRepository(), new ParallelAwkRunner(new StubAwkRunner()), new AggregateRunner(new StubAwkRunner(), new ParallelAwkRunner(new StubAwkRunner())));
+
+        CommandLine cmd = new CommandLine(command);
+        StringWriter err = new StringWriter();
+        cmd.setErr(new PrintWriter(err, true));
+        cmd.parseArgs("--parallel", "4", "input.txt");
+
+        int exit = command.call();
+
+        assertThat(exit).isEqualTo(1);
+        assertThat(err.toString()).contains("Cannot run with --parallel").contains("stateless");
+    }
+
+    @Test
+    void aggregateRunRequiresDeclaredAggregates() throws Exception {
+        RunCommand command = new RunCommand(new StubProgramRepository(), new StubAwkRunner(), new StubSessionLogRepository(), new StubDirectoryService(),
+                new SpecRepository(), new ParallelAwkRunner(new StubAwkRunner()), new AggregateRunner(new StubAwkRunner(), new ParallelAwkRunner(new StubAwkRunner())));
+
+        CommandLine cmd = new CommandLine(command);
+        StringWriter err = new StringWriter();
+        cmd.setErr(new PrintWriter(err, true));
+        cmd.parseArgs("--aggregate", "input.txt");
+
+        int exit = command.call();
+
+        assertThat(exit).isEqualTo(1);
+        assertThat(err.toString()).contains("Cannot run with --aggregate").contains("no aggregates");
+    }
+
+    @Test
+    void readsSpecNextToTheAwkProgram(@TempDir Path tempDir) throws Exception {
+        Path job = tempDir.resolve("vawk").resolve("jobs").resolve("totals");
+        Files.createDirectories(job);
+        Files.writeString(job.resolve("spec.yaml"), "stateless: true\naggregates:\n  - name: \"not an identifier\"\n    function: count\n");
+        StubProgramRepository programRepository = new StubProgramRepository();
+        RunCommand parallelCommand = new RunCommand(programRepository, new StubAwkRunner(), new StubSessionLogRepository(), new StubDirectoryService(),
+                new SpecRepository(), new ParallelAwkRunner(new StubAwkRunner()), new AggregateRunner(new StubAwkRunner(), new ParallelAwkRunner(new StubAwkRunner())));
+        RunCommand aggregateCommand = new RunCommand(programRepository, new StubAwkRunner(), new StubSessionLogRepository(), new StubDirectoryService(),
+                new SpecRepository(), new ParallelAwkRunner(new StubAwkRunner()), new AggregateRunner(new StubAwkRunner(), new ParallelAwkRunner(new StubAwkRunner())));
+        StringWriter err = new StringWriter();
+        CommandLine parallel = new CommandLine(parallelCommand);
+        parallel.setErr(new PrintWriter(err, true));
+        parallel.parseArgs("--awk", job.resolve("script.awk").toString(), "--parallel", "4", tempDir.resolve("missing.txt").toString());
+        CommandLine aggregate = new CommandLine(aggregateCommand);
+        aggregate.setErr(new PrintWriter(err, true));
+        aggregate.parseArgs("--awk", job.resolve("script.awk").toString(), "--aggregate", "input.txt");
+
+        assertThat(parallelCommand.call()).isEqualTo(1);
+        assertThat(programRepository.reads).isEqualTo(1);
+        assertThat(aggregateCommand.call()).isEqualTo(1);
+        assertThat(programRepository.reads).isEqualTo(1);
+        assertThat(err.toString()).contains("an input file is required").doesNotContain("stateless")
+                .contains("aggregate name 'not an identifier' must be a plain identifier");
+    }
+
     private static final class StubProgramRepository extends ProgramRepository {
+        private int reads;
+
         @Override
         public AwkProgram read(Path path) {
+            reads++;
             return new AwkProgram(path, "BEGIN { print \"ok\" }", "hash");
         }
     }
@@ -66,6 +136,12 @@ class RunCommandTest {
         public AwkRunResult run(AwkRunRequest request) {
             return new AwkRunResult(0, "ok\n", "");
         }
+
+        @Override
+        public int stream(AwkRunRequest request, Writer stdoutSink, Writer stderrSink) throws IOException {
+            stdoutSink.write("ok\n");
+            return 0;
+        }
     }
 
     private static final class StubSessionLogRepository extends SessionLogRepository {
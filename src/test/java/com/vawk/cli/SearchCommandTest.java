@@ -0,0 +1,53 @@
+package com.vawk.cli;
+
+import com.vawk.store.RagRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import picocli.CommandLine;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SearchCommandTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final StringWriter out = new StringWriter();
+    private final StringWriter err = new StringWriter();
+
+    private CommandLine command() throws Exception {
+        Path jobs = tempDir.resolve("vawk").resolve("jobs");
+        Files.createDirectories(jobs.resolve("totals"));
+        Files.writeString(jobs.resolve("totals").resolve("script.awk"), "{ sum += $3 }\nEND { print sum }\n");
+        RagRepository repository = new RagRepository(tempDir.resolve("docs"), jobs, tempDir.resolve("index.bin"),
+                RagRepository.RetrievalMode.LEXICAL);
+        CommandLine cmd = new CommandLine(new SearchCommand(repository));
+        cmd.setOut(new PrintWriter(out, true));
+        cmd.setErr(new PrintWriter(err, true));
+        return cmd;
+    }
+
+    @Test
+    void printsMatchingLinesLikeGrep() throws Exception {
+        int exit = command().execute("sum", "+=");
+
+        assertThat(exit).isEqualTo(0);
+        assertThat(out.toString().strip()).endsWith("script.awk:1: { sum += $3 }");
+    }
+
+    @Test
+    void searchesByRegexAndExitsOneWithoutMatches() throws Exception {
+        CommandLine cmd = command();
+
+        assertThat(cmd.execute("--regex", "--limit", "1", "\\$[0-9]")).isEqualTo(0);
+        assertThat(out.toString().lines()).hasSize(1);
+        assertThat(cmd.execute("gsub")).isEqualTo(1);
+        assertThat(cmd.execute("--regex", "sum[")).isEqualTo(1);
+        assertThat(err.toString()).contains("invalid regular expression");
+    }
+}
@@ -7,15 +7,20 @@ import com.vawk.store.ProgramRepository;
 import com.vawk.store.SessionLogRepository;
 import com.vawk.store.SpecRepository;
 import com.vawk.store.TestRepository;
+import com.vawk.store.TestStateRepository;
+import com.vawk.store.TestTimingRepository;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import picocli.CommandLine;
 
+import java.nio.file.Path;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 class TestCommandIntegrationTest {
 
     @Test
-    void testCommandPassesFixtures() throws Exception {
+    void testCommandPassesFixtures(@TempDir Path stateDirectory) throws Exception {
         TestRepository testRepository = new TestRepository();
         ProgramRepository programRepository = new ProgramRepository();
         SpecRepository specRepository = new SpecRepository();
@@ -23,7 +28,8 @@ class TestCommandIntegrationTest {
         AwkRunner awkRunner = new AwkRunner();
         AwkTestRunner awkTestRunner = new AwkTestRunner(awkRunner);
 
-        TestCommand command = new TestCommand(testRepository, programRepository, specRepository, sessionLogRepository, awkTestRunner, new com.vawk.runtime.DirectoryService());
+        TestCommand command = new TestCommand(testRepository, programRepository, specRepository, sessionLogRepository, awkTestRunner, new com.vawk.runtime.DirectoryService(),
+                new TestStateRepository(stateDirectory.resolve("test-state.json")), new TestTimingRepository(stateDirectory.resolve("test-timings.json")));
         CommandLine cmd = new CommandLine(command);
         int exitCode = cmd.execute();
         assertEquals(0, exitCode);
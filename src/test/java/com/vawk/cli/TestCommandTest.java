@@ -5,23 +5,31 @@ import com.vawk.domain.AwkTestCase;
 import com.vawk.domain.SessionLog;
 import com.vawk.runtime.AwkTestRunner;
 import com.vawk.runtime.DirectoryService;
+import com.vawk.runtime.TestRunOptions;
 import com.vawk.store.ProgramRepository;
 import com.vawk.store.SessionLogRepository;
 import com.vawk.store.SpecRepository;
 import com.vawk.store.TestRepository;
+import com.vawk.store.TestStateRepository;
+import com.vawk.store.TestTimingRepository;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import picocli.CommandLine;
 
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
 class TestCommandTest {
+    @TempDir
+    Path stateDirectory;
 
     @Test
     void returnsErrorWhenNoTestsFound() throws Exception {
-        TestCommand command = new TestCommand(new StubTestRepository(List.of()), new StubProgramRepository(), new SpecRepository(), new StubSessionLogRepository(), new StubTestRunner(List.of()), new StubDirectoryService());
+        TestCommand command = command(List.of(), new StubSessionLogRepository(), new StubTestRunner(List.of()));
 
         int exit = command.call();
 
@@ -30,7 +38,7 @@ class TestCommandTest {
 
     @Test
     void returnsNonZeroWhenTestsFail() throws Exception {
-        TestCommand command = new TestCommand(new StubTestRepository(List.of(new AwkTestCase())), new StubProgramRepository(), new SpecRepository(), new StubSessionLogRepository(), new StubTestRunner(List.of(new SessionLog.TestRun("t", false, "diff"))), new StubDirectoryService());
+        TestCommand command = command(List.of(new AwkTestCase()), new StubSessionLogRepository(), new StubTestRunner(List.of(new SessionLog.TestRun("t", false, "diff"))));
 
         CommandLine cmd = new CommandLine(command);
         cmd.parseArgs();
@@ -42,7 +50,7 @@ class TestCommandTest {
     @Test
     void returnsZeroWhenAllTestsPass() throws Exception {
         StubSessionLogRepository sessionLogRepository = new StubSessionLogRepository();
-        TestCommand command = new TestCommand(new StubTestRepository(List.of(new AwkTestCase())), new StubProgramRepository(), new SpecRepository(), sessionLogRepository, new StubTestRunner(List.of(new SessionLog.TestRun("t", true, null))), new StubDirectoryService());
+        TestCommand command = command(List.of(new AwkTestCase()), sessionLogRepository, new StubTestRunner(List.of(new SessionLog.TestRun("t", true, null))));
 
         int exit = command.call();
 
@@ -50,10 +58,127 @@ class TestCommandTest {
         assertThat(sessionLogRepository.lastLog).isNotNull();
     }
 
+    @Test
+    void noCacheFlagDisablesRunCache() throws Exception {
+        StubTestRunner testRunner = new StubTestRunner(List.of(new SessionLog.TestRun("t", true, null)));
+        TestCommand command = command(List.of(new AwkTestCase()), new StubSessionLogRepository(), testRunner);
+
+        new CommandLine(command).parseArgs("--no-cache");
+        command.call();
+
+        assertThat(testRunner.lastOptions.isUseCache()).isFalse();
+    }
+
+    @Test
+    void jobsOptionSetsConcurrency() throws Exception {
+        StubTestRunner testRunner = new StubTestRunner(List.of(new SessionLog.TestRun("t", true, null)));
+        TestCommand command = command(List.of(new AwkTestCase()), new StubSessionLogRepository(), testRunner);
+
+        new CommandLine(command).parseArgs("--jobs", "3");
+        command.call();
+
+        assertThat(testRunner.lastOptions.getJobs()).isEqualTo(3);
+    }
+
+    @Test
+    void skipsCasesUnchangedSinceTheyPassed(@TempDir Path tempDir) throws Exception {
+        Path input = Files.writeString(tempDir.resolve("input.txt"), "a\n");
+        Path expected = Files.writeString(tempDir.resolve("expected.txt"), "a\n");
+        List<AwkTestCase> cases = List.of(new AwkTestCase("t", input, expected, Map.of(), null));
+        TestStateRepository stateRepository = new TestStateRepository(tempDir.resolve("test-state.json"));
+        StubTestRunner testRunner = new StubTestRunner(List.of(new SessionLog.TestRun("t", true, null)));
+
+        command(cases, new StubSessionLogRepository(), testRunner, stateRepository).call();
+        assertThat(testRunner.calls).isEqualTo(1);
+
+        StubSessionLogRepository sessionLogRepository = new StubSessionLogRepository();
+        int exit = command(cases, sessionLogRepository, testRunner, stateRepository).call();
+
+        assertThat(exit).isZero();
+        assertThat(testRunner.calls).isEqualTo(1);
+        assertThat(sessionLogRepository.lastLog.getTestsRun()).singleElement().satisfies(run -> {
+            assertThat(run.isPassed()).isTrue();
+            assertThat(run.getCached()).isTrue();
+        });
+
+        Files.writeString(expected, "b\n");
+        command(cases, new StubSessionLogRepository(), testRunner, stateRepository).call();
+        assertThat(testRunner.calls).isEqualTo(2);
+    }
+
+    @Test
+    void allFlagRunsUnchangedCases(@TempDir Path tempDir) throws Exception {
+        Path input = Files.writeString(tempDir.resolve("input.txt"), "a\n");
+        Path expected = Files.writeString(tempDir.resolve("expected.txt"), "a\n");
+        List<AwkTestCase> cases = List.of(new AwkTestCase("t", input, expected, Map.of(), null));
+        TestStateRepository stateRepository = new TestStateRepository(tempDir.resolve("test-state.json"));
+        StubTestRunner testRunner = new StubTestRunner(List.of(new SessionLog.TestRun("t", true, null)));
+        command(cases, new StubSessionLogRepository(), testRunner, stateRepository).call();
+
+        TestCommand command = command(cases, new StubSessionLogRepository(), testRunner, stateRepository);
+        new CommandLine(command).parseArgs("--all");
+        command.call();
+
+        assertThat(testRunner.calls).isEqualTo(2);
+    }
+
+    @Test
+    void shardOptionRunsOnlyItsSliceAndRecordsShard() throws Exception {
+        List<AwkTestCase> cases = new java.util.ArrayList<>();
+        for (int index = 0; index < 20; index++) {
+            AwkTestCase testCase = new AwkTestCase();
+            testCase.setName("case-" + index);
+            cases.add(testCase);
+        }
+        StubSessionLogRepository sessionLogRepository = new StubSessionLogRepository();
+        StubTestRunner testRunner = new StubTestRunner(null);
+        TestCommand command = command(cases, sessionLogRepository, testRunner);
+
+        new CommandLine(command).parseArgs("--shard", "2/3");
+        command.call();
+
+        com.vawk.runtime.TestShard shard = com.vawk.runtime.TestShard.parse("2/3");
+        assertThat(testRunner.lastCases).isNotEmpty().hasSizeLessThan(cases.size())
+                .allMatch(testCase -> shard.includes(testCase.getName()));
+        assertThat(sessionLogRepository.lastLog.getShard()).isEqualTo("2/3");
+    }
+
+    @Test
+    void rejectsMalformedShard() throws Exception {
+        TestCommand command = command(List.of(new AwkTestCase()), new StubSessionLogRepository(), new StubTestRunner(List.of()));
+
+        new CommandLine(command).parseArgs("--shard", "4/3");
+
+        assertThat(command.call()).isEqualTo(1);
+    }
+
+    @Test
+    void writesJUnitReportWhenRequested(@TempDir Path tempDir) throws Exception {
+        SessionLog.TestRun run = new SessionLog.TestRun("t", true, null);
+        run.setDurationMillis(42L);
+        TestCommand command = command(List.of(new AwkTestCase()), new StubSessionLogRepository(), new StubTestRunner(List.of(run)));
+        Path report = tempDir.resolve("junit.xml");
+
+        new CommandLine(command).parseArgs("--junit-xml", report.toString(), "--slowest-by", "cpu");
+        int exit = command.call();
+
+        assertThat(exit).isZero();
+        assertThat(Files.readString(report)).contains("<testcase name=\"t\" classname=\"main.awk\" time=\"0.042\">");
+    }
+
+    @Test
+    void rejectsUnknownSlowestOrder() throws Exception {
+        TestCommand command = command(List.of(new AwkTestCase()), new StubSessionLogRepository(), new StubTestRunner(List.of()));
+
+        new CommandLine(command).parseArgs("--slowest-by", "memory");
+
+        assertThat(command.call()).isEqualTo(1);
+    }
+
     @Test
     void capturesSpecHashWhenSpecExists() throws Exception {
         StubSessionLogRepository sessionLogRepository = new StubSessionLogRepository();
-        TestCommand command = new TestCommand(new StubTestRepository(List.of(new AwkTestCase())), new StubProgramRepository(), new SpecRepository(), sessionLogRepository, new StubTestRunner(List.of(new SessionLog.TestRun("t", true, null))), new StubDirectoryService());
+        TestCommand command = command(List.of(new AwkTestCase()), sessionLogRepository, new StubTestRunner(List.of(new SessionLog.TestRun("t", true, null))));
 
         Path specPath = Path.of("spec.yaml");
         java.nio.file.Files.writeString(specPath, "description: demo");
@@ -67,6 +192,17 @@ class TestCommandTest {
         }
     }
 
+    /** Builds the command over stubbed fixtures, with its state and timings kept in the test's directory. */
+    private TestCommand command(List<AwkTestCase> cases, SessionLogRepository sessionLogRepository, AwkTestRunner testRunner) {
+        return command(cases, sessionLogRepository, testRunner, new TestStateRepository(stateDirectory.resolve("test-state.json")));
+    }
+
+    private TestCommand command(List<AwkTestCase> cases, SessionLogRepository sessionLogRepository, AwkTestRunner testRunner,
+                                TestStateRepository stateRepository) {
+        return new TestCommand(new StubTestRepository(cases), new StubProgramRepository(), new SpecRepository(), sessionLogRepository, testRunner,
+                new StubDirectoryService(), stateRepository, new TestTimingRepository(stateDirectory.resolve("test-timings.json")));
+    }
+
     private static final class StubTestRepository extends TestRepository {
         private final List<AwkTestCase> cases;
 
@@ -89,6 +225,9 @@ class TestCommandTest {
 
     private static final class StubTestRunner extends AwkTestRunner {
         private final List<SessionLog.TestRun> runs;
+        private TestRunOptions lastOptions;
+        private int calls;
+        private List<AwkTestCase> lastCases;
 
         private StubTestRunner(List<SessionLog.TestRun> runs) {
             super(new com.vawk.runtime.AwkRunner());
@@ -99,6 +238,14 @@ class TestCommandTest {
         public List<SessionLog.TestRun> runTests(List<AwkTestCase> testCases, AwkProgram defaultProgram) {
             return runs;
         }
+
+        @Override
+        public List<SessionLog.TestRun> runTests(List<AwkTestCase> testCases, AwkProgram defaultProgram, TestRunOptions options) {
+            lastOptions = options;
+            lastCases = testCases;
+            calls++;
+            return runs != null ? runs : testCases.stream().map(testCase -> new SessionLog.TestRun(testCase.getName(), true, null)).toList();
+        }
     }
 
     private static final class StubSessionLogRepository extends SessionLogRepository {
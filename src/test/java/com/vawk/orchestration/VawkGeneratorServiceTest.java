@@ -9,6 +9,7 @@ import com.vawk.domain.SessionLog;
 import com.vawk.domain.VawkSpec;
 import com.vawk.runtime.AwkTestRunner;
 import com.vawk.store.AgentsFileRepository;
+import com.vawk.store.GenerationCacheRepository;
 import com.vawk.store.ProgramRepository;
 import com.vawk.store.SessionLogRepository;
 import com.vawk.store.SpecRepository;
@@ -262,6 +263,110 @@ class VawkGeneratorServiceTest {
         assertThat(agents.lastRagContext.length()).isLessThan(2200);
     }
 
+    @Test
+    void reusesAVerifiedGenerationWithoutCallingTheModelUnlessFresh(@org.junit.jupiter.api.io.TempDir Path tempDir) throws Exception {
+        GenerationCacheRepository cache = new GenerationCacheRepository(tempDir.resolve("gen-cache.json"), 0.9);
+        StubAwkTestRunner passingRunner = new StubAwkTestRunner() {
+            @Override
+            public List<SessionLog.TestRun> runTests(List<com.vawk.domain.AwkTestCase> testCases, AwkProgram defaultProgram) {
+                return List.of(new SessionLog.TestRun("t", true, null));
+            }
+        };
+        StubTestRepository testRepository = new StubTestRepository(List.of(new com.vawk.domain.AwkTestCase()));
+        VawkGeneratorService first = new VawkGeneratorService(
+                new StubAgents(validPlanResponse(), validCodeResponse()),
+                new StubSpecRepository(), new StubProgramRepository(), new StubSessionLogRepository(),
+                new StubAgentsFileRepository(Optional.empty()), new StubSpecBuilder(new VawkSpec("sum", List.of(), List.of(), List.of(), List.of())),
+                null, passingRunner, testRepository, cache, "model", 1000);
+
+        first.generate("Sum the third column of a CSV file", GenerationMode.COT, null, true, "tests");
+
+        // A model without a PLAN fails any real generation, so success here means nothing was asked of it.
+        StubProgramRepository programRepository = new StubProgramRepository();
+        StubSessionLogRepository sessionLogRepository = new StubSessionLogRepository();
+        VawkGeneratorService second = new VawkGeneratorService(
+                new StubAgents(new AiResponse("", "", "", ""), validCodeResponse()),
+                new StubSpecRepository(), programRepository, sessionLogRepository,
+                new StubAgentsFileRepository(Optional.empty()), new StubSpecBuilder(new VawkSpec()),
+                null, passingRunner, testRepository, cache, "other", 1000);
+
+        GenerateResult reused = second.generate("sum third columns of the csv files", GenerationMode.COT, null, false, "tests");
+
+        assertThat(reused.getCachedFrom()).isEqualTo("Sum the third column of a CSV file");
+        assertThat(programRepository.lastProgram.getContent()).contains("# VAWK: demo");
+        assertThat(sessionLogRepository.lastLog.getModel()).isEqualTo("model");
+        assertThat(sessionLogRepository.lastLog.getNotes()).startsWith("Reused the verified generation");
+        assertThrows(IllegalStateException.class,
+                () -> second.generate("sum third columns of the csv files", GenerationMode.COT, null, false, "tests", true));
+        assertThrows(IllegalStateException.class,
+                () -> second.generate("count distinct values of the first column", GenerationMode.COT, null, false, "tests"));
+    }
+
+    @Test
+    void reusesASimilarRequestOnlyWhenConfirmedAndOnlyIfItsTestsPassAgain(@org.junit.jupiter.api.io.TempDir Path tempDir) throws Exception {
+        GenerationCacheRepository cache = new GenerationCacheRepository(tempDir.resolve("gen-cache.json"), 0.5);
+        List<String> testedPrograms = new java.util.ArrayList<>();
+        boolean[] passing = {true};
+        StubAwkTestRunner runner = new StubAwkTestRunner() {
+            @Override
+            public List<SessionLog.TestRun> runTests(List<com.vawk.domain.AwkTestCase> testCases, AwkProgram defaultProgram) {
+                testedPrograms.add(defaultProgram.getContent());
+                return List.of(new SessionLog.TestRun("t", passing[0], null));
+            }
+        };
+        StubTestRepository testRepository = new StubTestRepository(List.of(new com.vawk.domain.AwkTestCase()));
+        new VawkGeneratorService(
+                new StubAgents(validPlanResponse(), validCodeResponse()),
+                new StubSpecRepository(), new StubProgramRepository(), new StubSessionLogRepository(),
+                new StubAgentsFileRepository(Optional.empty()), new StubSpecBuilder(new VawkSpec()),
+                null, runner, testRepository, cache, "model", 1000)
+                .generate("count GET requests per host", GenerationMode.COT, null, true, "tests");
+
+        StubProgramRepository programRepository = new StubProgramRepository();
+        VawkGeneratorService second = new VawkGeneratorService(
+                new StubAgents(new AiResponse("", "", "", ""), validCodeResponse()),
+                new StubSpecRepository(), programRepository, new StubSessionLogRepository(),
+                new StubAgentsFileRepository(Optional.empty()), new StubSpecBuilder(new VawkSpec()),
+                null, runner, testRepository, cache, "other", 1000);
+        List<String> offered = new java.util.ArrayList<>();
+
+        assertThrows(IllegalStateException.class, () -> second.generate("count POST requests per host", GenerationMode.COT, null, false,
+                "tests", false, match -> {
+                    offered.add(match.entry().getDescription());
+                    return false;
+                }));
+        assertThat(offered).containsExactly("count GET requests per host");
+        assertThat(programRepository.content).isNull();
+
+        testedPrograms.clear();
+        GenerateResult confirmed = second.generate("count POST requests per host", GenerationMode.COT, null, false, "tests", false,
+                match -> true);
+        assertThat(confirmed.getCachedFrom()).isEqualTo("count GET requests per host");
+        assertThat(testedPrograms).singleElement().asString().contains("# VAWK: demo");
+        assertThat(confirmed.getSessionLog().getTestsRun()).extracting(SessionLog.TestRun::isPassed).containsExactly(true);
+
+        passing[0] = false;
+        programRepository.content = null;
+        assertThrows(IllegalStateException.class, () -> second.generate("count GET requests per host", GenerationMode.COT, null, false,
+                "tests"));
+        assertThat(programRepository.content).isNull();
+    }
+
+    @Test
+    void doesNotCacheGenerationsWithFailingTests(@org.junit.jupiter.api.io.TempDir Path tempDir) throws Exception {
+        GenerationCacheRepository cache = new GenerationCacheRepository(tempDir.resolve("gen-cache.json"), 0.9);
+        VawkGeneratorService service = new VawkGeneratorService(
+                new StubAgents(validPlanResponse(), validCodeResponse()),
+                new StubSpecRepository(), new StubProgramRepository(), new StubSessionLogRepository(),
+                new StubAgentsFileRepository(Optional.empty()), new StubSpecBuilder(new VawkSpec()),
+                null, new StubAwkTestRunner(), new StubTestRepository(null), cache, "model", 1000);
+
+        GenerateResult result = service.generate("task", GenerationMode.COT, null, true, "tests");
+
+        assertThat(result.getCachedFrom()).isNull();
+        assertThat(cache.load().getEntries()).isEmpty();
+    }
+
     private static AiResponse validPlanResponse() {
         return new AiResponse("plan", "", "", "");
     }
@@ -411,14 +516,9 @@ class VawkGeneratorServiceTest {
         private final java.util.List<String> queries = new java.util.ArrayList<>();
 
         @Override
-        public java.util.List<RagEntry> findRelevant(String query, int limit) {
+        public java.util.List<RagPassage> findPassages(String query, int limit) {
             queries.add(query);
-            return java.util.List.of(new RagEntry("id", "desc", "snippets/demo.md", "snippets"));
-        }
-
-        @Override
-        public String readContent(RagEntry entry) {
-            return "content";
+            return java.util.List.of(new RagPassage(new RagEntry("id", "desc", "snippets/demo.md", "snippets"), 1, 20, "content", 1.0));
         }
 
         private java.util.List<String> getQueries() {
@@ -428,20 +528,15 @@ class VawkGeneratorServiceTest {
 
     private static final class FailingRagRepository extends com.vawk.store.RagRepository {
         @Override
-        public java.util.List<RagEntry> findRelevant(String query, int limit) throws IOException {
+        public java.util.List<RagPassage> findPassages(String query, int limit) throws IOException {
             throw new IOException("boom");
         }
     }
 
     private static final class LongRagRepository extends com.vawk.store.RagRepository {
         @Override
-        public java.util.List<RagEntry> findRelevant(String query, int limit) {
-            return java.util.List.of(new RagEntry("id", "desc", "snippets/demo.md", "snippets"));
-        }
-
-        @Override
-        public String readContent(RagEntry entry) {
-            return "x".repeat(3000);
+        public java.util.List<RagPassage> findPassages(String query, int limit) {
+            return java.util.List.of(new RagPassage(new RagEntry("id", "desc", "snippets/demo.md", "snippets"), 1, 20, "x".repeat(3000), 1.0));
         }
     }
 }
@@ -355,14 +355,9 @@ class VawkRefinementServiceTest {
         private final java.util.List<String> queries = new java.util.ArrayList<>();
 
         @Override
-        public java.util.List<RagEntry> findRelevant(String query, int limit) {
+        public java.util.List<RagPassage> findPassages(String query, int limit) {
             queries.add(query);
-            return java.util.List.of(new RagEntry("id", "desc", "snippets/demo.md", "snippets"));
-        }
-
-        @Override
-        public String readContent(RagEntry entry) {
-            return "x".repeat(2500);
+            return java.util.List.of(new RagPassage(new RagEntry("id", "desc", "snippets/demo.md", "snippets"), 1, 20, "x".repeat(2500), 1.0));
         }
 
         private java.util.List<String> getQueries() {
@@ -372,7 +367,7 @@ class VawkRefinementServiceTest {
 
     private static final class FailingRagRepository extends com.vawk.store.RagRepository {
         @Override
-        public java.util.List<RagEntry> findRelevant(String query, int limit) throws IOException {
+        public java.util.List<RagPassage> findPassages(String query, int limit) throws IOException {
             throw new IOException("boom");
         }
     }
@@ -0,0 +1,113 @@
+package com.vawk.runtime;
+
+import com.vawk.domain.AggregateSpec;
+import com.vawk.domain.AwkProgram;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AggregateRunnerTest {
+
+    private static final List<AggregateSpec> AGGREGATES = List.of(
+            new AggregateSpec("lines", "count", List.of(), null, "NF > 0 && $1 !~ /^#/"),
+            new AggregateSpec("level", "count", List.of(2), null, "NF > 0 && $1 !~ /^#/"),
+            new AggregateSpec("bytes", "sum", List.of(3, 2), 4, "NF >= 4"),
+            new AggregateSpec("largest", "max", List.of(3), 4, "NF >= 4"),
+            new AggregateSpec("smallest", "min", List.of(), 4, "NF >= 4"));
+
+    @TempDir
+    Path tempDir;
+
+    private final AwkRunner awkRunner = new AwkRunner(AwkRunner.EngineMode.INTERPRETER, 0, SpooledOutput.DEFAULT_THRESHOLD_CHARS, null);
+    private final AggregateRunner aggregateRunner = new AggregateRunner(awkRunner, new ParallelAwkRunner(awkRunner));
+
+    private String run(Path input, int shards) throws Exception {
+        Path unused = Files.writeString(tempDir.resolve("main.awk"), "{ print }", StandardCharsets.UTF_8);
+        AwkRunRequest request = new AwkRunRequest(new AwkProgram(unused, "{ print }", null), input, Map.of());
+        StringWriter out = new StringWriter();
+        StringWriter err = new StringWriter();
+
+        int exit = aggregateRunner.stream(request, AGGREGATES, shards, out, err);
+
+        assertThat(exit).as(err.toString()).isZero();
+        return out.toString();
+    }
+
+    @Test
+    void computesDeclaredAggregatesInFirstSeenKeyOrder() throws Exception {
+        Path input = Files.writeString(tempDir.resolve("input.log"),
+                "# header\nt1 INFO alice 10\nt2 ERROR bob 5\n\nt3 INFO bob 2.5\nt4 WARN alice 30\n", StandardCharsets.UTF_8);
+
+        assertThat(run(input, 1)).isEqualTo("lines=4\n"
+                + "level[INFO]=2\nlevel[ERROR]=1\nlevel[WARN]=1\n"
+                + "bytes[alice,INFO]=10\nbytes[bob,ERROR]=5\nbytes[bob,INFO]=2.5\nbytes[alice,WARN]=30\n"
+                + "largest[alice]=30\nlargest[bob]=5\n"
+                + "smallest=2.5\n");
+    }
+
+    @Test
+    void shardedRunMergesPartialsToTheSingleRunResult() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int index = 0; index < 2000; index++) {
+            text.append("t").append(index).append(index % 5 == 0 ? " ERROR " : " INFO ").append("user").append(index % 11)
+                    .append(' ').append(index % 97).append('\n');
+        }
+        Path input = Files.writeString(tempDir.resolve("big.log"), text.toString(), StandardCharsets.UTF_8);
+
+        assertThat(run(input, 6)).isEqualTo(run(input, 1));
+    }
+
+    @Test
+    void whereConditionsReadingNrRunInOnePass() throws Exception {
+        StringBuilder text = new StringBuilder("header\n");
+        for (int index = 1; index <= 400; index++) {
+            text.append("row ").append(index).append('\n');
+        }
+        Path input = Files.writeString(tempDir.resolve("rows.txt"), text.toString(), StandardCharsets.UTF_8);
+        List<AggregateSpec> aggregates = List.of(new AggregateSpec("rows", "count", List.of(), null, "NR > 1"));
+        AwkRunRequest request = new AwkRunRequest(new AwkProgram(input, "", null), input, Map.of());
+        StringWriter out = new StringWriter();
+
+        int exit = aggregateRunner.stream(request, aggregates, 4, out, new StringWriter());
+
+        assertThat(exit).isZero();
+        assertThat(out.toString()).isEqualTo("rows=400\n");
+        assertThat(aggregateRunner.rejectionReason(aggregates, 4)).hasValue("a where condition reads NR, which differs per shard");
+        assertThat(aggregateRunner.rejectionReason(aggregates, 1)).isEmpty();
+        assertThat(aggregateRunner.rejectionReason(List.of(new AggregateSpec("files", "count", List.of(), null, "FILENAME != \"\"")), 2))
+                .isPresent();
+        assertThat(aggregateRunner.rejectionReason(AGGREGATES, 4)).isEmpty();
+    }
+
+    @Test
+    void formatsResultsLikeAwkPrint() {
+        assertThat(AggregateRunner.format(400)).isEqualTo("400");
+        assertThat(AggregateRunner.format(2.5)).isEqualTo("2.5");
+        assertThat(AggregateRunner.format(0.1 + 0.2)).isEqualTo("0.3");
+        assertThat(AggregateRunner.format(123456.7)).isEqualTo("123457");
+        assertThat(AggregateRunner.format(999999.7)).isEqualTo("1e+06");
+        assertThat(AggregateRunner.format(1234567.5)).isEqualTo("1.23457e+06");
+        assertThat(AggregateRunner.format(-1234567.5)).isEqualTo("-1.23457e+06");
+        assertThat(AggregateRunner.format(0.0000123456)).isEqualTo("1.23456e-05");
+        assertThat(AggregateRunner.format(0.00015)).isEqualTo("0.00015");
+        assertThat(AggregateRunner.format(1.5e-120)).isEqualTo("1.5e-120");
+    }
+
+    @Test
+    void reportsInvalidDeclarations() {
+        assertThat(aggregateRunner.rejectionReason(null)).hasValue("spec.yaml declares no aggregates");
+        assertThat(aggregateRunner.rejectionReason(List.of(new AggregateSpec("total", "avg", List.of(), 2, null))))
+                .hasValueSatisfying(reason -> assertThat(reason).contains("sum, count, min, max"));
+        assertThat(aggregateRunner.rejectionReason(List.of(new AggregateSpec("total", "sum", List.of(1), null, null))))
+                .hasValueSatisfying(reason -> assertThat(reason).contains("valueField"));
+        assertThat(aggregateRunner.rejectionReason(AGGREGATES)).isEmpty();
+    }
+}
@@ -3,17 +3,26 @@ package com.vawk.runtime;
 import com.vawk.domain.AwkProgram;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class AwkRunnerTest {
 
     private final AwkRunner awkRunner = new AwkRunner();
 
+    private static AwkRunner runner(AwkRunner.EngineMode mode, long inProcessMaxInputBytes) {
+        return new AwkRunner(mode, inProcessMaxInputBytes, SpooledOutput.DEFAULT_THRESHOLD_CHARS, null);
+    }
+
     @Test
     void runsLogSummarizerAgainstBasicFixture() throws Exception {
         Path main = Path.of("main.awk").toAbsolutePath();
@@ -84,4 +93,261 @@ class AwkRunnerTest {
         assertEquals(0, result.getExitCode());
         assertEquals("demo", result.getStdout().trim());
     }
+
+    @Test
+    void streamsStdoutAndStderrIntoSinks() throws Exception {
+        Path programPath = Files.createTempFile("vawk-stream", ".awk");
+        String code = "BEGIN { print \"out\"; print \"err\" > \"/dev/stderr\" }";
+        Files.writeString(programPath, code, StandardCharsets.UTF_8);
+        AwkProgram program = new AwkProgram(programPath, code, null);
+        StringWriter stdout = new StringWriter();
+        StringWriter stderr = new StringWriter();
+
+        int exit = awkRunner.stream(new AwkRunRequest(program, null, null), stdout, stderr);
+
+        assertEquals(0, exit);
+        assertEquals("out", stdout.toString().trim());
+        assertEquals("err", stderr.toString().trim());
+    }
+
+    @Test
+    void drainsLargeStderrWithoutBlocking() throws Exception {
+        Path programPath = Files.createTempFile("vawk-stderr-flood", ".awk");
+        String code = "BEGIN { for (i = 0; i < 200000; i++) print \"noise \" i > \"/dev/stderr\"; print \"done\" }";
+        Files.writeString(programPath, code, StandardCharsets.UTF_8);
+        AwkProgram program = new AwkProgram(programPath, code, null);
+
+        AwkRunResult result = awkRunner.run(new AwkRunRequest(program, null, null));
+
+        assertEquals(0, result.getExitCode());
+        assertEquals("done", result.getStdout().trim());
+        assertTrue(result.getStderr().startsWith("noise 0"));
+    }
+
+    @Test
+    void forwardsStandardInputWhenNoInputFile() throws Exception {
+        Path programPath = Files.createTempFile("vawk-stdin", ".awk");
+        String code = "{ total += $1 } END { print total }";
+        Files.writeString(programPath, code, StandardCharsets.UTF_8);
+        AwkProgram program = new AwkProgram(programPath, code, null);
+        AwkRunRequest request = new AwkRunRequest(program, null, null);
+        request.setStandardInput(new ByteArrayInputStream("1\n2\n3\n".getBytes(StandardCharsets.UTF_8)));
+
+        AwkRunResult result = awkRunner.run(request);
+
+        assertEquals(0, result.getExitCode());
+        assertEquals("6", result.getStdout().trim());
+    }
+
+    @Test
+    void givesEmptyStandardInputWhenNoneProvided() throws Exception {
+        Path programPath = Files.createTempFile("vawk-no-stdin", ".awk");
+        String code = "{ lines++ } END { print lines + 0 }";
+        Files.writeString(programPath, code, StandardCharsets.UTF_8);
+        AwkProgram program = new AwkProgram(programPath, code, null);
+
+        AwkRunResult result = awkRunner.run(new AwkRunRequest(program, null, null));
+
+        assertEquals(0, result.getExitCode());
+        assertEquals("0", result.getStdout().trim());
+    }
+
+    @Test
+    void interpreterEngineMatchesProcessEngineOnFixture() throws Exception {
+        Path programPath = Path.of("tests/fixtures/employees.awk").toAbsolutePath();
+        AwkProgram program = new AwkProgram(programPath, Files.readString(programPath, StandardCharsets.UTF_8), null);
+        AwkRunRequest request = new AwkRunRequest(program, Path.of("tests/employees_raw.txt"), null);
+
+        AwkRunResult interpreted = runner(AwkRunner.EngineMode.INTERPRETER, 0).run(request);
+        AwkRunResult process = awkRunner.run(request);
+
+        assertEquals(process.getExitCode(), interpreted.getExitCode());
+        assertEquals(process.getStdout(), interpreted.getStdout());
+    }
+
+    @Test
+    void compiledEngineMatchesProcessEngineOnFixture() throws Exception {
+        Path programPath = Path.of("tests/fixtures/employees.awk").toAbsolutePath();
+        AwkProgram program = new AwkProgram(programPath, Files.readString(programPath, StandardCharsets.UTF_8), null);
+        AwkRunRequest request = new AwkRunRequest(program, Path.of("tests/employees_raw.txt"), null);
+        StringWriter compiled = new StringWriter();
+
+        int exit = new CompiledAwkEngine(new InterpretedAwkEngine(), Files.createTempDirectory("vawk-compiled")).stream(request, compiled, new StringWriter());
+        AwkRunResult process = awkRunner.run(request);
+
+        assertEquals(process.getExitCode(), exit);
+        assertEquals(process.getStdout(), compiled.toString());
+    }
+
+    @Test
+    void interpreterEngineReportsSyntaxErrorsLikeAwk() throws Exception {
+        Path programPath = Files.createTempFile("vawk-bad", ".awk");
+        Files.writeString(programPath, "BEGIN { print \"open }", StandardCharsets.UTF_8);
+        AwkProgram program = new AwkProgram(programPath, null, null);
+
+        AwkRunResult result = runner(AwkRunner.EngineMode.INTERPRETER, 0).run(new AwkRunRequest(program, null, null));
+
+        assertEquals(2, result.getExitCode());
+        assertTrue(result.getStderr().startsWith("awk: syntax error"));
+    }
+
+    @Test
+    void autoModeFallsBackToProcessForLargeInputs() throws Exception {
+        Path programPath = Files.createTempFile("vawk-auto", ".awk");
+        String code = "{ n++ } END { print n }";
+        Files.writeString(programPath, code, StandardCharsets.UTF_8);
+        Path input = Files.createTempFile("vawk-auto-input", ".txt");
+        Files.writeString(input, "a\nb\nc\n", StandardCharsets.UTF_8);
+        AwkProgram program = new AwkProgram(programPath, code, null);
+        AwkRunRequest request = new AwkRunRequest(program, input, null);
+
+        AwkRunResult inProcess = runner(AwkRunner.EngineMode.AUTO, 1024).run(request);
+        AwkRunResult forked = runner(AwkRunner.EngineMode.AUTO, 2).run(request);
+
+        assertEquals("3", inProcess.getStdout().trim());
+        assertEquals("3", forked.getStdout().trim());
+        assertEquals("interpreter", runner(AwkRunner.EngineMode.AUTO, 1024).engineFor(request));
+        assertEquals("compiled", runner(AwkRunner.EngineMode.AUTO, 2).engineFor(request));
+        assertEquals("process", runner(AwkRunner.EngineMode.PROCESS, 1024).engineFor(request));
+    }
+
+    @Test
+    void autoModeCompilesPromotedJobsAndForksWhatItCannotCompile(@org.junit.jupiter.api.io.TempDir Path tempDir) throws Exception {
+        Path jobDirectory = Files.createDirectories(tempDir.resolve("vawk").resolve("jobs").resolve("count"));
+        Path script = Files.writeString(jobDirectory.resolve("script.awk"), "{ n++ } END { print n }", StandardCharsets.UTF_8);
+        Path input = Files.writeString(tempDir.resolve("input.txt"), "a\nb\n", StandardCharsets.UTF_8);
+        AwkRunner auto = runner(AwkRunner.EngineMode.AUTO, 1024);
+
+        assertEquals("compiled", auto.engineFor(new AwkRunRequest(new AwkProgram(script, null, null), input, null)));
+
+        // One name used as both an array and a scalar is declined by the compiler.
+        Path mixed = Files.writeString(jobDirectory.resolve("mixed.awk"), "{ a[1] = 1 } END { a = 2 }", StandardCharsets.UTF_8);
+        assertEquals("process", auto.engineFor(new AwkRunRequest(new AwkProgram(mixed, null, null), input, null)));
+    }
+
+    @Test
+    void parsesEngineModeFromConfiguration() throws Exception {
+        Path programPath = Files.createTempFile("vawk-mode", ".awk");
+        Files.writeString(programPath, "BEGIN { print 1 + 1 }", StandardCharsets.UTF_8);
+        AwkProgram program = new AwkProgram(programPath, null, null);
+
+        AwkRunResult result = new AwkRunner(" Interpreter ", 0, 1 << 20, 0).run(new AwkRunRequest(program, null, null));
+
+        assertEquals("2", result.getStdout().trim());
+    }
+
+    @Test
+    void stopsProcessTreeAtWallClockLimit() throws Exception {
+        AwkRunRequest request = request("BEGIN { system(\"sleep 30\"); print \"late\" }");
+        request.setLimits(new AwkRunLimits(Duration.ofMillis(300), 0, 0));
+        long started = System.nanoTime();
+
+        AwkRunResult result = awkRunner.run(request);
+
+        assertEquals(AwkRunLimit.WALL_CLOCK, result.getLimitExceeded());
+        assertEquals(AwkRunLimitExceededException.EXIT_STATUS, result.getExitCode());
+        assertTrue(Duration.ofNanos(System.nanoTime() - started).toSeconds() < 10, "the sleeping child kept the run alive");
+        assertTrue(result.getStderr().contains("wall-clock limit of 300ms exceeded"));
+    }
+
+    @Test
+    void stopsProcessAtOutputLimit() throws Exception {
+        AwkRunRequest request = request("BEGIN { while (1) print \"0123456789\" }");
+        request.setLimits(new AwkRunLimits(Duration.ZERO, 1000, 0));
+
+        AwkRunResult result = awkRunner.run(request);
+
+        assertEquals(AwkRunLimit.OUTPUT_BYTES, result.getLimitExceeded());
+        assertEquals(1000, result.getStdout().length());
+    }
+
+    @Test
+    void stopsProcessAtCpuLimit() throws Exception {
+        AwkRunRequest request = request("BEGIN { while (1) n++ }");
+        request.setLimits(new AwkRunLimits(Duration.ofSeconds(60), 0, 1));
+
+        AwkRunResult result = awkRunner.run(request);
+
+        assertEquals(AwkRunLimit.CPU_TIME, result.getLimitExceeded());
+    }
+
+    @Test
+    void reportsOutsideKillUnderCpuLimitAsExitStatus() throws Exception {
+        AwkRunRequest request = request("BEGIN { system(\"kill -9 $PPID\") }");
+        request.setLimits(new AwkRunLimits(Duration.ofSeconds(60), 0, 5));
+
+        AwkRunResult result = awkRunner.run(request);
+
+        assertNull(result.getLimitExceeded());
+        assertEquals(128 + 9, result.getExitCode());
+    }
+
+    @Test
+    void cancelsInProcessRunsAtLimits() throws Exception {
+        AwkRunRequest looping = request("BEGIN { while (1) n++ }");
+        looping.setLimits(new AwkRunLimits(Duration.ofMillis(200), 0, 0));
+        AwkRunRequest chatty = request("BEGIN { for (;;) print \"0123456789\" }");
+        chatty.setLimits(new AwkRunLimits(Duration.ofSeconds(60), 500, 0));
+        AwkRunner interpreter = runner(AwkRunner.EngineMode.INTERPRETER, 0);
+
+        assertEquals(AwkRunLimit.WALL_CLOCK, interpreter.run(looping).getLimitExceeded());
+        AwkRunResult flooded = interpreter.run(chatty);
+        assertEquals(AwkRunLimit.OUTPUT_BYTES, flooded.getLimitExceeded());
+        assertEquals(500, flooded.getStdout().length());
+    }
+
+    @Test
+    void limitsLeaveNormalRunsUntouched() throws Exception {
+        AwkRunRequest request = request("BEGIN { print \"ok\" }");
+        request.setLimits(new AwkRunLimits(Duration.ofSeconds(30), 1000, 30));
+
+        AwkRunResult process = awkRunner.run(request);
+        AwkRunResult interpreted = runner(AwkRunner.EngineMode.INTERPRETER, 0).run(request);
+
+        assertEquals(new AwkRunResult(0, "ok\n", ""), process);
+        assertEquals(process, interpreted);
+    }
+
+    @Test
+    void spoolsLargeOutputAndStreamsItBack() throws Exception {
+        AwkRunRequest request = request("BEGIN { for (i = 1; i <= 1000; i++) print i }");
+
+        try (AwkRunResult result = new AwkRunner(AwkRunner.EngineMode.PROCESS, 0, 100, null).run(request);
+             java.util.stream.Stream<String> lines = result.stdoutLines()) {
+            assertEquals(0, result.getExitCode());
+            assertEquals(500500L, lines.mapToLong(Long::parseLong).sum());
+        }
+    }
+
+    @Test
+    void answersRepeatedRunsFromRunCache(@org.junit.jupiter.api.io.TempDir Path tempDir) throws Exception {
+        Path counter = tempDir.resolve("runs.txt");
+        AwkRunRequest request = request("BEGIN { print \"ran\" >> \"" + counter + "\"; print \"ok\" }");
+        AwkRunRequest repeatable = request("{ n++ } END { print n + 0 }");
+        Path input = tempDir.resolve("input.txt");
+        Files.writeString(input, "a\nb\n", StandardCharsets.UTF_8);
+        repeatable.setInputFile(input);
+        AwkRunner cached = new AwkRunner(AwkRunner.EngineMode.PROCESS, 0, 1 << 10, new RunCache(tempDir.resolve("cache"), 1 << 20));
+
+        cached.run(request);
+        cached.run(request);
+        AwkRunResult first = cached.run(repeatable);
+        long entries = Files.list(tempDir.resolve("cache")).filter(Files::isDirectory).count();
+        AwkRunResult second = cached.run(repeatable);
+        repeatable.setCacheable(false);
+        AwkRunResult fresh = cached.run(repeatable);
+
+        assertEquals(2, Files.readAllLines(counter).size(), "programs that write files must not be cached");
+        assertEquals(1, entries);
+        assertEquals(first, second);
+        assertFalse(first.isCached());
+        assertTrue(second.isCached());
+        assertEquals("2", fresh.getStdout().trim());
+    }
+
+    private static AwkRunRequest request(String code) throws Exception {
+        Path programPath = Files.createTempFile("vawk-limits", ".awk");
+        Files.writeString(programPath, code, StandardCharsets.UTF_8);
+        return new AwkRunRequest(new AwkProgram(programPath, code, null), null, null);
+    }
 }
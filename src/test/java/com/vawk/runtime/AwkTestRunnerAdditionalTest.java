@@ -8,6 +8,7 @@ import org.junit.jupiter.api.io.TempDir;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
 
@@ -91,4 +92,290 @@ class AwkTestRunnerAdditionalTest {
         assertThat(runs.get(0).isPassed()).isFalse();
         assertThat(runs.get(0).getDiff()).isNotNull();
     }
+
+    @Test
+    void reportsRunawayProgramAsLimitFailure(@TempDir Path tempDir) throws Exception {
+        Path program = tempDir.resolve("loop.awk");
+        Files.writeString(program, "BEGIN { while (1) n++ }", StandardCharsets.UTF_8);
+        Path input = tempDir.resolve("input.txt");
+        Files.writeString(input, "x", StandardCharsets.UTF_8);
+        Path expected = tempDir.resolve("expect.txt");
+        Files.writeString(expected, "ok", StandardCharsets.UTF_8);
+
+        AwkTestCase testCase = new AwkTestCase("loop", input, expected, Map.of(), null);
+        AwkTestRunner runner = new AwkTestRunner(new AwkRunner(), new AwkRunLimits(Duration.ofMillis(300), 0, 0));
+
+        List<com.vawk.domain.SessionLog.TestRun> runs = runner.runTests(List.of(testCase), new AwkProgram(program, "", null));
+
+        assertThat(runs.get(0).isPassed()).isFalse();
+        assertThat(runs.get(0).getFailureKind()).isEqualTo(com.vawk.domain.SessionLog.FailureKind.LIMIT_EXCEEDED);
+        assertThat(runs.get(0).getDiff()).contains("wall-clock limit");
+    }
+
+    @Test
+    void reportsWrongOutputAsMismatch(@TempDir Path tempDir) throws Exception {
+        Path program = tempDir.resolve("bad.awk");
+        Files.writeString(program, "BEGIN { print \"bad\" }", StandardCharsets.UTF_8);
+        Path input = tempDir.resolve("input.txt");
+        Files.writeString(input, "x", StandardCharsets.UTF_8);
+        Path expected = tempDir.resolve("expect.txt");
+        Files.writeString(expected, "ok", StandardCharsets.UTF_8);
+
+        AwkTestCase testCase = new AwkTestCase("diff", input, expected, Map.of(), null);
+        List<com.vawk.domain.SessionLog.TestRun> runs = new AwkTestRunner(new AwkRunner()).runTests(List.of(testCase), new AwkProgram(program, "", null));
+
+        assertThat(runs.get(0).getFailureKind()).isEqualTo(com.vawk.domain.SessionLog.FailureKind.MISMATCH);
+    }
+
+    @Test
+    void diffStartsAtFirstMismatchOfLargeOutput(@TempDir Path tempDir) throws Exception {
+        Path program = tempDir.resolve("count.awk");
+        Files.writeString(program, "BEGIN { for (i = 1; i <= 5000; i++) print (i == 4000 ? \"changed\" : i) }", StandardCharsets.UTF_8);
+        Path input = tempDir.resolve("input.txt");
+        Files.writeString(input, "x", StandardCharsets.UTF_8);
+        StringBuilder lines = new StringBuilder();
+        for (int i = 1; i <= 5000; i++) {
+            lines.append(i).append('\n');
+        }
+        Path expected = tempDir.resolve("expect.txt");
+        Files.writeString(expected, lines, StandardCharsets.UTF_8);
+
+        AwkTestCase testCase = new AwkTestCase("large", input, expected, Map.of(), null);
+        List<com.vawk.domain.SessionLog.TestRun> runs = new AwkTestRunner(new AwkRunner()).runTests(List.of(testCase), new AwkProgram(program, "", null));
+
+        assertThat(runs.get(0).isPassed()).isFalse();
+        assertThat(runs.get(0).getDiff()).startsWith("First difference at expected line 4000, actual line 4000")
+                .contains("@@ -3997,7 +3997,7 @@", "-4000", "+changed")
+                .doesNotContain("\n 3000\n");
+    }
+
+    @Test
+    void spillsFullDiffToSideFileWhenLogGetsExcerpt(@TempDir Path tempDir) throws Exception {
+        Path program = tempDir.resolve("shift.awk");
+        Files.writeString(program, "BEGIN { for (i = 1; i <= 100; i++) print (i % 10 == 0 ? \"x\" : i) }", StandardCharsets.UTF_8);
+        Path input = tempDir.resolve("input.txt");
+        Files.writeString(input, "x", StandardCharsets.UTF_8);
+        StringBuilder lines = new StringBuilder();
+        for (int i = 1; i <= 100; i++) {
+            lines.append(i).append('\n');
+        }
+        Path expected = tempDir.resolve("expect.txt");
+        Files.writeString(expected, lines, StandardCharsets.UTF_8);
+        Path diffs = tempDir.resolve("diffs");
+
+        AwkTestCase testCase = new AwkTestCase("many hunks", input, expected, Map.of(), null);
+        AwkTestRunner runner = new AwkTestRunner(new AwkRunner(), AwkTestRunner.DEFAULT_LIMITS, new DiffLimits(0, 1000, 2, 4096), diffs);
+        com.vawk.domain.SessionLog.TestRun run = runner.runTests(List.of(testCase), new AwkProgram(program, "", null)).get(0);
+
+        assertThat(run.isPassed()).isFalse();
+        assertThat(run.getDiffFile()).isNotNull();
+        Path diffFile = Path.of(run.getDiffFile());
+        assertThat(diffFile.getParent()).isEqualTo(diffs);
+        assertThat(diffFile.getFileName().toString()).startsWith("many_hunks-").endsWith(".diff");
+        assertThat(run.getDiff()).contains("-10", "+x", "left out of the log; full diff in " + diffFile).doesNotContain("-30\n");
+        assertThat(Files.readString(diffFile)).contains("-10", "-50", "-100").doesNotContain("left out");
+
+        com.vawk.domain.SessionLog.TestRun again = runner.runTests(List.of(testCase), new AwkProgram(program, "", null)).get(0);
+        assertThat(again.getDiffFile()).isEqualTo(run.getDiffFile());
+        try (java.util.stream.Stream<Path> files = Files.list(diffs)) {
+            assertThat(files).containsExactly(diffFile);
+        }
+        Files.writeString(program, "BEGIN { for (i = 1; i <= 100; i++) print i }", StandardCharsets.UTF_8);
+        assertThat(runner.runTests(List.of(testCase), new AwkProgram(program, "", null)).get(0).isPassed()).isTrue();
+        assertThat(diffFile).doesNotExist();
+    }
+
+    @Test
+    void schedulesFailingThenUnknownThenLongestFirst() {
+        List<AwkTestCase> cases = List.of(
+                namedCase("short"), namedCase("red"), namedCase("long"), namedCase("new"), namedCase("medium"));
+        com.vawk.domain.TestTimings timings = new com.vawk.domain.TestTimings();
+        timings.record("short", 10, true);
+        timings.record("red", 5, false);
+        timings.record("long", 900, true);
+        timings.record("medium", 200, true);
+
+        assertThat(AwkTestRunner.schedule(cases, timings)).containsExactly(1, 3, 2, 4, 0);
+        assertThat(AwkTestRunner.schedule(cases, null)).containsExactly(0, 1, 2, 3, 4);
+    }
+
+    @Test
+    void recordsDurationAndThroughputOfEachRun(@TempDir Path tempDir) throws Exception {
+        Path program = tempDir.resolve("ok.awk");
+        Files.writeString(program, "BEGIN { print \"ok\" }", StandardCharsets.UTF_8);
+        Path input = tempDir.resolve("input.txt");
+        Files.writeString(input, "x", StandardCharsets.UTF_8);
+        Path expected = tempDir.resolve("expect.txt");
+        Files.writeString(expected, "ok", StandardCharsets.UTF_8);
+        TestRunOptions options = TestRunOptions.defaults();
+        options.setTimings(new com.vawk.domain.TestTimings());
+
+        AwkTestCase testCase = new AwkTestCase("timed", input, expected, Map.of(), null);
+
+        List<com.vawk.domain.SessionLog.TestRun> runs = new AwkTestRunner(new AwkRunner())
+                .runTests(List.of(testCase), new AwkProgram(program, "", null), options);
+
+        assertThat(runs.get(0).getDurationMillis()).isNotNull().isNotNegative();
+        assertThat(runs.get(0).getCpuMillis()).isNotNull().isNotNegative();
+        assertThat(runs.get(0).getInputBytes()).isEqualTo(1);
+        assertThat(runs.get(0).getOutputBytes()).isEqualTo(3);
+        assertThat(runs.get(0).getLinesPerSecond()).isNull();
+        AwkTestRunner.measureThroughput(runs.get(0), testCase);
+        assertThat(runs.get(0).getLinesPerSecond()).isPositive();
+    }
+
+    @Test
+    void leavesRunsAnsweredByTheRunCacheUntimed(@TempDir Path tempDir) throws Exception {
+        Path program = tempDir.resolve("ok.awk");
+        Files.writeString(program, "{ print }", StandardCharsets.UTF_8);
+        Path input = tempDir.resolve("input.txt");
+        Files.writeString(input, "ok\n", StandardCharsets.UTF_8);
+        Path expected = tempDir.resolve("expect.txt");
+        Files.writeString(expected, "ok\n", StandardCharsets.UTF_8);
+        AwkTestRunner runner = new AwkTestRunner(new AwkRunner(AwkRunner.EngineMode.PROCESS, 0, 1 << 10,
+                new RunCache(tempDir.resolve("cache"), 1 << 20)));
+        List<AwkTestCase> cases = List.of(new AwkTestCase("cached", input, expected, Map.of(), null));
+        AwkProgram awkProgram = new AwkProgram(program, "{ print }", null);
+
+        com.vawk.domain.SessionLog.TestRun first = runner.runTests(cases, awkProgram).get(0);
+        com.vawk.domain.SessionLog.TestRun second = runner.runTests(cases, awkProgram).get(0);
+
+        assertThat(first.getCached()).isNull();
+        assertThat(first.getDurationMillis()).isNotNull();
+        assertThat(second.isPassed()).isTrue();
+        assertThat(second.getCached()).isTrue();
+        assertThat(second.getDurationMillis()).isNull();
+        assertThat(second.getLinesPerSecond()).isNull();
+    }
+
+    @Test
+    void countsLinesIncludingUnterminatedLast(@TempDir Path tempDir) throws Exception {
+        assertThat(AwkTestRunner.countLines(Files.writeString(tempDir.resolve("a"), "x\ny\n"))).isEqualTo(2);
+        assertThat(AwkTestRunner.countLines(Files.writeString(tempDir.resolve("b"), "x\ny"))).isEqualTo(2);
+        assertThat(AwkTestRunner.countLines(Files.writeString(tempDir.resolve("c"), ""))).isZero();
+    }
+
+    @Test
+    void multiplexesTinyFixturesIntoOneProcessWithPerCaseVerdicts(@TempDir Path tempDir) throws Exception {
+        Path program = tempDir.resolve("main.awk");
+        Files.writeString(program, "{ print FNR \": \" toupper($0) }", StandardCharsets.UTF_8);
+        List<AwkTestCase> cases = List.of(
+                fixture(tempDir, "one", "a\nb\n", "1: A\n2: B\n"),
+                fixture(tempDir, "two", "c\n", "1: C\n"),
+                fixture(tempDir, "empty", "", ""),
+                fixture(tempDir, "wrong", "d\n", "1: X\n"));
+        CountingAwkRunner awkRunner = new CountingAwkRunner();
+        TestRunOptions options = TestRunOptions.defaults();
+        options.setJobs(1);
+        options.setMultiplex(true);
+
+        List<com.vawk.domain.SessionLog.TestRun> runs = new AwkTestRunner(awkRunner).runTests(cases, new AwkProgram(program, "", null), options);
+
+        assertThat(awkRunner.calls).isEqualTo(1);
+        assertThat(runs).extracting(com.vawk.domain.SessionLog.TestRun::getName).containsExactly("one", "two", "empty", "wrong");
+        assertThat(runs).extracting(com.vawk.domain.SessionLog.TestRun::isPassed).containsExactly(true, true, true, false);
+        assertThat(runs.get(3).getFailureKind()).isEqualTo(com.vawk.domain.SessionLog.FailureKind.MISMATCH);
+        assertThat(runs.get(3).getDiff()).contains("-1: X").contains("+1: D");
+        assertThat(runs.get(0).getDurationMillis()).isNotNull();
+    }
+
+    @Test
+    void fallsBackToOneProcessPerCaseWhenGroupRunFails(@TempDir Path tempDir) throws Exception {
+        Path program = tempDir.resolve("main.awk");
+        Files.writeString(program, "{ print $1, ($0 ~ $1) }", StandardCharsets.UTF_8);
+        List<AwkTestCase> cases = List.of(fixture(tempDir, "good", "ok\n", "ok 1\n"), fixture(tempDir, "bad", "(\n", "( 1\n"));
+        CountingAwkRunner awkRunner = new CountingAwkRunner();
+        TestRunOptions options = TestRunOptions.defaults();
+        options.setJobs(1);
+        options.setMultiplex(true);
+
+        List<com.vawk.domain.SessionLog.TestRun> runs = new AwkTestRunner(awkRunner).runTests(cases, new AwkProgram(program, "", null), options);
+
+        assertThat(awkRunner.calls).isEqualTo(3);
+        assertThat(runs).extracting(com.vawk.domain.SessionLog.TestRun::isPassed).containsExactly(true, false);
+        assertThat(runs.get(1).getFailureKind()).isEqualTo(com.vawk.domain.SessionLog.FailureKind.ERROR);
+    }
+
+    @Test
+    void groupsOnlyCasesSharingAnAcceptedProgramAndVariables(@TempDir Path tempDir) throws Exception {
+        Path program = Files.writeString(tempDir.resolve("main.awk"), "{ print $1 }");
+        Path stateful = Files.writeString(tempDir.resolve("count.awk"), "{ n++ } END { print n }");
+        AwkTestCase first = fixture(tempDir, "a", "x\n", "x\n");
+        AwkTestCase second = fixture(tempDir, "b", "y\n", "y\n");
+        AwkTestCase otherVariables = fixture(tempDir, "c", "z\n", "z\n");
+        otherVariables.setVariables(Map.of("FS", ","));
+        AwkTestCase override = fixture(tempDir, "d", "w\n", "1\n");
+        override.setProgramOverride(stateful);
+        AwkTestCase third = fixture(tempDir, "e", "v\n", "v\n");
+        List<AwkTestCase> cases = List.of(first, second, otherVariables, override, third);
+
+        List<List<Integer>> units = AwkTestRunner.multiplexUnits(cases, new AwkProgram(program, "", null), List.of(0, 1, 2, 3, 4), 1);
+
+        assertThat(units).containsExactly(List.of(0, 1, 4), List.of(2), List.of(3));
+        assertThat(AwkTestRunner.multiplexUnits(cases, new AwkProgram(program, "", null), List.of(0, 1, 2, 3, 4), 2))
+                .containsExactly(List.of(0, 1), List.of(2), List.of(3), List.of(4));
+    }
+
+    @Test
+    void neverGroupsCasesThatOverrideTheProgram(@TempDir Path tempDir) throws Exception {
+        Path program = Files.writeString(tempDir.resolve("main.awk"), "{ print $1 }");
+        Path override = Files.writeString(tempDir.resolve("other.awk"), "{ print $2 }");
+        AwkTestCase first = fixture(tempDir, "a", "x 1\n", "1\n");
+        AwkTestCase second = fixture(tempDir, "b", "y 2\n", "2\n");
+        first.setProgramOverride(override);
+        second.setProgramOverride(override);
+
+        assertThat(AwkTestRunner.multiplexUnits(List.of(first, second), new AwkProgram(program, "", null), List.of(0, 1), 1))
+                .containsExactly(List.of(0), List.of(1));
+    }
+
+    private static AwkTestCase fixture(Path directory, String name, String input, String expected) throws Exception {
+        Path inputPath = Files.writeString(directory.resolve(name + ".in"), input, StandardCharsets.UTF_8);
+        Path expectedPath = Files.writeString(directory.resolve(name + ".out"), expected, StandardCharsets.UTF_8);
+        return new AwkTestCase(name, inputPath, expectedPath, Map.of(), null);
+    }
+
+    private static final class CountingAwkRunner extends AwkRunner {
+        private int calls;
+
+        @Override
+        public synchronized AwkRunResult run(AwkRunRequest request) throws java.io.IOException, InterruptedException {
+            calls++;
+            return super.run(request);
+        }
+    }
+
+    private static AwkTestCase namedCase(String name) {
+        AwkTestCase testCase = new AwkTestCase();
+        testCase.setName(name);
+        return testCase;
+    }
+
+    @Test
+    void runsCasesConcurrentlyInDeclarationOrder(@TempDir Path tempDir) throws Exception {
+        Path slow = tempDir.resolve("slow.awk");
+        Files.writeString(slow, "BEGIN { system(\"sleep 0.5\"); print \"slow\" }", StandardCharsets.UTF_8);
+        Path fast = tempDir.resolve("fast.awk");
+        Files.writeString(fast, "BEGIN { print \"fast\" }", StandardCharsets.UTF_8);
+        Path input = tempDir.resolve("input.txt");
+        Files.writeString(input, "x", StandardCharsets.UTF_8);
+        Path expectSlow = tempDir.resolve("expect_slow.txt");
+        Files.writeString(expectSlow, "slow", StandardCharsets.UTF_8);
+        Path expectFast = tempDir.resolve("expect_fast.txt");
+        Files.writeString(expectFast, "fast", StandardCharsets.UTF_8);
+        List<AwkTestCase> cases = List.of(
+                new AwkTestCase("first", input, expectSlow, Map.of(), slow),
+                new AwkTestCase("second", input, expectSlow, Map.of(), slow),
+                new AwkTestCase("third", input, expectFast, Map.of(), fast),
+                new AwkTestCase("fourth", input, expectFast, Map.of(), fast));
+        TestRunOptions options = TestRunOptions.defaults();
+        options.setJobs(4);
+        long started = System.nanoTime();
+
+        List<com.vawk.domain.SessionLog.TestRun> runs = new AwkTestRunner(new AwkRunner()).runTests(cases, new AwkProgram(fast, "", null), options);
+
+        assertThat(runs).extracting(com.vawk.domain.SessionLog.TestRun::getName).containsExactly("first", "second", "third", "fourth");
+        assertThat(runs).allMatch(com.vawk.domain.SessionLog.TestRun::isPassed);
+        assertThat(Duration.ofNanos(System.nanoTime() - started)).isLessThan(Duration.ofMillis(950));
+    }
 }
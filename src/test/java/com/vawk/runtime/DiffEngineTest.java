@@ -0,0 +1,86 @@
+package com.vawk.runtime;
+
+import com.github.difflib.DiffUtils;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DiffEngineTest {
+
+    @Test
+    void usesMyersWithinBudget() throws Exception {
+        List<String> original = List.of("a", "b", "c");
+        List<String> revised = List.of("a", "x", "c");
+
+        DiffEngine.Result result = new DiffEngine(1_000).diff(original, revised);
+
+        assertThat(result.fellBack()).isFalse();
+        assertThat(result.patch().getDeltas()).hasSize(1);
+        assertThat(DiffUtils.patch(original, result.patch())).isEqualTo(revised);
+    }
+
+    @Test
+    void fallsBackToPatienceOverBudget() throws Exception {
+        List<String> original = numbered("line", 2_000);
+        List<String> revised = new ArrayList<>(original);
+        for (int index = 0; index < revised.size(); index += 3) {
+            revised.set(index, "changed " + index);
+        }
+
+        DiffEngine.Result result = new DiffEngine(10_000).diff(original, revised);
+
+        assertThat(result.fellBack()).isTrue();
+        assertThat(DiffUtils.patch(original, result.patch())).isEqualTo(revised);
+    }
+
+    @Test
+    void zeroBudgetNeverFallsBack() {
+        DiffEngine.Result result = new DiffEngine(0).diff(numbered("a", 300), numbered("b", 300));
+
+        assertThat(result.fellBack()).isFalse();
+    }
+
+    @Test
+    void patienceDiffReproducesRevisedSide() throws Exception {
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            List<String> original = randomLines(random);
+            List<String> revised = randomLines(random);
+
+            List<String> patched = DiffUtils.patch(original, DiffUtils.diff(original, revised, new PatienceDiff<>()));
+
+            assertThat(patched).as("%s -> %s", original, revised).isEqualTo(revised);
+        }
+    }
+
+    @Test
+    void patienceDiffAnchorsOnUniqueLines() {
+        List<String> original = List.of("}", "unique one", "}", "unique two", "}");
+        List<String> revised = List.of("}", "unique one", "}", "inserted", "}", "unique two", "}");
+
+        assertThat(DiffUtils.diff(original, revised, new PatienceDiff<>()).getDeltas())
+                .singleElement()
+                .satisfies(delta -> assertThat(delta.getTarget().getLines()).containsAnyOf("inserted"));
+    }
+
+    private static List<String> numbered(String prefix, int count) {
+        List<String> lines = new ArrayList<>();
+        for (int index = 0; index < count; index++) {
+            lines.add(prefix + " " + index);
+        }
+        return lines;
+    }
+
+    private static List<String> randomLines(Random random) {
+        List<String> lines = new ArrayList<>();
+        int count = random.nextInt(12);
+        for (int index = 0; index < count; index++) {
+            lines.add(Character.toString((char) ('a' + random.nextInt(5))));
+        }
+        return lines;
+    }
+}
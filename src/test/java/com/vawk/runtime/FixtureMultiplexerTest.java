@@ -0,0 +1,91 @@
+package com.vawk.runtime;
+
+import com.vawk.domain.AwkProgram;
+import com.vawk.runtime.awk.AwkScript;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FixtureMultiplexerTest {
+
+    private static Optional<List<String>> split(String output, List<Path> inputs) throws Exception {
+        Optional<List<SpooledOutput>> outputs = FixtureMultiplexer.split(new StringReader(output), "vawk-test", inputs,
+                () -> new SpooledOutput(null, Long.MAX_VALUE));
+        return outputs.map(spooled -> spooled.stream().map(SpooledOutput::toString).toList());
+    }
+
+    @Test
+    void acceptsPerRecordProgramsAndRefusesCrossFileState() {
+        assertThat(FixtureMultiplexer.rejectionReason(AwkScript.parse("BEGIN { FS = \",\" } { print FNR, FILENAME != \"\", $2 }"))).isEmpty();
+        assertThat(FixtureMultiplexer.rejectionReason(AwkScript.parse("{ n++ } END { print n }"))).contains("the program has an END block");
+        assertThat(FixtureMultiplexer.rejectionReason(AwkScript.parse("{ print NR }"))).get().asString().contains("NR");
+        assertThat(FixtureMultiplexer.rejectionReason(AwkScript.parse("/a/,/b/"))).contains("the program uses range patterns");
+        assertThat(FixtureMultiplexer.rejectionReason(AwkScript.parse("BEGIN { print \"header\" } { print }"))).contains("the BEGIN action prints");
+        assertThat(FixtureMultiplexer.rejectionReason(AwkScript.parse("{ print | \"sort\" }"))).isPresent();
+    }
+
+    @Test
+    void splitsWrappedRunBackIntoPerFileOutputs(@TempDir Path tempDir) throws Exception {
+        Path first = Files.writeString(tempDir.resolve("first.txt"), "a 1\nb 2\n");
+        Path empty = Files.writeString(tempDir.resolve("empty.txt"), "");
+        Path last = Files.writeString(tempDir.resolve("last.txt"), "c 3");
+        String source = FixtureMultiplexer.wrap("{ printf \"%s:%s\", FNR, $1 } $2 > 1 { print \"\" }", "vawk-test");
+        Path program = Files.writeString(tempDir.resolve("wrapped.awk"), source, StandardCharsets.UTF_8);
+        List<Path> inputs = List.of(first, empty, last);
+
+        for (AwkRunner.EngineMode mode : List.of(AwkRunner.EngineMode.PROCESS, AwkRunner.EngineMode.INTERPRETER)) {
+            AwkRunRequest request = new AwkRunRequest(new AwkProgram(program, source, null), first, Map.of());
+            request.setAdditionalInputFiles(List.of(empty, last));
+            AwkRunResult result = new AwkRunner(mode, 0, SpooledOutput.DEFAULT_THRESHOLD_CHARS, null).run(request);
+
+            assertThat(result.getExitCode()).as(mode.name()).isZero();
+            assertThat(split(result.getStdout(), inputs)).as(mode.name())
+                    .contains(List.of("1:a2:b\n", "", "1:c\n"));
+        }
+    }
+
+    @Test
+    void refusesOutputThatCannotBeAttributed(@TempDir Path tempDir) throws Exception {
+        Path first = Files.writeString(tempDir.resolve("first.txt"), "x\n");
+        Path second = Files.writeString(tempDir.resolve("second.txt"), "y\n");
+        String tag = "\u001evawk-test:";
+
+        assertThat(split("stray" + tag + first + "\nx\n" + tag + second + "\ny\n", List.of(first, second))).isEmpty();
+        assertThat(split(tag + first + "\nx\n", List.of(first, second))).isEmpty();
+        assertThat(split(tag + second + "\ny\n" + tag + first + "\nx\n", List.of(first, second))).isEmpty();
+        assertThat(split(tag + first + "\nx\n" + tag + second + "\ny\n", List.of(first, second)))
+                .isEqualTo(Optional.of(List.of("x\n", "y\n")));
+        assertThat(split(tag + first + "\nx\u001e" + tag + second + "\ny", List.of(first, second)))
+                .isEqualTo(Optional.of(List.of("x\u001e", "y")));
+        assertThat(split(tag + first, List.of(first, second))).isEmpty();
+    }
+
+    @Test
+    void spillsLargeSharesToSpoolFilesInsteadOfHoldingThem(@TempDir Path tempDir) throws Exception {
+        Path first = Files.writeString(tempDir.resolve("first.txt"), "x\n");
+        Path second = Files.writeString(tempDir.resolve("second.txt"), "y\n");
+        String tag = "\u001evawk-test:";
+        String large = "z".repeat(20_000);
+
+        Optional<List<SpooledOutput>> outputs = FixtureMultiplexer.split(new StringReader(tag + first + "\n" + large + tag + second + "\ny\n"),
+                "vawk-test", List.of(first, second), () -> new SpooledOutput(tempDir.resolve("spool"), 1024));
+
+        assertThat(outputs).isPresent();
+        assertThat(outputs.get().get(0).isSpooled()).isTrue();
+        assertThat(outputs.get().get(0).toString()).isEqualTo(large);
+        assertThat(outputs.get().get(1).isSpooled()).isFalse();
+        for (SpooledOutput output : outputs.get()) {
+            output.delete();
+        }
+        assertThat(tempDir.resolve("spool")).isEmptyDirectory();
+    }
+}
@@ -0,0 +1,115 @@
+package com.vawk.runtime;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OutputComparatorTest {
+
+    @Test
+    void comparesLikeTrimmedStrings() throws Exception {
+        String[][] pairs = {
+                {"a\nb\n", "  a\nb"}, {"a  b", "a b"}, {"a \tb\n\n", "a \tb"}, {"", " \n"}, {"a", "ab"}, {"a \n", "a \nx"},
+                {"\n\n a\n \nb \n\n", "a\n \nb"}, {"a\n\nb", "a\nb"}, {"a\n \nb", "a\n\nb"},
+                {"a\r\nb\r\n", "a\nb"}, {"a\r\n", "a"}, {"a\rb", "a\nb"}, {"\r\na", "a"}, {"a\r\n\r\nb", "a\r\n\nb"}
+        };
+        for (String[] pair : pairs) {
+            boolean equal = OutputComparator.firstMismatch(reader(pair[0]), reader(pair[1])).isEmpty();
+            assertThat(equal).as("%s vs %s", pair[0], pair[1]).isEqualTo(pair[0].trim().equals(pair[1].trim()));
+        }
+    }
+
+    @Test
+    void keepsInteriorCarriageReturnsSignificant() throws Exception {
+        Optional<OutputComparator.Mismatch> mismatch = OutputComparator.firstMismatch(reader("a\r\nb\r\n"), reader("a\nb"));
+
+        assertThat(mismatch).contains(new OutputComparator.Mismatch(0, 1, 1));
+        assertThat(OutputComparator.firstMismatch(reader("a\nb\r\n"), reader("a\nb"))).isEmpty();
+    }
+
+    @Test
+    void reportsFirstMismatchWithRealLineNumbers() throws Exception {
+        Optional<OutputComparator.Mismatch> mismatch = OutputComparator.firstMismatch(reader("\n\na\nb\nc\n"), reader("a\nx\nc\n"));
+
+        assertThat(mismatch).contains(new OutputComparator.Mismatch(1, 4, 2));
+    }
+
+    @Test
+    void reportsMissingLinesPastTheShorterSide() throws Exception {
+        Optional<OutputComparator.Mismatch> mismatch = OutputComparator.firstMismatch(reader("a\nb\nc"), reader("a\nb"));
+
+        assertThat(mismatch).contains(new OutputComparator.Mismatch(2, 3, 3));
+    }
+
+    @Test
+    void diffCoversOnlyWindowAroundMismatch() throws Exception {
+        StringBuilder expected = new StringBuilder();
+        StringBuilder actual = new StringBuilder();
+        for (int i = 1; i <= 1000; i++) {
+            expected.append(i).append('\n');
+            actual.append(i == 10 ? "ten" : Integer.toString(i)).append('\n');
+        }
+        OutputComparator.Mismatch mismatch = OutputComparator.firstMismatch(reader(expected.toString()), reader(actual.toString())).orElseThrow();
+
+        String diff = OutputComparator.windowedDiff(() -> reader(expected.toString()), () -> reader(actual.toString()), mismatch,
+                new DiffLimits(0, 200, 10, 1024));
+
+        assertThat(diff).startsWith("First difference at expected line 10, actual line 10\n")
+                .contains("@@ -7,7 +7,7 @@", "-10", "+ten")
+                .doesNotContain(" 500\n");
+    }
+
+    @Test
+    void diffNotesWhenWindowIsCutShort() throws Exception {
+        StringBuilder actual = new StringBuilder();
+        for (int i = 1; i <= 70; i++) {
+            actual.append("line ").append(i).append('\n');
+        }
+        OutputComparator.Mismatch mismatch = OutputComparator.firstMismatch(reader("other"), reader(actual.toString())).orElseThrow();
+
+        String diff = OutputComparator.windowedDiff(() -> reader("other"), () -> reader(actual.toString()), mismatch,
+                new DiffLimits(0, 20, 10, 1024));
+
+        assertThat(diff).contains("+line 20")
+                .doesNotContain("+line 21")
+                .endsWith("diff limited to 20 lines after the first difference");
+    }
+
+    @Test
+    void diffNotesPatienceFallback() throws Exception {
+        OutputComparator.Mismatch mismatch = OutputComparator.firstMismatch(reader("a\nb\nc"), reader("x\ny\nz")).orElseThrow();
+
+        String diff = OutputComparator.windowedDiff(() -> reader("a\nb\nc"), () -> reader("x\ny\nz"), mismatch, new DiffLimits(1, 20, 10, 1024));
+
+        assertThat(diff).contains("(patience diff: cost budget exceeded)", "-a", "+z");
+    }
+
+    @Test
+    void excerptKeepsDiffThatFits() {
+        String diff = "First difference at expected line 1, actual line 1\n--- expected\n+++ actual\n@@ -1,1 +1,1 @@\n-a\n+b";
+
+        assertThat(OutputComparator.excerpt(diff, new DiffLimits(0, 20, 1, 1024))).isSameAs(diff);
+    }
+
+    @Test
+    void excerptCapsHunksAndBytes() {
+        StringBuilder diff = new StringBuilder("First difference at expected line 1, actual line 1\n--- expected\n+++ actual");
+        for (int hunk = 1; hunk <= 5; hunk++) {
+            diff.append("\n@@ -").append(hunk * 10).append(",1 +").append(hunk * 10).append(",1 @@\n-old ").append(hunk).append("\n+new ").append(hunk);
+        }
+
+        String byHunks = OutputComparator.excerpt(diff.toString(), new DiffLimits(0, 20, 2, 1024));
+        String byBytes = OutputComparator.excerpt(diff.toString(), new DiffLimits(0, 20, 10, 80));
+
+        assertThat(byHunks).contains("+new 2").doesNotContain("@@ -30").endsWith("... 9 more diff lines (3 hunks) left out of the log");
+        assertThat(byBytes).startsWith("First difference").doesNotContain("@@").endsWith("(5 hunks) left out of the log");
+    }
+
+    private static BufferedReader reader(String text) {
+        return new BufferedReader(new StringReader(text));
+    }
+}
@@ -0,0 +1,111 @@
+package com.vawk.runtime;
+
+import com.vawk.domain.AwkProgram;
+import com.vawk.domain.VawkSpec;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.StringWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ParallelAwkRunnerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path input() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int index = 0; index < 500; index++) {
+            text.append("user").append(index % 7).append(' ').append("x".repeat(index % 13)).append(' ').append(index).append('\n');
+        }
+        return Files.writeString(tempDir.resolve("input.txt"), text.toString(), StandardCharsets.UTF_8);
+    }
+
+    private AwkRunRequest request(String code, Path input) throws Exception {
+        Path programPath = Files.writeString(tempDir.resolve("program.awk"), code, StandardCharsets.UTF_8);
+        return new AwkRunRequest(new AwkProgram(programPath, code, null), input, Map.of("tag", "t"));
+    }
+
+    private static VawkSpec statelessSpec() {
+        VawkSpec spec = new VawkSpec();
+        spec.setStateless(true);
+        return spec;
+    }
+
+    @Test
+    void cutsInputIntoContiguousRecordAlignedShards() throws Exception {
+        Path input = input();
+        byte[] bytes = Files.readAllBytes(input);
+
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+            List<ParallelAwkRunner.Shard> shards = ParallelAwkRunner.shards(channel, 4);
+
+            assertThat(shards).hasSize(4);
+            assertThat(shards.get(0).start()).isZero();
+            assertThat(shards.get(3).end()).isEqualTo(bytes.length);
+            for (int index = 0; index < shards.size(); index++) {
+                assertThat(bytes[(int) shards.get(index).end() - 1]).isEqualTo((byte) '\n');
+                if (index > 0) {
+                    assertThat(shards.get(index).start()).isEqualTo(shards.get(index - 1).end());
+                }
+            }
+        }
+    }
+
+    @Test
+    void neverCreatesEmptyShards() throws Exception {
+        Path input = Files.writeString(tempDir.resolve("small.txt"), "only one record without newline", StandardCharsets.UTF_8);
+
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+            assertThat(ParallelAwkRunner.shards(channel, 8)).containsExactly(new ParallelAwkRunner.Shard(0, 31));
+        }
+    }
+
+    @Test
+    void parallelRunProducesSameOutputAsSingleRun() throws Exception {
+        AwkRunner awkRunner = new AwkRunner(AwkRunner.EngineMode.INTERPRETER, 0, SpooledOutput.DEFAULT_THRESHOLD_CHARS, null);
+        AwkRunRequest request = request("BEGIN { OFS = \"|\" } $3 % 3 == 0 { print tag, $1, length($2), $3 * 2 }", input());
+        StringWriter parallel = new StringWriter();
+
+        int exit = new ParallelAwkRunner(awkRunner).stream(request, 4, parallel, new StringWriter());
+
+        assertThat(exit).isZero();
+        assertThat(parallel.toString()).isEqualTo(awkRunner.run(request).getStdout());
+    }
+
+    @Test
+    void laterShardsSpillToDiskAndStillJoinInOrder() throws Exception {
+        AwkRunner awkRunner = new AwkRunner(AwkRunner.EngineMode.INTERPRETER, 0, 64, null);
+        AwkRunRequest request = request("{ print $3, $1 }", input());
+        StringWriter parallel = new StringWriter();
+
+        int exit = new ParallelAwkRunner(awkRunner).stream(request, 4, parallel, new StringWriter());
+
+        assertThat(exit).isZero();
+        assertThat(parallel.toString()).isEqualTo(new AwkRunner(AwkRunner.EngineMode.INTERPRETER, 0, SpooledOutput.DEFAULT_THRESHOLD_CHARS, null).run(request).getStdout());
+    }
+
+    @Test
+    void rejectsUndeclaredSpecsAndWholeInputPrograms() throws Exception {
+        ParallelAwkRunner runner = new ParallelAwkRunner(new AwkRunner());
+        Path input = input();
+
+        assertThat(runner.rejectionReason(new VawkSpec(), request("{ print }", input))).hasValueSatisfying(reason -> assertThat(reason).contains("stateless"));
+        assertThat(runner.rejectionReason(statelessSpec(), request("{ n++ } END { print n }", input))).hasValueSatisfying(reason -> assertThat(reason).contains("END"));
+        assertThat(runner.rejectionReason(statelessSpec(), request("{ print NR, $0 }", input))).hasValueSatisfying(reason -> assertThat(reason).contains("NR"));
+        assertThat(runner.rejectionReason(statelessSpec(), request("BEGIN { print \"header\" } { print }", input))).isPresent();
+        assertThat(runner.rejectionReason(statelessSpec(), request("{ print > \"out.txt\" }", input)))
+                .hasValueSatisfying(reason -> assertThat(reason).contains("outside standard output"));
+        assertThat(runner.rejectionReason(statelessSpec(), request("{ print | \"sort\" }", input))).isPresent();
+        assertThat(runner.rejectionReason(statelessSpec(), request("{ system(\"echo \" $1) }", input))).isPresent();
+        assertThat(runner.rejectionReason(statelessSpec(), request("BEGIN { FS = \" \" } { print $1 }", input))).isEmpty();
+    }
+}
@@ -0,0 +1,99 @@
+package com.vawk.runtime;
+
+import com.vawk.domain.AwkProgram;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RunCacheTest {
+
+    @Test
+    void keyDependsOnInputContentAndVariables(@TempDir Path tempDir) throws Exception {
+        RunCache cache = new RunCache(tempDir.resolve("runs"), 1 << 20);
+        Path input = tempDir.resolve("input.txt");
+        Files.writeString(input, "a b\n", StandardCharsets.UTF_8);
+        AwkProgram program = new AwkProgram(tempDir.resolve("main.awk"), "", "hash");
+
+        String first = cache.key(new AwkRunRequest(program, input, Map.of("FS", ",", "x", "1")), "hash", "process").orElseThrow();
+        String reordered = cache.key(new AwkRunRequest(program, input, Map.of("x", "1", "FS", ",")), "hash", "process").orElseThrow();
+        String otherVariables = cache.key(new AwkRunRequest(program, input, Map.of("FS", ",")), "hash", "process").orElseThrow();
+        Files.writeString(input, "a c\n", StandardCharsets.UTF_8);
+        Files.setLastModifiedTime(input, FileTime.fromMillis(Files.getLastModifiedTime(input).toMillis() + 2000));
+        String otherEngine = cache.key(new AwkRunRequest(program, input, Map.of("FS", ",", "x", "1")), "hash", "interpreter").orElseThrow();
+        String editedInput = cache.key(new AwkRunRequest(program, input, Map.of("FS", ",", "x", "1")), "hash", "process").orElseThrow();
+
+        assertThat(reordered).isEqualTo(first);
+        assertThat(otherEngine).isNotEqualTo(first);
+        assertThat(otherVariables).isNotEqualTo(first);
+        assertThat(editedInput).isNotEqualTo(first);
+        assertThat(Files.readString(tempDir.resolve("runs/inputs.tsv"))).contains(input.toAbsolutePath().toString());
+    }
+
+    @Test
+    void refusesPipedStandardInput(@TempDir Path tempDir) throws Exception {
+        RunCache cache = new RunCache(tempDir, 1 << 20);
+        AwkRunRequest request = new AwkRunRequest(new AwkProgram(tempDir.resolve("main.awk"), "", "hash"), null, null);
+        request.setStandardInput(System.in);
+
+        assertThat(cache.key(request, "hash", "process")).isEmpty();
+    }
+
+    @Test
+    void storesAndRestoresResults(@TempDir Path tempDir) throws Exception {
+        RunCache cache = new RunCache(tempDir.resolve("runs"), 1 << 20);
+
+        cache.store("k", new AwkRunResult(3, "out\n", "err\n"));
+        Optional<AwkRunResult> restored = cache.lookup("k", tempDir.resolve("spool"), 1 << 10);
+
+        assertThat(restored).contains(new AwkRunResult(3, "out\n", "err\n"));
+        assertThat(cache.lookup("missing", tempDir.resolve("spool"), 1 << 10)).isEmpty();
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedEntriesOverBudget(@TempDir Path tempDir) throws Exception {
+        Path root = tempDir.resolve("runs");
+        RunCache cache = new RunCache(root, 400);
+        String output = "x".repeat(90);
+
+        cache.store("old", new AwkRunResult(0, output, ""));
+        Files.setLastModifiedTime(root.resolve("old"), FileTime.fromMillis(1000));
+        cache.store("used", new AwkRunResult(0, output, ""));
+        Files.setLastModifiedTime(root.resolve("used"), FileTime.fromMillis(2000));
+        cache.store("middle", new AwkRunResult(0, output, ""));
+        Files.setLastModifiedTime(root.resolve("middle"), FileTime.fromMillis(3000));
+        cache.lookup("used", tempDir.resolve("spool"), 1 << 10);
+        cache.store("new", new AwkRunResult(0, output, ""));
+        cache.store("newer", new AwkRunResult(0, output, ""));
+        cache.store("newest", new AwkRunResult(0, output, ""));
+
+        assertThat(Files.exists(root.resolve("old"))).isFalse();
+        assertThat(Files.exists(root.resolve("middle"))).isFalse();
+        assertThat(Files.exists(root.resolve("used"))).isTrue();
+        assertThat(Files.exists(root.resolve("newest"))).isTrue();
+    }
+
+    @Test
+    void keepsARunningTotalOfEntrySizes(@TempDir Path tempDir) throws Exception {
+        Path root = tempDir.resolve("runs");
+        RunCache cache = new RunCache(root, 1 << 20);
+
+        cache.store("a", new AwkRunResult(0, "x".repeat(100), ""));
+        cache.store("b", new AwkRunResult(1, "y".repeat(50), "e"));
+        cache.store("a", new AwkRunResult(0, "z".repeat(10), ""));
+
+        assertThat(Files.readAllLines(root.resolve("inputs.tsv"))).contains("#bytes\t63");
+        Files.setLastModifiedTime(root.resolve("b"), FileTime.fromMillis(1000));
+        RunCache reopened = new RunCache(root, 80);
+        reopened.store("c", new AwkRunResult(0, "w".repeat(20), ""));
+        assertThat(Files.readAllLines(root.resolve("inputs.tsv"))).contains("#bytes\t32");
+        assertThat(Files.exists(root.resolve("b"))).isFalse();
+    }
+}
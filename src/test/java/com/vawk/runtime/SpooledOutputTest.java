@@ -0,0 +1,59 @@
+package com.vawk.runtime;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SpooledOutputTest {
+
+    @Test
+    void keepsSmallOutputInMemory(@TempDir Path tempDir) throws Exception {
+        SpooledOutput output = new SpooledOutput(tempDir.resolve("spool"), 64);
+        output.write("a\nb\n");
+        output.close();
+
+        assertThat(output.isSpooled()).isFalse();
+        assertThat(Files.exists(tempDir.resolve("spool"))).isFalse();
+        assertThat(output.toString()).isEqualTo("a\nb\n");
+    }
+
+    @Test
+    void spoolsToDiskPastThresholdAndReadsBackLazily(@TempDir Path tempDir) throws Exception {
+        SpooledOutput output = new SpooledOutput(tempDir, 8);
+        output.write("h\u00e9llo\n");
+        output.write("w\u00f6rld\n");
+        output.write("tail");
+        output.close();
+
+        assertThat(output.isSpooled()).isTrue();
+        assertThat(output.length()).isEqualTo(16);
+        assertThat(output.byteLength()).isEqualTo(18);
+        try (Stream<String> lines = output.lines()) {
+            assertThat(lines.collect(Collectors.toList())).isEqualTo(List.of("h\u00e9llo", "w\u00f6rld", "tail"));
+        }
+        try (InputStream in = output.openStream()) {
+            assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("h\u00e9llo\nw\u00f6rld\ntail");
+        }
+        assertThat(output.toString()).isEqualTo("h\u00e9llo\nw\u00f6rld\ntail");
+    }
+
+    @Test
+    void deleteRemovesSpoolFile(@TempDir Path tempDir) throws Exception {
+        SpooledOutput output = new SpooledOutput(tempDir, 1);
+        output.write("spilled");
+        output.close();
+
+        assertThat(Files.list(tempDir).count()).isEqualTo(1);
+        output.delete();
+        assertThat(Files.list(tempDir).count()).isZero();
+    }
+}
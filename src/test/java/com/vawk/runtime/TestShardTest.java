@@ -0,0 +1,52 @@
+package com.vawk.runtime;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TestShardTest {
+
+    @Test
+    void parsesShardText() {
+        TestShard shard = TestShard.parse("2/4");
+
+        assertThat(shard.getIndex()).isEqualTo(2);
+        assertThat(shard.getCount()).isEqualTo(4);
+        assertThat(shard).hasToString("2/4");
+    }
+
+    @Test
+    void rejectsInvalidShards() {
+        for (String text : new String[] {"0/4", "5/4", "1/0", "two/4", "3", "", "1/"}) {
+            assertThatThrownBy(() -> TestShard.parse(text)).as(text).isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    @Test
+    void everyCaseFallsInExactlyOneShard() {
+        List<TestShard> shards = List.of(new TestShard(1, 3), new TestShard(2, 3), new TestShard(3, 3));
+        List<Integer> sizes = new ArrayList<>(List.of(0, 0, 0));
+        for (int index = 0; index < 300; index++) {
+            String name = "case-" + index;
+            int owners = 0;
+            for (int shard = 0; shard < shards.size(); shard++) {
+                if (shards.get(shard).includes(name)) {
+                    owners++;
+                    sizes.set(shard, sizes.get(shard) + 1);
+                }
+            }
+            assertThat(owners).as(name).isEqualTo(1);
+        }
+        assertThat(sizes).allMatch(size -> size > 50);
+    }
+
+    @Test
+    void assignmentIsStable() {
+        assertThat(new TestShard(1, 4).includes("basic")).isEqualTo(TestShard.parse("1/4").includes("basic"));
+        assertThat(new TestShard(1, 1).includes("anything")).isTrue();
+    }
+}
@@ -0,0 +1,102 @@
+package com.vawk.runtime.awk;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AwkCompilerTest {
+
+    private static final String INPUT = "alice 10 GET /a\nbob 4 POST /b\nalice 7 GET /c\n\ncarol x GET /a\n";
+
+    @TempDir
+    Path tempDir;
+
+    private static String run(CompiledAwkScript script, String input) throws Exception {
+        StringWriter out = new StringWriter();
+        StringWriter err = new StringWriter();
+        int exit = script.execute(List.of(), Map.of(), stdin(input), out, err);
+        return exit + "|" + out + "|" + err;
+    }
+
+    private static String interpret(AwkScript script, String input) throws Exception {
+        StringWriter out = new StringWriter();
+        StringWriter err = new StringWriter();
+        int exit = new AwkInterpreter(script).execute(List.of(), Map.of(), stdin(input), out, err);
+        return exit + "|" + out + "|" + err;
+    }
+
+    private static ByteArrayInputStream stdin(String input) {
+        return new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void compiledProgramsBehaveLikeTheInterpreter() throws Exception {
+        List<String> programs = List.of(
+                "{ total += $2; count[$1]++ } $3 ~ /GET/ { gets++ } END { for (k in count) print k, count[k]; print total, gets, NR }",
+                "NF == 0 { next } { $2 = $2 * 2; print; print length($0), toupper(substr($1, 1, 1)) }",
+                "/bob/,/carol/ { print NR \": \" $0 } END { printf \"%5.2f|%s|%d\\n\", NR / 3, x, y + 1 }",
+                "function fib(n) { return n < 2 ? n : fib(n - 1) + fib(n - 2) }\n"
+                        + "function fill(a, n,   i) { for (i = 1; i <= n; i++) a[i] = i * i }\n"
+                        + "BEGIN { fill(sq, 4); print fib(15), sq[4], length(sq); s = \"a.b.c\"; n = gsub(/\\./, \"-\", s); print n, s }",
+                "{ line = $0; while ((i = index(line, \"/\")) > 0) { n++; line = substr(line, i + 1) } } END { print n; exit n % 4 }",
+                "BEGIN { FS = \" \"; OFS = \"-\" } { $1 = $1; sub(/^a/, \"A\"); print } END { print (\"10\" < \"9\"), (10 < 9), NR \"\" NF }");
+
+        AwkCompiler compiler = new AwkCompiler(null);
+        for (String source : programs) {
+            AwkScript script = AwkScript.parse(source);
+            Optional<CompiledAwkScript> compiled = compiler.compile(script, Integer.toHexString(source.hashCode()));
+
+            assertThat(compiled).as(source).isPresent();
+            assertThat(run(compiled.get(), INPUT)).as(source).isEqualTo(interpret(script, INPUT));
+        }
+    }
+
+    @Test
+    void keepsNumericVariablesAsDoublesThatStillPrintEmptyBeforeAssignment() throws Exception {
+        AwkScript script = AwkScript.parse("{ sum += $2; last = $1; n = n + 1 } END { print \"[\" max \"]\", sum, n, last; max = sum / n }");
+
+        CompiledAwkScript compiled = new AwkCompiler(null).compile(script, "numeric").orElseThrow();
+
+        assertThat(compiled.getNumericVariables()).containsExactlyInAnyOrder("sum", "n", "max");
+        assertThat(run(compiled, INPUT)).isEqualTo("0|[] 21 5 carol\n|");
+    }
+
+    @Test
+    void reusesClassFilesCachedOnDiskByHash() throws Exception {
+        AwkScript first = AwkScript.parse("BEGIN { print \"first\" }");
+        AwkScript second = AwkScript.parse("BEGIN { print \"second\" }");
+
+        new AwkCompiler(tempDir).compile(first, "abc123").orElseThrow();
+        CompiledAwkScript reloaded = new AwkCompiler(tempDir).compile(second, "abc123").orElseThrow();
+
+        assertThat(tempDir.resolve("AwkProgram_abc123-g" + AwkCompiler.GENERATOR_VERSION + ".class")).isRegularFile();
+        assertThat(tempDir.resolve("AwkProgram_abc123-g" + AwkCompiler.GENERATOR_VERSION + ".java")).isRegularFile();
+        assertThat(run(reloaded, "")).isEqualTo("0|first\n|");
+    }
+
+    @Test
+    void declinesProgramsThatNeedDynamicTyping() {
+        AwkScript script = AwkScript.parse("{ x[1] = 1 } END { x = 2 }");
+
+        assertThat(new AwkCompiler(null).compile(script, "dynamic")).isEmpty();
+    }
+
+    @Test
+    void regeneratesWhenCachedClassFileIsCorrupt() throws Exception {
+        Files.writeString(tempDir.resolve("AwkProgram_bad-g" + AwkCompiler.GENERATOR_VERSION + ".class"), "not a class");
+
+        CompiledAwkScript compiled = new AwkCompiler(tempDir).compile(AwkScript.parse("BEGIN { print 1 + 1 }"), "bad").orElseThrow();
+
+        assertThat(run(compiled, "")).isEqualTo("0|2\n|");
+    }
+}
@@ -0,0 +1,32 @@
+package com.vawk.runtime.awk;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AwkFormatTest {
+
+    @Test
+    void formatsNumbersLikeC() {
+        assertThat(AwkFormat.formatNumber("%.6g", 0.1 + 0.2)).isEqualTo("0.3");
+        assertThat(AwkFormat.formatNumber("%.6g", 1e-7)).isEqualTo("1e-07");
+        assertThat(AwkFormat.formatNumber("%.2f", 2.675)).isEqualTo("2.67");
+        assertThat(AwkFormat.formatNumber("%.0f", 2.5)).isEqualTo("2");
+    }
+
+    @Test
+    void appliesFlagsWidthAndPrecision() {
+        List<AwkValue> arguments = List.of(AwkValue.of(-3), AwkValue.of(3), AwkValue.of("abcdef"), AwkValue.of(10));
+
+        assertThat(AwkFormat.sprintf("[%+5d][% d][%.3s][%-4o]", arguments, "%.6g")).isEqualTo("[   -3][ 3][abc][12  ]");
+    }
+
+    @Test
+    void takesWidthFromArgumentsAndToleratesMissingOnes() {
+        List<AwkValue> arguments = List.of(AwkValue.of(6), AwkValue.of("x"));
+
+        assertThat(AwkFormat.sprintf("%*s|%s|%d", arguments, "%.6g")).isEqualTo("     x||0");
+    }
+}
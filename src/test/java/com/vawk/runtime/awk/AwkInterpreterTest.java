@@ -0,0 +1,184 @@
+package com.vawk.runtime.awk;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AwkInterpreterTest {
+
+    @TempDir
+    Path tempDir;
+
+    private String stdout;
+    private String stderr;
+
+    private int run(String program, String input, Map<String, String> variables, String... operands) throws Exception {
+        StringWriter out = new StringWriter();
+        StringWriter err = new StringWriter();
+        ByteArrayInputStream stdin = new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8));
+        int exit = new AwkInterpreter(AwkScript.parse(program)).execute(List.of(operands), variables, stdin, out, err);
+        stdout = out.toString();
+        stderr = err.toString();
+        return exit;
+    }
+
+    @Test
+    void splitsFieldsAndCountsRecords() throws Exception {
+        int exit = run("{ print NR, NF, $2 } END { print NR }", "a b c\nd e\n", Map.of());
+
+        assertThat(exit).isZero();
+        assertThat(stdout).isEqualTo("1 3 b\n2 2 e\n2\n");
+    }
+
+    @Test
+    void honoursFieldSeparatorsAndRebuildsRecord() throws Exception {
+        run("BEGIN { FS = \":\"; OFS = \"-\" } { $2 = \"X\"; print; print NF }", "a:b:c\n", Map.of());
+
+        assertThat(stdout).isEqualTo("a-X-c\n3\n");
+    }
+
+    @Test
+    void aggregatesWithAssociativeArrays() throws Exception {
+        String program = "{ total[$1] += $2; count[$1]++ }\n"
+                + "END { for (k in total) printf \"%s %d %.2f\\n\", k, count[k], total[k] / count[k] }";
+
+        run(program, "a 1\nb 4\na 2\n", Map.of());
+
+        assertThat(stdout).isEqualTo("a 2 1.50\nb 1 4.00\n");
+    }
+
+    @Test
+    void supportsMultiDimensionalSubscriptsAndMembership() throws Exception {
+        run("BEGIN { m[1, 2] = \"x\"; if ((1, 2) in m) print \"yes\"; if (!((2, 1) in m)) print \"no\"; delete m[1, 2]; print length(m) }",
+                "", Map.of());
+
+        assertThat(stdout).isEqualTo("yes\nno\n0\n");
+    }
+
+    @Test
+    void matchesRegexPatternsAndRanges() throws Exception {
+        run("/^start/,/^end/ { print } $1 ~ /[[:digit:]]+/ { print \"num\", $1 }",
+                "x\nstart\n42\nend\ny\n", Map.of());
+
+        assertThat(stdout).isEqualTo("start\n42\nnum 42\nend\n");
+    }
+
+    @Test
+    void formatsWithPrintf() throws Exception {
+        run("BEGIN { printf \"%5s|%-5d|%05.1f|%x|%c|%e|%%\\n\", \"ab\", 42, 3.14159, 255, 65, 1234.5 }", "", Map.of());
+
+        assertThat(stdout).isEqualTo("   ab|42   |003.1|ff|A|1.234500e+03|%\n");
+    }
+
+    @Test
+    void convertsNumbersWithOutputFormat() throws Exception {
+        run("BEGIN { x = 0.1 + 0.2; print x; OFMT = \"%.2f\"; print x; print 10 / 2; y = x \"\"; print y }", "", Map.of());
+
+        assertThat(stdout).isEqualTo("0.3\n0.30\n5\n0.3\n");
+    }
+
+    @Test
+    void comparesStrnumFieldsNumerically() throws Exception {
+        run("{ print ($1 < $2) ? \"lt\" : \"ge\" }", "10 9\n2 10\nabc abd\n", Map.of());
+
+        assertThat(stdout).isEqualTo("ge\nlt\nlt\n");
+    }
+
+    @Test
+    void runsStringBuiltins() throws Exception {
+        String program = "BEGIN { s = \"hello world\"; n = gsub(/o/, \"0\", s); print n, s;"
+                + " sub(/w(0)/, \"[&]\", s); print s; print index(s, \"l\"), length(s), substr(s, 2, 3);"
+                + " print toupper(\"ab\") tolower(\"CD\"); print match(\"foobar\", /ob+/), RSTART, RLENGTH;"
+                + " k = split(\"a,b,,c\", parts, \",\"); print k, parts[4]; print sprintf(\"%03d\", 7) }";
+
+        run(program, "", Map.of());
+
+        assertThat(stdout).isEqualTo("2 hell0 w0rld\nhell0 [w0]rld\n3 13 ell\nABcd\n3 3 2\n4 c\n007\n");
+    }
+
+    @Test
+    void callsUserFunctionsWithArraysByReference() throws Exception {
+        String program = "function fill(arr, n,   i) { for (i = 1; i <= n; i++) arr[i] = i * i; return n }\n"
+                + "function fact(n) { return n <= 1 ? 1 : n * fact(n - 1) }\n"
+                + "BEGIN { fill(squares, 3); print squares[3], fact(5), i == \"\" }";
+
+        run(program, "", Map.of());
+
+        assertThat(stdout).isEqualTo("9 120 1\n");
+    }
+
+    @Test
+    void appliesVariablesAndOperandAssignments() throws Exception {
+        Path first = Files.writeString(tempDir.resolve("first.txt"), "1\n");
+        Path second = Files.writeString(tempDir.resolve("second.txt"), "2\n");
+
+        run("BEGIN { print \"begin\", label } { print label, $1, FILENAME == ARGV[ARGC - 1], FNR }",
+                "", Map.of("label", "v"), first.toString(), "label=w", second.toString());
+
+        assertThat(stdout).isEqualTo("begin v\nv 1 0 1\nw 2 1 1\n");
+    }
+
+    @Test
+    void readsStandardInputWhenNoOperands() throws Exception {
+        run("{ sum += $1 } END { print sum }", "1\n2\n3\n", Map.of());
+
+        assertThat(stdout).isEqualTo("6\n");
+    }
+
+    @Test
+    void supportsNextAndExitWithStatus() throws Exception {
+        int exit = run("NR == 1 { next } { print } NR == 3 { exit 3 } END { print \"end\" }", "a\nb\nc\nd\n", Map.of());
+
+        assertThat(exit).isEqualTo(3);
+        assertThat(stdout).isEqualTo("b\nc\nend\n");
+    }
+
+    @Test
+    void readsParagraphRecords() throws Exception {
+        run("BEGIN { RS = \"\" } { print NR \": \" $1 \"/\" $NF }", "a b\nc\n\n\nd e\n", Map.of());
+
+        assertThat(stdout).isEqualTo("1: a/c\n2: d/e\n");
+    }
+
+    @Test
+    void writesRedirectedOutputAndReadsWithGetline() throws Exception {
+        Path file = tempDir.resolve("out.txt");
+        String program = "BEGIN { f = \"" + file + "\"; print \"one\" > f; print \"two\" > f; close(f);"
+                + " while ((getline line < f) > 0) n++; print n, line; print \"err\" > \"/dev/stderr\" }";
+
+        run(program, "", Map.of());
+
+        assertThat(Files.readString(file)).isEqualTo("one\ntwo\n");
+        assertThat(stdout).isEqualTo("2 two\n");
+        assertThat(stderr).isEqualTo("err\n");
+    }
+
+    @Test
+    void reportsMissingInputFileAsFatal() throws Exception {
+        int exit = run("{ print }", "", Map.of(), tempDir.resolve("missing.txt").toString());
+
+        assertThat(exit).isEqualTo(AwkInterpreter.FATAL_EXIT_STATUS);
+        assertThat(stderr).startsWith("awk: ").contains("missing.txt");
+    }
+
+    @Test
+    void scriptCanBeExecutedRepeatedly() throws Exception {
+        AwkScript script = AwkScript.parse("{ n++ } END { print n + 0 }");
+        AwkInterpreter interpreter = new AwkInterpreter(script);
+
+        for (String input : List.of("a\n", "a\nb\n")) {
+            StringWriter out = new StringWriter();
+            interpreter.execute(List.of(), Map.of(), new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), out, new StringWriter());
+            assertThat(out.toString()).isEqualTo(input.length() / 2 + "\n");
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.vawk.runtime.awk;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AwkScriptTest {
+
+    @Test
+    void describesProgramStructure() {
+        AwkScript script = AwkScript.parse("BEGIN { FS = \",\" }\n{ total += $2 }\nEND { print total, NR }");
+
+        assertThat(script.hasBeginBlock()).isTrue();
+        assertThat(script.hasMainRules()).isTrue();
+        assertThat(script.hasEndBlock()).isTrue();
+        assertThat(script.usesVariable("NR")).isTrue();
+        assertThat(script.usesVariable("total")).isTrue();
+        assertThat(script.usesVariable("FNR")).isFalse();
+        assertThat(script.usesGetline()).isFalse();
+        assertThat(script.usesExit()).isFalse();
+    }
+
+    @Test
+    void detectsGetlineAndExit() {
+        AwkScript script = AwkScript.parse("{ while ((getline line < \"f\") > 0) n++; if (n > 3) exit 1 }");
+
+        assertThat(script.hasBeginBlock()).isFalse();
+        assertThat(script.usesGetline()).isTrue();
+        assertThat(script.usesExit()).isTrue();
+    }
+
+    @Test
+    void detectsRangePatternsAndPrintingBeginActions() {
+        assertThat(AwkScript.parse("/a/,/b/ { print }").usesRangePatterns()).isTrue();
+        assertThat(AwkScript.parse("BEGIN { if (x) { print \"h\" } }").beginMayPrint()).isTrue();
+        assertThat(AwkScript.parse("BEGIN { FS = \",\" } { print $1 }").beginMayPrint()).isFalse();
+        assertThat(AwkScript.parse("BEGIN { FS = \",\" } { print $1 }").usesRangePatterns()).isFalse();
+    }
+
+    @Test
+    void detectsProgramsThatReachOutsideTheirInput() {
+        assertThat(AwkScript.parse("{ n[$1]++ } END { for (k in n) print k, n[k] }").isRepeatable()).isTrue();
+        assertThat(AwkScript.parse("{ print > \"out.txt\" }").isRepeatable()).isFalse();
+        assertThat(AwkScript.parse("BEGIN { system(\"date\") }").isRepeatable()).isFalse();
+        assertThat(AwkScript.parse("BEGIN { srand(); print rand() }").isRepeatable()).isFalse();
+        assertThat(AwkScript.parse("BEGIN { while ((getline line < \"other\") > 0) print line }").isRepeatable()).isFalse();
+        assertThat(AwkScript.parse("BEGIN { print ENVIRON[\"HOME\"] }").isRepeatable()).isFalse();
+    }
+
+    @Test
+    void parsesNewlinesSemicolonsAndCommentsLikeAwk() {
+        AwkScript script = AwkScript.parse("# header\n/x/ ||\n/y/ { print $1, # trailing\n $2 }\n\nfunction f(a) { return a }");
+
+        assertThat(script.hasMainRules()).isTrue();
+    }
+
+    @Test
+    void reportsSyntaxErrorsWithLineNumbers() {
+        assertThatThrownBy(() -> AwkScript.parse("BEGIN {\n  print \"ok\"\n  x = = 1\n}"))
+                .isInstanceOf(AwkSyntaxException.class)
+                .hasMessageContaining("line 3");
+    }
+
+    @Test
+    void rejectsUnterminatedStrings() {
+        assertThatThrownBy(() -> AwkScript.parse("BEGIN { print \"open }"))
+                .isInstanceOf(AwkSyntaxException.class);
+    }
+}
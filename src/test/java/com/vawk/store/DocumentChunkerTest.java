@@ -0,0 +1,42 @@
+package com.vawk.store;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DocumentChunkerTest {
+
+    @Test
+    void keepsShortDocumentsInOnePassage() {
+        assertThat(DocumentChunker.chunks("# Title\n\nbody\n")).containsExactly(new DocumentChunker.Chunk(1, 3, "# Title\n\nbody"));
+        assertThat(DocumentChunker.chunks("  \n")).isEmpty();
+        assertThat(DocumentChunker.chunks(null)).isEmpty();
+    }
+
+    @Test
+    void cutsLongDocumentsIntoOverlappingPassages() {
+        String body = IntStream.rangeClosed(1, 50).mapToObj(line -> "line " + line).collect(Collectors.joining("\n"));
+
+        List<DocumentChunker.Chunk> chunks = DocumentChunker.chunks(body);
+
+        assertThat(chunks).extracting(DocumentChunker.Chunk::firstLine).containsExactly(1, 16, 31);
+        assertThat(chunks).extracting(DocumentChunker.Chunk::lastLine).containsExactly(20, 35, 50);
+        assertThat(chunks.get(1).text()).startsWith("line 16\n").endsWith("\nline 35");
+    }
+
+    @Test
+    void boundsPassagesByCharactersToo() {
+        String body = IntStream.rangeClosed(1, 10).mapToObj(line -> "x".repeat(299)).collect(Collectors.joining("\n"));
+
+        List<DocumentChunker.Chunk> chunks = DocumentChunker.chunks(body);
+
+        assertThat(chunks).allSatisfy(chunk -> assertThat(chunk.text().length()).isLessThanOrEqualTo(DocumentChunker.MAX_PASSAGE_CHARS));
+        assertThat(chunks.get(0).lastLine()).isEqualTo(3);
+        assertThat(chunks.get(1).firstLine()).isEqualTo(2);
+        assertThat(chunks.get(chunks.size() - 1).lastLine()).isEqualTo(10);
+    }
+}
@@ -0,0 +1,110 @@
+package com.vawk.store;
+
+import com.vawk.domain.GenerationCache;
+import com.vawk.domain.SessionLog;
+import com.vawk.domain.VawkSpec;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GenerationCacheRepositoryTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static GenerationCache.Entry entry(String description, boolean passed) {
+        GenerationCache.Entry entry = new GenerationCache.Entry();
+        entry.setDescription(description);
+        entry.setCreatedAt(Instant.parse("2026-01-01T00:00:00Z"));
+        entry.setSpec(new VawkSpec(description, List.of("csv"), List.of("total"), List.of(), List.of()));
+        entry.setCode("{ total += $3 } END { print total }");
+        entry.setTestsRun(List.of(new SessionLog.TestRun("sum", passed, null)));
+        return entry;
+    }
+
+    @Test
+    void findsAVerifiedGenerationForARephrasedRequest() throws Exception {
+        GenerationCacheRepository repository = new GenerationCacheRepository(tempDir.resolve("gen-cache.json"), 0.9);
+        repository.record(entry("Sum the third column of a CSV file", true));
+        repository.record(entry("Count distinct values in the first column", true));
+
+        Optional<GenerationCacheRepository.Match> match = repository.findVerified("sum third columns in csv files");
+
+        assertThat(match).isPresent();
+        assertThat(match.get().entry().getDescription()).isEqualTo("Sum the third column of a CSV file");
+        assertThat(match.get().entry().getCode()).contains("total += $3");
+        assertThat(match.get().entry().getSpec().getInputs()).containsExactly("csv");
+        assertThat(match.get().similarity()).isGreaterThan(0.99);
+        assertThat(match.get().exact()).isTrue();
+        assertThat(repository.findVerified("average the third column of a CSV file")).isEmpty();
+        assertThat(repository.findVerified("")).isEmpty();
+    }
+
+    @Test
+    void similarRequestsWithOtherTermsMatchButNotExactly() throws Exception {
+        GenerationCacheRepository repository = new GenerationCacheRepository(tempDir.resolve("gen-cache.json"), 0.5);
+        repository.record(entry("count GET requests per host", true));
+        repository.record(entry("count POST requests per host", true));
+
+        GenerationCacheRepository.Match exact = repository.findVerified("per host, count the POST requests").orElseThrow();
+        assertThat(exact.exact()).isTrue();
+        assertThat(exact.entry().getDescription()).isEqualTo("count POST requests per host");
+
+        GenerationCacheRepository.Match similar = repository.findVerified("count PUT requests per host").orElseThrow();
+        assertThat(similar.exact()).isFalse();
+        assertThat(similar.similarity()).isLessThan(1);
+    }
+
+    @Test
+    void requestsNamingOtherNumbersDoNotMatch() throws Exception {
+        GenerationCacheRepository repository = new GenerationCacheRepository(tempDir.resolve("gen-cache.json"), 0.5);
+        repository.record(entry("print lines longer than 80 characters", true));
+
+        assertThat(repository.findVerified("print lines longer than 80 characters")).isPresent();
+        assertThat(repository.findVerified("print lines longer than 120 characters")).isEmpty();
+    }
+
+    @Test
+    void keepsOnlyVerifiedGenerationsAndReplacesTheSameRequest() throws Exception {
+        GenerationCacheRepository repository = new GenerationCacheRepository(tempDir.resolve("gen-cache.json"), 0.9);
+        repository.record(entry("sum the third column", false));
+        assertThat(repository.load().getEntries()).isEmpty();
+
+        repository.record(entry("sum the third column", true));
+        GenerationCache.Entry newer = entry("Sum the third column.", true);
+        newer.setCode("{ s += $3 } END { print s }");
+        repository.record(newer);
+
+        assertThat(repository.load().getEntries()).hasSize(1);
+        assertThat(repository.findVerified("sum the third column").orElseThrow().entry().getCode()).contains("s += $3");
+    }
+
+    @Test
+    void dropsTheOldestGenerationsBeyondTheLimit() throws Exception {
+        GenerationCacheRepository repository = new GenerationCacheRepository(tempDir.resolve("gen-cache.json"), 0.9);
+        for (int task = 0; task <= GenerationCacheRepository.MAX_ENTRIES; task++) {
+            repository.record(entry("task number " + task, true));
+        }
+
+        List<GenerationCache.Entry> entries = repository.load().getEntries();
+        assertThat(entries).hasSize(GenerationCacheRepository.MAX_ENTRIES);
+        assertThat(entries.get(0).getDescription()).isEqualTo("task number 1");
+    }
+
+    @Test
+    void unreadableCacheReadsAsEmpty() throws Exception {
+        Path cachePath = tempDir.resolve("gen-cache.json");
+        Files.writeString(cachePath, "{not json");
+        GenerationCacheRepository repository = new GenerationCacheRepository(cachePath, 0.9);
+
+        assertThat(repository.load().getEntries()).isEmpty();
+        assertThat(repository.findVerified("anything")).isEmpty();
+    }
+}
@@ -0,0 +1,38 @@
+package com.vawk.store;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class HashingVectorizerTest {
+
+    @Test
+    void producesUnitVectorsWhoseDotProductIsCosineSimilarity() {
+        HashingVectorizer.Weights idf = HashingVectorizer.inverseDocumentFrequencies(List.of(
+                TextTokenizer.terms("sum a numeric column"), TextTokenizer.terms("count the lines of a file")));
+
+        HashingVectorizer.SparseVector sum = HashingVectorizer.vector(TextTokenizer.terms("sum the column"), idf);
+        HashingVectorizer.SparseVector count = HashingVectorizer.vector(TextTokenizer.terms("count lines"), idf);
+
+        assertThat(sum.size()).isEqualTo(2);
+        assertThat(sum.buckets()).isSorted();
+        assertThat(sum.buckets()[1]).isLessThan(HashingVectorizer.DIMENSIONS);
+        assertThat(sum.dot(sum)).isCloseTo(1f, within(1e-5f));
+        assertThat(sum.dot(HashingVectorizer.vector(TextTokenizer.terms("summing columns"), idf))).isCloseTo(1f, within(1e-5f));
+        assertThat(sum.dot(count)).isLessThan(0.5f);
+        assertThat(HashingVectorizer.vector(List.of(), idf).size()).isZero();
+    }
+
+    @Test
+    void weighsRareBucketsAboveCommonOnes() {
+        HashingVectorizer.Weights idf = HashingVectorizer.inverseDocumentFrequencies(List.of(
+                List.of("awk", "sum"), List.of("awk", "count"), List.of("awk", "print")));
+
+        assertThat(idf.of(HashingVectorizer.bucket("sum"))).isGreaterThan(idf.of(HashingVectorizer.bucket("awk")));
+        assertThat(idf.of(HashingVectorizer.bucket("grep"))).isGreaterThan(idf.of(HashingVectorizer.bucket("sum")));
+        assertThat(HashingVectorizer.bucket("awk")).isEqualTo(HashingVectorizer.bucket("awk")).isBetween(0, HashingVectorizer.DIMENSIONS - 1);
+    }
+}
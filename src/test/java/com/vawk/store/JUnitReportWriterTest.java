@@ -0,0 +1,51 @@
+package com.vawk.store;
+
+import com.vawk.domain.SessionLog;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JUnitReportWriterTest {
+
+    @Test
+    void writesTimedTestCasesWithFailuresAndErrors(@TempDir Path tempDir) throws Exception {
+        SessionLog.TestRun passed = new SessionLog.TestRun("fast", true, null);
+        passed.setDurationMillis(1250L);
+        passed.setCpuMillis(900L);
+        passed.setInputBytes(2048L);
+        passed.setOutputBytes(512L);
+        passed.setLinesPerSecond(1234.6);
+        SessionLog.TestRun mismatch = new SessionLog.TestRun("wrong <output>", false, "-a\n+b & c");
+        mismatch.setFailureKind(SessionLog.FailureKind.MISMATCH);
+        mismatch.setDurationMillis(5L);
+        SessionLog.TestRun stopped = new SessionLog.TestRun("loop", false, "stopped\u0001");
+        stopped.setFailureKind(SessionLog.FailureKind.LIMIT_EXCEEDED);
+        Path report = tempDir.resolve("reports/junit.xml");
+
+        new JUnitReportWriter().write(report, "main.awk", List.of(passed, mismatch, stopped));
+
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(report.toFile());
+        Element suite = document.getDocumentElement();
+        assertThat(suite.getAttribute("name")).isEqualTo("main.awk");
+        assertThat(suite.getAttribute("tests")).isEqualTo("3");
+        assertThat(suite.getAttribute("failures")).isEqualTo("1");
+        assertThat(suite.getAttribute("errors")).isEqualTo("1");
+        assertThat(suite.getAttribute("time")).isEqualTo("1.255");
+        Element first = (Element) suite.getElementsByTagName("testcase").item(0);
+        assertThat(first.getAttribute("time")).isEqualTo("1.250");
+        assertThat(first.getElementsByTagName("property").getLength()).isEqualTo(4);
+        Element second = (Element) suite.getElementsByTagName("testcase").item(1);
+        assertThat(second.getAttribute("name")).isEqualTo("wrong <output>");
+        assertThat(second.getElementsByTagName("failure").item(0).getTextContent()).isEqualTo("-a\n+b & c");
+        Element third = (Element) suite.getElementsByTagName("testcase").item(2);
+        assertThat(((Element) third.getElementsByTagName("error").item(0)).getAttribute("type")).isEqualTo("LIMIT_EXCEEDED");
+        assertThat(third.getAttribute("time")).isEqualTo("0.000");
+    }
+}
@@ -0,0 +1,67 @@
+package com.vawk.store;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RagContextPackerTest {
+
+    private static RagRepository.RagPassage passage(String id, String text, double score) {
+        return new RagRepository.RagPassage(new RagRepository.RagEntry(id, id, "snippets/" + id + ".md", "snippets"), 1, 20, text, score);
+    }
+
+    @Test
+    void estimatesAboutFourCharactersPerToken() {
+        assertThat(RagContextPacker.estimateTokens(null)).isZero();
+        assertThat(RagContextPacker.estimateTokens("abcd")).isEqualTo(1);
+        assertThat(RagContextPacker.estimateTokens("abcde")).isEqualTo(2);
+    }
+
+    @Test
+    void picksTheHighestScoringSetThatFits() {
+        RagRepository.RagPassage large = passage("large", "x".repeat(396), 3.0);
+        RagRepository.RagPassage first = passage("first", "y".repeat(196), 2.0);
+        RagRepository.RagPassage second = passage("second", "z".repeat(196), 2.0);
+
+        // large costs 100 tokens, the others 50 each: two mid-scoring passages beat one top-scoring one.
+        List<RagRepository.RagPassage> packed = RagContextPacker.pack(List.of(large, first, second), passage -> passage.text, 100);
+
+        assertThat(packed).containsExactly(first, second);
+    }
+
+    @Test
+    void keepsRankOrderAndFillsTheBudget() {
+        RagRepository.RagPassage best = passage("best", "a".repeat(36), 5.0);
+        RagRepository.RagPassage middle = passage("middle", "b".repeat(36), 4.0);
+        RagRepository.RagPassage worst = passage("worst", "c".repeat(36), 1.0);
+
+        assertThat(RagContextPacker.pack(List.of(best, middle, worst), passage -> passage.text, 20)).containsExactly(best, middle);
+        assertThat(RagContextPacker.pack(List.of(best, middle, worst), passage -> passage.text, 100)).containsExactly(best, middle, worst);
+        assertThat(RagContextPacker.pack(List.of(best, middle, worst), passage -> passage.text, 5)).isEmpty();
+    }
+
+    @Test
+    void dropsRepeatedAndContainedText() {
+        RagRepository.RagPassage original = passage("book", "Use  split() to break\na field apart.", 2.0);
+        RagRepository.RagPassage copy = passage("snippet", "use split() to break a field apart.", 1.5);
+        RagRepository.RagPassage part = passage("excerpt", "break a field", 1.0);
+        RagRepository.RagPassage other = passage("other", "Print the last field with $NF.", 0.5);
+
+        assertThat(RagContextPacker.pack(List.of(original, copy, part, other), passage -> passage.text, 1000))
+                .containsExactly(original, other);
+    }
+
+    @Test
+    void rendersPackedPassagesWithHeadersAndCutsLongText() {
+        RagRepository.RagPassage shortPassage = passage("short", "print $1", 2.0);
+        RagRepository.RagPassage longPassage = passage("long", "x".repeat(2500), 1.0);
+
+        String context = RagContextPacker.render(List.of(shortPassage, longPassage), 1000);
+
+        assertThat(context).startsWith("## RAG: short (snippets/short.md, lines 1-20)\nprint $1\n\n## RAG: long (snippets/long.md, lines 1-20)\n");
+        assertThat(context).contains("x".repeat(2000)).doesNotContain("x".repeat(2001));
+        assertThat(RagContextPacker.render(List.of(shortPassage), 0)).isEmpty();
+    }
+}
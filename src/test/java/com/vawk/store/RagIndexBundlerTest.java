@@ -0,0 +1,33 @@
+package com.vawk.store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RagIndexBundlerTest {
+
+    @Test
+    void bundlesTheProjectDocsWithRelativeSources(@TempDir Path tempDir) throws Exception {
+        Path output = tempDir.resolve("classes/rag/index.bin");
+
+        RagIndex bundled = RagIndexBundler.bundle(Paths.get("docs").toAbsolutePath(), output);
+        RagIndex read = RagIndex.read(output).orElseThrow();
+
+        assertThat(read.getEntries()).hasSize(bundled.getEntries().size()).isNotEmpty();
+        assertThat(read.getPassageCount()).isEqualTo(bundled.getPassageCount());
+        assertThat(read.getSources().keySet()).allSatisfy(source -> assertThat(source).startsWith("docs"));
+        assertThat(read.getContentStamp()).isEqualTo(bundled.getContentStamp());
+        assertThat(read.search("associative arrays", 3)).isNotEmpty();
+    }
+
+    @Test
+    void rejectsAMissingDocsDirectory(@TempDir Path tempDir) {
+        assertThrows(java.io.IOException.class, () -> RagIndexBundler.bundle(tempDir.resolve("nope"), tempDir.resolve("index.bin")));
+        assertThrows(IllegalArgumentException.class, () -> RagIndexBundler.main(new String[0]));
+    }
+}
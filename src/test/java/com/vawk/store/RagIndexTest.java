@@ -0,0 +1,89 @@
+package com.vawk.store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RagIndexTest {
+
+    private static RagIndex sample() {
+        List<RagRepository.RagEntry> entries = List.of(
+                new RagRepository.RagEntry("count-lines", "Count total lines in a file", "snippets/count-lines.md", "snippets"),
+                new RagRepository.RagEntry("sum-column", "Sum a numeric column", "snippets/sum-column.md", "snippets"),
+                new RagRepository.RagEntry("deduplicate-lines", "Remove duplicate lines", "snippets/dedup.md", "snippets"));
+        List<String> bodies = List.of(
+                "awk 'END { print NR }' counts every line",
+                "awk '{ total += $3 } END { print total }' sums the third column of numbers",
+                "awk '!seen[$0]++' keeps the first occurrence of each line");
+        return RagIndex.build(entries, bodies, Map.of("docs/index.md", new RagIndex.SourceFile(10, 20, "abc")));
+    }
+
+    @Test
+    void ranksByBm25AndLeavesOutNonMatches() {
+        List<RagIndex.Hit> hits = sample().search("how do I sum numbers in a column", 5);
+
+        assertThat(hits).extracting(hit -> hit.entry().id).containsExactly("sum-column");
+        assertThat(hits.get(0).score()).isPositive();
+    }
+
+    @Test
+    void keepsOnlyTheBestHitsUpToTheLimit() {
+        RagIndex index = sample();
+
+        assertThat(index.search("lines", 5)).extracting(hit -> hit.entry().id).containsExactlyInAnyOrder("count-lines", "deduplicate-lines");
+        assertThat(index.search("counting lines", 1)).extracting(hit -> hit.entry().id).containsExactly("count-lines");
+        assertThat(index.search("unrelated words", 3)).isEmpty();
+        assertThat(index.search("lines", 0)).isEmpty();
+    }
+
+    @Test
+    void returnsTheMatchingPassageOfALongDocument() {
+        StringBuilder body = new StringBuilder("# Chapter\n");
+        for (int line = 2; line <= 60; line++) {
+            body.append(line == 45 ? "Use split() to break a field into an array of parts" : "general prose about awk programs").append('\n');
+        }
+        RagIndex index = RagIndex.build(List.of(new RagRepository.RagEntry("chapter", "A long chapter", "learn.awk/chapter.md", "book")),
+                List.of(body.toString()), Map.of());
+
+        List<RagIndex.Hit> hits = index.search("split a field", 3);
+
+        assertThat(index.getPassageCount()).isEqualTo(4);
+        assertThat(hits).hasSize(1);
+        assertThat(hits.get(0).firstLine()).isLessThanOrEqualTo(45);
+        assertThat(hits.get(0).lastLine()).isGreaterThanOrEqualTo(45);
+        assertThat(hits.get(0).text()).contains("split()").doesNotContain("# Chapter");
+        assertThat(index.searchEntries("split a field", 3)).extracting(entry -> entry.id).containsExactly("chapter");
+    }
+
+    @Test
+    void roundTripsThroughItsFile(@TempDir Path tempDir) throws Exception {
+        RagIndex index = sample();
+        Path file = tempDir.resolve("rag/index.bin");
+
+        index.write(file);
+        RagIndex read = RagIndex.read(file).orElseThrow();
+
+        assertThat(read.getSources()).isEqualTo(index.getSources());
+        assertThat(read.getEntries()).extracting(entry -> entry.path).containsExactly("snippets/count-lines.md", "snippets/sum-column.md", "snippets/dedup.md");
+        assertThat(read.search("duplicate", 3)).extracting(RagIndex.Hit::text).containsExactly("awk '!seen[$0]++' keeps the first occurrence of each line");
+        assertThat(read.search("duplicate", 3)).extracting(RagIndex.Hit::score).isEqualTo(index.search("duplicate", 3).stream().map(RagIndex.Hit::score).toList());
+    }
+
+    @Test
+    void readsMissingOrDamagedFilesAsAbsent(@TempDir Path tempDir) throws Exception {
+        assertThat(RagIndex.read(tempDir.resolve("missing.bin"))).isEmpty();
+        Path damaged = Files.write(tempDir.resolve("damaged.bin"), new byte[]{1, 2, 3});
+        assertThat(RagIndex.read(damaged)).isEmpty();
+        Path file = tempDir.resolve("index.bin");
+        sample().write(file);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, java.util.Arrays.copyOf(bytes, bytes.length / 2));
+        assertThat(RagIndex.read(file)).isEmpty();
+    }
+}
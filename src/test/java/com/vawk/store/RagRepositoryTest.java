@@ -38,8 +38,8 @@ class RagRepositoryTest {
     }
 
     @Test
-    void findRelevantRespectsLimitAndScoresMatches() throws Exception {
-        RagRepository repository = new RagRepository() {
+    void findRelevantRespectsLimitAndScoresMatches(@TempDir java.nio.file.Path tempDir) throws Exception {
+        RagRepository repository = new RagRepository(tempDir.resolve("index.bin")) {
             @Override
             public List<RagEntry> listAllEntries() {
                 return new java.util.ArrayList<>(List.of(
@@ -55,6 +55,130 @@ class RagRepositoryTest {
         assertThat(limited.get(0).id).isEqualTo("alpha");
     }
 
+    @Test
+    void persistsIndexAndReusesItWhileSourcesAreUnchanged(@TempDir java.nio.file.Path tempDir) throws Exception {
+        java.nio.file.Path indexFile = tempDir.resolve("rag/index.bin");
+        java.util.concurrent.atomic.AtomicInteger builds = new java.util.concurrent.atomic.AtomicInteger();
+        class CountingRepository extends RagRepository {
+            CountingRepository() {
+                super(indexFile);
+            }
+
+            @Override
+            public List<RagEntry> listAllEntries() throws IOException {
+                builds.incrementAndGet();
+                return super.listAllEntries();
+            }
+        }
+
+        List<RagRepository.RagEntry> first = new CountingRepository().findRelevant("print columns", 3);
+        RagRepository reopened = new CountingRepository();
+        List<RagRepository.RagEntry> again = reopened.findRelevant("print columns", 3);
+        reopened.findRelevant("count lines", 3);
+
+        assertThat(java.nio.file.Files.exists(indexFile)).isTrue();
+        assertThat(builds.get()).isEqualTo(1);
+        assertThat(first).isNotEmpty();
+        assertThat(again).extracting(e -> e.id).isEqualTo(first.stream().map(e -> e.id).toList());
+    }
+
+    @Test
+    void rebuildsIndexWhenSourceContentChanges(@TempDir java.nio.file.Path tempDir) throws Exception {
+        java.nio.file.Path indexFile = tempDir.resolve("index.bin");
+        RagIndex stale = RagIndex.build(List.of(new RagRepository.RagEntry("old", "old entry", "snippets/old.md", "snippets")), List.of(""),
+                java.util.Map.of("docs/examples/awk-snippets-index.md", new RagIndex.SourceFile(1, 1, "not-the-real-hash")));
+        stale.write(indexFile);
+
+        List<RagRepository.RagEntry> entries = new RagRepository(indexFile).findRelevant("old entry print columns", 5);
+
+        assertThat(entries).extracting(e -> e.id).doesNotContain("old").isNotEmpty();
+        assertThat(RagIndex.read(indexFile).orElseThrow().getSources()).containsKey("docs/examples/awk-snippets-index.md");
+    }
+
+    @Test
+    void findsBookSectionPassages(@TempDir java.nio.file.Path tempDir) throws Exception {
+        RagRepository repository = new RagRepository(tempDir.resolve("index.bin"));
+
+        List<RagRepository.RagPassage> passages = repository.findPassages("associative arrays aggregations", 3);
+
+        assertThat(repository.listAllEntries()).anyMatch(entry -> entry.group.equals("book"));
+        assertThat(passages).isNotEmpty();
+        assertThat(passages).allSatisfy(passage -> {
+            assertThat(passage.text.length()).isLessThanOrEqualTo(1000);
+            assertThat(passage.firstLine).isPositive().isLessThanOrEqualTo(passage.lastLine);
+        });
+        assertThat(passages).anyMatch(passage -> passage.entry.group.equals("book"));
+    }
+
+    @Test
+    void vectorModeRanksPassagesFromAMappedGraph(@TempDir java.nio.file.Path tempDir) throws Exception {
+        RagRepository repository = new RagRepository(tempDir.resolve("index.bin"), RagRepository.RetrievalMode.VECTOR);
+
+        List<RagRepository.RagPassage> passages = repository.findPassages("associative arrays aggregations", 3);
+        List<RagRepository.RagEntry> entries = repository.findRelevant("associative arrays aggregations", 3);
+
+        assertThat(java.nio.file.Files.exists(tempDir.resolve("vectors.hnsw"))).isTrue();
+        assertThat(passages).isNotEmpty().hasSizeLessThanOrEqualTo(3);
+        assertThat(entries).isNotEmpty().doesNotHaveDuplicates();
+        assertThat(passages.get(0).entry).isIn(entries);
+        assertThat(new RagRepository(tempDir.resolve("index.bin"), RagRepository.RetrievalMode.VECTOR)
+                .findPassages("associative arrays aggregations", 3)).extracting(passage -> passage.text)
+                .containsExactlyElementsOf(passages.stream().map(passage -> passage.text).toList());
+    }
+
+    @Test
+    void servesTheBundledIndexWhenTheWorkspaceHasNoDocs(@TempDir java.nio.file.Path tempDir) throws Exception {
+        java.nio.file.Path bundle = tempDir.resolve("bundle/index.bin");
+        RagIndexBundler.bundle(java.nio.file.Paths.get("docs"), bundle);
+        RagRepository repository = new RagRepository(tempDir.resolve("workspace/docs"), tempDir.resolve("rag/index.bin"),
+                RagRepository.RetrievalMode.LEXICAL) {
+            @Override
+            protected java.util.Optional<RagIndex> readBundledIndex() throws IOException {
+                return RagIndex.read(bundle);
+            }
+        };
+
+        assertThat(repository.findPassages("associative arrays aggregations", 3)).isNotEmpty();
+        assertThat(java.nio.file.Files.exists(tempDir.resolve("rag/index.bin"))).isFalse();
+        assertThat(new RagRepository(tempDir.resolve("workspace/docs"), tempDir.resolve("rag/index.bin"),
+                RagRepository.RetrievalMode.LEXICAL).findPassages("associative arrays", 3)).isEmpty();
+    }
+
+    @Test
+    void searchCodeFindsSnippetAndJobCodeAndSeesNewJobs(@TempDir java.nio.file.Path tempDir) throws Exception {
+        java.nio.file.Path docs = tempDir.resolve("docs");
+        java.nio.file.Path snippets = docs.resolve("examples").resolve("snippets");
+        java.nio.file.Files.createDirectories(snippets);
+        java.nio.file.Files.writeString(snippets.resolve("sum.md"), """
+# Snippet: sum
+
+**Sample script**
+
+```awk
+BEGIN { FS = "," }
+{ sum += $3 }
+```
+""");
+        java.nio.file.Path jobs = tempDir.resolve("vawk").resolve("jobs");
+        java.nio.file.Files.createDirectories(jobs.resolve("totals"));
+        java.nio.file.Files.writeString(jobs.resolve("totals").resolve("script.awk"), "{ sum += $2 }\nEND { print sum }\n");
+        RagRepository repository = new RagRepository(docs, jobs, tempDir.resolve("index.bin"),
+                RagRepository.RetrievalMode.LEXICAL);
+
+        List<RagRepository.CodeMatch> matches = repository.searchCode("sum += $", false, 10);
+
+        assertThat(matches).extracting(m -> m.line).containsExactly(7, 1);
+        assertThat(matches.get(0).path).endsWith("sum.md");
+        assertThat(matches.get(1).text).isEqualTo("{ sum += $2 }");
+        assertThat(repository.searchCode("FS = \",\"", false, 10)).hasSize(1);
+
+        java.nio.file.Files.createDirectories(jobs.resolve("lines"));
+        java.nio.file.Files.writeString(jobs.resolve("lines").resolve("script.awk"), "END { print NR }\n");
+
+        assertThat(repository.searchCode("print (sum|NR)", true, 10)).hasSize(2);
+        assertThat(repository.searchCode("", false, 10)).isEmpty();
+    }
+
     @Test
     void parseIndexSkipsInvalidPaths(@TempDir java.nio.file.Path tempDir) throws Exception {
         java.nio.file.Path index = tempDir.resolve("index.md");
@@ -0,0 +1,89 @@
+package com.vawk.store;
+
+import com.vawk.domain.AwkProgram;
+import com.vawk.domain.AwkTestCase;
+import com.vawk.domain.TestState;
+import com.vawk.util.Hashing;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TestStateRepositoryTest {
+
+    @Test
+    void savesAndLoadsState(@TempDir Path tempDir) throws Exception {
+        TestStateRepository repository = new TestStateRepository(tempDir.resolve("state/test-state.json"));
+        TestState state = new TestState();
+        state.getCases().put("basic", new TestState.CaseState("p", "i", "e", "v", true));
+
+        repository.save(state);
+
+        assertThat(repository.load()).isEqualTo(state);
+    }
+
+    @Test
+    void missingOrCorruptStateLoadsEmpty(@TempDir Path tempDir) throws Exception {
+        Path statePath = tempDir.resolve("test-state.json");
+        TestStateRepository repository = new TestStateRepository(statePath);
+
+        assertThat(repository.load().getCases()).isEmpty();
+
+        Files.writeString(statePath, "{not json");
+        assertThat(repository.load().getCases()).isEmpty();
+    }
+
+    @Test
+    void fingerprintChangesWithEachIngredient(@TempDir Path tempDir) throws Exception {
+        Path input = Files.writeString(tempDir.resolve("input.txt"), "a b\n");
+        Path expected = Files.writeString(tempDir.resolve("expected.txt"), "a\n");
+        AwkProgram program = new AwkProgram(tempDir.resolve("main.awk"), "{ print $1 }", "hash-1");
+        AwkTestCase testCase = new AwkTestCase("basic", input, expected, Map.of("FS", " "), null);
+        TestStateRepository repository = new TestStateRepository(tempDir.resolve("test-state.json"));
+
+        TestState.CaseState original = repository.fingerprint(testCase, program).orElseThrow();
+
+        assertThat(repository.fingerprint(testCase, program).orElseThrow().sameIngredients(original)).isTrue();
+        assertThat(repository.fingerprint(testCase, new AwkProgram(program.getPath(), "{ print $2 }", "hash-2"))
+                .orElseThrow().sameIngredients(original)).isFalse();
+        assertThat(repository.fingerprint(new AwkTestCase("basic", input, expected, Map.of("FS", ","), null), program)
+                .orElseThrow().sameIngredients(original)).isFalse();
+        Files.writeString(expected, "b\n");
+        assertThat(repository.fingerprint(testCase, program).orElseThrow().sameIngredients(original)).isFalse();
+    }
+
+    @Test
+    void fingerprintReusesHashesOfUntouchedFixtures(@TempDir Path tempDir) throws Exception {
+        Path input = Files.writeString(tempDir.resolve("input.txt"), "a b\n");
+        Path expected = Files.writeString(tempDir.resolve("expected.txt"), "a\n");
+        AwkProgram program = new AwkProgram(tempDir.resolve("main.awk"), "{ print $1 }", "hash-1");
+        AwkTestCase testCase = new AwkTestCase("basic", input, expected, Map.of(), null);
+        TestStateRepository repository = new TestStateRepository(tempDir.resolve("test-state.json"));
+        TestState.CaseState known = repository.fingerprint(testCase, program).orElseThrow();
+        known.setInputHash("remembered-input");
+        known.setExpectedHash("remembered-expected");
+
+        TestState.CaseState untouched = repository.fingerprint(testCase, program, known).orElseThrow();
+        assertThat(untouched.getInputHash()).isEqualTo("remembered-input");
+        assertThat(untouched.getExpectedHash()).isEqualTo("remembered-expected");
+
+        Files.setLastModifiedTime(expected, FileTime.fromMillis(known.getExpectedModifiedMillis() + 2000));
+        TestState.CaseState touched = repository.fingerprint(testCase, program, known).orElseThrow();
+        assertThat(touched.getInputHash()).isEqualTo("remembered-input");
+        assertThat(touched.getExpectedHash()).isEqualTo(Hashing.sha256(expected));
+    }
+
+    @Test
+    void fingerprintIsEmptyWhenFixtureMissing(@TempDir Path tempDir) throws Exception {
+        AwkTestCase testCase = new AwkTestCase("missing", tempDir.resolve("input.txt"), tempDir.resolve("expected.txt"), Map.of(), null);
+        TestStateRepository repository = new TestStateRepository(tempDir.resolve("test-state.json"));
+
+        assertThat(repository.fingerprint(testCase, new AwkProgram(null, "{}", "hash"))).isEmpty();
+        assertThat(repository.fingerprint(new AwkTestCase(), new AwkProgram(null, "{}", "hash"))).isEmpty();
+    }
+}
@@ -0,0 +1,62 @@
+package com.vawk.store;
+
+import com.vawk.domain.SessionLog;
+import com.vawk.domain.TestTimings;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TestTimingRepositoryTest {
+
+    @Test
+    void recordsExecutedRunsAndSkipsCachedOnes(@TempDir Path tempDir) throws Exception {
+        TestTimingRepository repository = new TestTimingRepository(tempDir.resolve("state/test-timings.json"));
+        SessionLog.TestRun slow = new SessionLog.TestRun("slow", true, null);
+        slow.setDurationMillis(900L);
+        SessionLog.TestRun red = new SessionLog.TestRun("red", false, "diff");
+        red.setDurationMillis(20L);
+        SessionLog.TestRun cached = new SessionLog.TestRun("cached", true, null);
+        cached.setCached(true);
+
+        repository.record(List.of(slow, red, cached));
+
+        TestTimings timings = repository.load();
+        assertThat(timings.getCases()).containsOnlyKeys("slow", "red");
+        assertThat(timings.getCases().get("slow").getExpectedMillis()).isEqualTo(900);
+        assertThat(timings.getCases().get("red").isLastFailed()).isTrue();
+    }
+
+    @Test
+    void keepsRollingHistoryAndUsesMedian(@TempDir Path tempDir) throws Exception {
+        TestTimingRepository repository = new TestTimingRepository(tempDir.resolve("test-timings.json"));
+        long[] durations = {5000, 10, 20, 30, 40, 50};
+        for (long duration : durations) {
+            SessionLog.TestRun run = new SessionLog.TestRun("case", true, null);
+            run.setDurationMillis(duration);
+            repository.record(List.of(run));
+        }
+
+        TestTimings.CaseTiming timing = repository.load().getCases().get("case");
+
+        assertThat(timing.getRecentMillis()).containsExactly(10L, 20L, 30L, 40L, 50L);
+        assertThat(timing.getExpectedMillis()).isEqualTo(30);
+        assertThat(timing.isLastFailed()).isFalse();
+    }
+
+    @Test
+    void missingOrCorruptHistoryLoadsEmpty(@TempDir Path tempDir) throws Exception {
+        Path timingsPath = tempDir.resolve("test-timings.json");
+        TestTimingRepository repository = new TestTimingRepository(timingsPath);
+
+        assertThat(repository.load().getCases()).isEmpty();
+
+        Files.writeString(timingsPath, "[broken");
+        assertThat(repository.load().getCases()).isEmpty();
+        assertThat(new TestTimings.CaseTiming().getExpectedMillis()).isEqualTo(-1);
+    }
+}
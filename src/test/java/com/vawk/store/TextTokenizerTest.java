@@ -0,0 +1,25 @@
+package com.vawk.store;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TextTokenizerTest {
+
+    @Test
+    void splitsLowercasesAndDropsStopWords() {
+        assertThat(TextTokenizer.terms("Sum the 3rd column, per-IP!")).containsExactly("sum", "3rd", "column", "per", "ip");
+        assertThat(TextTokenizer.terms(null)).isEmpty();
+    }
+
+    @Test
+    void stemsPluralsAndVerbEndingsToOneTerm() {
+        assertThat(TextTokenizer.terms("counts counting counted count")).containsOnly("count");
+        assertThat(TextTokenizer.stem("running")).isEqualTo("run");
+        assertThat(TextTokenizer.stem("duplicates")).isEqualTo("duplicate");
+        assertThat(TextTokenizer.stem("entries")).isEqualTo("entry");
+        assertThat(TextTokenizer.stem("filled")).isEqualTo("fill");
+        assertThat(TextTokenizer.stem("class")).isEqualTo("class");
+        assertThat(TextTokenizer.stem("awk")).isEqualTo("awk");
+    }
+}
@@ -0,0 +1,109 @@
+package com.vawk.store;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TrigramIndexTest {
+
+    private static TrigramIndex sample() {
+        return TrigramIndex.build(List.of(
+                new TrigramIndex.CodeBlock("sum.md", 10, "BEGIN { FS = \",\" }\n{ total += $3 }\nEND { print total }\n"),
+                new TrigramIndex.CodeBlock("count.awk", 1, "{ count[$1]++ }\nEND { for (k in count) print k, count[k] }\n"),
+                new TrigramIndex.CodeBlock("upper.awk", 1, "{ print toupper($0) }\n")));
+    }
+
+    @Test
+    void literalSearchReportsFileLinesOfMatches() {
+        List<TrigramIndex.Match> matches = sample().search("total", false, 10);
+
+        assertThat(matches).containsExactly(
+                new TrigramIndex.Match("sum.md", 11, "{ total += $3 }"),
+                new TrigramIndex.Match("sum.md", 12, "END { print total }"));
+    }
+
+    @Test
+    void literalSearchChecksOnlyBlocksHoldingEveryTrigram() {
+        TrigramIndex index = sample();
+
+        assertThat(index.candidates("+= $3", false)).containsExactly(0);
+        assertThat(index.candidates("print", false)).containsExactly(0, 1, 2);
+        assertThat(index.candidates("gsub(", false)).isEmpty();
+        assertThat(index.candidates("$", false)).containsExactly(0, 1, 2);
+        assertThat(index.search("$1", false, 10)).extracting(TrigramIndex.Match::path).containsExactly("count.awk");
+    }
+
+    @Test
+    void regexSearchIsPrunedByItsRequiredLiterals() {
+        TrigramIndex index = sample();
+
+        assertThat(index.candidates("count\\[\\$[0-9]\\]\\+\\+", true)).containsExactly(1);
+        assertThat(index.search("^END \\{ print \\w+ }$", true, 10))
+                .extracting(TrigramIndex.Match::line).containsExactly(12);
+        assertThat(index.search("toupper|tolower", true, 10)).hasSize(1);
+    }
+
+    @Test
+    void requiredLiteralsSkipOptionalAndAlternativeParts() {
+        assertThat(TrigramIndex.requiredLiterals("split\\(\\$0, parts")).containsExactly("split($0, parts");
+        assertThat(TrigramIndex.requiredLiterals("totals?\\[x+\\]")).containsExactly("total");
+        assertThat(TrigramIndex.requiredLiterals("print (NR|FNR) line")).containsExactly("print ", " line");
+        assertThat(TrigramIndex.requiredLiterals("[a-z]+_count{2}")).containsExactly("_coun");
+        assertThat(TrigramIndex.requiredLiterals("NR|FNR")).isEmpty();
+        assertThat(TrigramIndex.requiredLiterals("(?i)print")).isEmpty();
+    }
+
+    @Test
+    void requiredLiteralsLeaveEscapeOperandsOut() {
+        assertThat(TrigramIndex.requiredLiterals("foo\\x41bar")).containsExactly("foo", "bar");
+        assertThat(TrigramIndex.requiredLiterals("foo\\x{263A}bar")).containsExactly("foo", "bar");
+        assertThat(TrigramIndex.requiredLiterals("foo\\u0041bar")).containsExactly("foo", "bar");
+        assertThat(TrigramIndex.requiredLiterals("foo\\0101bar")).containsExactly("foo", "bar");
+        assertThat(TrigramIndex.requiredLiterals("foo\\p{Alpha}bar")).containsExactly("foo", "bar");
+        assertThat(TrigramIndex.requiredLiterals("foo\\pLbar")).containsExactly("foo", "bar");
+        assertThat(TrigramIndex.requiredLiterals("foo\\cMbar")).containsExactly("foo", "bar");
+    }
+
+    @Test
+    void searchStopsAtTheLimitAndRejectsInvalidPatterns() {
+        TrigramIndex index = sample();
+
+        assertThat(index.search("print", false, 2)).hasSize(2);
+        assertThrows(java.util.regex.PatternSyntaxException.class, () -> index.search("count[", true, 10));
+    }
+
+    @Test
+    void extractsOnlyAwkFencesWithTheirStartingLines() {
+        String markdown = """
+                # Snippet
+
+                ```sh
+                awk -f x.awk
+                ```
+
+                ```awk
+                { print $1 }
+                ```
+                """;
+
+        List<TrigramIndex.CodeBlock> blocks = TrigramIndex.awkFences("s.md", markdown);
+
+        assertThat(blocks).containsExactly(new TrigramIndex.CodeBlock("s.md", 8, "{ print $1 }\n"));
+    }
+
+    @Test
+    void prunesALargeLibraryToTheBlocksThatMatch() {
+        List<TrigramIndex.CodeBlock> blocks = new ArrayList<>();
+        for (int job = 0; job < 5000; job++) {
+            blocks.add(new TrigramIndex.CodeBlock("job" + job + ".awk", 1, "{ field_" + job + " += $" + (job % 9 + 1) + " }\n"));
+        }
+        TrigramIndex index = TrigramIndex.build(blocks);
+
+        assertThat(index.candidates("field_4321 ", false)).containsExactly(4321);
+        assertThat(index.search("field_4321 ", false, 10)).extracting(TrigramIndex.Match::path).containsExactly("job4321.awk");
+    }
+}
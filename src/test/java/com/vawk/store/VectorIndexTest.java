@@ -0,0 +1,115 @@
+package com.vawk.store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VectorIndexTest {
+
+    private static float dot(float[] left, float[] right) {
+        float sum = 0;
+        for (int dimension = 0; dimension < left.length; dimension++) {
+            sum += left[dimension] * right[dimension];
+        }
+        return sum;
+    }
+
+    private static float[] unit(float[] vector) {
+        double norm = Math.sqrt(dot(vector, vector));
+        for (int dimension = 0; dimension < vector.length; dimension++) {
+            vector[dimension] /= (float) norm;
+        }
+        return vector;
+    }
+
+    @Test
+    void findsTheMatchingPassageThroughTheMappedFile(@TempDir Path tempDir) throws Exception {
+        RagIndex lexical = RagIndex.build(List.of(
+                        new RagRepository.RagEntry("sum-column", "Sum a numeric column", "snippets/sum.md", "snippets"),
+                        new RagRepository.RagEntry("count-lines", "Count total lines", "snippets/count.md", "snippets"),
+                        new RagRepository.RagEntry("dedup", "Remove duplicate lines", "snippets/dedup.md", "snippets")),
+                List.of("awk '{ total += $3 } END { print total }'", "awk 'END { print NR }'", "awk '!seen[$0]++'"), Map.of());
+        Path file = tempDir.resolve("vectors.hnsw");
+
+        VectorIndex.write(lexical, "stamp-1", file);
+        VectorIndex index = VectorIndex.read(file).orElseThrow();
+
+        assertThat(index.getStamp()).isEqualTo("stamp-1");
+        assertThat(index.size()).isEqualTo(3);
+        List<VectorIndex.Neighbour> found = index.search("sum the numbers in a column", 2);
+        assertThat(found).isNotEmpty();
+        assertThat(found.get(0).passage()).isZero();
+        assertThat(found).allSatisfy(neighbour -> assertThat(neighbour.similarity()).isPositive());
+        assertThat(index.search("zebra", 2)).isEmpty();
+    }
+
+    @Test
+    void recallsNearlyAllExactNearestNeighbours(@TempDir Path tempDir) throws Exception {
+        Random random = new Random(7);
+        int dimensions = 32;
+        float[][] vectors = new float[3000][];
+        for (int node = 0; node < vectors.length; node++) {
+            float[] vector = new float[dimensions];
+            for (int dimension = 0; dimension < dimensions; dimension++) {
+                vector[dimension] = (float) random.nextGaussian();
+            }
+            vectors[node] = unit(vector);
+        }
+        float[] ones = new float[dimensions];
+        Arrays.fill(ones, 1f);
+        HashingVectorizer.Weights idf = new HashingVectorizer.Weights(HashingVectorizer.SparseVector.of(ones), 1f);
+        HashingVectorizer.SparseVector[] sparse = Arrays.stream(vectors).map(HashingVectorizer.SparseVector::of)
+                .toArray(HashingVectorizer.SparseVector[]::new);
+        Path file = tempDir.resolve("vectors.hnsw");
+        VectorIndex.write(dimensions, idf, sparse, "random", file);
+        VectorIndex index = VectorIndex.read(file).orElseThrow();
+
+        int found = 0;
+        int queries = 50;
+        for (int query = 0; query < queries; query++) {
+            float[] target = vectors[random.nextInt(vectors.length)].clone();
+            for (int dimension = 0; dimension < dimensions; dimension++) {
+                target[dimension] += (float) (random.nextGaussian() * 0.3);
+            }
+            float[] probe = unit(target);
+            List<Integer> exact = IntStream.range(0, vectors.length).boxed()
+                    .sorted(Comparator.comparingDouble(node -> -dot(probe, vectors[node])))
+                    .limit(10).toList();
+            List<Integer> approximate = new ArrayList<>();
+            index.nearest(HashingVectorizer.SparseVector.of(probe), 10).forEach(neighbour -> approximate.add(neighbour.passage()));
+            found += (int) exact.stream().filter(approximate::contains).count();
+        }
+
+        assertThat(found / (queries * 10.0)).isGreaterThan(0.9);
+    }
+
+    @Test
+    void ignoresMissingAndForeignFiles(@TempDir Path tempDir) throws Exception {
+        Path file = tempDir.resolve("vectors.hnsw");
+
+        assertThat(VectorIndex.read(file)).isEmpty();
+        Files.write(file, new byte[200]);
+        assertThat(VectorIndex.read(file)).isEmpty();
+    }
+
+    @Test
+    void handlesAnEmptyCorpus(@TempDir Path tempDir) throws Exception {
+        Path file = tempDir.resolve("vectors.hnsw");
+
+        VectorIndex.write(4, new HashingVectorizer.Weights(HashingVectorizer.SparseVector.EMPTY, 1f),
+                new HashingVectorizer.SparseVector[0], "empty", file);
+
+        assertThat(VectorIndex.read(file).orElseThrow().nearest(HashingVectorizer.SparseVector.of(new float[]{1, 0, 0, 0}), 3)).isEmpty();
+    }
+}